@@ -0,0 +1,21 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.balance-snapshots")
+@Data
+public class BalanceSnapshotConfig {
+
+    // Backfill of past days: kontos per chunk (one INSERT each) and chunks written at the same time (see KontoChunkRunner)
+    private int backfillChunkSize = 500;
+    private int backfillParallelism = 4;
+
+    // Longest period a single backfill may cover
+    private int backfillMaxDays = 3660;
+
+    // Max snapshots per page when listing all kontos of one day
+    private int listMaxPageSize = 1000;
+}
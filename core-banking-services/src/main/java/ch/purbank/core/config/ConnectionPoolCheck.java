@@ -0,0 +1,48 @@
+package ch.purbank.core.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Checks at startup that parallel jobs leave connections for the rest of the application. Every running settlement
+ * partition and every running chunk of the konto-wide jobs (see KontoChunkRunner) holds one pooled connection; with
+ * as many of them as connections, requests and the other jobs would wait for the pool until Hikari times out.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConnectionPoolCheck {
+
+    private final DataSource dataSource;
+    private final PaymentConfig paymentConfig;
+    private final BalanceSnapshotConfig balanceSnapshotConfig;
+    private final RollupConfig rollupConfig;
+    private final ReconciliationConfig reconciliationConfig;
+
+    @PostConstruct
+    void check() {
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return;
+        }
+        int poolSize = hikari.getMaximumPoolSize();
+        requireBelowPoolSize("purbank.payments.settlement-parallelism", paymentConfig.getSettlementParallelism(), poolSize);
+        requireBelowPoolSize("purbank.balance-snapshots.backfill-parallelism", balanceSnapshotConfig.getBackfillParallelism(), poolSize);
+        requireBelowPoolSize("purbank.rollups.rebuild-parallelism", rollupConfig.getRebuildParallelism(), poolSize);
+        requireBelowPoolSize("purbank.reconciliation.parallelism", reconciliationConfig.getParallelism(), poolSize);
+    }
+
+    static void requireBelowPoolSize(String property, int parallelism, int poolSize) {
+        if (parallelism < 1) {
+            throw new IllegalStateException(property + " must be at least 1");
+        }
+        if (parallelism >= poolSize) {
+            throw new IllegalStateException(property + " (" + parallelism + ") must be below the connection pool size ("
+                    + poolSize + "), raise spring.datasource.hikari.maximum-pool-size or lower it");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.jobs")
+@Data
+public class JobConfig {
+
+    // A job lease expires this long after the last heartbeat of its node, then another node takes the run over.
+    // The heartbeat interval must stay well below the TTL.
+    private Duration leaseTtl = Duration.ofMinutes(2);
+    private Duration heartbeatInterval = Duration.ofSeconds(30);
+
+    // A failed run with a run key is started again after this delay, until it completes or the next run key replaces it
+    private Duration retryDelay = Duration.ofMinutes(5);
+}
@@ -0,0 +1,68 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.payments")
+@Data
+public class PaymentConfig {
+
+    // Max pending payments returned per page of the payment listing, also the page size if the client sets none
+    private int listMaxPageSize = 500;
+
+    // Nets due payments between kontos of this bank before the settlement run: one balance UPDATE per konto
+    // and page instead of two per payment. Payments are netted in pages of nettingPageSize.
+    private boolean nettingEnabled = true;
+    private int nettingPageSize = 5000;
+
+    // Rows per query when the settlement simulation loads due payments, kontos and target IBANs
+    private int simulationPageSize = 10000;
+
+    // Max number of konto partitions settled at the same time. Every running partition holds one connection,
+    // so this must stay below spring.datasource.hikari.maximum-pool-size (checked at startup).
+    private int settlementParallelism = 4;
+
+    // Due payments fetched per keyset page, and max payments settled in one transaction
+    private int settlementPageSize = 1000;
+    private int settlementChunkSize = 200;
+
+    // How long before the settlement run due payments get locked against changes
+    private Duration lockLeadTime = Duration.ofMinutes(10);
+
+    // IBAN directory cache: max cached IBANs (least recently used are evicted) and how long an entry is trusted.
+    // Opening and closing kontos invalidates directly, the TTL only covers changes made by other app nodes.
+    private int ibanCacheSize = 10000;
+    private Duration ibanCacheTtl = Duration.ofMinutes(5);
+
+    // Target false positive rate of the Bloom filter of internal IBANs
+    private double ibanBloomFalsePositiveRate = 0.01;
+
+    // Batch files: max payments per file, and staged payments sent to the database per JDBC batch
+    private int batchMaxPayments = 10000;
+    private int batchInsertSize = 500;
+
+    // Idempotency-Key results: how long a retry returns the original result, and how many are cached per node
+    private Duration idempotencyTtl = Duration.ofHours(24);
+    private int idempotencyCacheSize = 10000;
+
+    // Approved INSTANT payments are executed by queue workers: workers per node, how often idle workers
+    // look for entries enqueued on other nodes, and attempts with exponential backoff before a payment fails
+    private int instantWorkers = 4;
+    private Duration instantPollInterval = Duration.ofMillis(500);
+    private int instantMaxAttempts = 5;
+    private Duration instantRetryBackoff = Duration.ofSeconds(1);
+
+    // Standing orders due that day claimed per transaction when their payments are created
+    private int recurringPageSize = 1000;
+
+    // Failed NORMAL payments (insufficient funds, errors) are retried up to retryMaxAttempts times, the first retry
+    // after retryInitialBackoff and every further one after twice the previous wait (4h, 8h, 16h: within 2 days).
+    // Every few minutes up to retryBatchSize due retries are executed.
+    private int retryMaxAttempts = 3;
+    private Duration retryInitialBackoff = Duration.ofHours(4);
+    private int retryBatchSize = 50;
+}
@@ -0,0 +1,21 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.postings")
+@Data
+public class PostingConfig {
+
+    // Attempts of an optimistic balance update before giving up, and the base delay between them.
+    // Conflicts only happen when another app node writes the same konto at the same time.
+    private int balanceUpdateAttempts = 5;
+    private Duration balanceRetryBackoff = Duration.ofMillis(10);
+
+    // Kontos whose conflicts are counted per hour for the contention report, further kontos are only counted in total
+    private int contentionMaxKonten = 1000;
+}
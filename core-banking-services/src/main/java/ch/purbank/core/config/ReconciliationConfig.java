@@ -0,0 +1,23 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.reconciliation")
+@Data
+public class ReconciliationConfig {
+
+    // Kontos per chunk (one statement each) and chunks run at the same time (see KontoChunkRunner)
+    private int chunkSize = 1000;
+    private int parallelism = 4;
+
+    // Kontos out of balance are checked again after this delay, so postings caught halfway aren't reported
+    private Duration recheckDelay = Duration.ofSeconds(5);
+
+    // Max discrepancies returned per page of a run's report
+    private int listMaxPageSize = 1000;
+}
@@ -0,0 +1,18 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.rollups")
+@Data
+public class RollupConfig {
+
+    // Rebuild: kontos per chunk (one statement each) and chunks run at the same time (see KontoChunkRunner)
+    private int rebuildChunkSize = 500;
+    private int rebuildParallelism = 4;
+
+    // Longest period the monthly analytics of a konto may cover
+    private int maxMonths = 120;
+}
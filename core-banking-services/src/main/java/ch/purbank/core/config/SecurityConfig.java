@@ -1,5 +1,6 @@
 package ch.purbank.core.config;
 
+import ch.purbank.core.dto.TransactionCursor;
 import ch.purbank.core.security.JwtAuthenticationFilter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -65,6 +66,7 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(List.of("*")); // Allow all origins (dev only)
         configuration.setAllowedMethods(List.of("*")); // Allow all methods
         configuration.setAllowedHeaders(List.of("*")); // Allow all headers
+        configuration.setExposedHeaders(List.of(TransactionCursor.NEXT_CURSOR_HEADER)); // Paging cursor for browser clients
         configuration.setAllowCredentials(false); // Must be false when using "*" for origins
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
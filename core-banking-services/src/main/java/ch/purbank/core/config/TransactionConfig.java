@@ -0,0 +1,38 @@
+package ch.purbank.core.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "purbank.transactions")
+@Data
+public class TransactionConfig {
+
+    // Transactions per page of a konto's history if the client sets no limit, and the max it may ask for
+    private int listDefaultPageSize = 50;
+    private int listMaxPageSize = 500;
+
+    // Rows fetched per round trip from the server-side cursor of a transaction export
+    private int exportFetchSize = 1000;
+
+    // transactions is partitioned by month: partitions are created this many months ahead, and months older than
+    // archiveRetentionMonths are moved into compressed files in archiveDirectory (0 = never archive). All nodes read
+    // the konto history from archiveDirectory, so it must be shared by them.
+    private int partitionMonthsAhead = 3;
+    private int archiveRetentionMonths = 24;
+    private String archiveDirectory = "data/transaction-archive";
+
+    // After an admin deletes a transaction, balanceAfter of the later ones is recalculated in the background:
+    // transactions per chunk (one transaction each), workers per node, how often idle workers look for rebases
+    // queued on other nodes, after how long without heartbeat a run is taken over, and attempts with
+    // exponential backoff before a rebase is marked FAILED
+    private int rebaseChunkSize = 5000;
+    private int rebaseWorkers = 2;
+    private Duration rebasePollInterval = Duration.ofSeconds(5);
+    private Duration rebaseStaleAfter = Duration.ofMinutes(2);
+    private int rebaseMaxAttempts = 5;
+    private Duration rebaseRetryBackoff = Duration.ofSeconds(10);
+}
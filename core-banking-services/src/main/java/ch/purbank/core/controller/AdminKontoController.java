@@ -2,8 +2,12 @@ package ch.purbank.core.controller;
 
 import ch.purbank.core.domain.Konto;
 import ch.purbank.core.dto.*;
+import ch.purbank.core.service.BalanceSnapshotService;
 import ch.purbank.core.service.InterestService;
+import ch.purbank.core.service.KontoBalanceService;
 import ch.purbank.core.service.KontoService;
+import ch.purbank.core.service.ReconciliationService;
+import ch.purbank.core.service.TransactionRollupService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -14,6 +18,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,6 +31,10 @@ public class AdminKontoController {
 
     private final KontoService kontoService;
     private final InterestService interestService;
+    private final KontoBalanceService kontoBalanceService;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final TransactionRollupService transactionRollupService;
+    private final ReconciliationService reconciliationService;
 
     @GetMapping("/user/{userId}")
     @Operation(summary = "Get konten for user", description = "Admin: Gets all konten for a specific user with accrued interest data")
@@ -103,4 +112,85 @@ public class AdminKontoController {
         interestService.processManualDailyCalculation();
         return ResponseEntity.ok(new GenericStatusResponse("Manual daily calculation completed successfully"));
     }
-}
\ No newline at end of file
+
+    @GetMapping("/contention")
+    @Operation(summary = "Get contended konten", description = "Admin: Lists the konten with the most conflicting balance updates in the current and the previous hour")
+    public ResponseEntity<List<KontoContentionDTO>> getContendedKonten(
+            @Parameter(description = "Max number of konten", required = false) @RequestParam(defaultValue = "20") int limit) {
+
+        return ResponseEntity.ok(kontoBalanceService.getMostContendedKonten(limit));
+    }
+
+    @GetMapping("/{kontoId}/balance")
+    @Operation(summary = "Get historical balance", description = "Admin: Gets the balance of any konto at the end of a past day")
+    public ResponseEntity<BalanceSnapshotDTO> getBalanceAt(
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Day (before today)", required = true) @RequestParam LocalDate date) {
+
+        return ResponseEntity.ok(balanceSnapshotService.getBalanceAtAdmin(kontoId, date));
+    }
+
+    @GetMapping("/balance-snapshots")
+    @Operation(summary = "Get balance snapshots of a day", description = "Admin: Lists the end-of-day balance of every konto on a day (e.g. month-end statements), ordered and paged by konto ID")
+    public ResponseEntity<List<BalanceSnapshotDTO>> getBalanceSnapshots(
+            @Parameter(description = "Day", required = true) @RequestParam LocalDate date,
+            @Parameter(description = "Konto ID of the last snapshot of the previous page", required = false) @RequestParam(required = false) UUID afterKontoId,
+            @Parameter(description = "Max snapshots per page (capped by the server)", required = false) @RequestParam(required = false) Integer limit) {
+
+        return ResponseEntity.ok(balanceSnapshotService.getSnapshotsOn(date, afterKontoId, limit));
+    }
+
+    @PostMapping("/balance-snapshots/backfill")
+    @Operation(summary = "Backfill balance snapshots", description = "Admin: Writes the end-of-day balance snapshots of all konten for past days, overwriting existing ones")
+    public ResponseEntity<BalanceSnapshotBackfillDTO> backfillBalanceSnapshots(
+            @Parameter(description = "First day (inclusive)", required = true) @RequestParam LocalDate from,
+            @Parameter(description = "Last day (inclusive, before today)", required = true) @RequestParam LocalDate to) {
+
+        log.info("Admin triggered balance snapshot backfill from {} to {}", from, to);
+        return ResponseEntity.ok(balanceSnapshotService.backfill(from, to));
+    }
+
+    @GetMapping("/{kontoId}/analytics/monthly")
+    @Operation(summary = "Get monthly totals", description = "Admin: Gets the inflow, outflow and number of transactions of any konto per month, transaction type and currency")
+    public ResponseEntity<List<MonthlyRollupDTO>> getMonthlyTotals(
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Day in the first month", required = true) @RequestParam LocalDate from,
+            @Parameter(description = "Day in the last month", required = true) @RequestParam LocalDate to) {
+
+        return ResponseEntity.ok(transactionRollupService.getMonthlyAdmin(kontoId, from, to));
+    }
+
+    @PostMapping("/rollups/rebuild")
+    @Operation(summary = "Rebuild monthly totals", description = "Admin: Recomputes the monthly totals of all konten from their transactions and corrects those that differ. " +
+            "Archived months are kept as they are.")
+    public ResponseEntity<RollupRebuildDTO> rebuildRollups() {
+        log.info("Admin triggered monthly rollup rebuild");
+        return ResponseEntity.ok(transactionRollupService.rebuild());
+    }
+
+    @PostMapping("/reconciliation")
+    @Operation(summary = "Reconcile balances", description = "Admin: Checks every konto balance against the sum of its transactions and the " +
+            "balanceAfter of its latest transaction, and writes a report of the kontos out of balance")
+    public ResponseEntity<ReconciliationRunDTO> reconcile() {
+        log.info("Admin triggered ledger reconciliation");
+        return ResponseEntity.ok(reconciliationService.reconcile());
+    }
+
+    @GetMapping("/reconciliation")
+    @Operation(summary = "Get reconciliation runs", description = "Admin: Latest reconciliation runs, newest first")
+    public ResponseEntity<List<ReconciliationRunDTO>> getReconciliationRuns(
+            @Parameter(description = "Max runs (capped by the server)", required = false) @RequestParam(required = false) Integer limit) {
+
+        return ResponseEntity.ok(reconciliationService.getRuns(limit));
+    }
+
+    @GetMapping("/reconciliation/{runId}/discrepancies")
+    @Operation(summary = "Get reconciliation report", description = "Admin: Kontos out of balance in a reconciliation run, ordered by konto id")
+    public ResponseEntity<List<ReconciliationDiscrepancyDTO>> getReconciliationDiscrepancies(
+            @Parameter(description = "Reconciliation run UUID", required = true) @PathVariable UUID runId,
+            @Parameter(description = "Konto ID of the last discrepancy of the previous page", required = false) @RequestParam(required = false) UUID afterKontoId,
+            @Parameter(description = "Max discrepancies per page (capped by the server)", required = false) @RequestParam(required = false) Integer limit) {
+
+        return ResponseEntity.ok(reconciliationService.getDiscrepancies(runId, afterKontoId, limit));
+    }
+}
@@ -3,6 +3,7 @@ package ch.purbank.core.controller;
 import ch.purbank.core.domain.Payment;
 import ch.purbank.core.dto.*;
 import ch.purbank.core.service.PaymentService;
+import ch.purbank.core.service.SettlementSimulationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -12,6 +13,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -23,15 +26,22 @@ import java.util.UUID;
 public class AdminPaymentController {
 
     private final PaymentService paymentService;
+    private final SettlementSimulationService settlementSimulationService;
 
     @GetMapping("/user/{userId}")
-    @Operation(summary = "Get pending payments for user", description = "Admin: Gets all pending payments for a user (includes all konten they have access to)")
+    @Operation(summary = "Get pending payments for user", description = "Admin: Gets the pending payments for a user (includes all konten they have access to), paged like GET /payments")
     public ResponseEntity<List<PaymentDTO>> getPendingPaymentsForUser(
             @Parameter(description = "User UUID", required = true) @PathVariable UUID userId,
-            @Parameter(description = "Optional konto ID filter", required = false) @RequestParam(required = false) UUID konto) {
+            @Parameter(description = "Optional konto ID filter", required = false) @RequestParam(required = false) UUID konto,
+            @Parameter(description = "Max payments per page (capped by the server)", required = false) @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page", required = false) @RequestParam(required = false) String cursor) {
 
-        List<PaymentDTO> payments = paymentService.getAllPendingPayments(userId, konto);
-        return ResponseEntity.ok(payments);
+        PaymentPageDTO page = paymentService.getAllPendingPayments(userId, konto, limit, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(TransactionCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getPayments());
     }
 
     @GetMapping("/konto/{kontoId}")
@@ -43,6 +53,17 @@ public class AdminPaymentController {
         return ResponseEntity.ok(payments);
     }
 
+    @GetMapping("/settlement-simulation")
+    @Operation(summary = "Simulate settlement run", description = "Admin: Projects the nightly settlement run without writing anything: " +
+            "which due payments (including standing orders) would fail and why, and the balance of every konto involved afterwards. " +
+            "Defaults to the next run.")
+    public ResponseEntity<SettlementSimulationDTO> simulateSettlement(
+            @Parameter(description = "Date of the run, payments due on or before it are settled", required = false) @RequestParam(required = false) LocalDate date) {
+
+        LocalDate dueDate = date != null ? date : Payment.nextSettlementDate(LocalDateTime.now());
+        return ResponseEntity.ok(settlementSimulationService.simulate(dueDate));
+    }
+
     @PostMapping
     @Operation(summary = "Create payment", description = "Admin: Creates a new payment for any user/konto (no mobile approval required)")
     public ResponseEntity<Payment> createPayment(
@@ -64,7 +85,7 @@ public class AdminPaymentController {
     }
 
     @DeleteMapping("/{paymentId}")
-    @Operation(summary = "Cancel payment", description = "Admin: Cancels/deletes a pending payment (no mobile approval required)")
+    @Operation(summary = "Cancel payment", description = "Admin: Cancels/deletes a pending payment or a failed payment waiting for a retry (no mobile approval required)")
     public ResponseEntity<GenericStatusResponse> cancelPayment(
             @Parameter(description = "Payment UUID", required = true) @PathVariable UUID paymentId) {
 
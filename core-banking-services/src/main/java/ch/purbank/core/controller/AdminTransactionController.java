@@ -2,9 +2,12 @@ package ch.purbank.core.controller;
 
 import ch.purbank.core.domain.Transaction;
 import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionExportFormat;
 import ch.purbank.core.domain.enums.TransactionType;
 import ch.purbank.core.dto.*;
+import ch.purbank.core.service.BalanceRebaseService;
 import ch.purbank.core.service.KontoService;
+import ch.purbank.core.service.TransactionExportService;
 import ch.purbank.core.service.TransactionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -12,10 +15,14 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,17 +35,30 @@ public class AdminTransactionController {
 
     private final KontoService kontoService;
     private final TransactionService transactionService;
+    private final TransactionExportService transactionExportService;
+    private final BalanceRebaseService balanceRebaseService;
 
     @GetMapping("/konto/{kontoId}")
-    @Operation(summary = "Get transactions for konto", description = "Admin: Gets all transactions for any konto")
+    @Operation(summary = "Get transactions for konto", description = "Admin: Gets transactions for any konto, newest first, paged by cursor like GET /konten/{kontoId}/transactions")
     public ResponseEntity<List<TransactionDTO>> getTransactionsForKonto(
             @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
-            @Parameter(description = "Range in format 'start.end' (e.g., '0.49')", required = false) @RequestParam(required = false) String range) {
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page", required = false) @RequestParam(required = false) String cursor,
+            @Parameter(description = "Max transactions per page (default 50, capped by the server)", required = false) @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Deprecated, use cursor: range in format 'start.end' (e.g., '0.49')", required = false) @RequestParam(required = false) String range) {
+
+        if (range == null) {
+            TransactionPageDTO page = transactionService.getTransactionPageAdmin(kontoId, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(TransactionCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getTransactions());
+        }
 
         Integer start = null;
         Integer end = null;
 
-        if (range != null && range.contains(".")) {
+        if (range.contains(".")) {
             String[] parts = range.split("\\.");
             try {
                 start = Integer.parseInt(parts[0]);
@@ -52,6 +72,22 @@ public class AdminTransactionController {
         return ResponseEntity.ok(transactions);
     }
 
+    @GetMapping("/konto/{kontoId}/export")
+    @Operation(summary = "Export transactions of konto", description = "Admin: Streams the transactions of any konto as CSV or camt.053, like GET /konten/{kontoId}/transactions/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactionsForKonto(
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Export format (default CSV)", required = false) @RequestParam(required = false) TransactionExportFormat format,
+            @Parameter(description = "First day of the period (inclusive)", required = false) @RequestParam(required = false) LocalDate from,
+            @Parameter(description = "Last day of the period (inclusive)", required = false) @RequestParam(required = false) LocalDate to,
+            @Parameter(description = "Gzip the file", required = false) @RequestParam(defaultValue = "false") boolean gzip) {
+
+        TransactionExportService.TransactionExport export = transactionExportService.prepareExportAdmin(kontoId, format, from, to);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + export.fileName(gzip) + "\"")
+                .contentType(MediaType.parseMediaType(export.mediaType(gzip)))
+                .body(out -> transactionExportService.write(export, out, gzip));
+    }
+
     @PostMapping("/konto/{kontoId}")
     @Operation(summary = "Create transaction", description = "Admin: Creates a new transaction for any konto")
     public ResponseEntity<Transaction> createTransaction(
@@ -78,11 +114,31 @@ public class AdminTransactionController {
     }
 
     @DeleteMapping("/{transactionId}")
-    @Operation(summary = "Delete transaction", description = "Admin: Deletes a transaction")
+    @Operation(summary = "Delete transaction", description = "Admin: Deletes a transaction. The balanceAfter of the later transactions " +
+            "is recalculated in the background, the Location header points to the progress of that rebase")
     public ResponseEntity<GenericStatusResponse> deleteTransaction(
             @Parameter(description = "Transaction UUID", required = true) @PathVariable UUID transactionId) {
 
-        transactionService.deleteTransactionAdmin(transactionId);
-        return ResponseEntity.ok(new GenericStatusResponse("OK"));
+        UUID rebaseId = transactionService.deleteTransactionAdmin(transactionId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LOCATION, "/api/v1/admin/transactions/rebases/" + rebaseId)
+                .body(new GenericStatusResponse("OK"));
+    }
+
+    @GetMapping("/rebases/{rebaseId}")
+    @Operation(summary = "Get balance rebase", description = "Admin: Progress of the balanceAfter recalculation started by deleting a transaction")
+    public ResponseEntity<BalanceRebaseDTO> getRebase(
+            @Parameter(description = "Rebase UUID", required = true) @PathVariable UUID rebaseId) {
+
+        return ResponseEntity.ok(balanceRebaseService.getRebase(rebaseId));
+    }
+
+    @GetMapping("/konto/{kontoId}/rebases")
+    @Operation(summary = "Get balance rebases for konto", description = "Admin: Latest balanceAfter recalculations of a konto, newest first")
+    public ResponseEntity<List<BalanceRebaseDTO>> getRebasesForKonto(
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Max rebases (capped by the server)", required = false) @RequestParam(required = false) Integer limit) {
+
+        return ResponseEntity.ok(balanceRebaseService.getRebasesForKonto(kontoId, limit));
     }
 }
\ No newline at end of file
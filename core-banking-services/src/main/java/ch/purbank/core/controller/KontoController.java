@@ -2,18 +2,27 @@ package ch.purbank.core.controller;
 
 import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.TransactionExportFormat;
 import ch.purbank.core.dto.*;
+import ch.purbank.core.service.BalanceSnapshotService;
 import ch.purbank.core.service.KontoService;
+import ch.purbank.core.service.TransactionExportService;
+import ch.purbank.core.service.TransactionRollupService;
+import ch.purbank.core.service.TransactionSearchService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 
@@ -25,6 +34,10 @@ import java.util.UUID;
 public class KontoController {
 
     private final KontoService kontoService;
+    private final TransactionExportService transactionExportService;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final TransactionSearchService transactionSearchService;
+    private final TransactionRollupService transactionRollupService;
 
     @PostMapping
     @Operation(summary = "Create new konto", description = "Creates a new konto for the authenticated user")
@@ -57,17 +70,38 @@ public class KontoController {
         return ResponseEntity.ok(detail);
     }
 
+    @GetMapping("/{kontoId}/balance")
+    @Operation(summary = "Get historical balance", description = "Gets the balance of a konto at the end of a past day")
+    public ResponseEntity<BalanceSnapshotDTO> getBalanceAt(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Day (before today)", required = true) @RequestParam LocalDate date) {
+
+        return ResponseEntity.ok(balanceSnapshotService.getBalanceAt(kontoId, currentUser.getId(), date));
+    }
+
     @GetMapping("/{kontoId}/transactions")
-    @Operation(summary = "Get transactions", description = "Gets transactions for a konto (default 0-49, or use range parameter)")
+    @Operation(summary = "Get transactions", description = "Gets transactions for a konto, newest first. The X-Next-Cursor header holds the cursor of the next page (missing on the last page)")
     public ResponseEntity<List<TransactionDTO>> getTransactions(
             @AuthenticationPrincipal User currentUser,
             @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
-            @Parameter(description = "Range in format 'start.end' (e.g., '0.49')", required = false) @RequestParam(required = false) String range) {
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page", required = false) @RequestParam(required = false) String cursor,
+            @Parameter(description = "Max transactions per page (default 50, capped by the server)", required = false) @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Deprecated, use cursor: range in format 'start.end' (e.g., '0.49')", required = false) @RequestParam(required = false) String range) {
+
+        if (range == null) {
+            TransactionPageDTO page = kontoService.getTransactionPage(kontoId, currentUser.getId(), cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(TransactionCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getTransactions());
+        }
 
         Integer start = null;
         Integer end = null;
 
-        if (range != null && range.contains(".")) {
+        if (range.contains(".")) {
             String[] parts = range.split("\\.");
             try {
                 start = Integer.parseInt(parts[0]);
@@ -81,6 +115,52 @@ public class KontoController {
         return ResponseEntity.ok(transactions);
     }
 
+    @GetMapping("/{kontoId}/transactions/search")
+    @Operation(summary = "Search transactions", description = "Searches the transactions of a konto by words in message and note or part of the counterparty IBAN, " +
+            "best matches first. The X-Next-Cursor header holds the cursor of the next page (missing on the last page)")
+    public ResponseEntity<List<TransactionDTO>> searchTransactions(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Words (all must match, as word prefixes) or part of an IBAN", required = true) @RequestParam String q,
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page", required = false) @RequestParam(required = false) String cursor,
+            @Parameter(description = "Max transactions per page (default 50, capped by the server)", required = false) @RequestParam(required = false) Integer limit) {
+
+        TransactionPageDTO page = transactionSearchService.search(kontoId, currentUser.getId(), q, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(TransactionCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getTransactions());
+    }
+
+    @GetMapping("/{kontoId}/analytics/monthly")
+    @Operation(summary = "Get monthly totals", description = "Gets the inflow, outflow and number of transactions of a konto per month, transaction type and currency")
+    public ResponseEntity<List<MonthlyRollupDTO>> getMonthlyTotals(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Day in the first month", required = true) @RequestParam LocalDate from,
+            @Parameter(description = "Day in the last month", required = true) @RequestParam LocalDate to) {
+
+        return ResponseEntity.ok(transactionRollupService.getMonthly(kontoId, currentUser.getId(), from, to));
+    }
+
+    @GetMapping("/{kontoId}/transactions/export")
+    @Operation(summary = "Export transactions", description = "Streams the transactions of a konto, oldest first, as CSV or ISO 20022 camt.053 statement, optionally gzipped")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Konto UUID", required = true) @PathVariable UUID kontoId,
+            @Parameter(description = "Export format (default CSV)", required = false) @RequestParam(required = false) TransactionExportFormat format,
+            @Parameter(description = "First day of the period (inclusive)", required = false) @RequestParam(required = false) LocalDate from,
+            @Parameter(description = "Last day of the period (inclusive)", required = false) @RequestParam(required = false) LocalDate to,
+            @Parameter(description = "Gzip the file", required = false) @RequestParam(defaultValue = "false") boolean gzip) {
+
+        TransactionExportService.TransactionExport export = transactionExportService.prepareExport(kontoId, currentUser.getId(), format, from, to);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + export.fileName(gzip) + "\"")
+                .contentType(MediaType.parseMediaType(export.mediaType(gzip)))
+                .body(out -> transactionExportService.write(export, out, gzip));
+    }
+
     @PatchMapping("/{kontoId}/transactions/{transactionId}")
     @Operation(summary = "Update transaction note", description = "Updates the note field of a transaction (OWNER/MANAGER only)")
     public ResponseEntity<GenericStatusResponse> updateTransactionNote(
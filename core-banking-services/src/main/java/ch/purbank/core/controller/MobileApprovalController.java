@@ -41,6 +41,10 @@ public class MobileApprovalController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
+        // Approved INSTANT payments are executed asynchronously (GET /api/v1/payments/pending/{mobileVerify})
+        if (authorisationService.createdInstantPayment(dto.getSignedMobileVerify())) {
+            return ResponseEntity.accepted().build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -2,8 +2,12 @@ package ch.purbank.core.controller;
 
 import ch.purbank.core.domain.Payment;
 import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.PaymentBatchFormat;
 import ch.purbank.core.dto.*;
+import ch.purbank.core.service.IdempotencyService;
+import ch.purbank.core.service.PaymentBatchService;
 import ch.purbank.core.service.PaymentService;
+import ch.purbank.core.service.RecurringPaymentService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -11,12 +15,17 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/v1/payments")
@@ -26,22 +35,34 @@ import java.util.UUID;
 public class PaymentController {
 
     private final PaymentService paymentService;
+    private final PaymentBatchService paymentBatchService;
+    private final IdempotencyService idempotencyService;
+    private final RecurringPaymentService recurringPaymentService;
 
     @GetMapping
-    @Operation(summary = "List pending payments", description = "Gets all pending payments for the user, optionally filtered by konto")
+    @Operation(summary = "List pending payments", description = "Gets the pending payments for the user ordered by execution date, optionally filtered by konto. " +
+            "The X-Next-Cursor header holds the cursor of the next page (missing on the last page)")
     public ResponseEntity<List<PaymentDTO>> listPayments(
             @AuthenticationPrincipal User currentUser,
-            @Parameter(description = "Optional konto ID filter", required = false) @RequestParam(required = false) UUID konto) {
-
-        List<PaymentDTO> payments = paymentService.getAllPendingPayments(currentUser.getId(), konto);
-        return ResponseEntity.ok(payments);
+            @Parameter(description = "Optional konto ID filter", required = false) @RequestParam(required = false) UUID konto,
+            @Parameter(description = "Max payments per page (capped by the server)", required = false) @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor from the X-Next-Cursor header of the previous page", required = false) @RequestParam(required = false) String cursor) {
+
+        PaymentPageDTO page = paymentService.getAllPendingPayments(currentUser.getId(), konto, limit, cursor);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(TransactionCursor.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getPayments());
     }
 
     @PostMapping
-    @Operation(summary = "Create payment", description = "Creates a pending payment that requires mobile approval. Returns a mobile-verify code.")
+    @Operation(summary = "Create payment", description = "Creates a pending payment that requires mobile approval. Returns a mobile-verify code. " +
+            "A retry with the same Idempotency-Key and body returns the original mobile-verify code instead of creating a new pending payment.")
     public ResponseEntity<PendingPaymentResponseDTO> createPayment(
             @AuthenticationPrincipal User currentUser,
             @Parameter(description = "Payment creation details", required = true) @Valid @RequestBody CreatePaymentRequestDTO request,
+            @Parameter(description = "Client generated key identifying this payment across retries", required = false) @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             HttpServletRequest httpRequest) {
 
         // Extract IP address from request
@@ -51,15 +72,98 @@ public class PaymentController {
             ipAddress = forwardedFor.split(",")[0].trim();
         }
 
-        String mobileVerifyCode = paymentService.createPendingPayment(
+        String clientIp = ipAddress;
+        Supplier<String> createPendingPayment = () -> paymentService.createPendingPayment(
                 currentUser.getId(),
                 request.getDeviceId(),
-                ipAddress,
+                clientIp,
                 request);
 
+        String mobileVerifyCode = idempotencyKey != null
+                ? idempotencyService.execute(currentUser.getId(), idempotencyKey, request, createPendingPayment)
+                : createPendingPayment.get();
+
         return ResponseEntity.ok(new PendingPaymentResponseDTO(mobileVerifyCode, "PENDING_APPROVAL"));
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Submit payment batch", description = "Uploads a pain.001 XML or CSV file with many payments. " +
+            "If every payment is valid the whole batch requires one mobile approval and a mobile-verify code is returned, " +
+            "otherwise the batch is rejected. Returns the result of every payment and the ingest throughput.")
+    public ResponseEntity<PaymentBatchResponseDTO> submitPaymentBatch(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Batch file (pain.001 XML or CSV)", required = true) @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Konto UUID the payments are made from", required = true) @RequestParam UUID kontoId,
+            @Parameter(description = "Device ID", required = true) @RequestParam String deviceId,
+            @Parameter(description = "File format, detected from the file name if omitted", required = false) @RequestParam(required = false) PaymentBatchFormat format,
+            HttpServletRequest httpRequest) throws IOException {
+
+        String ipAddress = httpRequest.getRemoteAddr();
+        String forwardedFor = httpRequest.getHeader("X-Forwarded-For");
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            ipAddress = forwardedFor.split(",")[0].trim();
+        }
+
+        if (format == null) {
+            String fileName = file.getOriginalFilename();
+            format = fileName != null && fileName.toLowerCase().endsWith(".xml") ? PaymentBatchFormat.PAIN001 : PaymentBatchFormat.CSV;
+        }
+
+        PaymentBatchResponseDTO response;
+        try (InputStream in = file.getInputStream()) {
+            response = paymentBatchService.createPendingPaymentBatch(
+                    currentUser.getId(),
+                    kontoId,
+                    deviceId,
+                    ipAddress,
+                    format,
+                    file.getOriginalFilename(),
+                    in);
+        }
+
+        if (response.getMobileVerify() == null) {
+            return ResponseEntity.unprocessableEntity().body(response);
+        }
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/pending/{mobileVerify}")
+    @Operation(summary = "Get pending payment status", description = "Polls the approval of a payment created with POST /payments " +
+            "and, once approved, the status of the resulting payment. INSTANT payments stay PENDING until the execution queue has run them.")
+    public ResponseEntity<PendingPaymentStatusDTO> getPendingPaymentStatus(
+            @AuthenticationPrincipal User currentUser,
+            @PathVariable String mobileVerify) {
+
+        return ResponseEntity.ok(paymentService.getPendingPaymentStatus(currentUser.getId(), mobileVerify));
+    }
+
+    @GetMapping("/recurring")
+    @Operation(summary = "List recurring payments", description = "Gets all active standing orders for the user, optionally filtered by konto. " +
+            "Standing orders are created with POST /payments and a recurrence.")
+    public ResponseEntity<List<RecurringPaymentDTO>> listRecurringPayments(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Optional konto ID filter", required = false) @RequestParam(required = false) UUID konto) {
+
+        return ResponseEntity.ok(recurringPaymentService.getRecurringPayments(currentUser.getId(), konto));
+    }
+
+    @DeleteMapping("/recurring/{recurringPaymentId}")
+    @Operation(summary = "Cancel recurring payment", description = "Stops a standing order. Payments it already created are not affected.")
+    public ResponseEntity<Void> cancelRecurringPayment(
+            @AuthenticationPrincipal User currentUser,
+            @Parameter(description = "Recurring payment UUID", required = true) @PathVariable UUID recurringPaymentId,
+            HttpServletRequest httpRequest) {
+
+        String ipAddress = httpRequest.getRemoteAddr();
+        String forwardedFor = httpRequest.getHeader("X-Forwarded-For");
+        if (forwardedFor != null && !forwardedFor.isEmpty()) {
+            ipAddress = forwardedFor.split(",")[0].trim();
+        }
+
+        recurringPaymentService.cancelRecurringPayment(currentUser.getId(), recurringPaymentId, ipAddress);
+        return ResponseEntity.noContent().build();
+    }
+
     @PatchMapping("/{paymentId}")
     @Operation(summary = "Update payment", description = "Updates a pending payment (requires mobile approval)")
     public ResponseEntity<PendingPaymentResponseDTO> updatePayment(
@@ -85,7 +189,7 @@ public class PaymentController {
     }
 
     @DeleteMapping("/{paymentId}")
-    @Operation(summary = "Cancel payment", description = "Cancels a pending payment (requires mobile approval)")
+    @Operation(summary = "Cancel payment", description = "Cancels a pending payment or a failed payment waiting for a retry (requires mobile approval)")
     public ResponseEntity<PendingPaymentResponseDTO> cancelPayment(
             @AuthenticationPrincipal User currentUser,
             @Parameter(description = "Payment UUID", required = true) @PathVariable UUID paymentId,
@@ -0,0 +1,94 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.BalanceRebaseStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Recalculation of balanceAfter for the transactions of a konto after a position in its history, queued when an
+ * admin deletes a transaction. Worked off by BalanceRebaseService in chunks; cursor is the last transaction
+ * rebased, so a run that was interrupted continues where it stopped.
+ */
+@Entity
+@Table(name = "balance_rebases", indexes = {
+        @Index(name = "idx_balance_rebase_status", columnList = "status, available_at"),
+        @Index(name = "idx_balance_rebase_konto", columnList = "konto_id, created_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceRebase {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "konto_id", nullable = false)
+    private UUID kontoId;
+
+    // Transactions after (fromTimestamp, fromId) are rebased, fromId being the deleted transaction
+    @Column(name = "from_timestamp", nullable = false)
+    private LocalDateTime fromTimestamp;
+
+    @Column(name = "from_id", nullable = false)
+    private UUID fromId;
+
+    // Balance before the deleted transaction, used if no earlier transaction is left in the database
+    @Column(name = "base_balance", nullable = false, precision = 19, scale = 4)
+    private BigDecimal baseBalance;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private BalanceRebaseStatus status;
+
+    // Last transaction rebased, null before the first chunk
+    @Column(name = "cursor_timestamp")
+    private LocalDateTime cursorTimestamp;
+
+    @Column(name = "cursor_id")
+    private UUID cursorId;
+
+    // Progress: transactions after the position when the run started, walked so far, and changed so far
+    @Column(name = "rows_total", nullable = false)
+    private long rowsTotal;
+
+    @Column(name = "rows_rebased", nullable = false)
+    private long rowsRebased;
+
+    @Column(name = "rows_changed", nullable = false)
+    private long rowsChanged;
+
+    // Worker holding the run, and its last sign of life
+    @Column(name = "claimed_by")
+    private String claimedBy;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    // Not claimed before this time, pushed back after a failed attempt
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
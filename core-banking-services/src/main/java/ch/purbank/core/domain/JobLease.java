@@ -0,0 +1,46 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lease of a scheduled job, one row per job. The node holding the lease runs the job and extends the lease with
+ * heartbeats. A lease that expires while owned means its node died mid-run, another node takes the run over.
+ * Rows are written by JobLeaseRepository with native statements only, using the database clock.
+ */
+@Entity
+@Table(name = "job_leases")
+@Data
+@NoArgsConstructor
+public class JobLease {
+
+    @Id
+    private String name;
+
+    // Node running the job, null while nobody does
+    @Column
+    private String owner;
+
+    // Run the lease was taken for, e.g. the date of a nightly job (null for jobs that may run any time)
+    @Column(name = "run_key")
+    private String runKey;
+
+    // Whether the run of runKey finished successfully, it isn't started again on any node
+    @Column(nullable = false)
+    private boolean completed;
+
+    @Column(name = "acquired_at")
+    private LocalDateTime acquiredAt;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -4,6 +4,8 @@ import ch.purbank.core.domain.enums.Currency;
 import ch.purbank.core.domain.enums.KontoStatus;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -13,6 +15,7 @@ import java.util.List;
 @Entity
 @Table(name = "konten")
 @Data
+@DynamicUpdate // only write changed columns, saving a konto never touches columns changed by bulk updates
 public class Konto {
 
     @Id
@@ -22,12 +25,19 @@ public class Konto {
     @Column(nullable = false)
     private String name;
 
-    @Column(nullable = false, precision = 19, scale = 4)
+    @Column(nullable = false, updatable = false, precision = 19, scale = 4)
     private BigDecimal balance = BigDecimal.ZERO;
 
     @Column(nullable = false, precision = 5, scale = 4)
     private BigDecimal zinssatz = new BigDecimal("0.0100"); // Annual interest rate (e.g., 0.0100 = 1%)
 
+    // Balance version, bumped by every balance update (see KontoBalanceService). Not a JPA @Version on purpose:
+    // interest accrual and admin edits must not conflict with payments. Balance and version are never written
+    // through the entity after insert, only by the conditional UPDATE.
+    @Column(nullable = false, updatable = false)
+    @ColumnDefault("0")
+    private Long version = 0L;
+
     @Column(nullable = false, precision = 19, scale = 4)
     private BigDecimal accruedInterest = BigDecimal.ZERO; // Accumulated daily interest, reset at Abrechnung
 
@@ -113,12 +123,4 @@ public class Konto {
     public boolean canBeClosed() {
         return balance.compareTo(BigDecimal.ZERO) == 0 && status == KontoStatus.ACTIVE;
     }
-
-    public void addToBalance(BigDecimal amount) {
-        this.balance = this.balance.add(amount);
-    }
-
-    public void subtractFromBalance(BigDecimal amount) {
-        this.balance = this.balance.subtract(amount);
-    }
 }
\ No newline at end of file
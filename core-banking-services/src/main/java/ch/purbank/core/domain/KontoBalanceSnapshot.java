@@ -0,0 +1,54 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.Currency;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Balance of a konto at the end of a day, one row per active konto and day. Written set-based by
+ * KontoBalanceSnapshotRepository after the nightly interest run and by the backfill, never through the entity.
+ * The primary key answers "balance of konto X on day D", idx_balance_snapshot_date all kontos of one day.
+ */
+@Entity
+@Table(name = "konto_balance_snapshots", indexes = {
+        @Index(name = "idx_balance_snapshot_date", columnList = "snapshot_date, konto_id")
+})
+@IdClass(KontoBalanceSnapshot.Key.class)
+@Data
+@NoArgsConstructor
+public class KontoBalanceSnapshot {
+
+    @Id
+    @Column(name = "konto_id")
+    private UUID kontoId;
+
+    @Id
+    @Column(name = "snapshot_date")
+    private LocalDate snapshotDate;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal balance;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Currency currency;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID kontoId;
+        private LocalDate snapshotDate;
+    }
+}
@@ -10,6 +10,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 @Entity
 @Table(name = "konto_members", uniqueConstraints = {
         @UniqueConstraint(columnNames = { "konto_id", "user_id" })
+}, indexes = {
+        @Index(name = "idx_konto_member_user", columnList = "user_id")
 })
 @Data
 public class KontoMember {
@@ -0,0 +1,63 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Totals of the transactions of a konto in one month, per transaction type and currency. Kept up to date by
+ * TransactionRollupService wherever transactions are written, never through the entity. Outlives the archiving
+ * of the month's transactions (see TransactionArchiveService).
+ */
+@Entity
+@Table(name = "konto_monthly_rollups", indexes = {
+        @Index(name = "idx_konto_monthly_rollup", columnList = "konto_id, month")
+})
+@IdClass(KontoMonthlyRollup.Key.class)
+@Data
+@NoArgsConstructor
+public class KontoMonthlyRollup {
+
+    @Id
+    @Column(name = "konto_id")
+    private UUID kontoId;
+
+    @Id
+    private LocalDate month; // first day
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transaction_type")
+    private TransactionType transactionType;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Currency currency;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal inflow; // sum of the positive amounts
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal outflow; // sum of the negative amounts, as a positive number
+
+    @Column(name = "transaction_count", nullable = false)
+    private long transactionCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID kontoId;
+        private LocalDate month;
+        private TransactionType transactionType;
+        private Currency currency;
+    }
+}
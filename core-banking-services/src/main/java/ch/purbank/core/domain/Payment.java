@@ -6,16 +6,25 @@ import ch.purbank.core.domain.enums.PaymentStatus;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payment_status_execution_date", columnList = "status, execution_date, id"),
+        @Index(name = "idx_payment_status_next_retry", columnList = "status, next_retry_at"),
+        @Index(name = "idx_payment_konto_status", columnList = "konto_id, status, execution_date, id")
+})
 @Data
 public class Payment {
 
+    // Time of day the nightly settlement run executes due payments (see PaymentService.processScheduledPayments)
+    public static final LocalTime SETTLEMENT_TIME = LocalTime.of(1, 0);
+
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private java.util.UUID id;
@@ -64,6 +73,13 @@ public class Payment {
     @Column
     private LocalDateTime lockedAt;
 
+    // Retries used so far, and when a FAILED payment is attempted again (null: no retry scheduled)
+    @Column(name = "retry_count", columnDefinition = "integer not null default 0")
+    private int retryCount = 0;
+
+    @Column(name = "next_retry_at")
+    private LocalDateTime nextRetryAt;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -79,13 +95,32 @@ public class Payment {
         return !locked && status == PaymentStatus.PENDING;
     }
 
-    public boolean shouldBeLocked() {
-        if (executionType == PaymentExecutionType.INSTANT || locked) {
-            return false;
+    /**
+     * Modifiable payments, and failed payments still waiting for a retry (see PaymentRetryService).
+     */
+    public boolean canBeCancelled() {
+        if (status == PaymentStatus.FAILED) {
+            return nextRetryAt != null;
         }
-        LocalDateTime lockTime = executionDate.atTime(0, 50); // 10 minutes before 1:00 AM, TODO: see todo in
-        // paymentservice
-        return LocalDateTime.now().isAfter(lockTime);
+        return canBeModified();
+    }
+
+    /**
+     * Latest execution date whose payments are past their lock time at the given moment: a payment is locked once
+     * now is after SETTLEMENT_TIME on its execution date minus the lock lead time. Used for the bulk lock UPDATE.
+     */
+    public static LocalDate lockCutoffDate(LocalDateTime now, Duration lockLeadTime) {
+        // executionDate.atTime(SETTLEMENT_TIME) - lead < now  <=>  executionDate.atStartOfDay() < shifted
+        LocalDateTime shifted = now.plus(lockLeadTime).minusHours(SETTLEMENT_TIME.getHour())
+                .minusMinutes(SETTLEMENT_TIME.getMinute());
+        return shifted.minusNanos(1).toLocalDate();
+    }
+
+    /**
+     * Date of the next settlement run at the given moment: today until the run time, tomorrow after it.
+     */
+    public static LocalDate nextSettlementDate(LocalDateTime now) {
+        return now.toLocalTime().isBefore(SETTLEMENT_TIME) ? now.toLocalDate() : now.toLocalDate().plusDays(1);
     }
 
     public void lock() {
@@ -104,5 +139,24 @@ public class Payment {
 
     public void cancel() {
         this.status = PaymentStatus.CANCELLED;
+        this.nextRetryAt = null;
+    }
+
+    /**
+     * Schedules another attempt of a failed payment if retries are left. Returns false once they are used up.
+     */
+    public boolean scheduleRetry(LocalDateTime retryAt, int maxRetries) {
+        if (retryCount >= maxRetries) {
+            nextRetryAt = null;
+            return false;
+        }
+        nextRetryAt = retryAt;
+        return true;
+    }
+
+    public void retry() {
+        this.status = PaymentStatus.PENDING;
+        this.retryCount++;
+        this.nextRetryAt = null;
     }
 }
\ No newline at end of file
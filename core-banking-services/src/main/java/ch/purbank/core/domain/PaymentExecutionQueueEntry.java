@@ -0,0 +1,45 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Approved INSTANT payment waiting for execution. Rows are claimed by the workers of
+ * PaymentExecutionQueue with SELECT ... FOR UPDATE SKIP LOCKED and deleted once the payment is executed or failed.
+ */
+@Entity
+@Table(name = "payment_execution_queue", indexes = {
+        @Index(name = "idx_payment_queue_available_at", columnList = "available_at, enqueued_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentExecutionQueueEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "payment_id", nullable = false, unique = true)
+    private UUID paymentId;
+
+    @Column(name = "enqueued_at", nullable = false)
+    private LocalDateTime enqueuedAt;
+
+    // Not claimed before this time, pushed back after a failed attempt
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+}
@@ -2,6 +2,7 @@ package ch.purbank.core.domain;
 
 import ch.purbank.core.domain.enums.Currency;
 import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentRecurrence;
 import ch.purbank.core.domain.enums.PendingPaymentStatus;
 import jakarta.persistence.*;
 import lombok.Data;
@@ -62,6 +63,14 @@ public class PendingPayment {
     @Column(name = "execution_date", nullable = false)
     private LocalDate executionDate;
 
+    // Set for a standing order, executionDate is then its start date
+    @Enumerated(EnumType.STRING)
+    @Column(name = "recurrence")
+    private PaymentRecurrence recurrence;
+
+    @Column(name = "recurrence_end_date")
+    private LocalDate recurrenceEndDate;
+
     @Column(name = "device_id", nullable = false)
     private String deviceId;
 
@@ -82,6 +91,10 @@ public class PendingPayment {
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
 
+    // Payment created on approval, lets the client poll its execution status
+    @Column(name = "payment_id")
+    private UUID paymentId;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,86 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.PaymentBatchFormat;
+import ch.purbank.core.domain.enums.PendingPaymentStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Batch file waiting for mobile approval. One mobileVerifyCode covers all payments of the file,
+ * the payments themselves are staged as PendingPaymentBatchLine rows.
+ */
+@Entity
+@Table(name = "pending_payment_batches", indexes = {
+        @Index(name = "idx_batch_mobile_verify_code", columnList = "mobile_verify_code")
+})
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingPaymentBatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "mobile_verify_code", unique = true, nullable = false)
+    private String mobileVerifyCode;
+
+    @Column(name = "konto_id", nullable = false)
+    private UUID kontoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PaymentBatchFormat format;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "payment_count", nullable = false)
+    private int paymentCount;
+
+    @Column(name = "device_id", nullable = false)
+    private String deviceId;
+
+    @Column(name = "ip_address", nullable = false)
+    private String ipAddress;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private PendingPaymentStatus status = PendingPaymentStatus.PENDING;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        expiresAt = createdAt.plusMinutes(15); // 15 minute expiration
+    }
+
+    public boolean isExpired() {
+        return LocalDateTime.now().isAfter(expiresAt);
+    }
+
+    public void markCompleted(PendingPaymentStatus newStatus) {
+        this.status = newStatus;
+        this.completedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,49 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.Currency;
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Validated payment of a PendingPaymentBatch. Rows are inserted with JDBC batches by PaymentBatchService
+ * and copied into payments in one statement once the batch is approved.
+ */
+@Entity
+@Table(name = "pending_payment_batch_lines", indexes = {
+        @Index(name = "idx_batch_line_batch_id", columnList = "batch_id, line_number")
+})
+@Data
+public class PendingPaymentBatchLine {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "batch_id", nullable = false)
+    private UUID batchId;
+
+    @Column(name = "line_number", nullable = false)
+    private int lineNumber;
+
+    @Column(name = "to_iban", nullable = false)
+    private String toIban;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_currency", nullable = false)
+    private Currency paymentCurrency;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(columnDefinition = "TEXT")
+    private String note;
+
+    @Column(name = "execution_date", nullable = false)
+    private LocalDate executionDate;
+}
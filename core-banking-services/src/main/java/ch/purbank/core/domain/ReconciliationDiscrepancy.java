@@ -0,0 +1,52 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * A konto found out of balance by a reconciliation run: its balance differs from the sum of its transactions
+ * (archived months included), or the balanceAfter of its latest transaction differs from its balance.
+ * Written by ReconciliationService with batch inserts only.
+ */
+@Entity
+@Table(name = "reconciliation_discrepancies")
+@IdClass(ReconciliationDiscrepancy.Key.class)
+@Data
+@NoArgsConstructor
+public class ReconciliationDiscrepancy {
+
+    @Id
+    @Column(name = "run_id")
+    private UUID runId;
+
+    @Id
+    @Column(name = "konto_id")
+    private UUID kontoId;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal balance;
+
+    @Column(name = "transaction_total", nullable = false, precision = 19, scale = 4)
+    private BigDecimal transactionTotal;
+
+    // Null if the konto has no transactions in the database
+    @Column(name = "latest_balance_after", precision = 19, scale = 4)
+    private BigDecimal latestBalanceAfter;
+
+    @Column(name = "balance_after_mismatch", nullable = false)
+    private boolean balanceAfterMismatch;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID runId;
+        private UUID kontoId;
+    }
+}
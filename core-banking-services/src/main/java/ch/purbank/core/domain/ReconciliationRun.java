@@ -0,0 +1,51 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * One run of the ledger reconciliation (see ReconciliationService). The kontos found out of balance are in
+ * reconciliation_discrepancies.
+ */
+@Entity
+@Table(name = "reconciliation_runs", indexes = {
+        @Index(name = "idx_reconciliation_run_started", columnList = "started_at")
+})
+@Data
+@NoArgsConstructor
+public class ReconciliationRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    // Null while the run is going
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "kontos_checked", nullable = false)
+    private long kontosChecked;
+
+    @Column(nullable = false)
+    private int chunks;
+
+    // Their kontos weren't checked, the next run checks them again
+    @Column(name = "failed_chunks", nullable = false)
+    private int failedChunks;
+
+    @Column(name = "balance_mismatches", nullable = false)
+    private long balanceMismatches;
+
+    @Column(name = "balance_after_mismatches", nullable = false)
+    private long balanceAfterMismatches;
+
+    @Column(name = "duration_millis", nullable = false)
+    private long durationMillis;
+}
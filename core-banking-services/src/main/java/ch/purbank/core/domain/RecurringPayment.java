@@ -0,0 +1,115 @@
+package ch.purbank.core.domain;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.PaymentRecurrence;
+import ch.purbank.core.domain.enums.RecurringPaymentStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Standing order. A NORMAL payment is created for every occurrence, shortly before the settlement run of that day.
+ */
+@Entity
+@Table(name = "recurring_payments", indexes = {
+        // The nightly run only reads rules due that day
+        @Index(name = "idx_recurring_payment_status_next", columnList = "status, next_execution_date")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecurringPayment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "konto_id", nullable = false)
+    @JsonIgnore
+    private Konto konto;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "created_by", nullable = false)
+    @JsonIgnore
+    private User createdBy;
+
+    @Column(name = "to_iban", nullable = false)
+    private String toIban;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_currency", nullable = false)
+    @Builder.Default
+    private Currency paymentCurrency = Currency.CHF;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(columnDefinition = "TEXT")
+    private String note;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PaymentRecurrence recurrence;
+
+    @Column(name = "start_date", nullable = false)
+    private LocalDate startDate;
+
+    // Last date a payment may be created for, null for no end
+    @Column(name = "end_date")
+    private LocalDate endDate;
+
+    @Column(name = "next_execution_date", nullable = false)
+    private LocalDate nextExecutionDate;
+
+    @Column(name = "last_execution_date")
+    private LocalDate lastExecutionDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private RecurringPaymentStatus status = RecurringPaymentStatus.ACTIVE;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (nextExecutionDate == null) {
+            nextExecutionDate = recurrence.firstOccurrence(startDate);
+            endIfPastEndDate();
+        }
+    }
+
+    /**
+     * Moves on to the occurrence after nextExecutionDate, which has just been created as a payment.
+     */
+    public void advance() {
+        lastExecutionDate = nextExecutionDate;
+        nextExecutionDate = recurrence.nextOccurrence(startDate, nextExecutionDate);
+        endIfPastEndDate();
+    }
+
+    public void cancel() {
+        status = RecurringPaymentStatus.CANCELLED;
+    }
+
+    private void endIfPastEndDate() {
+        if (endDate != null && nextExecutionDate.isAfter(endDate)) {
+            status = RecurringPaymentStatus.ENDED;
+        }
+    }
+}
@@ -10,7 +10,9 @@ import java.time.LocalDateTime;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+        @Index(name = "idx_transaction_konto_timestamp", columnList = "konto_id, timestamp DESC, id DESC")
+})
 @Data
 public class Transaction {
 
@@ -0,0 +1,35 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A month of transactions moved out of the database into an archive file (see TransactionArchiveService).
+ * Archive files are written once and never changed, the checksum is of the compressed file.
+ */
+@Entity
+@Table(name = "transaction_archives")
+@Data
+@NoArgsConstructor
+public class TransactionArchive {
+
+    // First day of the archived month
+    @Id
+    private LocalDate month;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "row_count", nullable = false)
+    private long rowCount;
+
+    @Column(nullable = false, length = 64)
+    private String sha256;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,46 @@
+package ch.purbank.core.domain;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Transactions of one konto in an archived month. Tells the read path which archive files hold rows of a konto
+ * without opening them, and keeps the sum of the archived amounts for balance checks.
+ */
+@Entity
+@Table(name = "transaction_archive_kontos", indexes = {
+        @Index(name = "idx_transaction_archive_konto", columnList = "konto_id, month")
+})
+@IdClass(TransactionArchiveKonto.Key.class)
+@Data
+@NoArgsConstructor
+public class TransactionArchiveKonto {
+
+    @Id
+    private LocalDate month;
+
+    @Id
+    @Column(name = "konto_id")
+    private UUID kontoId;
+
+    @Column(name = "row_count", nullable = false)
+    private int rowCount;
+
+    @Column(name = "amount_total", nullable = false, precision = 19, scale = 4)
+    private BigDecimal amountTotal;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDate month;
+        private UUID kontoId;
+    }
+}
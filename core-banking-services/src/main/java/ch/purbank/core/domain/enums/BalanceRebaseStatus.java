@@ -0,0 +1,8 @@
+package ch.purbank.core.domain.enums;
+
+public enum BalanceRebaseStatus {
+    PENDING, // Waiting for a worker, or for another attempt
+    RUNNING, // Claimed by a worker
+    COMPLETED, // All later transactions rebased
+    FAILED // Gave up after the max attempts
+}
@@ -0,0 +1,6 @@
+package ch.purbank.core.domain.enums;
+
+public enum PaymentBatchFormat {
+    CSV,
+    PAIN001
+}
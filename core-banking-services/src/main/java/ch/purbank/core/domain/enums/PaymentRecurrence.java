@@ -0,0 +1,38 @@
+package ch.purbank.core.domain.enums;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+public enum PaymentRecurrence {
+    WEEKLY,             // Same weekday as the start date
+    MONTHLY,            // Same day of month as the start date, or the last day of shorter months
+    LAST_BUSINESS_DAY;  // Last Monday to Friday of every month
+
+    public LocalDate firstOccurrence(LocalDate start) {
+        if (this != LAST_BUSINESS_DAY) {
+            return start;
+        }
+        LocalDate last = lastBusinessDay(YearMonth.from(start));
+        return last.isBefore(start) ? lastBusinessDay(YearMonth.from(start).plusMonths(1)) : last;
+    }
+
+    public LocalDate nextOccurrence(LocalDate start, LocalDate previous) {
+        return switch (this) {
+            case WEEKLY -> previous.plusWeeks(1);
+            case MONTHLY -> {
+                YearMonth month = YearMonth.from(previous).plusMonths(1);
+                yield month.atDay(Math.min(start.getDayOfMonth(), month.lengthOfMonth()));
+            }
+            case LAST_BUSINESS_DAY -> lastBusinessDay(YearMonth.from(previous).plusMonths(1));
+        };
+    }
+
+    private static LocalDate lastBusinessDay(YearMonth month) {
+        LocalDate day = month.atEndOfMonth();
+        while (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            day = day.minusDays(1);
+        }
+        return day;
+    }
+}
@@ -0,0 +1,7 @@
+package ch.purbank.core.domain.enums;
+
+public enum RecurringPaymentStatus {
+    ACTIVE,     // Payments are created on every occurrence
+    ENDED,      // End date reached
+    CANCELLED   // Cancelled by a member or because the konto was closed
+}
@@ -0,0 +1,8 @@
+package ch.purbank.core.domain.enums;
+
+public enum SimulatedFailureReason {
+    TARGET_NOT_FOUND,
+    TARGET_CLOSED,
+    CONVERSION_FAILED,
+    INSUFFICIENT_FUNDS
+}
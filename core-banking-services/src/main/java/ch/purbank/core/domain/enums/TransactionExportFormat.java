@@ -0,0 +1,6 @@
+package ch.purbank.core.domain.enums;
+
+public enum TransactionExportFormat {
+    CSV,
+    CAMT053
+}
@@ -0,0 +1,24 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.BalanceRebaseStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class BalanceRebaseDTO {
+    private UUID rebaseId;
+    private UUID kontoId;
+    private BalanceRebaseStatus status;
+    private long rowsTotal; // transactions to walk, counted when the run started
+    private long rowsRebased;
+    private long rowsChanged; // rebased transactions whose balanceAfter was wrong
+    private int attempts;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
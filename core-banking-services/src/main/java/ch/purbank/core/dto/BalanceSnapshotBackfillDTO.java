@@ -0,0 +1,17 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class BalanceSnapshotBackfillDTO {
+    private LocalDate from;
+    private LocalDate to;
+    private int chunks;
+    private int failedChunks; // their kontos have no snapshots for the period, run the backfill again
+    private long snapshots;
+    private long durationMillis;
+}
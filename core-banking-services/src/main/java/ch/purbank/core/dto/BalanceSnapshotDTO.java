@@ -0,0 +1,18 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.Currency;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class BalanceSnapshotDTO {
+    private UUID kontoId;
+    private LocalDate date;
+    private BigDecimal balance; // at the end of the day
+    private Currency currency;
+}
@@ -2,6 +2,7 @@ package ch.purbank.core.dto;
 
 import ch.purbank.core.domain.enums.Currency;
 import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentRecurrence;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
@@ -33,6 +34,12 @@ public class CreatePaymentRequestDTO {
     // Required if executionType is NORMAL, ignored if INSTANT
     private LocalDate executionDate;
 
+    // Optional, makes a NORMAL payment a standing order starting at executionDate
+    private PaymentRecurrence recurrence;
+
+    // Optional last date of a standing order
+    private LocalDate recurrenceEndDate;
+
     @NotBlank(message = "Device ID is required")
     private String deviceId;
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class KontoContentionDTO {
+    private UUID kontoId;
+    private long conflicts; // balance updates that found the konto changed since it was read
+    private long retries;
+}
@@ -0,0 +1,20 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+public class MonthlyRollupDTO {
+    private LocalDate month; // first day
+    private TransactionType transactionType;
+    private Currency currency;
+    private BigDecimal inflow;
+    private BigDecimal outflow; // positive
+    private long transactionCount;
+}
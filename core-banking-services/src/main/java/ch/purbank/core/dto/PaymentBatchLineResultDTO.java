@@ -0,0 +1,14 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class PaymentBatchLineResultDTO {
+    private int lineNumber; // Line in a CSV file, position of the transaction in a pain.001 file
+    private String toIban;
+    private String amount;
+    private String status; // "ACCEPTED" or "REJECTED"
+    private String error;
+}
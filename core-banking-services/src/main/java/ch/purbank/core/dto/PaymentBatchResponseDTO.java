@@ -0,0 +1,19 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PaymentBatchResponseDTO {
+    private String mobileVerify; // null if the batch was rejected
+    private String status; // "PENDING_APPROVAL" or "REJECTED"
+    private int paymentCount;
+    private int acceptedCount;
+    private int rejectedCount;
+    private long durationMillis;
+    private double paymentsPerSecond;
+    private List<PaymentBatchLineResultDTO> lines;
+}
@@ -0,0 +1,41 @@
+package ch.purbank.core.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a list of pending payments: execution date and id of the last payment of a page.
+ * Clients get it as an opaque string (see TransactionCursor.NEXT_CURSOR_HEADER) and pass it back to get the
+ * payments right after it.
+ */
+public record PaymentCursor(LocalDate executionDate, UUID id) {
+
+    public static PaymentCursor of(PaymentDTO payment) {
+        return new PaymentCursor(payment.getExecutionDate(), payment.getId());
+    }
+
+    public String encode() {
+        String raw = executionDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PaymentCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new PaymentCursor(LocalDate.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        } catch (IllegalArgumentException e) {
+            // Bad Base64 or UUID
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
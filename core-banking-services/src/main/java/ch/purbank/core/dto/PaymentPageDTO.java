@@ -0,0 +1,13 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PaymentPageDTO {
+    private List<PaymentDTO> payments;
+    private String nextCursor; // null on the last page
+}
@@ -0,0 +1,16 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.domain.enums.PendingPaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class PendingPaymentStatusDTO {
+    private PendingPaymentStatus approvalStatus;
+    private UUID paymentId; // null until approved
+    private PaymentStatus paymentStatus; // PENDING while an INSTANT payment is still queued
+}
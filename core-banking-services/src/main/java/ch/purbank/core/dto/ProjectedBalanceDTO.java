@@ -0,0 +1,18 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.Currency;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class ProjectedBalanceDTO {
+    private UUID kontoId;
+    private String iban;
+    private Currency currency;
+    private BigDecimal currentBalance;
+    private BigDecimal projectedBalance;
+}
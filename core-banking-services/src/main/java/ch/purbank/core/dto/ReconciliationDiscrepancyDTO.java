@@ -0,0 +1,17 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class ReconciliationDiscrepancyDTO {
+    private UUID kontoId;
+    private BigDecimal balance;
+    private BigDecimal transactionTotal; // sum of all transactions, archived months included
+    private BigDecimal latestBalanceAfter; // null if the konto has no transactions in the database
+    private boolean balanceAfterMismatch;
+}
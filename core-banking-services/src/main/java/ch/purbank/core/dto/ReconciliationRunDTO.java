@@ -0,0 +1,21 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class ReconciliationRunDTO {
+    private UUID runId;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt; // null while the run is going
+    private long kontosChecked;
+    private int chunks;
+    private int failedChunks; // their kontos weren't checked, run the reconciliation again
+    private long balanceMismatches;
+    private long balanceAfterMismatches;
+    private long durationMillis;
+}
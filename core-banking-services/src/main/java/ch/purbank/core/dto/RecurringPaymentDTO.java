@@ -0,0 +1,29 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.PaymentRecurrence;
+import ch.purbank.core.domain.enums.RecurringPaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class RecurringPaymentDTO {
+    private UUID id;
+    private UUID kontoId;
+    private String toIban;
+    private BigDecimal amount;
+    private Currency paymentCurrency;
+    private String message;
+    private String note;
+    private PaymentRecurrence recurrence;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private LocalDate nextExecutionDate;
+    private LocalDate lastExecutionDate;
+    private RecurringPaymentStatus status;
+}
@@ -0,0 +1,13 @@
+package ch.purbank.core.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class RollupRebuildDTO {
+    private int chunks;
+    private int failedChunks; // their kontos keep their rollups as they were, run the rebuild again
+    private long correctedRollups;
+    private long durationMillis;
+}
@@ -0,0 +1,22 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.SimulatedFailureReason;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class SettlementSimulationDTO {
+    private LocalDate dueDate;
+    private int payments;
+    private int projectedExecuted;
+    private int projectedFailed;
+    private Map<SimulatedFailureReason, Integer> failuresByReason;
+    private List<SimulatedPaymentFailureDTO> failures;
+    private List<ProjectedBalanceDTO> balances; // Every konto the run debits or credits
+    private long durationMillis;
+}
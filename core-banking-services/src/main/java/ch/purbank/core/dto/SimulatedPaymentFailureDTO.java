@@ -0,0 +1,23 @@
+package ch.purbank.core.dto;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.SimulatedFailureReason;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class SimulatedPaymentFailureDTO {
+    private UUID paymentId; // null for a standing order occurrence that isn't created yet
+    private UUID recurringPaymentId;
+    private UUID kontoId;
+    private String toIban;
+    private BigDecimal amount;
+    private Currency paymentCurrency;
+    private LocalDate executionDate;
+    private SimulatedFailureReason reason;
+}
@@ -0,0 +1,43 @@
+package ch.purbank.core.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in a konto's transaction history: timestamp and id of the last transaction of a page.
+ * Clients get it as an opaque string and pass it back to get the transactions right after it.
+ */
+public record TransactionCursor(LocalDateTime timestamp, UUID id) {
+
+    // Response header with the cursor of the next page
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static TransactionCursor of(TransactionDTO transaction) {
+        return new TransactionCursor(transaction.getTimestamp(), transaction.getTransactionId());
+    }
+
+    public String encode() {
+        String raw = timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TransactionCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new TransactionCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        } catch (IllegalArgumentException e) {
+            // Bad Base64 or UUID
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
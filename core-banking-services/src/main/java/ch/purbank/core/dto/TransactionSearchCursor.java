@@ -0,0 +1,35 @@
+package ch.purbank.core.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in ranked search results: rank, timestamp and id of the last transaction of a page.
+ * Opaque to clients like TransactionCursor, and sent in the same response header.
+ */
+public record TransactionSearchCursor(int rank, LocalDateTime timestamp, UUID id) {
+
+    public String encode() {
+        String raw = rank + "|" + timestamp + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TransactionSearchCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new TransactionSearchCursor(Integer.parseInt(parts[0]), LocalDateTime.parse(parts[1]),
+                    UUID.fromString(parts[2]));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        } catch (IllegalArgumentException e) {
+            // Bad Base64, rank or UUID
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
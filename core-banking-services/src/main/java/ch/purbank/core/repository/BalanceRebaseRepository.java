@@ -0,0 +1,40 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.BalanceRebase;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface BalanceRebaseRepository extends JpaRepository<BalanceRebase, UUID> {
+
+    // Locks the konto's rebase that hasn't started yet, one claimed by a worker right now is skipped
+    @Query(value = "SELECT * FROM balance_rebases WHERE konto_id = :kontoId AND status = 'PENDING' AND cursor_id IS NULL " +
+            "ORDER BY created_at LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BalanceRebase> lockNotStarted(@Param("kontoId") UUID kontoId);
+
+    // Locks the oldest available rebase, those locked by other workers or nodes are skipped instead of waited for
+    @Query(value = "SELECT * FROM balance_rebases WHERE status = 'PENDING' AND available_at <= :now " +
+            "ORDER BY available_at, created_at LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<BalanceRebase> claimAvailable(@Param("now") LocalDateTime now);
+
+    // The run as long as the worker still holds it
+    @Query(value = "SELECT * FROM balance_rebases WHERE id = :id AND status = 'RUNNING' AND claimed_by = :worker " +
+            "FOR UPDATE", nativeQuery = true)
+    List<BalanceRebase> lockClaimed(@Param("id") UUID id, @Param("worker") String worker);
+
+    // Runs whose worker stopped sending heartbeats (node died) are handed to the next worker, which continues at the cursor
+    @Modifying
+    @Query(value = "UPDATE balance_rebases SET status = 'PENDING', claimed_by = NULL " +
+            "WHERE status = 'RUNNING' AND heartbeat_at < :staleBefore", nativeQuery = true)
+    int releaseStale(@Param("staleBefore") LocalDateTime staleBefore);
+
+    List<BalanceRebase> findByKontoIdOrderByCreatedAtDesc(UUID kontoId, Limit limit);
+}
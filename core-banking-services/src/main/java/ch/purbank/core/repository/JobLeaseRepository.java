@@ -0,0 +1,60 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.JobLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface JobLeaseRepository extends JpaRepository<JobLease, String> {
+
+    // Takes the lease if nobody holds it or its owner stopped sending heartbeats, unless this run already completed.
+    // Returns 1 if this node got the lease. Times come from the database, so node clocks don't matter.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO job_leases (name, owner, run_key, completed, acquired_at, heartbeat_at, expires_at) " +
+            "VALUES (:name, :owner, CAST(:runKey AS varchar), false, LOCALTIMESTAMP, LOCALTIMESTAMP, " +
+            "LOCALTIMESTAMP + make_interval(secs => :ttlSeconds)) " +
+            "ON CONFLICT (name) DO UPDATE SET owner = EXCLUDED.owner, run_key = EXCLUDED.run_key, completed = false, " +
+            "acquired_at = EXCLUDED.acquired_at, heartbeat_at = EXCLUDED.heartbeat_at, expires_at = EXCLUDED.expires_at, " +
+            "finished_at = NULL " +
+            "WHERE (job_leases.owner IS NULL OR job_leases.expires_at < LOCALTIMESTAMP) " +
+            "AND NOT (job_leases.completed AND COALESCE(job_leases.run_key = EXCLUDED.run_key, false))",
+            nativeQuery = true)
+    int acquire(
+            @Param("name") String name,
+            @Param("owner") String owner,
+            @Param("runKey") String runKey,
+            @Param("ttlSeconds") long ttlSeconds);
+
+    // Returns 0 if the lease was lost, e.g. after a pause longer than the lease TTL
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE job_leases SET heartbeat_at = LOCALTIMESTAMP, " +
+            "expires_at = LOCALTIMESTAMP + make_interval(secs => :ttlSeconds) WHERE name = :name AND owner = :owner",
+            nativeQuery = true)
+    int heartbeat(@Param("name") String name, @Param("owner") String owner, @Param("ttlSeconds") long ttlSeconds);
+
+    // A failed run keeps its run key and expires after retryDelaySeconds, then findToResume returns it
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE job_leases SET owner = NULL, completed = :completed, finished_at = LOCALTIMESTAMP, " +
+            "expires_at = LOCALTIMESTAMP + make_interval(secs => :retryDelaySeconds) WHERE name = :name AND owner = :owner",
+            nativeQuery = true)
+    int release(
+            @Param("name") String name,
+            @Param("owner") String owner,
+            @Param("completed") boolean completed,
+            @Param("retryDelaySeconds") long retryDelaySeconds);
+
+    // Runs to start again: still owned but no heartbeat within the TTL (node died), or failed with a run key and
+    // past the retry delay. Failed runs without a run key are left to the next trigger.
+    @Query(value = "SELECT * FROM job_leases WHERE NOT completed AND expires_at < LOCALTIMESTAMP " +
+            "AND (owner IS NOT NULL OR run_key IS NOT NULL)", nativeQuery = true)
+    List<JobLease> findToResume();
+}
@@ -0,0 +1,45 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.KontoBalanceSnapshot;
+import ch.purbank.core.dto.BalanceSnapshotDTO;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface KontoBalanceSnapshotRepository extends JpaRepository<KontoBalanceSnapshot, KontoBalanceSnapshot.Key> {
+
+    // End-of-day balance of every active konto in one statement: the current balance minus whatever was posted
+    // after the day ended, so a run that finishes after midnight still gets the day right. Rerunning a day
+    // overwrites its snapshots.
+    @Modifying
+    @Query(value = "INSERT INTO konto_balance_snapshots (konto_id, snapshot_date, balance, currency, created_at) " +
+            "SELECT k.id, :date, k.balance - COALESCE((SELECT SUM(t.amount) FROM transactions t " +
+            "WHERE t.konto_id = k.id AND t.timestamp >= :dayEnd), 0), k.currency, LOCALTIMESTAMP " +
+            "FROM konten k WHERE k.status = 'ACTIVE' " +
+            "ON CONFLICT (konto_id, snapshot_date) DO UPDATE SET balance = EXCLUDED.balance, " +
+            "currency = EXCLUDED.currency, created_at = EXCLUDED.created_at",
+            nativeQuery = true)
+    int snapshotActiveKontos(@Param("date") LocalDate date, @Param("dayEnd") LocalDateTime dayEnd);
+
+    // All kontos of one day (e.g. month-end statements), keyset paged over konto id through idx_balance_snapshot_date
+    String DAY_SNAPSHOT_DTO_QUERY = "SELECT new ch.purbank.core.dto.BalanceSnapshotDTO(s.kontoId, s.snapshotDate, " +
+            "s.balance, s.currency) FROM KontoBalanceSnapshot s WHERE s.snapshotDate = :date ";
+
+    @Query(DAY_SNAPSHOT_DTO_QUERY + "ORDER BY s.kontoId")
+    List<BalanceSnapshotDTO> findFirstDayPage(@Param("date") LocalDate date, Limit limit);
+
+    @Query(DAY_SNAPSHOT_DTO_QUERY + "AND s.kontoId > :afterKontoId ORDER BY s.kontoId")
+    List<BalanceSnapshotDTO> findDayPageAfter(
+            @Param("date") LocalDate date,
+            @Param("afterKontoId") UUID afterKontoId,
+            Limit limit);
+}
@@ -3,7 +3,11 @@ package ch.purbank.core.repository;
 import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.KontoMember;
 import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.KontoStatus;
 import ch.purbank.core.domain.enums.MemberRole;
+import ch.purbank.core.dto.AdminKontoListItemDTO;
+import ch.purbank.core.dto.KontoListItemDTO;
+import ch.purbank.core.dto.MemberDTO;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -24,6 +28,22 @@ public interface KontoMemberRepository extends JpaRepository<KontoMember, UUID>
 
     boolean existsByKontoAndUser(Konto konto, User user);
 
+    boolean existsByKontoIdAndUserId(UUID kontoId, UUID userId);
+
+    // The konten of a user in one join, selecting the list columns only
+    @Query("SELECT new ch.purbank.core.dto.KontoListItemDTO(k.id, k.name, k.balance, km.role, k.zinssatz, k.iban, " +
+            "k.currency) FROM KontoMember km JOIN km.konto k WHERE km.user.id = :userId AND k.status = :status")
+    List<KontoListItemDTO> findKontoListItems(@Param("userId") UUID userId, @Param("status") KontoStatus status);
+
+    @Query("SELECT new ch.purbank.core.dto.AdminKontoListItemDTO(k.id, k.name, k.balance, km.role, k.zinssatz, k.iban, " +
+            "k.currency, k.accruedInterest, k.lastInterestCalcDate) FROM KontoMember km JOIN km.konto k " +
+            "WHERE km.user.id = :userId AND k.status = :status")
+    List<AdminKontoListItemDTO> findAdminKontoListItems(@Param("userId") UUID userId, @Param("status") KontoStatus status);
+
+    @Query("SELECT new ch.purbank.core.dto.MemberDTO(km.id, CONCAT(u.firstName, ' ', u.lastName), u.email, km.role) " +
+            "FROM KontoMember km JOIN km.user u WHERE km.konto.id = :kontoId")
+    List<MemberDTO> findMemberDTOs(@Param("kontoId") UUID kontoId);
+
     @Query("SELECT COUNT(km) FROM KontoMember km WHERE km.konto = :konto AND km.role = :role")
     long countByKontoAndRole(@Param("konto") Konto konto, @Param("role") MemberRole role);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.KontoMonthlyRollup;
+import ch.purbank.core.dto.MonthlyRollupDTO;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface KontoMonthlyRollupRepository extends JpaRepository<KontoMonthlyRollup, KontoMonthlyRollup.Key> {
+
+    // Through idx_konto_monthly_rollup, a few rows per month whatever the number of transactions
+    @Query("SELECT new ch.purbank.core.dto.MonthlyRollupDTO(r.month, r.transactionType, r.currency, r.inflow, " +
+            "r.outflow, r.transactionCount) FROM KontoMonthlyRollup r " +
+            "WHERE r.kontoId = :kontoId AND r.month BETWEEN :fromMonth AND :toMonth AND r.transactionCount > 0 " +
+            "ORDER BY r.month, r.transactionType, r.currency")
+    List<MonthlyRollupDTO> findMonthly(
+            @Param("kontoId") UUID kontoId,
+            @Param("fromMonth") LocalDate fromMonth,
+            @Param("toMonth") LocalDate toMonth);
+}
@@ -1,13 +1,61 @@
 package ch.purbank.core.repository;
 
 import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.KontoStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface KontoRepository extends JpaRepository<Konto, UUID> {
     Optional<Konto> findByIban(String iban);
-}
\ No newline at end of file
+
+    @Query("SELECT k.id AS id, k.currency AS currency, k.status AS status FROM Konto k WHERE k.iban = :iban")
+    Optional<IbanRef> findIbanRefByIban(@Param("iban") String iban);
+
+    @Query("SELECT k.iban FROM Konto k")
+    List<String> findAllIbans();
+
+    // Reads the committed balance and its version, bypassing a possibly stale Konto in the persistence context
+    @Query("SELECT k.balance AS balance, k.version AS version FROM Konto k WHERE k.id = :id")
+    Optional<BalanceSnapshot> findBalanceSnapshotById(@Param("id") UUID id);
+
+    // Compare-and-set on the version read before. Returns 0 if the konto changed in the meantime,
+    // or if a debit isn't covered by the balance (unless overdraft is allowed, e.g. admin corrections).
+    @Modifying
+    @Transactional
+    @Query("UPDATE Konto k SET k.balance = k.balance + :delta, k.version = k.version + 1 " +
+            "WHERE k.id = :id AND k.version = :version " +
+            "AND (:allowOverdraft = true OR k.balance + :delta >= 0 OR :delta >= 0)")
+    int updateBalanceIfUnchanged(@Param("id") UUID id, @Param("delta") BigDecimal delta,
+                                 @Param("version") Long version, @Param("allowOverdraft") boolean allowOverdraft);
+
+    // Only for a konto this transaction has already updated, the row lock it holds keeps others from writing between
+    @Modifying
+    @Transactional
+    @Query("UPDATE Konto k SET k.balance = k.balance + :delta, k.version = k.version + 1 WHERE k.id = :id")
+    int addToLockedBalance(@Param("id") UUID id, @Param("delta") BigDecimal delta);
+
+    interface IbanRef {
+        UUID getId();
+
+        Currency getCurrency();
+
+        KontoStatus getStatus();
+    }
+
+    interface BalanceSnapshot {
+        BigDecimal getBalance();
+
+        Long getVersion();
+    }
+}
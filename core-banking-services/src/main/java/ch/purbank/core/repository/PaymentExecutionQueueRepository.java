@@ -0,0 +1,23 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.PaymentExecutionQueueEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PaymentExecutionQueueRepository extends JpaRepository<PaymentExecutionQueueEntry, UUID> {
+
+    // Locks the oldest available entries, entries locked by other workers or nodes are skipped instead of waited for
+    @Query(value = "SELECT * FROM payment_execution_queue WHERE available_at <= :now " +
+            "ORDER BY available_at, enqueued_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PaymentExecutionQueueEntry> claimAvailable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM payment_execution_queue WHERE id = :id FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<PaymentExecutionQueueEntry> claimById(@Param("id") UUID id);
+}
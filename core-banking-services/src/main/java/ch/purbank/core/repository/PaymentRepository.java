@@ -4,25 +4,137 @@ import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.Payment;
 import ch.purbank.core.domain.enums.PaymentExecutionType;
 import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.dto.PaymentDTO;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, UUID> {
 
-    List<Payment> findByStatusOrderByExecutionDateAsc(PaymentStatus status);
-
     List<Payment> findByKontoAndStatus(Konto konto, PaymentStatus status);
 
-    @Query("SELECT p FROM Payment p WHERE p.status = :status AND p.executionType = :type AND p.executionDate <= :date")
-    List<Payment> findPaymentsDueForExecution(
+    // Payments of every konto the user is a member of, projected straight into PaymentDTO: one query however many
+    // kontos the user has. Keyset paging over (executionDate, id), served by idx_payment_konto_status.
+    String MEMBER_PAYMENT_DTO_QUERY = "SELECT new ch.purbank.core.dto.PaymentDTO(p.id, p.konto.id, p.toIban, p.amount, " +
+            "p.paymentCurrency, p.message, p.note, p.executionType, p.executionDate, p.status, p.locked) " +
+            "FROM Payment p JOIN KontoMember m ON m.konto = p.konto WHERE m.user.id = :userId AND p.status = :status ";
+    String AFTER_KEY = "AND (p.executionDate > :afterDate OR (p.executionDate = :afterDate AND p.id > :afterId)) ";
+    String ORDER_BY_KEY = "ORDER BY p.executionDate, p.id";
+
+    @Query(MEMBER_PAYMENT_DTO_QUERY + ORDER_BY_KEY)
+    List<PaymentDTO> findFirstMemberPaymentPage(
+            @Param("userId") UUID userId,
+            @Param("status") PaymentStatus status,
+            Limit limit);
+
+    @Query(MEMBER_PAYMENT_DTO_QUERY + AFTER_KEY + ORDER_BY_KEY)
+    List<PaymentDTO> findMemberPaymentPageAfter(
+            @Param("userId") UUID userId,
+            @Param("status") PaymentStatus status,
+            @Param("afterDate") LocalDate afterDate,
+            @Param("afterId") UUID afterId,
+            Limit limit);
+
+    @Query(MEMBER_PAYMENT_DTO_QUERY + "AND p.konto.id = :kontoId " + ORDER_BY_KEY)
+    List<PaymentDTO> findFirstMemberPaymentPageOfKonto(
+            @Param("userId") UUID userId,
+            @Param("kontoId") UUID kontoId,
+            @Param("status") PaymentStatus status,
+            Limit limit);
+
+    @Query(MEMBER_PAYMENT_DTO_QUERY + "AND p.konto.id = :kontoId " + AFTER_KEY + ORDER_BY_KEY)
+    List<PaymentDTO> findMemberPaymentPageOfKontoAfter(
+            @Param("userId") UUID userId,
+            @Param("kontoId") UUID kontoId,
+            @Param("status") PaymentStatus status,
+            @Param("afterDate") LocalDate afterDate,
+            @Param("afterId") UUID afterId,
+            Limit limit);
+
+    // Lightweight row for paging through due payments without loading entities
+    interface DuePaymentRef {
+        UUID getId();
+
+        UUID getKontoId();
+
+        LocalDate getExecutionDate();
+    }
+
+    // Keyset paging over (executionDate, id), served by idx_payment_status_execution_date
+    @Query("SELECT p.id AS id, p.konto.id AS kontoId, p.executionDate AS executionDate FROM Payment p " +
+            "WHERE p.status = :status AND p.executionType = :type AND p.executionDate <= :date " +
+            "ORDER BY p.executionDate, p.id")
+    List<DuePaymentRef> findFirstDuePaymentPage(
+            @Param("status") PaymentStatus status,
+            @Param("type") PaymentExecutionType type,
+            @Param("date") LocalDate date,
+            Limit limit);
+
+    @Query("SELECT p.id AS id, p.konto.id AS kontoId, p.executionDate AS executionDate FROM Payment p " +
+            "WHERE p.status = :status AND p.executionType = :type AND p.executionDate <= :date " +
+            "AND (p.executionDate > :afterDate OR (p.executionDate = :afterDate AND p.id > :afterId)) " +
+            "ORDER BY p.executionDate, p.id")
+    List<DuePaymentRef> findDuePaymentPageAfter(
+            @Param("status") PaymentStatus status,
+            @Param("type") PaymentExecutionType type,
+            @Param("date") LocalDate date,
+            @Param("afterDate") LocalDate afterDate,
+            @Param("afterId") UUID afterId,
+            Limit limit);
+
+    // Payments of one settlement page together with their source konto, without a query per konto.
+    // Read-only, so flushes before later queries of the same transaction don't dirty check them.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT p FROM Payment p JOIN FETCH p.konto WHERE p.id IN :ids")
+    List<Payment> findAllWithKontoByIdIn(@Param("ids") List<UUID> ids);
+
+    // Marks netted payments executed in one statement, returns fewer rows if one changed since it was read
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = :executed, p.executedAt = :now WHERE p.id IN :ids AND p.status = :pending")
+    int markExecuted(
+            @Param("ids") List<UUID> ids,
+            @Param("pending") PaymentStatus pending,
+            @Param("executed") PaymentStatus executed,
+            @Param("now") LocalDateTime now);
+
+    // Cancels a failed payment only while it still waits for its retry, a running retry holds the row until it commits
+    @Modifying
+    @Query("UPDATE Payment p SET p.status = :cancelled, p.nextRetryAt = null " +
+            "WHERE p.id = :id AND p.status = :failed AND p.nextRetryAt IS NOT NULL")
+    int cancelRetry(
+            @Param("id") UUID id,
+            @Param("failed") PaymentStatus failed,
+            @Param("cancelled") PaymentStatus cancelled);
+
+    // Failed payments whose retry is due, oldest first. Payments claimed by another node are skipped.
+    @Query(value = "SELECT * FROM payments WHERE status = 'FAILED' AND next_retry_at <= :now " +
+            "ORDER BY next_retry_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<Payment> claimDueRetries(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    long countByStatusAndNextRetryAtIsNotNull(PaymentStatus status);
+
+    // Locks all pending payments up to the cutoff in one statement instead of loading them
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.locked = true, p.lockedAt = :now WHERE p.status = :status " +
+            "AND p.executionType = :type AND p.locked = false AND p.executionDate <= :cutoff")
+    int lockPaymentsDueBy(
             @Param("status") PaymentStatus status,
             @Param("type") PaymentExecutionType type,
-            @Param("date") LocalDate date);
+            @Param("cutoff") LocalDate cutoff,
+            @Param("now") LocalDateTime now);
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.PendingPaymentBatchLine;
+import ch.purbank.core.domain.enums.Currency;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface PendingPaymentBatchLineRepository extends JpaRepository<PendingPaymentBatchLine, UUID> {
+
+    // Sum per currency, shown on the mobile device before approving the batch
+    @Query("SELECT l.paymentCurrency AS currency, COUNT(l) AS paymentCount, SUM(l.amount) AS amount " +
+            "FROM PendingPaymentBatchLine l WHERE l.batchId = :batchId GROUP BY l.paymentCurrency ORDER BY l.paymentCurrency")
+    List<CurrencyTotal> sumByCurrency(@Param("batchId") UUID batchId);
+
+    // Creates the payments of an approved batch in one statement instead of one INSERT per payment
+    @Modifying
+    @Query(value = "INSERT INTO payments (id, konto_id, to_iban, amount, payment_currency, message, note, " +
+            "execution_type, execution_date, status, locked, created_at) " +
+            "SELECT gen_random_uuid(), :kontoId, l.to_iban, l.amount, l.payment_currency, l.message, l.note, " +
+            "'NORMAL', l.execution_date, 'PENDING', false, :now " +
+            "FROM pending_payment_batch_lines l WHERE l.batch_id = :batchId ORDER BY l.line_number",
+            nativeQuery = true)
+    int createPayments(@Param("batchId") UUID batchId, @Param("kontoId") UUID kontoId, @Param("now") LocalDateTime now);
+
+    // Staged lines are only needed until the batch is approved, rejected or expired
+    @Modifying
+    @Query("DELETE FROM PendingPaymentBatchLine l WHERE l.batchId IN " +
+            "(SELECT b.id FROM PendingPaymentBatch b WHERE b.status <> ch.purbank.core.domain.enums.PendingPaymentStatus.PENDING)")
+    int deleteLinesOfCompletedBatches();
+
+    interface CurrencyTotal {
+        Currency getCurrency();
+
+        long getPaymentCount();
+
+        BigDecimal getAmount();
+    }
+}
@@ -0,0 +1,27 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.PendingPaymentBatch;
+import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.PendingPaymentStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PendingPaymentBatchRepository extends JpaRepository<PendingPaymentBatch, UUID> {
+
+    Optional<PendingPaymentBatch> findByMobileVerifyCode(String mobileVerifyCode);
+
+    Optional<PendingPaymentBatch> findByMobileVerifyCodeAndStatus(String mobileVerifyCode, PendingPaymentStatus status);
+
+    List<PendingPaymentBatch> findByUserAndStatus(User user, PendingPaymentStatus status);
+
+    @Query("SELECT b FROM PendingPaymentBatch b WHERE b.status = :status AND b.expiresAt < :now")
+    List<PendingPaymentBatch> findExpiredPendingBatches(@Param("status") PendingPaymentStatus status, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,29 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.ReconciliationDiscrepancy;
+import ch.purbank.core.dto.ReconciliationDiscrepancyDTO;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ReconciliationDiscrepancyRepository extends JpaRepository<ReconciliationDiscrepancy, ReconciliationDiscrepancy.Key> {
+
+    // Discrepancies of one run, keyset paged over konto id through the primary key
+    String RUN_DISCREPANCY_DTO_QUERY = "SELECT new ch.purbank.core.dto.ReconciliationDiscrepancyDTO(d.kontoId, d.balance, " +
+            "d.transactionTotal, d.latestBalanceAfter, d.balanceAfterMismatch) FROM ReconciliationDiscrepancy d WHERE d.runId = :runId ";
+
+    @Query(RUN_DISCREPANCY_DTO_QUERY + "ORDER BY d.kontoId")
+    List<ReconciliationDiscrepancyDTO> findFirstRunPage(@Param("runId") UUID runId, Limit limit);
+
+    @Query(RUN_DISCREPANCY_DTO_QUERY + "AND d.kontoId > :afterKontoId ORDER BY d.kontoId")
+    List<ReconciliationDiscrepancyDTO> findRunPageAfter(
+            @Param("runId") UUID runId,
+            @Param("afterKontoId") UUID afterKontoId,
+            Limit limit);
+}
@@ -0,0 +1,15 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.ReconciliationRun;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ReconciliationRunRepository extends JpaRepository<ReconciliationRun, UUID> {
+
+    List<ReconciliationRun> findAllByOrderByStartedAtDesc(Limit limit);
+}
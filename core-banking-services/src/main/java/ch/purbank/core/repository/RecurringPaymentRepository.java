@@ -0,0 +1,42 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.RecurringPayment;
+import ch.purbank.core.domain.enums.RecurringPaymentStatus;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RecurringPaymentRepository extends JpaRepository<RecurringPayment, UUID> {
+
+    List<RecurringPayment> findByKontoInAndStatusOrderByNextExecutionDate(List<Konto> kontos, RecurringPaymentStatus status);
+
+    // Active rules due up to the date, served by idx_recurring_payment_status_next.
+    // Rules claimed by another node are skipped, so nodes never create the same occurrence twice.
+    @Query(value = "SELECT * FROM recurring_payments WHERE status = 'ACTIVE' AND next_execution_date <= :date " +
+            "ORDER BY next_execution_date, id LIMIT :limit FOR UPDATE SKIP LOCKED",
+            nativeQuery = true)
+    List<RecurringPayment> claimDue(@Param("date") LocalDate date, @Param("limit") int limit);
+
+    // Active rules due up to the date without locking them, for the settlement simulation
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("SELECT r FROM RecurringPayment r WHERE r.status = :status AND r.nextExecutionDate <= :date")
+    List<RecurringPayment> findDueUntil(@Param("status") RecurringPaymentStatus status, @Param("date") LocalDate date);
+
+    @Modifying
+    @Query("UPDATE RecurringPayment r SET r.status = :cancelled WHERE r.konto = :konto AND r.status = :active")
+    int cancelActiveByKonto(
+            @Param("konto") Konto konto,
+            @Param("active") RecurringPaymentStatus active,
+            @Param("cancelled") RecurringPaymentStatus cancelled);
+}
@@ -0,0 +1,16 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.TransactionArchiveKonto;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface TransactionArchiveKontoRepository extends JpaRepository<TransactionArchiveKonto, TransactionArchiveKonto.Key> {
+
+    // Archived months with transactions of the konto, newest first (idx_transaction_archive_konto)
+    List<TransactionArchiveKonto> findByKontoIdAndMonthLessThanEqualOrderByMonthDesc(UUID kontoId, LocalDate month);
+}
@@ -0,0 +1,14 @@
+package ch.purbank.core.repository;
+
+import ch.purbank.core.domain.TransactionArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface TransactionArchiveRepository extends JpaRepository<TransactionArchive, LocalDate> {
+
+    Optional<TransactionArchive> findTopByOrderByMonthDesc();
+}
@@ -1,18 +1,42 @@
 package ch.purbank.core.repository;
 
-import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.dto.TransactionDTO;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
 
-    List<Transaction> findByKontoOrderByTimestampDesc(Konto konto, Pageable pageable);
+    // Reads the DTO columns only, so list endpoints load no entities (no snapshots for dirty checking, no proxies)
+    String TRANSACTION_DTO_QUERY = "SELECT new ch.purbank.core.dto.TransactionDTO(t.id, t.amount, t.balanceAfter, " +
+            "t.timestamp, t.iban, t.transactionType, t.currency, t.message, t.note) FROM Transaction t ";
 
-    List<Transaction> findByKontoOrderByTimestampDesc(Konto konto);
+    @Query(TRANSACTION_DTO_QUERY + "WHERE t.konto.id = :kontoId ORDER BY t.timestamp DESC")
+    List<TransactionDTO> findDTOsByKontoId(@Param("kontoId") UUID kontoId, Pageable pageable);
+
+    // A konto's history newest first, keyset paged over (timestamp, id) and served by idx_transaction_konto_timestamp.
+    // The redundant "timestamp <=" bound lets the index scan start at the cursor instead of filtering from the top.
+    String KONTO_HISTORY_QUERY = TRANSACTION_DTO_QUERY + "WHERE t.konto.id = :kontoId ";
+    String BEFORE_KEY = "AND t.timestamp <= :beforeTimestamp " +
+            "AND (t.timestamp < :beforeTimestamp OR t.id < :beforeId) ";
+    String ORDER_BY_KEY_DESC = "ORDER BY t.timestamp DESC, t.id DESC";
+
+    @Query(KONTO_HISTORY_QUERY + ORDER_BY_KEY_DESC)
+    List<TransactionDTO> findFirstHistoryPage(@Param("kontoId") UUID kontoId, Limit limit);
+
+    @Query(KONTO_HISTORY_QUERY + BEFORE_KEY + ORDER_BY_KEY_DESC)
+    List<TransactionDTO> findHistoryPageBefore(
+            @Param("kontoId") UUID kontoId,
+            @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+            @Param("beforeId") UUID beforeId,
+            Limit limit);
 }
\ No newline at end of file
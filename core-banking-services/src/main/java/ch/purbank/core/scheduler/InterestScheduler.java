@@ -1,6 +1,9 @@
 package ch.purbank.core.scheduler;
 
+import ch.purbank.core.service.BalanceSnapshotService;
 import ch.purbank.core.service.InterestService;
+import ch.purbank.core.service.JobCoordinator;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -13,25 +16,42 @@ import java.time.LocalDate;
 @Slf4j
 public class InterestScheduler {
 
+    static final String DAILY_INTEREST_JOB = "daily-interest";
+
     private final InterestService interestService;
+    private final BalanceSnapshotService balanceSnapshotService;
+    private final JobCoordinator jobCoordinator;
+
+    @PostConstruct
+    public void registerJobs() {
+        jobCoordinator.register(DAILY_INTEREST_JOB, this::calculateInterest);
+    }
 
     /**
      * Runs nightly at 23:59 (11:59 PM) to calculate daily interest for all konten.
+     * Runs on one node only, once per day (see JobCoordinator).
      * After calculating daily interest, checks if today is a quarter-end date.
      * If it is, automatically triggers the quarterly Abrechnung.
      *
      * Quarter-end dates: March 31, June 30, September 30, December 31
      *
+     * Finally writes the end-of-day balance snapshots of the day, so they include the interest.
+     *
      * Cron format: second minute hour day month weekday
      */
     @Scheduled(cron = "0 59 23 * * *")
     public void runDailyInterestCalculation() {
-        LocalDate today = LocalDate.now();
+        jobCoordinator.run(DAILY_INTEREST_JOB, LocalDate.now().toString());
+    }
+
+    private void calculateInterest(String runKey) {
+        LocalDate today = LocalDate.parse(runKey);
         log.info("=== Starting scheduled nightly interest calculation for {} ===", today);
 
+        Exception interestFailure = null;
         try {
             // Always calculate daily interest first
-            interestService.calculateDailyInterest();
+            interestService.calculateDailyInterest(today);
             log.info("=== Nightly interest calculation completed successfully ===");
 
             // Check if today is a quarter-end date
@@ -42,6 +62,14 @@ public class InterestScheduler {
             }
         } catch (Exception e) {
             log.error("Error during nightly interest calculation or Abrechnung", e);
+            interestFailure = e;
+        }
+
+        // A failure of either fails the job, JobCoordinator retries the run for the same day. The interest of a day
+        // is accrued once per konto and the snapshots are overwritten, so the retry is safe.
+        balanceSnapshotService.snapshotEndOfDay(today);
+        if (interestFailure != null) {
+            throw new IllegalStateException("Interest calculation for " + today + " failed", interestFailure);
         }
     }
 
@@ -0,0 +1,52 @@
+package ch.purbank.core.scheduler;
+
+import ch.purbank.core.service.JobCoordinator;
+import ch.purbank.core.service.PaymentBatchService;
+import ch.purbank.core.service.PaymentService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@RequiredArgsConstructor
+public class PaymentScheduler {
+
+    static final String SETTLEMENT_JOB = "payment-settlement";
+    static final String PENDING_CLEANUP_JOB = "pending-payment-cleanup";
+    static final String PENDING_BATCH_CLEANUP_JOB = "pending-payment-batch-cleanup";
+
+    private final PaymentService paymentService;
+    private final PaymentBatchService paymentBatchService;
+    private final JobCoordinator jobCoordinator;
+
+    @PostConstruct
+    public void registerJobs() {
+        jobCoordinator.register(SETTLEMENT_JOB, runKey -> paymentService.processScheduledPayments());
+        jobCoordinator.register(PENDING_CLEANUP_JOB, runKey -> paymentService.cleanupExpiredPendingPayments());
+        jobCoordinator.register(PENDING_BATCH_CLEANUP_JOB, runKey -> paymentBatchService.cleanupPendingPaymentBatches());
+    }
+
+    /**
+     * Runs the settlement of due payments at 1:00 AM, once per day on one node (see JobCoordinator).
+     * A run taken over from a dead node settles whatever that node left PENDING.
+     */
+    @Scheduled(cron = "0 0 1 * * ?")
+    public void runSettlement() {
+        jobCoordinator.run(SETTLEMENT_JOB, LocalDate.now().toString());
+    }
+
+    // Every 5 minutes, on whichever node gets there first
+    @Scheduled(fixedRate = 300000)
+    public void runPendingPaymentCleanup() {
+        jobCoordinator.run(PENDING_CLEANUP_JOB, null);
+    }
+
+    // Every 5 minutes, on whichever node gets there first
+    @Scheduled(fixedRate = 300000)
+    public void runPendingPaymentBatchCleanup() {
+        jobCoordinator.run(PENDING_BATCH_CLEANUP_JOB, null);
+    }
+}
@@ -0,0 +1,34 @@
+package ch.purbank.core.scheduler;
+
+import ch.purbank.core.service.JobCoordinator;
+import ch.purbank.core.service.ReconciliationService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@RequiredArgsConstructor
+public class ReconciliationScheduler {
+
+    static final String RECONCILIATION_JOB = "ledger-reconciliation";
+
+    private final ReconciliationService reconciliationService;
+    private final JobCoordinator jobCoordinator;
+
+    @PostConstruct
+    public void registerJobs() {
+        jobCoordinator.register(RECONCILIATION_JOB, runKey -> reconciliationService.reconcile());
+    }
+
+    /**
+     * Runs nightly at 02:30, after the settlement run and before the partition maintenance: checks every konto
+     * balance against its transactions (see ReconciliationService). Runs on one node only, once per day.
+     */
+    @Scheduled(cron = "0 30 2 * * *")
+    public void runReconciliation() {
+        jobCoordinator.run(RECONCILIATION_JOB, LocalDate.now().toString());
+    }
+}
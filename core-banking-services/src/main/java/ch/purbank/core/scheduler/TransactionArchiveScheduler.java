@@ -0,0 +1,44 @@
+package ch.purbank.core.scheduler;
+
+import ch.purbank.core.service.JobCoordinator;
+import ch.purbank.core.service.TransactionArchiveService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionArchiveScheduler {
+
+    static final String TRANSACTION_PARTITIONS_JOB = "transaction-partitions";
+
+    private final TransactionArchiveService transactionArchiveService;
+    private final JobCoordinator jobCoordinator;
+
+    @PostConstruct
+    public void registerJobs() {
+        jobCoordinator.register(TRANSACTION_PARTITIONS_JOB, this::maintainPartitions);
+    }
+
+    /**
+     * Runs nightly at 03:30, after the settlement run: creates the month partitions of transactions ahead of time
+     * and archives the months past the retention window (see TransactionArchiveService).
+     * Runs on one node only, once per day (see JobCoordinator).
+     */
+    @Scheduled(cron = "0 30 3 * * *")
+    public void runPartitionMaintenance() {
+        jobCoordinator.run(TRANSACTION_PARTITIONS_JOB, LocalDate.now().toString());
+    }
+
+    private void maintainPartitions(String runKey) {
+        LocalDate today = LocalDate.parse(runKey);
+        transactionArchiveService.ensurePartitions(today);
+        int archived = transactionArchiveService.archiveOldPartitions(today);
+        log.info("Transaction partitions checked for {}, {} months archived", today, archived);
+    }
+}
@@ -0,0 +1,34 @@
+package ch.purbank.core.scheduler;
+
+import ch.purbank.core.service.JobCoordinator;
+import ch.purbank.core.service.TransactionRollupService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@RequiredArgsConstructor
+public class TransactionRollupScheduler {
+
+    static final String TRANSACTION_ROLLUPS_JOB = "transaction-rollups";
+
+    private final TransactionRollupService transactionRollupService;
+    private final JobCoordinator jobCoordinator;
+
+    @PostConstruct
+    public void registerJobs() {
+        jobCoordinator.register(TRANSACTION_ROLLUPS_JOB, runKey -> transactionRollupService.rebuild());
+    }
+
+    /**
+     * Runs every Sunday at 04:00, after the partition maintenance: rebuilds the monthly rollups, which corrects any
+     * the incremental updates missed (see TransactionRollupService). Runs on one node only, once per week.
+     */
+    @Scheduled(cron = "0 0 4 * * SUN")
+    public void runRollupRebuild() {
+        jobCoordinator.run(TRANSACTION_ROLLUPS_JOB, LocalDate.now().toString());
+    }
+}
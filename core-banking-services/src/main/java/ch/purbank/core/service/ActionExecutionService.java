@@ -20,7 +20,9 @@ public class ActionExecutionService {
     private final PendingPaymentDeleteRepository pendingPaymentDeleteRepository;
     private final PendingKontoDeleteRepository pendingKontoDeleteRepository;
     private final PendingMemberInviteRepository pendingMemberInviteRepository;
+    private final PendingPaymentBatchRepository pendingPaymentBatchRepository;
     private final PaymentService paymentService;
+    private final PaymentBatchService paymentBatchService;
     private final KontoService kontoService;
 
     @Transactional
@@ -43,6 +45,9 @@ public class ActionExecutionService {
             case "MEMBER_INVITE":
                 executeMemberInviteAction(request.getMobileVerifyCode());
                 break;
+            case "PAYMENT_BATCH":
+                executePaymentBatchAction(request.getMobileVerifyCode());
+                break;
             default:
                 log.warn("Unknown action type: {}", actionType);
         }
@@ -175,4 +180,28 @@ public class ActionExecutionService {
 
         log.info("Member invite action executed successfully for pending invite {}", pendingInvite.getId());
     }
+
+    private void executePaymentBatchAction(String mobileVerifyCode) {
+        Optional<PendingPaymentBatch> pendingBatchOpt = pendingPaymentBatchRepository
+                .findByMobileVerifyCodeAndStatus(mobileVerifyCode, PendingPaymentStatus.PENDING);
+
+        if (pendingBatchOpt.isEmpty()) {
+            log.error("No pending payment batch found for mobile-verify code");
+            throw new IllegalArgumentException("Pending payment batch not found or already processed");
+        }
+
+        PendingPaymentBatch pendingBatch = pendingBatchOpt.get();
+
+        if (pendingBatch.isExpired()) {
+            log.warn("Pending payment batch {} has expired", pendingBatch.getId());
+            pendingBatch.markCompleted(PendingPaymentStatus.EXPIRED);
+            pendingPaymentBatchRepository.save(pendingBatch);
+            throw new IllegalArgumentException("Pending payment batch has expired");
+        }
+
+        // Execute the approved payment batch
+        paymentBatchService.executeApprovedPaymentBatch(pendingBatch);
+
+        log.info("Payment batch action executed successfully for pending batch {}", pendingBatch.getId());
+    }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import ch.purbank.core.domain.*;
 import ch.purbank.core.domain.enums.AuditAction;
 import ch.purbank.core.domain.enums.AuditEntityType;
 import ch.purbank.core.domain.enums.AuthorisationStatus;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
 import ch.purbank.core.domain.enums.PendingPaymentStatus;
 import ch.purbank.core.repository.*;
 import ch.purbank.core.security.SecureTokenGenerator;
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -29,6 +31,9 @@ public class AuthorisationService {
     private final PendingPaymentDeleteRepository pendingPaymentDeleteRepository;
     private final PendingKontoDeleteRepository pendingKontoDeleteRepository;
     private final PendingMemberInviteRepository pendingMemberInviteRepository;
+    private final PendingPaymentBatchRepository pendingPaymentBatchRepository;
+    private final PendingPaymentBatchLineRepository pendingPaymentBatchLineRepository;
+    private final PaymentRepository paymentRepository;
     private final MobileSecurityService mobileSecurityService;
     private final ActionExecutionService actionExecutionService;
     private final ObjectMapper objectMapper;
@@ -40,6 +45,9 @@ public class AuthorisationService {
                                 PendingPaymentDeleteRepository pendingPaymentDeleteRepository,
                                 PendingKontoDeleteRepository pendingKontoDeleteRepository,
                                 PendingMemberInviteRepository pendingMemberInviteRepository,
+                                PendingPaymentBatchRepository pendingPaymentBatchRepository,
+                                PendingPaymentBatchLineRepository pendingPaymentBatchLineRepository,
+                                PaymentRepository paymentRepository,
                                 MobileSecurityService mobileSecurityService,
                                 ActionExecutionService actionExecutionService,
                                 ObjectMapper objectMapper,
@@ -50,6 +58,9 @@ public class AuthorisationService {
         this.pendingPaymentDeleteRepository = pendingPaymentDeleteRepository;
         this.pendingKontoDeleteRepository = pendingKontoDeleteRepository;
         this.pendingMemberInviteRepository = pendingMemberInviteRepository;
+        this.pendingPaymentBatchRepository = pendingPaymentBatchRepository;
+        this.pendingPaymentBatchLineRepository = pendingPaymentBatchLineRepository;
+        this.paymentRepository = paymentRepository;
         this.mobileSecurityService = mobileSecurityService;
         this.actionExecutionService = actionExecutionService;
         this.objectMapper = objectMapper;
@@ -179,6 +190,24 @@ public class AuthorisationService {
             return Optional.of(buildMemberInviteActionPayload(pendingInvite));
         }
 
+        // Check pending payment batch
+        Optional<PendingPaymentBatch> pendingBatchOpt = pendingPaymentBatchRepository.findByMobileVerifyCodeAndStatus(
+                mobileVerifyCode, PendingPaymentStatus.PENDING);
+
+        if (pendingBatchOpt.isPresent()) {
+            PendingPaymentBatch pendingBatch = pendingBatchOpt.get();
+
+            if (pendingBatch.isExpired()) {
+                return Optional.empty();
+            }
+
+            if (!mobileSecurityService.isValidSignature(pendingBatch.getUser(), signedMobileVerify)) {
+                return Optional.empty();
+            }
+
+            return Optional.of(buildPaymentBatchActionPayload(pendingBatch));
+        }
+
         // Fall back to checking authorisation requests (for other action types)
         Optional<AuthorisationRequest> requestOpt = authorisationRequestRepository.findByMobileVerifyCodeAndStatus(
                 mobileVerifyCode, AuthorisationStatus.PENDING);
@@ -211,6 +240,11 @@ public class AuthorisationService {
             payload.put("note", pendingPayment.getNote());
             payload.put("executionType", pendingPayment.getExecutionType().toString());
             payload.put("executionDate", pendingPayment.getExecutionDate().toString());
+            if (pendingPayment.getRecurrence() != null) {
+                payload.put("recurrence", pendingPayment.getRecurrence().toString());
+                payload.put("recurrenceEndDate", pendingPayment.getRecurrenceEndDate() != null
+                        ? pendingPayment.getRecurrenceEndDate().toString() : null);
+            }
 
             return objectMapper.writeValueAsString(payload);
         } catch (JsonProcessingException e) {
@@ -293,11 +327,47 @@ public class AuthorisationService {
         }
     }
 
+    private String buildPaymentBatchActionPayload(PendingPaymentBatch pendingBatch) {
+        try {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("type", "PAYMENT_BATCH");
+            payload.put("kontoId", pendingBatch.getKontoId().toString());
+            payload.put("fileName", pendingBatch.getFileName());
+            payload.put("paymentCount", pendingBatch.getPaymentCount());
+
+            // Total per currency, the single payments are too many to show on the device
+            Map<String, String> totals = new LinkedHashMap<>();
+            for (PendingPaymentBatchLineRepository.CurrencyTotal total : pendingPaymentBatchLineRepository.sumByCurrency(pendingBatch.getId())) {
+                totals.put(total.getCurrency().toString(), total.getAmount().toString());
+            }
+            payload.put("totals", totals);
+
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            log.error("Error building payment batch action payload", e);
+            return "{}";
+        }
+    }
+
     @Transactional
     public boolean approveAuthorisation(String signedMobileVerify) {
         return handleMobileApproval(signedMobileVerify, "{APPROVE}", AuthorisationStatus.APPROVED);
     }
 
+    /**
+     * True if approving this mobile verify created an INSTANT payment. The execution queue runs it after the
+     * approval has returned, every other approved action is complete by then.
+     */
+    @Transactional(readOnly = true)
+    public boolean createdInstantPayment(String signedMobileVerify) {
+        String mobileVerifyCode = mobileSecurityService.extractMobileVerifyCode(signedMobileVerify);
+        return pendingPaymentRepository.findByMobileVerifyCode(mobileVerifyCode)
+                .map(PendingPayment::getPaymentId)
+                .flatMap(paymentRepository::findById)
+                .filter(payment -> payment.getExecutionType() == PaymentExecutionType.INSTANT)
+                .isPresent();
+    }
+
     @Transactional
     public boolean rejectAuthorisation(String signedMobileVerify) {
         return handleMobileApproval(signedMobileVerify, "{REJECT}", AuthorisationStatus.REJECTED);
@@ -330,6 +400,10 @@ public class AuthorisationService {
             PendingMemberInvite p = (PendingMemberInvite) pending;
             status = p.getStatus();
             isExpired = p.isExpired();
+        } else if (pending instanceof PendingPaymentBatch) {
+            PendingPaymentBatch p = (PendingPaymentBatch) pending;
+            status = p.getStatus();
+            isExpired = p.isExpired();
         }
 
         if (status != PendingPaymentStatus.PENDING || isExpired) {
@@ -369,6 +443,10 @@ public class AuthorisationService {
                 PendingMemberInvite p = (PendingMemberInvite) pending;
                 p.markCompleted(PendingPaymentStatus.REJECTED);
                 pendingMemberInviteRepository.save(p);
+            } else if (pending instanceof PendingPaymentBatch) {
+                PendingPaymentBatch p = (PendingPaymentBatch) pending;
+                p.markCompleted(PendingPaymentStatus.REJECTED);
+                pendingPaymentBatchRepository.save(p);
             }
         }
 
@@ -418,6 +496,13 @@ public class AuthorisationService {
                     signedMobileVerify, newStatus, "MEMBER_INVITE", mobileVerifyCode);
         }
 
+        // Check pending payment batch
+        Optional<PendingPaymentBatch> pendingBatchOpt = pendingPaymentBatchRepository.findByMobileVerifyCode(mobileVerifyCode);
+        if (pendingBatchOpt.isPresent()) {
+            return handlePendingApproval(pendingBatchOpt.get(), pendingBatchOpt.get().getUser(),
+                    signedMobileVerify, newStatus, "PAYMENT_BATCH", mobileVerifyCode);
+        }
+
         // Fall back to checking authorisation requests (for other action types)
         Optional<AuthorisationRequest> requestOpt = authorisationRequestRepository
                 .findByMobileVerifyCode(mobileVerifyCode);
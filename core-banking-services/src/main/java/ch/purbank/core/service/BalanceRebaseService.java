@@ -0,0 +1,400 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.BalanceRebase;
+import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.domain.enums.BalanceRebaseStatus;
+import ch.purbank.core.dto.BalanceRebaseDTO;
+import ch.purbank.core.repository.BalanceRebaseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recalculates balanceAfter of the transactions following one an admin deleted (see
+ * TransactionService.deleteTransactionAdmin). Deleting only queues a rebase in balance_rebases, in the same
+ * transaction; the rebase is worked off by rebaseWorkers workers per node, so the request doesn't wait for it even on
+ * kontos with a long history. Progress is kept on the rebase and can be followed by the admin.
+ *
+ * Only the transactions after the deleted one are touched, rebaseChunkSize per transaction, in the order of the
+ * history. Each chunk is one UPDATE: balanceAfter is the balance after the transaction before the chunk plus the
+ * running sum of the amounts (a window function over the chunk). Since every chunk starts from what the previous one
+ * wrote, a run interrupted by a failure or a dead node continues at its cursor, and running a chunk twice writes the
+ * same values. Chunks of the same konto run one at a time on all nodes (advisory lock), so two rebases of a konto
+ * can't overwrite each other with stale values.
+ *
+ * Deleting another transaction of the konto before its rebase started only moves the start of that rebase.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceRebaseService {
+
+    private final BalanceRebaseRepository balanceRebaseRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionConfig transactionConfig;
+    private final JobCoordinator jobCoordinator;
+    private final MeterRegistry meterRegistry;
+
+    // Serializes the chunks of a konto across nodes until the chunk's transaction ends
+    private static final String LOCK_KONTO_SQL = "SELECT pg_advisory_xact_lock(hashtextextended(?, 0))";
+
+    private static final String COUNT_AFTER_SQL =
+            "SELECT COUNT(*) FROM transactions WHERE konto_id = ? AND (timestamp, id) > (?, ?)";
+
+    // Rebases the next ? transactions of the konto after the position (?, ?), starting from the balance after the
+    // transaction at or before it (? if there is none left in the database). Returns no row once nothing follows,
+    // otherwise the transactions walked, those whose balance_after changed and the last one walked.
+    private static final String REBASE_CHUNK_SQL =
+            "WITH anchor AS (SELECT balance_after FROM transactions WHERE konto_id = ? AND (timestamp, id) <= (?, ?) " +
+            "  ORDER BY timestamp DESC, id DESC LIMIT 1), " +
+            "chunk AS (SELECT id, timestamp, amount FROM transactions WHERE konto_id = ? AND (timestamp, id) > (?, ?) " +
+            "  ORDER BY timestamp, id LIMIT ?), " +
+            "rebased AS (SELECT id, timestamp, COALESCE((SELECT balance_after FROM anchor), ?) " +
+            "  + SUM(amount) OVER (ORDER BY timestamp, id ROWS UNBOUNDED PRECEDING) AS balance_after FROM chunk), " +
+            "changed AS (UPDATE transactions t SET balance_after = r.balance_after FROM rebased r " +
+            "  WHERE t.konto_id = ? AND t.id = r.id AND t.timestamp = r.timestamp " +
+            "  AND t.balance_after <> r.balance_after RETURNING t.id) " +
+            "SELECT (SELECT COUNT(*) FROM rebased) AS rebased, (SELECT COUNT(*) FROM changed) AS changed, " +
+            "l.timestamp, l.id FROM (SELECT timestamp, id FROM rebased ORDER BY timestamp DESC, id DESC LIMIT 1) l";
+
+    // One permit per rebase queued on this node
+    private final Semaphore signal = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean stopping;
+
+    private TransactionTemplate transactionTemplate;
+    private Counter rowsChanged;
+    private Counter completed;
+    private Counter retried;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        rowsChanged = meterRegistry.counter("purbank.transactions.rebase.changed");
+        completed = meterRegistry.counter("purbank.transactions.rebases", "result", "completed");
+        retried = meterRegistry.counter("purbank.transactions.rebases", "result", "retried");
+        failed = meterRegistry.counter("purbank.transactions.rebases", "result", "failed");
+    }
+
+    // Workers only start once the context is complete
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < transactionConfig.getRebaseWorkers(); i++) {
+            String worker = jobCoordinator.getNodeId() + "-" + i;
+            workers.add(Thread.ofVirtual().name("balance-rebase-worker-" + i).start(() -> runWorker(worker)));
+        }
+        log.info("Started {} balance rebase workers", workers.size());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        stopping = true;
+        signal.release(workers.size());
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+    }
+
+    /**
+     * Queues the rebase of the transactions after the given one, which is about to be deleted. Joins the caller's
+     * transaction, the rebase is only picked up once it commits. Returns the id of the rebase, to follow its progress.
+     */
+    public UUID schedule(Transaction deleted) {
+        UUID kontoId = deleted.getKonto().getId();
+        BigDecimal baseBalance = deleted.getBalanceAfter().subtract(deleted.getAmount());
+        LocalDateTime now = LocalDateTime.now();
+
+        // Locked until the caller commits, so no worker starts it before the deletion is visible
+        List<BalanceRebase> notStarted = balanceRebaseRepository.lockNotStarted(kontoId);
+        BalanceRebase rebase;
+        if (!notStarted.isEmpty()) {
+            rebase = notStarted.get(0);
+            if (isBefore(deleted.getTimestamp(), deleted.getId(), rebase.getFromTimestamp(), rebase.getFromId())) {
+                rebase.setFromTimestamp(deleted.getTimestamp());
+                rebase.setFromId(deleted.getId());
+                rebase.setBaseBalance(baseBalance);
+            }
+        } else {
+            rebase = BalanceRebase.builder()
+                    .kontoId(kontoId)
+                    .fromTimestamp(deleted.getTimestamp())
+                    .fromId(deleted.getId())
+                    .baseBalance(baseBalance)
+                    .status(BalanceRebaseStatus.PENDING)
+                    .availableAt(now)
+                    .createdAt(now)
+                    .build();
+        }
+        rebase = balanceRebaseRepository.save(rebase);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    signal.release();
+                }
+            });
+        } else {
+            signal.release();
+        }
+        return rebase.getId();
+    }
+
+    // Same order as the history: timestamp, then id
+    private static boolean isBefore(LocalDateTime timestamp, UUID id, LocalDateTime otherTimestamp, UUID otherId) {
+        int byTimestamp = timestamp.compareTo(otherTimestamp);
+        return byTimestamp < 0 || byTimestamp == 0 && compareLikePostgres(id, otherId) < 0;
+    }
+
+    // Postgres orders uuid by its 16 bytes, unsigned. UUID.compareTo compares the two halves as signed longs, which
+    // puts ids with the top bit of a half set first.
+    static int compareLikePostgres(UUID id, UUID otherId) {
+        int byHigh = Long.compareUnsigned(id.getMostSignificantBits(), otherId.getMostSignificantBits());
+        return byHigh != 0 ? byHigh : Long.compareUnsigned(id.getLeastSignificantBits(), otherId.getLeastSignificantBits());
+    }
+
+    @Transactional(readOnly = true)
+    public BalanceRebaseDTO getRebase(UUID rebaseId) {
+        return balanceRebaseRepository.findById(rebaseId)
+                .map(BalanceRebaseService::toDTO)
+                .orElseThrow(() -> new IllegalArgumentException("Rebase not found"));
+    }
+
+    /**
+     * Latest rebases of a konto, newest first.
+     */
+    @Transactional(readOnly = true)
+    public List<BalanceRebaseDTO> getRebasesForKonto(UUID kontoId, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int max = transactionConfig.getListMaxPageSize();
+        return balanceRebaseRepository.findByKontoIdOrderByCreatedAtDesc(kontoId, Limit.of(limit == null ? max : Math.min(limit, max)))
+                .stream().map(BalanceRebaseService::toDTO).toList();
+    }
+
+    /**
+     * Claims the oldest available rebase and runs it to the end. Returns false if there was none.
+     */
+    public boolean processNext(String worker) {
+        UUID rebaseId = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            balanceRebaseRepository.releaseStale(now.minus(transactionConfig.getRebaseStaleAfter()));
+
+            List<BalanceRebase> rebases = balanceRebaseRepository.claimAvailable(now);
+            if (rebases.isEmpty()) {
+                return null;
+            }
+            BalanceRebase rebase = rebases.get(0);
+            if (rebase.getCursorId() == null) {
+                rebase.setRowsTotal(jdbcTemplate.queryForObject(COUNT_AFTER_SQL, Long.class, rebase.getKontoId(),
+                        Timestamp.valueOf(rebase.getFromTimestamp()), rebase.getFromId()));
+            }
+            if (rebase.getStartedAt() == null) {
+                rebase.setStartedAt(now);
+            }
+            rebase.setStatus(BalanceRebaseStatus.RUNNING);
+            rebase.setClaimedBy(worker);
+            rebase.setHeartbeatAt(now);
+            return balanceRebaseRepository.save(rebase).getId();
+        });
+        if (rebaseId == null) {
+            return false;
+        }
+
+        try {
+            boolean more = true;
+            while (more && !stopping) {
+                more = rebaseChunk(rebaseId, worker);
+            }
+            if (more) {
+                release(rebaseId, worker);
+            }
+        } catch (RuntimeException e) {
+            // The chunk was rolled back, the cursor still points after the last one that committed
+            recordFailure(rebaseId, worker, e);
+        }
+        return true;
+    }
+
+    // Rebases the next chunk. Returns false once the rebase completed or another worker took it over.
+    private boolean rebaseChunk(UUID rebaseId, String worker) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            List<BalanceRebase> locked = balanceRebaseRepository.lockClaimed(rebaseId, worker);
+            if (locked.isEmpty()) {
+                log.warn("Balance rebase {} was taken over by another worker", rebaseId);
+                return false;
+            }
+            BalanceRebase rebase = locked.get(0);
+            jdbcTemplate.queryForList(LOCK_KONTO_SQL, rebase.getKontoId().toString());
+
+            boolean started = rebase.getCursorId() != null;
+            Timestamp afterTimestamp = Timestamp.valueOf(started ? rebase.getCursorTimestamp() : rebase.getFromTimestamp());
+            UUID afterId = started ? rebase.getCursorId() : rebase.getFromId();
+            int chunkSize = transactionConfig.getRebaseChunkSize();
+            List<Chunk> chunks = jdbcTemplate.query(REBASE_CHUNK_SQL, CHUNK_ROW_MAPPER,
+                    rebase.getKontoId(), afterTimestamp, afterId,
+                    rebase.getKontoId(), afterTimestamp, afterId, chunkSize,
+                    rebase.getBaseBalance(),
+                    rebase.getKontoId());
+
+            LocalDateTime now = LocalDateTime.now();
+            boolean done = chunks.isEmpty() || chunks.get(0).rebased() < chunkSize;
+            if (!chunks.isEmpty()) {
+                Chunk chunk = chunks.get(0);
+                rebase.setCursorTimestamp(chunk.lastTimestamp());
+                rebase.setCursorId(chunk.lastId());
+                rebase.setRowsRebased(rebase.getRowsRebased() + chunk.rebased());
+                rebase.setRowsChanged(rebase.getRowsChanged() + chunk.changed());
+                rowsChanged.increment(chunk.changed());
+            }
+            rebase.setHeartbeatAt(now);
+            if (done) {
+                rebase.setStatus(BalanceRebaseStatus.COMPLETED);
+                rebase.setClaimedBy(null);
+                rebase.setFinishedAt(now);
+                completed.increment();
+                log.info("Rebased {} transactions of konto {} ({} changed)", rebase.getRowsRebased(),
+                        rebase.getKontoId(), rebase.getRowsChanged());
+            }
+            balanceRebaseRepository.save(rebase);
+            return !done;
+        }));
+    }
+
+    // Hands an unfinished run back on shutdown, the next worker on any node continues at the cursor
+    private void release(UUID rebaseId, String worker) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (BalanceRebase rebase : balanceRebaseRepository.lockClaimed(rebaseId, worker)) {
+                rebase.setStatus(BalanceRebaseStatus.PENDING);
+                rebase.setClaimedBy(null);
+                balanceRebaseRepository.save(rebase);
+            }
+        });
+    }
+
+    private void recordFailure(UUID rebaseId, String worker, RuntimeException error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<BalanceRebase> locked = balanceRebaseRepository.lockClaimed(rebaseId, worker);
+            if (locked.isEmpty()) {
+                return;
+            }
+            BalanceRebase rebase = locked.get(0);
+            int attempts = rebase.getAttempts() + 1;
+            rebase.setAttempts(attempts);
+            rebase.setLastError(error.getMessage());
+            rebase.setClaimedBy(null);
+
+            if (attempts >= transactionConfig.getRebaseMaxAttempts()) {
+                rebase.setStatus(BalanceRebaseStatus.FAILED);
+                rebase.setFinishedAt(LocalDateTime.now());
+                balanceRebaseRepository.save(rebase);
+                failed.increment();
+                log.error("Balance rebase {} of konto {} failed after {} attempts: {}", rebaseId, rebase.getKontoId(),
+                        attempts, error.getMessage(), error);
+                return;
+            }
+
+            Duration backoff = transactionConfig.getRebaseRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 16));
+            rebase.setStatus(BalanceRebaseStatus.PENDING);
+            rebase.setAvailableAt(LocalDateTime.now().plus(backoff));
+            balanceRebaseRepository.save(rebase);
+            retried.increment();
+            log.warn("Balance rebase {} attempt {} failed, retrying in {} ms: {}", rebaseId, attempts,
+                    backoff.toMillis(), error.getMessage());
+        });
+    }
+
+    private void runWorker(String worker) {
+        long pollMillis = transactionConfig.getRebasePollInterval().toMillis();
+        while (running) {
+            try {
+                if (!processNext(worker)) {
+                    signal.tryAcquire(pollMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                // Database unavailable or similar, don't spin
+                log.error("Balance rebase worker failed: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static BalanceRebaseDTO toDTO(BalanceRebase rebase) {
+        return new BalanceRebaseDTO(
+                rebase.getId(),
+                rebase.getKontoId(),
+                rebase.getStatus(),
+                rebase.getRowsTotal(),
+                rebase.getRowsRebased(),
+                rebase.getRowsChanged(),
+                rebase.getAttempts(),
+                rebase.getLastError(),
+                rebase.getCreatedAt(),
+                rebase.getStartedAt(),
+                rebase.getFinishedAt());
+    }
+
+    // Result of one chunk
+    record Chunk(long rebased, long changed, LocalDateTime lastTimestamp, UUID lastId) {
+    }
+
+    private static final RowMapper<Chunk> CHUNK_ROW_MAPPER = (rs, rowNum) -> new Chunk(
+            rs.getLong("rebased"),
+            rs.getLong("changed"),
+            rs.getTimestamp("timestamp").toLocalDateTime(),
+            rs.getObject("id", UUID.class));
+}
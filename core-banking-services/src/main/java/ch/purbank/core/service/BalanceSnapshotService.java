@@ -0,0 +1,176 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.BalanceSnapshotConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.KontoBalanceSnapshot;
+import ch.purbank.core.dto.BalanceSnapshotBackfillDTO;
+import ch.purbank.core.dto.BalanceSnapshotDTO;
+import ch.purbank.core.repository.KontoBalanceSnapshotRepository;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-of-day balance snapshots: one row per active konto and day in konto_balance_snapshots, so the balance of a
+ * konto on a past day is a primary key lookup instead of a scan of its transactions.
+ *
+ * The nightly run writes the day's snapshots in one statement after the interest calculation (see InterestScheduler).
+ * Past days are filled in by the backfill, which works through the kontos in chunks of consecutive ids, in parallel.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceSnapshotService {
+
+    private final KontoBalanceSnapshotRepository snapshotRepository;
+    private final KontoRepository kontoRepository;
+    private final KontoMemberRepository kontoMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final BalanceSnapshotConfig snapshotConfig;
+    private final TransactionArchiveService transactionArchiveService;
+    private final KontoChunkRunner kontoChunkRunner;
+
+    // Snapshots of the kontos with ids in [?, ?] for the days from ? to ?. Walking back from today, the balance at
+    // the end of a day is the current balance minus everything posted on the later days: daily sums per konto
+    // (through idx_transaction_konto_timestamp), summed up from the newest day with a window function.
+    // Days before a konto was opened or after it was closed get no row.
+    private static final String BACKFILL_CHUNK_SQL =
+            "WITH kontos AS (SELECT id, balance, currency, created_at, closed_at FROM konten WHERE id BETWEEN ? AND ?), " +
+            "daily AS (SELECT t.konto_id, CAST(t.timestamp AS date) AS day, SUM(t.amount) AS amount FROM transactions t " +
+            "  WHERE t.konto_id BETWEEN ? AND ? AND t.timestamp >= ? GROUP BY t.konto_id, CAST(t.timestamp AS date)), " +
+            "days AS (SELECT k.id AS konto_id, CAST(d AS date) AS day FROM kontos k " +
+            "  CROSS JOIN generate_series(CAST(? AS date), CURRENT_DATE, interval '1 day') d), " +
+            "later AS (SELECT d.konto_id, d.day, COALESCE(SUM(x.amount) OVER (PARTITION BY d.konto_id ORDER BY d.day DESC " +
+            "  ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING), 0) AS amount " +
+            "  FROM days d LEFT JOIN daily x ON x.konto_id = d.konto_id AND x.day = d.day) " +
+            "INSERT INTO konto_balance_snapshots (konto_id, snapshot_date, balance, currency, created_at) " +
+            "SELECT k.id, l.day, k.balance - l.amount, k.currency, LOCALTIMESTAMP FROM later l JOIN kontos k ON k.id = l.konto_id " +
+            "WHERE l.day <= ? AND CAST(k.created_at AS date) <= l.day AND (k.closed_at IS NULL OR CAST(k.closed_at AS date) > l.day) " +
+            "ON CONFLICT (konto_id, snapshot_date) DO UPDATE SET balance = EXCLUDED.balance, " +
+            "currency = EXCLUDED.currency, created_at = EXCLUDED.created_at";
+
+    /**
+     * Writes the end-of-day snapshot of every active konto for the given day. Returns the number of snapshots.
+     */
+    @Transactional
+    public int snapshotEndOfDay(LocalDate date) {
+        long startNanos = System.nanoTime();
+        int snapshots = snapshotRepository.snapshotActiveKontos(date, date.plusDays(1).atStartOfDay());
+        log.info("Wrote {} balance snapshots for {} in {} ms", snapshots, date, (System.nanoTime() - startNanos) / 1_000_000);
+        return snapshots;
+    }
+
+    /**
+     * Balance of the konto at the end of the given day. Days without a snapshot (not backfilled yet) are computed
+     * from the transactions posted since.
+     */
+    @Transactional(readOnly = true)
+    public BalanceSnapshotDTO getBalanceAt(UUID kontoId, UUID userId, LocalDate date) {
+        if (!kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)) {
+            throw new IllegalArgumentException("User is not a member of this konto");
+        }
+        return getBalanceAtAdmin(kontoId, date);
+    }
+
+    @Transactional(readOnly = true)
+    public BalanceSnapshotDTO getBalanceAtAdmin(UUID kontoId, LocalDate date) {
+        if (!date.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Date must be in the past");
+        }
+        return snapshotRepository.findById(new KontoBalanceSnapshot.Key(kontoId, date))
+                .map(s -> new BalanceSnapshotDTO(s.getKontoId(), s.getSnapshotDate(), s.getBalance(), s.getCurrency()))
+                .orElseGet(() -> computeBalanceAt(kontoId, date));
+    }
+
+    private BalanceSnapshotDTO computeBalanceAt(UUID kontoId, LocalDate date) {
+        Konto konto = kontoRepository.findById(kontoId)
+                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+        if (konto.getCreatedAt() != null && konto.getCreatedAt().toLocalDate().isAfter(date)) {
+            throw new IllegalArgumentException("Konto did not exist on " + date);
+        }
+        requireInHotWindow(date);
+        BigDecimal postedSince = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE konto_id = ? AND timestamp >= ?",
+                BigDecimal.class, kontoId, date.plusDays(1).atStartOfDay());
+        return new BalanceSnapshotDTO(kontoId, date, konto.getBalance().subtract(postedSince), konto.getCurrency());
+    }
+
+    // Balances are computed back from today, which needs every transaction after the day still in the database
+    private void requireInHotWindow(LocalDate date) {
+        LocalDate hotWindowStart = transactionArchiveService.hotWindowStart();
+        if (hotWindowStart != null && date.isBefore(hotWindowStart.minusDays(1))) {
+            throw new IllegalArgumentException("Transactions before " + hotWindowStart + " are archived, balances can't be computed for " + date);
+        }
+    }
+
+    /**
+     * Snapshots of all kontos on one day, e.g. for month-end statements, ordered by konto id. Pass the konto id of
+     * the last snapshot to get the next page.
+     */
+    @Transactional(readOnly = true)
+    public List<BalanceSnapshotDTO> getSnapshotsOn(LocalDate date, UUID afterKontoId, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        Limit pageLimit = Limit.of(limit == null ? snapshotConfig.getListMaxPageSize()
+                : Math.min(limit, snapshotConfig.getListMaxPageSize()));
+        return afterKontoId == null
+                ? snapshotRepository.findFirstDayPage(date, pageLimit)
+                : snapshotRepository.findDayPageAfter(date, afterKontoId, pageLimit);
+    }
+
+    /**
+     * Writes the snapshots of all kontos for the days from..to (inclusive, both in the past). Existing snapshots of
+     * these days are overwritten. Chunks of backfillChunkSize kontos are written in parallel, each in its own
+     * transaction; a failed chunk is logged and counted, running the backfill again fills it in.
+     */
+    public BalanceSnapshotBackfillDTO backfill(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (!to.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Only past days can be backfilled");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= snapshotConfig.getBackfillMaxDays()) {
+            throw new IllegalArgumentException("Backfill covers at most " + snapshotConfig.getBackfillMaxDays() + " days");
+        }
+        requireInHotWindow(from);
+
+        int parallelism = snapshotConfig.getBackfillParallelism();
+        int chunkSize = snapshotConfig.getBackfillChunkSize();
+        log.info("Backfilling balance snapshots from {} to {} (parallelism {}, chunk size {})", from, to, parallelism, chunkSize);
+
+        long startNanos = System.nanoTime();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        AtomicLong snapshots = new AtomicLong();
+        KontoChunkRunner.ChunkRun run = kontoChunkRunner.run("Balance snapshot backfill", chunkSize, parallelism,
+                (firstId, lastId, kontos) -> {
+                    Integer written = transactionTemplate.execute(status -> jdbcTemplate.update(BACKFILL_CHUNK_SQL,
+                            firstId, lastId, firstId, lastId, from.plusDays(1).atStartOfDay(), from, to));
+                    snapshots.addAndGet(written != null ? written : 0);
+                });
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("Backfilled {} balance snapshots from {} to {} in {} ms ({} chunks, {} failed)",
+                snapshots.get(), from, to, durationMillis, run.chunks(), run.failedChunks());
+        return new BalanceSnapshotBackfillDTO(from, to, run.chunks(), run.failedChunks(), snapshots.get(), durationMillis);
+    }
+}
@@ -0,0 +1,254 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.repository.KontoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Resolves IBANs to internal kontos without a database round trip for IBANs seen recently.
+ * Holds kontoId, currency and status per IBAN, including "not an internal IBAN", in an LRU map bounded by
+ * ibanCacheSize. KontoService invalidates an IBAN when the konto is opened or closed; entries older than
+ * ibanCacheTtl are reloaded, which covers kontos opened or closed on other app nodes.
+ *
+ * IBANs not in the cache are first checked against a Bloom filter of all internal IBANs, so IBANs of other
+ * banks mostly never reach the database. The filter is rebuilt at startup and then periodically, kontos opened
+ * on this node are added right away. A konto opened on another node is only known after the next rebuild, so a
+ * negative from resolve is not final: confirm asks the database before a payment fails on it. For kontos opened
+ * before a given time, a reject of a filter read after that time is final and confirm skips the database.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IbanDirectoryService {
+
+    private final KontoRepository kontoRepository;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private Map<String, CachedEntry> cache;
+    // Bumped by every invalidation, loads that started before must not be cached
+    private long generation;
+    private Counter hits;
+    private Counter misses;
+
+    private volatile IbanBloomFilter bloomFilter;
+    // When the kontos of the current filter were read, every konto opened before is in it
+    private LocalDateTime bloomFilterReadAt;
+    // IBANs registered while the filter is rebuilt, added to the new filter before it replaces the old one
+    private Set<String> registeredDuringRebuild;
+    private Counter bloomRejects;
+    private Counter bloomFalsePositives;
+
+    @PostConstruct
+    public void init() {
+        cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+                return size() > paymentConfig.getIbanCacheSize();
+            }
+        };
+        hits = meterRegistry.counter("purbank.iban.cache", "result", "hit");
+        misses = meterRegistry.counter("purbank.iban.cache", "result", "miss");
+        meterRegistry.gauge("purbank.iban.cache.size", this, IbanDirectoryService::size);
+
+        bloomRejects = meterRegistry.counter("purbank.iban.bloom", "result", "reject");
+        bloomFalsePositives = meterRegistry.counter("purbank.iban.bloom", "result", "false_positive");
+        meterRegistry.gauge("purbank.iban.bloom.false.positive.rate", this, IbanDirectoryService::observedFalsePositiveRate);
+        meterRegistry.gauge("purbank.iban.bloom.expected.false.positive.rate", this,
+                d -> d.bloomFilter != null ? d.bloomFilter.expectedFalsePositiveProbability() : Double.NaN);
+    }
+
+    // Runs at startup and then every 10 minutes
+    @Scheduled(initialDelay = 0, fixedRate = 600000)
+    public void rebuildBloomFilter() {
+        synchronized (lock) {
+            registeredDuringRebuild = new HashSet<>();
+        }
+
+        LocalDateTime readAt = LocalDateTime.now();
+        List<String> ibans = kontoRepository.findAllIbans();
+        // Leave room for the kontos opened until the next rebuild
+        IbanBloomFilter filter = new IbanBloomFilter(Math.max(ibans.size() * 2, 10000), paymentConfig.getIbanBloomFalsePositiveRate());
+        ibans.forEach(filter::add);
+
+        synchronized (lock) {
+            registeredDuringRebuild.forEach(filter::add);
+            registeredDuringRebuild = null;
+            bloomFilter = filter;
+            bloomFilterReadAt = readAt;
+        }
+        log.info("IBAN Bloom filter rebuilt with {} IBANs", ibans.size());
+    }
+
+    /**
+     * Registers the IBAN of a newly opened konto. Call before commit, it is registered again after commit
+     * in case a rebuild read the kontos in between.
+     */
+    public void register(String iban) {
+        addToBloomFilter(iban);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addToBloomFilter(iban);
+                }
+            });
+        }
+        invalidate(iban);
+    }
+
+    /**
+     * Returns the konto behind the IBAN, or empty if it is not an IBAN of this bank.
+     */
+    public Optional<IbanEntry> resolve(String iban) {
+        long now = System.nanoTime();
+        long loadGeneration;
+
+        synchronized (lock) {
+            CachedEntry cached = cache.get(iban);
+            if (cached != null && now - cached.loadedAt() < paymentConfig.getIbanCacheTtl().toNanos()) {
+                hits.increment();
+                return Optional.ofNullable(cached.entry());
+            }
+            loadGeneration = generation;
+        }
+
+        IbanBloomFilter filter = bloomFilter;
+        if (filter != null && !filter.mightContain(iban)) {
+            // Definitely not an internal IBAN
+            bloomRejects.increment();
+            return Optional.empty();
+        }
+
+        misses.increment();
+        IbanEntry entry = load(iban, now, loadGeneration);
+        if (entry == null && filter != null) {
+            bloomFalsePositives.increment();
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    /**
+     * Like resolve, but always asks the database. A negative from the cache or the Bloom filter of this node may be
+     * stale for a konto just opened on another node, so call this before failing a payment for good.
+     */
+    public Optional<IbanEntry> confirm(String iban) {
+        long now = System.nanoTime();
+        long loadGeneration;
+        synchronized (lock) {
+            loadGeneration = generation;
+        }
+
+        IbanEntry entry = load(iban, now, loadGeneration);
+        if (entry != null) {
+            // Opened on another node since the last rebuild
+            addToBloomFilter(iban);
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    /**
+     * Like confirm, for a konto that must have been opened before the given time. If the current Bloom filter was read
+     * after that time and rejects the IBAN, it is not an IBAN of this bank and the database is not asked.
+     */
+    public Optional<IbanEntry> confirm(String iban, LocalDateTime openedBefore) {
+        IbanBloomFilter filter;
+        LocalDateTime readAt;
+        synchronized (lock) {
+            filter = bloomFilter;
+            readAt = bloomFilterReadAt;
+        }
+        if (filter != null && !readAt.isBefore(openedBefore) && !filter.mightContain(iban)) {
+            return Optional.empty();
+        }
+        return confirm(iban);
+    }
+
+    private IbanEntry load(String iban, long now, long loadGeneration) {
+        IbanEntry entry = kontoRepository.findIbanRefByIban(iban)
+                .map(ref -> new IbanEntry(ref.getId(), ref.getCurrency(), ref.getStatus()))
+                .orElse(null);
+
+        synchronized (lock) {
+            if (generation == loadGeneration) {
+                cache.put(iban, new CachedEntry(entry, now));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Drops the IBAN from the cache. Inside a transaction it is dropped again after commit,
+     * lookups in between still see the old state in the database and may have cached it.
+     */
+    public void invalidate(String iban) {
+        evict(iban);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(iban);
+                }
+            });
+        }
+        log.debug("IBAN {} invalidated in directory cache", iban);
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return cache.size();
+        }
+    }
+
+    // Share of non-internal IBANs the filter let through to the database
+    private double observedFalsePositiveRate() {
+        double falsePositives = bloomFalsePositives.count();
+        double negatives = falsePositives + bloomRejects.count();
+        return negatives > 0 ? falsePositives / negatives : 0.0;
+    }
+
+    private void addToBloomFilter(String iban) {
+        synchronized (lock) {
+            if (bloomFilter != null) {
+                bloomFilter.add(iban);
+            }
+            if (registeredDuringRebuild != null) {
+                registeredDuringRebuild.add(iban);
+            }
+        }
+    }
+
+    private void evict(String iban) {
+        synchronized (lock) {
+            cache.remove(iban);
+            generation++;
+        }
+    }
+
+    public record IbanEntry(UUID kontoId, Currency currency, KontoStatus status) {
+    }
+
+    private record CachedEntry(IbanEntry entry, long loadedAt) {
+    }
+}
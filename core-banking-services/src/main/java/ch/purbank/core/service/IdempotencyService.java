@@ -0,0 +1,165 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.IdempotencyRecord;
+import ch.purbank.core.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates retried requests sent with an Idempotency-Key header.
+ * The first request runs the action and stores its result together with a hash of the request body, in the same
+ * transaction as the action. A retry with the same key and body gets the stored result without running the
+ * action again. Recent keys are held in an LRU cache bounded by idempotencyCacheSize, so most retries never reach
+ * the database; the idempotency_records table covers retries that land on another app node or after eviction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private Map<String, CachedResult> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                return size() > paymentConfig.getIdempotencyCacheSize();
+            }
+        };
+        meterRegistry.gauge("purbank.idempotency.cache.size", this, IdempotencyService::size);
+    }
+
+    /**
+     * Runs the action once per user and idempotency key and returns its result, or the result of the first
+     * run for a retry. The action joins the transaction the result is stored in.
+     *
+     * @throws IllegalArgumentException if the key was already used for a different request
+     */
+    public String execute(UUID userId, String idempotencyKey, Object request, Supplier<String> action) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String requestHash = hash(request);
+        String cacheKey = userId + ":" + idempotencyKey;
+
+        synchronized (lock) {
+            CachedResult cached = cache.get(cacheKey);
+            if (cached != null && LocalDateTime.now().isBefore(cached.expiresAt())) {
+                return replay(cached.requestHash(), cached.response(), requestHash, "cache_hit");
+            }
+        }
+
+        Optional<IdempotencyRecord> stored = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey);
+        if (stored.isPresent() && !stored.get().isExpired()) {
+            remember(cacheKey, stored.get());
+            return replay(stored.get().getRequestHash(), stored.get().getResponse(), requestHash, "database_hit");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .userId(userId)
+                .idempotencyKey(idempotencyKey)
+                .requestHash(requestHash)
+                .createdAt(now)
+                .expiresAt(now.plus(paymentConfig.getIdempotencyTtl()))
+                .build();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // An expired record still holds the unique key
+                stored.ifPresent(expired -> {
+                    idempotencyRecordRepository.delete(expired);
+                    idempotencyRecordRepository.flush();
+                });
+                record.setResponse(action.get());
+                // Flush now, a concurrent request with the same key fails here and rolls back its action
+                idempotencyRecordRepository.saveAndFlush(record);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race against a concurrent request with the same key, return its result
+            IdempotencyRecord winner = idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                    .orElseThrow(() -> e);
+            remember(cacheKey, winner);
+            return replay(winner.getRequestHash(), winner.getResponse(), requestHash, "concurrent_hit");
+        }
+
+        remember(cacheKey, record);
+        meterRegistry.counter("purbank.idempotency", "result", "executed").increment();
+        return record.getResponse();
+    }
+
+    // Runs every hour
+    @Scheduled(fixedRate = 3600000)
+    public void cleanupExpiredRecords() {
+        int deleted = idempotencyRecordRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            log.info("Deleted {} expired idempotency records", deleted);
+        }
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return cache.size();
+        }
+    }
+
+    private String replay(String storedHash, String response, String requestHash, String result) {
+        if (!storedHash.equals(requestHash)) {
+            meterRegistry.counter("purbank.idempotency", "result", "conflict").increment();
+            throw new IllegalArgumentException("Idempotency-Key was already used for a different request");
+        }
+        meterRegistry.counter("purbank.idempotency", "result", result).increment();
+        return response;
+    }
+
+    private void remember(String cacheKey, IdempotencyRecord record) {
+        synchronized (lock) {
+            cache.put(cacheKey, new CachedResult(record.getRequestHash(), record.getResponse(), record.getExpiresAt()));
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] body = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not hash request for idempotency check", e);
+        }
+    }
+
+    private record CachedResult(String requestHash, String response, LocalDateTime expiresAt) {
+    }
+}
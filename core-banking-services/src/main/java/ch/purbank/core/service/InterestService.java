@@ -26,15 +26,16 @@ public class InterestService {
     private final KontoRepository kontoRepository;
     private final TransactionRepository transactionRepository;
     private final AuditLogService auditLogService;
+    private final KontoPostingService kontoPostingService;
+    private final TransactionRollupService transactionRollupService;
 
     /**
-     * Calculates and accrues daily interest for all active konten.
+     * Calculates and accrues daily interest for all active konten for the given day.
      * Formula: daily_interest = balance × (annual_rate / 365)
-     * This should be run nightly.
+     * This should be run nightly. A run taken over after midnight still passes the day it was scheduled for.
      */
     @Transactional
-    public void calculateDailyInterest() {
-        LocalDate today = LocalDate.now();
+    public void calculateDailyInterest(LocalDate today) {
         log.info("Starting daily interest calculation for {}", today);
 
         List<Konto> activeKonten = kontoRepository.findAll().stream()
@@ -108,13 +109,13 @@ public class InterestService {
                 BigDecimal roundedInterest = accruedInterest.setScale(2, RoundingMode.HALF_UP);
 
                 // Add rounded interest to balance
-                konto.addToBalance(roundedInterest);
+                BigDecimal balanceAfter = kontoPostingService.credit(konto.getId(), roundedInterest).getBalanceAfter();
 
                 // Create transaction record
                 Transaction transaction = new Transaction();
                 transaction.setKonto(konto);
                 transaction.setAmount(roundedInterest);
-                transaction.setBalanceAfter(konto.getBalance());
+                transaction.setBalanceAfter(balanceAfter);
                 transaction.setTransactionType(TransactionType.INTEREST);
                 transaction.setCurrency(konto.getCurrency());
                 transaction.setMessage(String.format("Quarterly interest at %.2f%% rate",
@@ -122,6 +123,7 @@ public class InterestService {
                 transaction.setIban(konto.getIban());
 
                 transactionRepository.save(transaction);
+                transactionRollupService.record(transaction);
 
                 // Reset accrued interest
                 konto.setAccruedInterest(BigDecimal.ZERO);
@@ -131,7 +133,7 @@ public class InterestService {
                 processedCount++;
 
                 log.info("Konto {}: Paid interest {} (rounded from {}), new balance {}",
-                        konto.getId(), roundedInterest, accruedInterest, konto.getBalance());
+                        konto.getId(), roundedInterest, accruedInterest, balanceAfter);
             }
         }
 
@@ -0,0 +1,149 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.JobConfig;
+import ch.purbank.core.domain.JobLease;
+import ch.purbank.core.repository.JobLeaseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Runs scheduled jobs on exactly one app node. Every node triggers its jobs as before, but a run only starts on the
+ * node that gets the job's lease in job_leases, the others skip it. A run with a run key (e.g. the date of a nightly
+ * job) that completed is not started again, so a node whose trigger fires a bit later doesn't run it twice.
+ *
+ * While a job runs its node extends the lease with heartbeats. If the node dies the lease expires, and another node
+ * that has the job registered takes the run over with the same run key. A run with a run key that fails is started
+ * again with the same run key after the retry delay, on any node that has the job registered. Jobs must therefore be
+ * safe to run again after an aborted or failed run, e.g. by working on what is still PENDING.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class JobCoordinator {
+
+    private final JobLeaseRepository jobLeaseRepository;
+    private final JobConfig jobConfig;
+    private final MeterRegistry meterRegistry;
+
+    // Identifies this node as lease owner
+    @Getter
+    private final String nodeId = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    // Jobs this node can run, also used to take over runs of dead nodes
+    private final Map<String, Consumer<String>> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a job. Call at startup, so the node can take over runs even before its own trigger fired.
+     * The task gets the run key, a run taken over after midnight still belongs to the day it was started for.
+     */
+    public void register(String job, Consumer<String> task) {
+        if (jobs.putIfAbsent(job, task) != null) {
+            throw new IllegalStateException("Job " + job + " is already registered");
+        }
+    }
+
+    /**
+     * Runs the job if this node gets its lease. Returns false if it runs on another node or the run already completed.
+     *
+     * @param runKey identifies the run, e.g. the date of a nightly job; null if the job may run any time
+     */
+    public boolean run(String job, String runKey) {
+        Consumer<String> task = jobs.get(job);
+        if (task == null) {
+            throw new IllegalStateException("Job " + job + " is not registered");
+        }
+        if (jobLeaseRepository.acquire(job, nodeId, runKey, leaseTtlSeconds()) == 0) {
+            log.debug("Job {} ({}) skipped, it runs or ran on another node", job, runKey);
+            meterRegistry.counter("purbank.jobs.runs", "job", job, "result", "skipped").increment();
+            return false;
+        }
+        execute(job, runKey, task);
+        return true;
+    }
+
+    // Every minute: take over runs whose node stopped sending heartbeats and retry failed runs
+    @Scheduled(fixedDelay = 60000)
+    public void resumeJobs() {
+        for (JobLease lease : jobLeaseRepository.findToResume()) {
+            Consumer<String> task = jobs.get(lease.getName());
+            if (task == null || jobLeaseRepository.acquire(lease.getName(), nodeId, lease.getRunKey(), leaseTtlSeconds()) == 0) {
+                continue;
+            }
+            if (lease.getOwner() != null) {
+                log.warn("Taking over job {} ({}) from node {}, last heartbeat {}",
+                        lease.getName(), lease.getRunKey(), lease.getOwner(), lease.getHeartbeatAt());
+                meterRegistry.counter("purbank.jobs.takeovers", "job", lease.getName()).increment();
+            } else {
+                log.warn("Retrying job {} ({}), the run failed at {}", lease.getName(), lease.getRunKey(), lease.getFinishedAt());
+                meterRegistry.counter("purbank.jobs.retries", "job", lease.getName()).increment();
+            }
+            try {
+                execute(lease.getName(), lease.getRunKey(), task);
+            } catch (Exception e) {
+                // Already logged and released for the next retry, the other runs still get their turn
+                log.error("Job {} ({}) failed again", lease.getName(), lease.getRunKey(), e);
+            }
+        }
+    }
+
+    private void execute(String job, String runKey, Consumer<String> task) {
+        log.info("Job {} ({}) started on node {}", job, runKey, nodeId);
+        long startNanos = System.nanoTime();
+        Thread heartbeat = Thread.ofVirtual().name("job-heartbeat-" + job).start(() -> sendHeartbeats(job));
+
+        boolean completed = false;
+        try {
+            task.accept(runKey);
+            completed = true;
+        } finally {
+            heartbeat.interrupt();
+            // A failed run is released without completing, resumeJobs starts it again after the retry delay
+            jobLeaseRepository.release(job, nodeId, completed, completed ? 0 : jobConfig.getRetryDelay().toSeconds());
+            meterRegistry.counter("purbank.jobs.runs", "job", job, "result", completed ? "completed" : "failed").increment();
+            log.info("Job {} ({}) {} in {} ms", job, runKey, completed ? "completed" : "failed",
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        }
+    }
+
+    private void sendHeartbeats(String job) {
+        while (true) {
+            try {
+                Thread.sleep(jobConfig.getHeartbeatInterval());
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (jobLeaseRepository.heartbeat(job, nodeId, leaseTtlSeconds()) == 0) {
+                    // Another node may already run the job as well
+                    log.error("Lease of job {} lost by node {} while the job is still running", job, nodeId);
+                    return;
+                }
+            } catch (Exception e) {
+                log.warn("Heartbeat of job {} failed: {}", job, e.getMessage());
+            }
+        }
+    }
+
+    private long leaseTtlSeconds() {
+        return jobConfig.getLeaseTtl().toSeconds();
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
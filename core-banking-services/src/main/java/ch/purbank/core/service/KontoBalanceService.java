@@ -0,0 +1,164 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PostingConfig;
+import ch.purbank.core.dto.KontoContentionDTO;
+import ch.purbank.core.repository.KontoRepository;
+import ch.purbank.core.repository.KontoRepository.BalanceSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Optimistic balance updates without row locks held across reads.
+ * The balance and version are read, the caller plans the change against that balance, and the change is written
+ * with a conditional UPDATE that only matches if the version is still the same. If another writer (e.g. another app
+ * node) got in between, the change is planned again against the new balance, up to balanceUpdateAttempts times.
+ * Conflicts and retries are counted per konto, so hot kontos can be found. The counts cover the current and the
+ * previous hour and at most contentionMaxKonten kontos per hour; a konto that only starts conflicting once an hour
+ * is full is counted in purbank.konto.balance.contention.untracked instead.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class KontoBalanceService {
+
+    private final KontoRepository kontoRepository;
+    private final PostingConfig postingConfig;
+    private final MeterRegistry meterRegistry;
+
+    private volatile Map<UUID, Contention> contentionByKonto = new ConcurrentHashMap<>();
+    private volatile Map<UUID, Contention> previousContentionByKonto = Map.of();
+
+    /**
+     * Plans a change against the current balance and writes it. The planner may be called more than once
+     * and must not have side effects. Runs in the caller's transaction if there is one.
+     *
+     * @return the result of the plan that was written
+     * @throws IllegalStateException if the funds check of the UPDATE rejected a debit the planner let through
+     * @throws OptimisticLockingFailureException if the konto kept changing for all attempts
+     */
+    public <T> T update(UUID kontoId, Function<BigDecimal, BalanceChange<T>> planner) {
+        int maxAttempts = postingConfig.getBalanceUpdateAttempts();
+
+        for (int attempt = 1; ; attempt++) {
+            BalanceSnapshot snapshot = readSnapshot(kontoId);
+            BalanceChange<T> change = planner.apply(snapshot.getBalance());
+            if (change.delta().signum() == 0) {
+                return change.result();
+            }
+
+            int updated = kontoRepository.updateBalanceIfUnchanged(kontoId, change.delta(), snapshot.getVersion(),
+                    change.allowOverdraft());
+            if (updated == 1) {
+                return change.result();
+            }
+
+            if (Objects.equals(readSnapshot(kontoId).getVersion(), snapshot.getVersion())) {
+                // Nobody else wrote the konto, so the funds check rejected the update
+                throw new IllegalStateException("Insufficient funds on konto " + kontoId);
+            }
+
+            Contention contention = contentionOf(kontoId);
+            contention.conflicts.increment();
+            meterRegistry.counter("purbank.konto.balance.conflicts").increment();
+
+            if (attempt >= maxAttempts) {
+                meterRegistry.counter("purbank.konto.balance.exhausted").increment();
+                throw new OptimisticLockingFailureException(
+                        "Balance of konto " + kontoId + " still changing after " + attempt + " attempts");
+            }
+
+            contention.retries.increment();
+            meterRegistry.counter("purbank.konto.balance.retries").increment();
+            log.debug("Balance of konto {} changed concurrently, retry {}/{}", kontoId, attempt, maxAttempts - 1);
+            backoff(kontoId, attempt);
+        }
+    }
+
+    /**
+     * Adds delta to the balance, without a funds check. Returns the new balance.
+     */
+    public BigDecimal adjust(UUID kontoId, BigDecimal delta) {
+        return update(kontoId, balance -> new BalanceChange<>(delta, true, balance.add(delta)));
+    }
+
+    /**
+     * Kontos with the most conflicting balance updates in the current and the previous hour.
+     */
+    public List<KontoContentionDTO> getMostContendedKonten(int limit) {
+        Map<UUID, KontoContentionDTO> byKonto = new HashMap<>();
+        for (Map<UUID, Contention> window : List.of(previousContentionByKonto, contentionByKonto)) {
+            window.forEach((kontoId, c) -> byKonto.merge(kontoId,
+                    new KontoContentionDTO(kontoId, c.conflicts.sum(), c.retries.sum()),
+                    (a, b) -> new KontoContentionDTO(kontoId, a.getConflicts() + b.getConflicts(), a.getRetries() + b.getRetries())));
+        }
+        return byKonto.values().stream()
+                .sorted(Comparator.comparingLong(KontoContentionDTO::getConflicts).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    // Runs every hour, counts older than the previous hour are dropped
+    @Scheduled(fixedRate = 3600000)
+    public void rotateContention() {
+        previousContentionByKonto = contentionByKonto;
+        contentionByKonto = new ConcurrentHashMap<>();
+    }
+
+    private Contention contentionOf(UUID kontoId) {
+        Map<UUID, Contention> window = contentionByKonto;
+        Contention contention = window.get(kontoId);
+        if (contention != null) {
+            return contention;
+        }
+        if (window.size() >= postingConfig.getContentionMaxKonten()) {
+            meterRegistry.counter("purbank.konto.balance.contention.untracked").increment();
+            // Counted, but not kept
+            return new Contention();
+        }
+        return window.computeIfAbsent(kontoId, k -> new Contention());
+    }
+
+    private BalanceSnapshot readSnapshot(UUID kontoId) {
+        return kontoRepository.findBalanceSnapshotById(kontoId)
+                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+    }
+
+    private void backoff(UUID kontoId, int attempt) {
+        long baseMillis = postingConfig.getBalanceRetryBackoff().toMillis() << (attempt - 1);
+        try {
+            // Jitter, so two nodes that just collided don't collide again
+            Thread.sleep(baseMillis + ThreadLocalRandom.current().nextLong(baseMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OptimisticLockingFailureException("Interrupted while retrying balance update of konto " + kontoId);
+        }
+    }
+
+    /**
+     * A planned balance change: the delta to write and what to return once it is written.
+     * allowOverdraft skips the funds check of the UPDATE, for credits, reversals and admin corrections.
+     */
+    public record BalanceChange<T>(BigDecimal delta, boolean allowOverdraft, T result) {
+    }
+
+    private static class Contention {
+        private final LongAdder conflicts = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+    }
+}
@@ -0,0 +1,82 @@
+package ch.purbank.core.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Works through all kontos in chunks of consecutive ids, a number of chunks at a time, for the jobs that touch every
+ * konto (balance snapshot backfill, rollup rebuild, reconciliation). The next chunk bounds are read while the
+ * previous chunks run, so the kontos are never all loaded at once. Every running chunk holds one pooled connection,
+ * ConnectionPoolCheck keeps the parallelism of these jobs below the pool size.
+ *
+ * A chunk that throws is logged and counted, the others keep running.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class KontoChunkRunner {
+
+    private static final String CHUNK_BOUNDS_SQL = "SELECT id FROM konten WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String FIRST_CHUNK_BOUNDS_SQL = "SELECT id FROM konten ORDER BY id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Runs the chunk on all kontos and returns once every chunk has finished.
+     *
+     * @param job name of the job for the log
+     */
+    public ChunkRun run(String job, int chunkSize, int parallelism, Chunk chunk) {
+        AtomicInteger failedChunks = new AtomicInteger();
+        int chunks = 0;
+        // Bounds running chunks, the id loop blocks on it
+        Semaphore permits = new Semaphore(parallelism);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<UUID> ids = jdbcTemplate.queryForList(FIRST_CHUNK_BOUNDS_SQL, UUID.class, chunkSize);
+            while (!ids.isEmpty()) {
+                UUID firstId = ids.getFirst();
+                UUID lastId = ids.getLast();
+                int kontos = ids.size();
+                permits.acquireUninterruptibly();
+                chunks++;
+                executor.execute(() -> {
+                    try {
+                        chunk.run(firstId, lastId, kontos);
+                    } catch (Exception e) {
+                        log.error("{} of kontos {} to {} failed", job, firstId, lastId, e);
+                        failedChunks.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+                ids = jdbcTemplate.queryForList(CHUNK_BOUNDS_SQL, UUID.class, lastId, chunkSize);
+            }
+            // All permits free again means every chunk has finished
+            permits.acquireUninterruptibly(parallelism);
+        }
+        return new ChunkRun(chunks, failedChunks.get());
+    }
+
+    @FunctionalInterface
+    public interface Chunk {
+        // The kontos with ids in [firstId, lastId], kontos of them
+        void run(UUID firstId, UUID lastId, int kontos);
+    }
+
+    public record ChunkRun(int chunks, int failedChunks) {
+    }
+}
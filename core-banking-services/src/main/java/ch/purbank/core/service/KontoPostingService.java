@@ -0,0 +1,184 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.repository.KontoRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Debits and credits konto balances in the caller's transaction.
+ * The balance change commits or rolls back together with the Transaction rows and the payment status written in the
+ * same transaction, so a crash can never leave a konto debited without its transaction. The UPDATE is optimistic
+ * (see KontoBalanceService): concurrent writers of the same konto, on this or another app node, are detected and the
+ * posting is planned again against the new balance. The funds check happens at the time of writing.
+ *
+ * Postings to the same konto within one transaction are batched. The first one is written right away, its UPDATE
+ * holds the konto row lock until the caller commits, so nobody else can change the balance in between. The later
+ * ones are checked against the balance known in memory and written together with one UPDATE before commit, e.g. a
+ * settlement partition of one konto costs two UPDATEs instead of one per payment. Kontos of different transactions
+ * are written fully in parallel. Until commit, the balance read from the database in the same transaction doesn't
+ * include the batched postings, use the balance returned by the posting.
+ *
+ * The UPDATE holds the konto row lock until the caller commits, so callers should keep their transactions short.
+ * A posting that can't be written throws (see KontoBalanceService.update) and marks the caller's transaction
+ * rollback-only, on purpose: the caller can't keep anything written in it and must let it roll back and retry.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class KontoPostingService {
+
+    private final KontoBalanceService kontoBalanceService;
+    private final KontoRepository kontoRepository;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Debits the konto if it holds enough funds. A rejected debit leaves the balance unchanged.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public PostingResult debit(UUID kontoId, BigDecimal amount) {
+        PostingResult result;
+        Batch batch = batchOf(kontoId);
+        if (batch != null) {
+            result = batch.post(amount.negate(), false);
+        } else {
+            result = kontoBalanceService.update(kontoId, balance -> {
+                BigDecimal after = balance.subtract(amount);
+                if (after.signum() < 0) {
+                    return new KontoBalanceService.BalanceChange<>(BigDecimal.ZERO, false, new PostingResult(false, balance));
+                }
+                return new KontoBalanceService.BalanceChange<>(amount.negate(), false, new PostingResult(true, after));
+            });
+            startBatch(kontoId, amount, result);
+        }
+        if (!result.isAccepted()) {
+            meterRegistry.counter("purbank.postings.rejected").increment();
+        }
+        return result;
+    }
+
+    /**
+     * Credits the konto unconditionally.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public PostingResult credit(UUID kontoId, BigDecimal amount) {
+        Batch batch = batchOf(kontoId);
+        if (batch != null) {
+            return batch.post(amount, true);
+        }
+        PostingResult result = kontoBalanceService.update(kontoId,
+                balance -> new KontoBalanceService.BalanceChange<>(amount, true, new PostingResult(true, balance.add(amount))));
+        startBatch(kontoId, amount, result);
+        return result;
+    }
+
+    private Batch batchOf(UUID kontoId) {
+        Batches batches = batches();
+        return batches != null ? batches.byKonto.get(kontoId) : null;
+    }
+
+    // Only a written posting locked the row, a rejected debit or a zero amount leaves nothing to batch onto
+    private void startBatch(UUID kontoId, BigDecimal amount, PostingResult result) {
+        Batches batches = batches();
+        if (batches == null || !result.isAccepted() || amount.signum() == 0) {
+            return;
+        }
+        batches.byKonto.put(kontoId, new Batch(result.getBalanceAfter()));
+    }
+
+    // Batches of the running transaction, null without transaction synchronization (then every posting is written)
+    private Batches batches() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Batches batches = (Batches) TransactionSynchronizationManager.getResource(this);
+        if (batches == null) {
+            batches = new Batches();
+            TransactionSynchronizationManager.bindResource(this, batches);
+            TransactionSynchronizationManager.registerSynchronization(batches);
+        }
+        return batches;
+    }
+
+    private class Batches implements TransactionSynchronization {
+
+        private final Map<UUID, Batch> byKonto = new LinkedHashMap<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            for (Map.Entry<UUID, Batch> entry : byKonto.entrySet()) {
+                Batch batch = entry.getValue();
+                if (batch.pending.signum() == 0) {
+                    continue;
+                }
+                if (kontoRepository.addToLockedBalance(entry.getKey(), batch.pending) != 1) {
+                    throw new IllegalStateException("Batched postings of konto " + entry.getKey() + " could not be written");
+                }
+                meterRegistry.counter("purbank.postings.batched").increment(batch.postings);
+                batch.pending = BigDecimal.ZERO;
+                batch.postings = 0;
+            }
+        }
+
+        // A transaction started inside (REQUIRES_NEW) gets batches of its own
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(KontoPostingService.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(KontoPostingService.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            // On rollback the pending postings are dropped with the first UPDATE they were batched onto
+            TransactionSynchronizationManager.unbindResourceIfPossible(KontoPostingService.this);
+        }
+    }
+
+    // Postings of one konto after the first, not written yet
+    private static class Batch {
+
+        // Balance including the pending postings
+        private BigDecimal balance;
+        private BigDecimal pending = BigDecimal.ZERO;
+        private int postings;
+
+        private Batch(BigDecimal balance) {
+            this.balance = balance;
+        }
+
+        private PostingResult post(BigDecimal delta, boolean allowOverdraft) {
+            BigDecimal after = balance.add(delta);
+            if (!allowOverdraft && delta.signum() < 0 && after.signum() < 0) {
+                return new PostingResult(false, balance);
+            }
+            balance = after;
+            pending = pending.add(delta);
+            postings++;
+            return new PostingResult(true, after);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class PostingResult {
+        private final boolean accepted;
+        // Balance after this posting, or the unchanged balance if the posting was rejected
+        private final BigDecimal balanceAfter;
+    }
+}
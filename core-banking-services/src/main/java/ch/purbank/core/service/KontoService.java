@@ -8,21 +8,19 @@ import ch.purbank.core.domain.enums.KontoStatus;
 import ch.purbank.core.domain.enums.MemberRole;
 import ch.purbank.core.domain.enums.PaymentStatus;
 import ch.purbank.core.domain.enums.PendingPaymentStatus;
+import ch.purbank.core.domain.enums.RecurringPaymentStatus;
 import ch.purbank.core.domain.enums.TransactionType;
 import ch.purbank.core.dto.*;
 import ch.purbank.core.repository.*;
 import ch.purbank.core.security.SecureTokenGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -37,6 +35,11 @@ public class KontoService {
     private final PendingKontoDeleteRepository pendingKontoDeleteRepository;
     private final PendingMemberInviteRepository pendingMemberInviteRepository;
     private final AuditLogService auditLogService;
+    private final KontoBalanceService kontoBalanceService;
+    private final IbanDirectoryService ibanDirectoryService;
+    private final RecurringPaymentRepository recurringPaymentRepository;
+    private final TransactionService transactionService;
+    private final TransactionRollupService transactionRollupService;
 
     private static final int MOBILE_VERIFY_TOKEN_LENGTH = 64;
     private static final int MAX_KONTO_NAME_LENGTH = 100;
@@ -66,6 +69,7 @@ public class KontoService {
         }
 
         konto = kontoRepository.save(konto);
+        ibanDirectoryService.register(konto.getIban());
 
         // Add creator as OWNER
         KontoMember member = new KontoMember();
@@ -103,30 +107,14 @@ public class KontoService {
 
     @Transactional(readOnly = true)
     public List<KontoListItemDTO> getAllKontenForUser(UUID userId, Boolean includeClosed) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        // userId is the authenticated user, only memberships are looked up
+        return kontoMemberRepository.findKontoListItems(userId, listedStatus(includeClosed));
+    }
 
-        List<KontoMember> memberships = kontoMemberRepository.findByUser(user);
-
-        return memberships.stream()
-                .filter(m -> {
-                    // If includeClosed is null or false, show only open accounts
-                    // If includeClosed is true, show only closed accounts
-                    if (includeClosed == null || !includeClosed) {
-                        return m.getKonto().getStatus() == KontoStatus.ACTIVE;
-                    } else {
-                        return m.getKonto().getStatus() == KontoStatus.CLOSED;
-                    }
-                })
-                .map(m -> new KontoListItemDTO(
-                        m.getKonto().getId(),
-                        m.getKonto().getName(),
-                        m.getKonto().getBalance(),
-                        m.getRole(),
-                        m.getKonto().getZinssatz(),
-                        m.getKonto().getIban(),
-                        m.getKonto().getCurrency()))
-                .collect(Collectors.toList());
+    // If includeClosed is null or false, show only open accounts
+    // If includeClosed is true, show only closed accounts
+    private static KontoStatus listedStatus(Boolean includeClosed) {
+        return includeClosed == null || !includeClosed ? KontoStatus.ACTIVE : KontoStatus.CLOSED;
     }
 
     @Transactional(readOnly = true)
@@ -155,40 +143,32 @@ public class KontoService {
 
     @Transactional(readOnly = true)
     public List<TransactionDTO> getTransactions(UUID kontoId, UUID userId, Integer start, Integer end) {
-        Konto konto = kontoRepository.findById(kontoId)
-                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+        // Verify user has access
+        requireMember(kontoId, userId);
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        return transactionRepository.findDTOsByKontoId(kontoId, TransactionService.rangePageable(start, end));
+    }
 
+    @Transactional(readOnly = true)
+    public TransactionPageDTO getTransactionPage(UUID kontoId, UUID userId, String cursor, Integer limit) {
         // Verify user has access
-        if (!kontoMemberRepository.existsByKontoAndUser(konto, user)) {
-            throw new IllegalArgumentException("User is not a member of this konto");
-        }
+        requireMember(kontoId, userId);
 
-        List<Transaction> transactions;
-        if (start != null && end != null) {
-            int size = end - start + 1;
-            Pageable pageable = PageRequest.of(start / size, size);
-            transactions = transactionRepository.findByKontoOrderByTimestampDesc(konto, pageable);
-        } else {
-            // Default: first 50
-            Pageable pageable = PageRequest.of(0, 50);
-            transactions = transactionRepository.findByKontoOrderByTimestampDesc(konto, pageable);
-        }
-
-        return transactions.stream()
-                .map(t -> new TransactionDTO(
-                        t.getId(),
-                        t.getAmount(),
-                        t.getBalanceAfter(),
-                        t.getTimestamp(),
-                        t.getIban(),
-                        t.getTransactionType(),
-                        t.getCurrency(),
-                        t.getMessage(),
-                        t.getNote()))
-                .collect(Collectors.toList());
+        return transactionService.getHistoryPage(kontoId, cursor, limit);
+    }
+
+    // One statement for a member, the konto and the user are only looked up to tell why access was refused
+    private void requireMember(UUID kontoId, UUID userId) {
+        if (kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)) {
+            return;
+        }
+        if (!kontoRepository.existsById(kontoId)) {
+            throw new IllegalArgumentException("Konto not found");
+        }
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("User not found");
+        }
+        throw new IllegalArgumentException("User is not a member of this konto");
     }
 
     @Transactional
@@ -329,9 +309,11 @@ public class KontoService {
             payment.cancel();
             paymentRepository.save(payment);
         }
+        recurringPaymentRepository.cancelActiveByKonto(konto, RecurringPaymentStatus.ACTIVE, RecurringPaymentStatus.CANCELLED);
 
         konto.close();
         kontoRepository.save(konto);
+        ibanDirectoryService.invalidate(konto.getIban());
 
         log.info("Konto {} closed after approval", konto.getId());
 
@@ -481,31 +463,26 @@ public class KontoService {
 
     @Transactional(readOnly = true)
     public List<MemberDTO> getMembers(UUID kontoId, UUID userId) {
-        Konto konto = kontoRepository.findById(kontoId)
-                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
-
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
-
         // Verify user has access (at least VIEWER can see members)
-        if (!kontoMemberRepository.existsByKontoAndUser(konto, user)) {
-            throw new IllegalArgumentException("User is not a member of this konto");
-        }
-
-        List<KontoMember> members = kontoMemberRepository.findByKonto(konto);
+        requireMember(kontoId, userId);
 
-        return members.stream()
-                .map(m -> new MemberDTO(
-                        m.getId(),
-                        m.getUser().getFirstName() + " " + m.getUser().getLastName(),
-                        m.getUser().getEmail(),
-                        m.getRole()))
-                .collect(Collectors.toList());
+        return kontoMemberRepository.findMemberDTOs(kontoId);
     }
 
     @Transactional
     public Transaction createTransaction(UUID kontoId, String iban, BigDecimal amount, String message, String note,
                                          TransactionType transactionType, Currency currency) {
+        return createTransaction(kontoId, iban, amount, message, note, transactionType, currency, null);
+    }
+
+    /**
+     * Creates a transaction with an explicit balanceAfter. Used after a balance was changed through
+     * KontoPostingService, where the loaded Konto still holds the old balance.
+     * If balanceAfter is null, the current konto balance is used.
+     */
+    @Transactional
+    public Transaction createTransaction(UUID kontoId, String iban, BigDecimal amount, String message, String note,
+                                         TransactionType transactionType, Currency currency, BigDecimal balanceAfter) {
         Konto konto = kontoRepository.findById(kontoId)
                 .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
 
@@ -517,13 +494,14 @@ public class KontoService {
         transaction.setKonto(konto);
         transaction.setIban(iban);
         transaction.setAmount(amount);
-        transaction.setBalanceAfter(konto.getBalance());
+        transaction.setBalanceAfter(balanceAfter != null ? balanceAfter : konto.getBalance());
         transaction.setMessage(message);
         transaction.setNote(note);
         transaction.setTransactionType(transactionType);
         transaction.setCurrency(currency);
 
         Transaction saved = transactionRepository.save(transaction);
+        transactionRollupService.record(saved);
 
         // Audit log transaction creation
         auditLogService.logSystem(
@@ -540,30 +518,11 @@ public class KontoService {
 
     @Transactional(readOnly = true)
     public List<AdminKontoListItemDTO> getAllKontenForUserAdmin(UUID userId, Boolean includeClosed) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+        if (!userRepository.existsById(userId)) {
+            throw new IllegalArgumentException("User not found");
+        }
 
-        List<KontoMember> memberships = kontoMemberRepository.findByUser(user);
-
-        return memberships.stream()
-                .filter(m -> {
-                    if (includeClosed == null || !includeClosed) {
-                        return m.getKonto().getStatus() == KontoStatus.ACTIVE;
-                    } else {
-                        return m.getKonto().getStatus() == KontoStatus.CLOSED;
-                    }
-                })
-                .map(m -> new AdminKontoListItemDTO(
-                        m.getKonto().getId(),
-                        m.getKonto().getName(),
-                        m.getKonto().getBalance(),
-                        m.getRole(),
-                        m.getKonto().getZinssatz(),
-                        m.getKonto().getIban(),
-                        m.getKonto().getCurrency(),
-                        m.getKonto().getAccruedInterest(),
-                        m.getKonto().getLastInterestCalcDate()))
-                .collect(Collectors.toList());
+        return kontoMemberRepository.findAdminKontoListItems(userId, listedStatus(includeClosed));
     }
 
     @Transactional(readOnly = true)
@@ -653,11 +612,10 @@ public class KontoService {
         }
 
         if (balanceAdjustment != null && balanceAdjustment.compareTo(BigDecimal.ZERO) != 0) {
-            BigDecimal oldBalance = konto.getBalance();
-            BigDecimal newBalance = oldBalance.add(balanceAdjustment);
+            BigDecimal newBalance = kontoBalanceService.adjust(kontoId, balanceAdjustment);
+            BigDecimal oldBalance = newBalance.subtract(balanceAdjustment);
             auditDetails.append("balance adjusted by ").append(balanceAdjustment)
                     .append(" from ").append(oldBalance).append(" to ").append(newBalance).append("; ");
-            konto.setBalance(newBalance);
             log.info("Admin adjusted konto {} balance by {}, new balance: {}", kontoId, balanceAdjustment, newBalance);
 
             // Audit log balance adjustment
@@ -698,9 +656,11 @@ public class KontoService {
             payment.cancel();
             paymentRepository.save(payment);
         }
+        recurringPaymentRepository.cancelActiveByKonto(konto, RecurringPaymentStatus.ACTIVE, RecurringPaymentStatus.CANCELLED);
 
         konto.close();
         kontoRepository.save(konto);
+        ibanDirectoryService.invalidate(konto.getIban());
 
         log.info("Admin closed konto {}", konto.getId());
 
@@ -715,17 +675,10 @@ public class KontoService {
 
     @Transactional(readOnly = true)
     public List<MemberDTO> getMembersAdmin(UUID kontoId) {
-        Konto konto = kontoRepository.findById(kontoId)
-                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
-
-        List<KontoMember> members = kontoMemberRepository.findByKonto(konto);
+        if (!kontoRepository.existsById(kontoId)) {
+            throw new IllegalArgumentException("Konto not found");
+        }
 
-        return members.stream()
-                .map(m -> new MemberDTO(
-                        m.getId(),
-                        m.getUser().getFirstName() + " " + m.getUser().getLastName(),
-                        m.getUser().getEmail(),
-                        m.getRole()))
-                .collect(Collectors.toList());
+        return kontoMemberRepository.findMemberDTOs(kontoId);
     }
 }
@@ -0,0 +1,225 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.domain.enums.PaymentBatchFormat;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams the payments of a batch file to a consumer, one at a time, so the file is never held in memory.
+ * Values are handed over as raw strings, converting and validating them is up to the caller so every
+ * payment gets its own error.
+ *
+ * CSV: header line with the columns iban, amount, currency, executionDate, message and note (any order,
+ * currency, message and note optional), separated by ';' or ','. Fields may be quoted with '"'.
+ * pain.001: every CdtTrfTxInf is one payment, the execution date and debtor IBAN are taken from its PmtInf.
+ */
+final class PaymentBatchFileParser {
+
+    private PaymentBatchFileParser() {
+    }
+
+    /**
+     * One payment of the file. lineNumber is the line in a CSV file and the position of the transaction in a
+     * pain.001 file. debtorIban is only set for pain.001.
+     */
+    record Line(int lineNumber, String toIban, String amount, String currency, String executionDate,
+                String message, String note, String debtorIban) {
+    }
+
+    static void parse(InputStream in, PaymentBatchFormat format, Consumer<Line> consumer) {
+        switch (format) {
+            case CSV -> parseCsv(in, consumer);
+            case PAIN001 -> parsePain001(in, consumer);
+        }
+    }
+
+    // ===== CSV =====
+
+    private static void parseCsv(InputStream in, Consumer<Line> consumer) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IllegalArgumentException("Batch file is empty");
+            }
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+
+            char separator = header.indexOf(';') >= 0 ? ';' : ',';
+            Map<String, Integer> columns = new HashMap<>();
+            List<String> names = splitCsv(header, separator);
+            for (int i = 0; i < names.size(); i++) {
+                columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String required : List.of("iban", "amount", "executiondate")) {
+                if (!columns.containsKey(required)) {
+                    throw new IllegalArgumentException("CSV header is missing column '" + required + "'");
+                }
+            }
+
+            int lineNumber = 1;
+            String row;
+            while ((row = reader.readLine()) != null) {
+                lineNumber++;
+                if (row.isBlank()) {
+                    continue;
+                }
+                List<String> fields = splitCsv(row, separator);
+                consumer.accept(new Line(
+                        lineNumber,
+                        field(fields, columns.get("iban")),
+                        field(fields, columns.get("amount")),
+                        field(fields, columns.get("currency")),
+                        field(fields, columns.get("executiondate")),
+                        field(fields, columns.get("message")),
+                        field(fields, columns.get("note")),
+                        null));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read batch file", e);
+        }
+    }
+
+    private static String field(List<String> fields, Integer column) {
+        if (column == null || column >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(column).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static List<String> splitCsv(String row, char separator) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    // ===== pain.001 =====
+
+    private static void parsePain001(InputStream in, Consumer<Line> consumer) {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // Never resolve DTDs or external entities of uploaded files
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in);
+            Deque<String> path = new ArrayDeque<>();
+            StringBuilder text = new StringBuilder();
+
+            int position = 0;
+            String executionDate = null;
+            String debtorIban = null;
+            Transaction tx = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    path.push(name);
+                    text.setLength(0);
+                    if (name.equals("PmtInf")) {
+                        executionDate = null;
+                        debtorIban = null;
+                    } else if (name.equals("CdtTrfTxInf")) {
+                        tx = new Transaction();
+                    } else if (name.equals("InstdAmt") && tx != null) {
+                        tx.currency = reader.getAttributeValue(null, "Ccy");
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = path.pop();
+                    String parent = path.peek();
+                    String value = text.toString().trim();
+                    text.setLength(0);
+
+                    if (name.equals("CdtTrfTxInf") && tx != null) {
+                        consumer.accept(new Line(++position, tx.iban, tx.amount, tx.currency, executionDate,
+                                tx.message, tx.endToEndId, debtorIban));
+                        tx = null;
+                    } else if (tx != null) {
+                        if (name.equals("InstdAmt")) {
+                            tx.amount = value;
+                        } else if (name.equals("IBAN") && path.contains("CdtrAcct")) {
+                            tx.iban = value;
+                        } else if (name.equals("Ustrd") && !value.isEmpty()) {
+                            tx.message = tx.message == null ? value : tx.message + " " + value;
+                        } else if (name.equals("EndToEndId") && !value.equals("NOTPROVIDED")) {
+                            tx.endToEndId = value;
+                        }
+                    } else if (name.equals("ReqdExctnDt") && !value.isEmpty()) {
+                        // pain.001.001.03 holds the date directly
+                        executionDate = value;
+                    } else if (name.equals("Dt") && "ReqdExctnDt".equals(parent)) {
+                        // pain.001.001.09 wraps it in Dt or DtTm
+                        executionDate = value;
+                    } else if (name.equals("DtTm") && "ReqdExctnDt".equals(parent)) {
+                        executionDate = value.length() > 10 ? value.substring(0, 10) : value;
+                    } else if (name.equals("IBAN") && path.contains("DbtrAcct")) {
+                        debtorIban = value;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("Invalid pain.001 file: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                    // Nothing left to release
+                }
+            }
+        }
+    }
+
+    private static final class Transaction {
+        String iban;
+        String amount;
+        String currency;
+        String message;
+        String endToEndId;
+    }
+}
@@ -0,0 +1,281 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.PendingPaymentBatch;
+import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.*;
+import ch.purbank.core.dto.PaymentBatchLineResultDTO;
+import ch.purbank.core.dto.PaymentBatchResponseDTO;
+import ch.purbank.core.repository.PendingPaymentBatchLineRepository;
+import ch.purbank.core.repository.PendingPaymentBatchRepository;
+import ch.purbank.core.repository.UserRepository;
+import ch.purbank.core.security.SecureTokenGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk payment submission from pain.001 or CSV files.
+ * The file is streamed, every payment is validated with the same rules as a single payment and staged with
+ * JDBC batch inserts. If every payment is valid the batch waits for one mobile approval covering all of them,
+ * otherwise nothing is kept and the per-line results tell what to fix. Batch payments are always NORMAL
+ * payments, executed by the nightly settlement on their execution date.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentBatchService {
+
+    private static final int MOBILE_VERIFY_TOKEN_LENGTH = 64;
+
+    private static final String INSERT_LINE_SQL = "INSERT INTO pending_payment_batch_lines " +
+            "(id, batch_id, line_number, to_iban, amount, payment_currency, message, note, execution_date) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final PendingPaymentBatchRepository pendingPaymentBatchRepository;
+    private final PendingPaymentBatchLineRepository pendingPaymentBatchLineRepository;
+    private final UserRepository userRepository;
+    private final PaymentService paymentService;
+    private final AuditLogService auditLogService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    public PaymentBatchResponseDTO createPendingPaymentBatch(UUID userId, UUID kontoId, String deviceId, String ipAddress,
+                                                            PaymentBatchFormat format, String fileName, InputStream file) {
+        long startNanos = System.nanoTime();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Ingest ingest = transactionTemplate.execute(status -> {
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+            Konto konto = paymentService.requirePaymentKonto(user, kontoId);
+
+            // Invalidate any pending batches for this user
+            List<PendingPaymentBatch> existingPending = pendingPaymentBatchRepository.findByUserAndStatus(user, PendingPaymentStatus.PENDING);
+            for (PendingPaymentBatch existing : existingPending) {
+                existing.markCompleted(PendingPaymentStatus.EXPIRED);
+                pendingPaymentBatchRepository.save(existing);
+            }
+
+            PendingPaymentBatch batch = pendingPaymentBatchRepository.save(PendingPaymentBatch.builder()
+                    .user(user)
+                    .mobileVerifyCode(SecureTokenGenerator.generateToken(MOBILE_VERIFY_TOKEN_LENGTH))
+                    .kontoId(kontoId)
+                    .format(format)
+                    .fileName(fileName)
+                    .deviceId(deviceId)
+                    .ipAddress(ipAddress)
+                    .build());
+
+            Ingest result = new Ingest(batch, konto);
+            PaymentBatchFileParser.parse(file, format, result::accept);
+            result.flush();
+
+            if (result.results.isEmpty()) {
+                throw new IllegalArgumentException("Batch file contains no payments");
+            }
+
+            if (result.rejected > 0) {
+                // All or nothing: drop the batch and everything staged so far
+                status.setRollbackOnly();
+            } else {
+                batch.setPaymentCount(result.accepted);
+                pendingPaymentBatchRepository.save(batch);
+            }
+            return result;
+        });
+
+        long durationNanos = System.nanoTime() - startNanos;
+        int paymentCount = ingest.results.size();
+        double paymentsPerSecond = durationNanos > 0 ? paymentCount * 1_000_000_000.0 / durationNanos : 0.0;
+
+        Timer.builder("purbank.payments.batch.ingest")
+                .tag("format", format.name())
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("purbank.payments.batch.lines", "result", "accepted").increment(ingest.accepted);
+        meterRegistry.counter("purbank.payments.batch.lines", "result", "rejected").increment(ingest.rejected);
+
+        boolean accepted = ingest.rejected == 0;
+        log.info("Payment batch {} for user {}: {} payments, {} rejected, {} ms ({} payments/s)",
+                accepted ? ingest.batch.getId() : "(rejected)", userId, paymentCount, ingest.rejected,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos), Math.round(paymentsPerSecond));
+
+        return new PaymentBatchResponseDTO(
+                accepted ? ingest.batch.getMobileVerifyCode() : null,
+                accepted ? "PENDING_APPROVAL" : "REJECTED",
+                paymentCount,
+                ingest.accepted,
+                ingest.rejected,
+                TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                paymentsPerSecond,
+                ingest.results);
+    }
+
+    @Transactional
+    public int executeApprovedPaymentBatch(PendingPaymentBatch batch) {
+        if (batch.getStatus() != PendingPaymentStatus.PENDING) {
+            throw new IllegalArgumentException("Pending payment batch is not in PENDING status");
+        }
+
+        if (batch.isExpired()) {
+            throw new IllegalArgumentException("Pending payment batch has expired");
+        }
+
+        // Verify user still may create payments on the konto
+        paymentService.requirePaymentKonto(batch.getUser(), batch.getKontoId());
+
+        int created = pendingPaymentBatchLineRepository.createPayments(batch.getId(), batch.getKontoId(), LocalDateTime.now());
+
+        batch.markCompleted(PendingPaymentStatus.APPROVED);
+        pendingPaymentBatchRepository.save(batch);
+
+        log.info("Payment batch {} approved: {} payments created for konto {}", batch.getId(), created, batch.getKontoId());
+
+        auditLogService.logSuccess(
+                AuditAction.PAYMENT_APPROVED,
+                AuditEntityType.PAYMENT,
+                batch.getId(),
+                batch.getUser(),
+                batch.getIpAddress(),
+                String.format("Payment batch %s with %d payments approved and scheduled",
+                        batch.getFileName() != null ? batch.getFileName() : batch.getId(), created)
+        );
+
+        return created;
+    }
+
+    // Cleans up expired batches and the staged payments of completed batches, triggered every 5 minutes by
+    // PaymentScheduler on one node
+    @Transactional
+    public void cleanupPendingPaymentBatches() {
+        List<PendingPaymentBatch> expiredBatches = pendingPaymentBatchRepository
+                .findExpiredPendingBatches(PendingPaymentStatus.PENDING, LocalDateTime.now());
+
+        for (PendingPaymentBatch batch : expiredBatches) {
+            batch.markCompleted(PendingPaymentStatus.EXPIRED);
+            pendingPaymentBatchRepository.save(batch);
+        }
+
+        int deletedLines = pendingPaymentBatchLineRepository.deleteLinesOfCompletedBatches();
+
+        if (!expiredBatches.isEmpty() || deletedLines > 0) {
+            log.info("Marked {} payment batches as expired, removed {} staged batch payments", expiredBatches.size(), deletedLines);
+        }
+    }
+
+    /**
+     * Validates the lines of one file as they are parsed and stages the valid ones in JDBC batches.
+     * Once a line is rejected nothing more is staged, the transaction is rolled back anyway.
+     */
+    private final class Ingest {
+        private final PendingPaymentBatch batch;
+        private final Konto konto;
+        private final List<Object[]> pending = new ArrayList<>();
+        private final List<PaymentBatchLineResultDTO> results = new ArrayList<>();
+        private int accepted;
+        private int rejected;
+
+        private Ingest(PendingPaymentBatch batch, Konto konto) {
+            this.batch = batch;
+            this.konto = konto;
+        }
+
+        private void accept(PaymentBatchFileParser.Line line) {
+            if (results.size() >= paymentConfig.getBatchMaxPayments()) {
+                throw new IllegalArgumentException("Batch file exceeds the limit of " + paymentConfig.getBatchMaxPayments() + " payments");
+            }
+
+            try {
+                Object[] row = validate(line);
+                accepted++;
+                results.add(new PaymentBatchLineResultDTO(line.lineNumber(), line.toIban(), line.amount(), "ACCEPTED", null));
+                if (rejected == 0) {
+                    pending.add(row);
+                    if (pending.size() >= paymentConfig.getBatchInsertSize()) {
+                        flush();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                rejected++;
+                results.add(new PaymentBatchLineResultDTO(line.lineNumber(), line.toIban(), line.amount(), "REJECTED", e.getMessage()));
+            }
+        }
+
+        private void flush() {
+            if (!pending.isEmpty() && rejected == 0) {
+                jdbcTemplate.batchUpdate(INSERT_LINE_SQL, pending);
+            }
+            pending.clear();
+        }
+
+        // Same rules as a single NORMAL payment, plus the checks a file needs on top of the request DTO validation
+        private Object[] validate(PaymentBatchFileParser.Line line) {
+            if (line.toIban() == null) {
+                throw new IllegalArgumentException("Target IBAN is required");
+            }
+            String toIban = normalizeIban(line.toIban());
+            if (toIban.length() > 34) {
+                throw new IllegalArgumentException("Invalid IBAN: " + line.toIban());
+            }
+
+            if (line.debtorIban() != null && !normalizeIban(line.debtorIban()).equals(normalizeIban(konto.getIban()))) {
+                throw new IllegalArgumentException("Debtor IBAN does not match the konto");
+            }
+
+            if (line.amount() == null) {
+                throw new IllegalArgumentException("Amount is required");
+            }
+            BigDecimal amount;
+            try {
+                amount = new BigDecimal(line.amount());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid amount: " + line.amount());
+            }
+
+            Currency currency;
+            try {
+                currency = line.currency() != null ? Currency.valueOf(line.currency().toUpperCase(Locale.ROOT)) : Currency.CHF;
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported currency: " + line.currency());
+            }
+
+            LocalDate requestedDate;
+            try {
+                requestedDate = line.executionDate() != null ? LocalDate.parse(line.executionDate()) : null;
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid execution date: " + line.executionDate());
+            }
+
+            LocalDate executionDate = paymentService.validateNewPayment(konto, amount, PaymentExecutionType.NORMAL, requestedDate);
+
+            return new Object[]{UUID.randomUUID(), batch.getId(), line.lineNumber(), toIban, amount,
+                    currency.name(), line.message(), line.note(), executionDate};
+        }
+    }
+
+    private static String normalizeIban(String iban) {
+        return iban.replace(" ", "").toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,226 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.PaymentExecutionQueueEntry;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentExecutionQueueRepository;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Durable queue of approved INSTANT payments, backed by the payment_execution_queue table.
+ * Approval only inserts a queue entry, so it no longer waits for the execution. Every node runs instantWorkers
+ * workers that claim entries with SELECT ... FOR UPDATE SKIP LOCKED and execute one payment per transaction, so
+ * workers on all nodes drain the queue without blocking each other. Entries enqueued on this node wake a worker
+ * right after commit, entries of other nodes are found by polling every instantPollInterval.
+ *
+ * A failed execution is retried with exponential backoff; after instantMaxAttempts the payment is marked FAILED.
+ * Entries survive restarts, whatever was claimed by a node that died is picked up again once its locks are gone.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentExecutionQueue {
+
+    private final PaymentExecutionQueueRepository paymentExecutionQueueRepository;
+    private final PaymentRepository paymentRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    // One permit per entry enqueued on this node
+    private final Semaphore signal = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    private volatile Consumer<Payment> paymentExecutor;
+
+    private TransactionTemplate transactionTemplate;
+    private Timer queueLatency;
+    private Counter retried;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        // Time from approval until the payment is executed
+        queueLatency = meterRegistry.timer("purbank.payments.instant.latency");
+        retried = meterRegistry.counter("purbank.payments.instant.attempts", "result", "retried");
+        failed = meterRegistry.counter("purbank.payments.instant.attempts", "result", "failed");
+    }
+
+    /**
+     * Starts the workers of this node. Called by PaymentService once the application is ready.
+     */
+    public synchronized void start(Consumer<Payment> paymentExecutor) {
+        if (running) {
+            return;
+        }
+        this.paymentExecutor = paymentExecutor;
+        running = true;
+        for (int i = 0; i < paymentConfig.getInstantWorkers(); i++) {
+            workers.add(Thread.ofVirtual().name("payment-queue-worker-" + i).start(this::runWorker));
+        }
+        log.info("Started {} payment queue workers", workers.size());
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.clear();
+    }
+
+    /**
+     * Queues an approved payment for execution. Joins the caller's transaction, the payment is only
+     * picked up once it commits.
+     */
+    public void enqueue(UUID paymentId) {
+        LocalDateTime now = LocalDateTime.now();
+        paymentExecutionQueueRepository.save(PaymentExecutionQueueEntry.builder()
+                .paymentId(paymentId)
+                .enqueuedAt(now)
+                .availableAt(now)
+                .build());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    signal.release();
+                }
+            });
+        } else {
+            signal.release();
+        }
+    }
+
+    /**
+     * Claims and executes the oldest available payment. Returns false if there was none.
+     */
+    public boolean processNext() {
+        PaymentExecutionQueueEntry[] claimed = new PaymentExecutionQueueEntry[1];
+        try {
+            Boolean processed = transactionTemplate.execute(status -> {
+                List<PaymentExecutionQueueEntry> entries = paymentExecutionQueueRepository.claimAvailable(LocalDateTime.now(), 1);
+                if (entries.isEmpty()) {
+                    return false;
+                }
+                PaymentExecutionQueueEntry entry = entries.get(0);
+                claimed[0] = entry;
+
+                // Cancelled or already handled payments just leave the queue
+                Payment payment = paymentRepository.findById(entry.getPaymentId()).orElse(null);
+                if (payment != null && payment.getStatus() == PaymentStatus.PENDING) {
+                    paymentExecutor.accept(payment);
+                }
+
+                paymentExecutionQueueRepository.delete(entry);
+                return true;
+            });
+            if (Boolean.TRUE.equals(processed)) {
+                queueLatency.record(Duration.between(claimed[0].getEnqueuedAt(), LocalDateTime.now()));
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            if (claimed[0] == null) {
+                throw e;
+            }
+            // The execution was rolled back, postings included
+            recordFailure(claimed[0], e);
+            return true;
+        }
+    }
+
+    private void recordFailure(PaymentExecutionQueueEntry claimed, RuntimeException error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Another worker may have claimed the entry since the rollback released it
+            List<PaymentExecutionQueueEntry> locked = paymentExecutionQueueRepository.claimById(claimed.getId());
+            if (locked.isEmpty()) {
+                return;
+            }
+            PaymentExecutionQueueEntry entry = locked.get(0);
+            int attempts = entry.getAttempts() + 1;
+
+            if (attempts >= paymentConfig.getInstantMaxAttempts()) {
+                paymentRepository.findById(entry.getPaymentId())
+                        .filter(payment -> payment.getStatus() == PaymentStatus.PENDING)
+                        .ifPresent(payment -> {
+                            payment.fail();
+                            paymentRepository.save(payment);
+                        });
+                paymentExecutionQueueRepository.delete(entry);
+                failed.increment();
+                log.error("Payment {} failed after {} attempts: {}", entry.getPaymentId(), attempts, error.getMessage(), error);
+                return;
+            }
+
+            Duration backoff = paymentConfig.getInstantRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 16));
+            entry.setAttempts(attempts);
+            entry.setLastError(error.getMessage());
+            entry.setAvailableAt(LocalDateTime.now().plus(backoff));
+            paymentExecutionQueueRepository.save(entry);
+            retried.increment();
+            log.warn("Payment {} execution attempt {} failed, retrying in {} ms: {}",
+                    entry.getPaymentId(), attempts, backoff.toMillis(), error.getMessage());
+        });
+    }
+
+    private void runWorker() {
+        long pollMillis = paymentConfig.getInstantPollInterval().toMillis();
+        while (running) {
+            try {
+                if (!processNext()) {
+                    signal.tryAcquire(pollMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                // Database unavailable or similar, don't spin
+                log.error("Payment queue worker failed: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(pollMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.*;
+import ch.purbank.core.repository.KontoRepository;
+import ch.purbank.core.repository.PaymentRepository;
+import ch.purbank.core.repository.PaymentRepository.DuePaymentRef;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Netting stage of the nightly settlement, runs before PaymentSettlementEngine.
+ * Due NORMAL payments between active kontos of this bank in a single currency are netted per page: every konto
+ * involved gets one balance UPDATE with its net delta, while each payment still gets its OUTGOING and INCOMING
+ * transaction, written with JDBC batch inserts. A konto paying thousands of payments (e.g. salaries) is updated
+ * once per page instead of once per payment.
+ *
+ * A konto whose net position isn't covered by its balance is left out together with all its outgoing payments,
+ * and so is everything that needs a currency conversion or can't be executed here. Those payments stay PENDING and
+ * are settled one by one by the settlement engine, which also fails them where needed. A page that fails as a
+ * whole (e.g. a balance changed in the meantime) is rolled back and left to the settlement engine as well.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentNettingService {
+
+    private static final String INSERT_TRANSACTION_SQL = "INSERT INTO transactions " +
+            "(id, konto_id, amount, balance_after, timestamp, iban, transaction_type, currency, message, note) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final PaymentRepository paymentRepository;
+    private final KontoRepository kontoRepository;
+    private final KontoBalanceService kontoBalanceService;
+    private final IbanDirectoryService ibanDirectoryService;
+    private final AuditLogService auditLogService;
+    private final TransactionRollupService transactionRollupService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    public NettingResult net(LocalDate dueDate) {
+        int pageSize = paymentConfig.getNettingPageSize();
+        long startNanos = System.nanoTime();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int netted = 0;
+        int balanceUpdates = 0;
+        int failedPages = 0;
+
+        List<DuePaymentRef> page = paymentRepository.findFirstDuePaymentPage(
+                PaymentStatus.PENDING, PaymentExecutionType.NORMAL, dueDate, Limit.of(pageSize));
+
+        while (!page.isEmpty()) {
+            List<UUID> ids = page.stream().map(DuePaymentRef::getId).toList();
+            try {
+                PageOutcome outcome = transactionTemplate.execute(status -> netPage(ids));
+                netted += outcome.payments();
+                balanceUpdates += outcome.kontos();
+            } catch (Exception e) {
+                failedPages++;
+                log.warn("Netting of {} payments failed, they are settled one by one: {}", ids.size(), e.getMessage());
+            }
+
+            if (page.size() < pageSize) {
+                break;
+            }
+            DuePaymentRef last = page.get(page.size() - 1);
+            page = paymentRepository.findDuePaymentPageAfter(PaymentStatus.PENDING, PaymentExecutionType.NORMAL,
+                    dueDate, last.getExecutionDate(), last.getId(), Limit.of(pageSize));
+        }
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        meterRegistry.counter("purbank.settlement.netting.payments").increment(netted);
+        meterRegistry.counter("purbank.settlement.netting.balance.updates").increment(balanceUpdates);
+
+        log.info("Netting finished in {} ms: {} payments netted with {} balance updates, {} pages failed",
+                durationMillis, netted, balanceUpdates, failedPages);
+
+        return new NettingResult(netted, balanceUpdates, failedPages, durationMillis);
+    }
+
+    private PageOutcome netPage(List<UUID> ids) {
+        List<Payment> payments = new ArrayList<>(paymentRepository.findAllWithKontoByIdIn(ids));
+        payments.sort(Comparator.comparing(Payment::getExecutionDate).thenComparing(Payment::getCreatedAt));
+
+        List<Transfer> transfers = new ArrayList<>();
+        for (Payment payment : payments) {
+            nettable(payment).ifPresent(transfers::add);
+        }
+        excludeUncovered(transfers);
+        if (transfers.isEmpty()) {
+            return new PageOutcome(0, 0);
+        }
+
+        // Sorted by id, so pages of different nodes update kontos in the same order
+        Map<UUID, List<Leg>> legsByKonto = new TreeMap<>();
+        for (Transfer transfer : transfers) {
+            legsByKonto.computeIfAbsent(transfer.targetKontoId(), k -> new ArrayList<>()).add(new Leg(transfer, true));
+            legsByKonto.computeIfAbsent(transfer.sourceKontoId(), k -> new ArrayList<>()).add(new Leg(transfer, false));
+        }
+
+        // Every leg gets its own timestamp, one microsecond (the precision of the column) after the previous one, so
+        // (timestamp, id) orders the transactions of a konto like their balanceAfter values
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime timestamp = now;
+        List<Object[]> rows = new ArrayList<>(transfers.size() * 2);
+        List<TransactionRollupService.Posted> posted = new ArrayList<>(transfers.size() * 2);
+        for (Map.Entry<UUID, List<Leg>> entry : legsByKonto.entrySet()) {
+            // Credits first, so no balanceAfter of the konto is below its final balance
+            List<Leg> legs = entry.getValue();
+            legs.sort(Comparator.comparing(leg -> !leg.credit()));
+
+            List<BigDecimal> balancesAfter = kontoBalanceService.update(entry.getKey(), balance -> plan(entry.getKey(), legs, balance));
+            for (int i = 0; i < legs.size(); i++) {
+                Leg leg = legs.get(i);
+                timestamp = timestamp.plus(1, ChronoUnit.MICROS);
+                rows.add(transactionRow(entry.getKey(), leg, balancesAfter.get(i), timestamp));
+                posted.add(new TransactionRollupService.Posted(entry.getKey(), timestamp, leg.transactionType(),
+                        leg.transfer().payment().getPaymentCurrency(), leg.delta()));
+            }
+        }
+
+        int batchSize = paymentConfig.getBatchInsertSize();
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, rows.subList(i, Math.min(i + batchSize, rows.size())));
+        }
+        transactionRollupService.recordAll(posted);
+
+        List<UUID> nettedIds = transfers.stream().map(t -> t.payment().getId()).toList();
+        int marked = 0;
+        for (int i = 0; i < nettedIds.size(); i += batchSize) {
+            marked += paymentRepository.markExecuted(nettedIds.subList(i, Math.min(i + batchSize, nettedIds.size())),
+                    PaymentStatus.PENDING, PaymentStatus.EXECUTED, now);
+        }
+        if (marked != nettedIds.size()) {
+            throw new IllegalStateException("Payments changed during netting, expected " + nettedIds.size() + " but marked " + marked);
+        }
+
+        log.info("Netted {} payments across {} kontos", transfers.size(), legsByKonto.size());
+
+        auditLogService.logSystem(
+                AuditAction.PAYMENT_EXECUTED,
+                AuditEntityType.SYSTEM,
+                null,
+                String.format("Settlement netting executed %d payments with %d transactions on %d kontos",
+                        transfers.size(), rows.size(), legsByKonto.size())
+        );
+
+        return new PageOutcome(transfers.size(), legsByKonto.size());
+    }
+
+    // Only payments that execute without conversion between two active kontos of this bank
+    private Optional<Transfer> nettable(Payment payment) {
+        if (payment.getStatus() != PaymentStatus.PENDING) {
+            return Optional.empty();
+        }
+        Konto source = payment.getKonto();
+        if (source.getStatus() != KontoStatus.ACTIVE || source.getCurrency() != payment.getPaymentCurrency()) {
+            return Optional.empty();
+        }
+        return ibanDirectoryService.resolve(payment.getToIban())
+                .filter(target -> target.status() == KontoStatus.ACTIVE)
+                .filter(target -> target.currency() == payment.getPaymentCurrency())
+                .map(target -> new Transfer(payment, source.getId(), source.getIban(), target.kontoId()));
+    }
+
+    // Drops the outgoing payments of every konto whose net position isn't covered, until all remaining ones are
+    private void excludeUncovered(List<Transfer> transfers) {
+        Map<UUID, BigDecimal> balances = new HashMap<>();
+        while (!transfers.isEmpty()) {
+            Map<UUID, BigDecimal> net = new HashMap<>();
+            for (Transfer transfer : transfers) {
+                net.merge(transfer.sourceKontoId(), transfer.payment().getAmount().negate(), BigDecimal::add);
+                net.merge(transfer.targetKontoId(), transfer.payment().getAmount(), BigDecimal::add);
+            }
+
+            Set<UUID> uncovered = new HashSet<>();
+            for (Map.Entry<UUID, BigDecimal> entry : net.entrySet()) {
+                if (entry.getValue().signum() < 0) {
+                    BigDecimal balance = balances.computeIfAbsent(entry.getKey(), id -> kontoRepository.findBalanceSnapshotById(id)
+                            .orElseThrow(() -> new IllegalArgumentException("Konto not found")).getBalance());
+                    if (balance.add(entry.getValue()).signum() < 0) {
+                        uncovered.add(entry.getKey());
+                    }
+                }
+            }
+            if (uncovered.isEmpty()) {
+                return;
+            }
+            log.debug("Kontos {} not covered by their net position, settled one by one", uncovered);
+            transfers.removeIf(transfer -> uncovered.contains(transfer.sourceKontoId()));
+        }
+    }
+
+    // Runs the legs of one konto against its current balance, the planner may be called again after a conflict
+    private KontoBalanceService.BalanceChange<List<BigDecimal>> plan(UUID kontoId, List<Leg> legs, BigDecimal balance) {
+        List<BigDecimal> balancesAfter = new ArrayList<>(legs.size());
+        BigDecimal running = balance;
+        for (Leg leg : legs) {
+            running = running.add(leg.delta());
+            balancesAfter.add(running);
+        }
+        if (running.signum() < 0) {
+            throw new IllegalStateException("Net position of konto " + kontoId + " is no longer covered");
+        }
+        return new KontoBalanceService.BalanceChange<>(running.subtract(balance), false, balancesAfter);
+    }
+
+    // Same transactions PaymentService.executePayment creates: the note stays with the payer
+    private Object[] transactionRow(UUID kontoId, Leg leg, BigDecimal balanceAfter, LocalDateTime timestamp) {
+        Payment payment = leg.transfer().payment();
+        return new Object[]{
+                UUID.randomUUID(),
+                kontoId,
+                leg.delta(),
+                balanceAfter,
+                timestamp,
+                leg.credit() ? leg.transfer().sourceIban() : payment.getToIban(),
+                leg.transactionType().name(),
+                payment.getPaymentCurrency().name(),
+                payment.getMessage(),
+                leg.credit() ? null : payment.getNote()
+        };
+    }
+
+    private record Transfer(Payment payment, UUID sourceKontoId, String sourceIban, UUID targetKontoId) {
+    }
+
+    private record Leg(Transfer transfer, boolean credit) {
+        BigDecimal delta() {
+            return credit ? transfer.payment().getAmount() : transfer.payment().getAmount().negate();
+        }
+
+        TransactionType transactionType() {
+            return credit ? TransactionType.INCOMING : TransactionType.OUTGOING;
+        }
+    }
+
+    private record PageOutcome(int payments, int kontos) {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class NettingResult {
+        private final int netted;
+        private final int balanceUpdates;
+        private final int failedPages;
+        private final long durationMillis;
+    }
+}
@@ -0,0 +1,147 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.AuditAction;
+import ch.purbank.core.domain.enums.AuditEntityType;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries failed NORMAL payments. PaymentService schedules a retry with exponential backoff when a payment fails
+ * for a reason that may go away (insufficient funds, unexpected errors), within the budget of retryMaxAttempts.
+ * Every five minutes up to retryBatchSize due retries are executed, one transaction each, so retries are spread
+ * through the day instead of adding to the settlement run. Due payments are claimed with SKIP LOCKED, nodes never
+ * retry the same payment at the same time. A retry that fails for a reason that won't go away (target konto not
+ * found or closed) ends with the outcome "rejected", one that uses up the budget with "exhausted".
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentRetryService {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final AuditLogService auditLogService;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    // Failed payments with a retry scheduled, refreshed on every run
+    private final AtomicLong queueDepth = new AtomicLong();
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        meterRegistry.gauge("purbank.payments.retry.queue", queueDepth);
+    }
+
+    // Runs every 5 minutes
+    @Scheduled(fixedDelay = 300000)
+    public void processDueRetries() {
+        int processed = 0;
+        while (processed < paymentConfig.getRetryBatchSize() && retryNext()) {
+            processed++;
+        }
+        queueDepth.set(paymentRepository.countByStatusAndNextRetryAtIsNotNull(PaymentStatus.FAILED));
+
+        if (processed > 0) {
+            log.info("Retried {} failed payments, {} retries still scheduled", processed, queueDepth.get());
+        }
+    }
+
+    /**
+     * Retries the payment whose retry is due the longest. Returns false if there was none.
+     */
+    public boolean retryNext() {
+        UUID[] claimed = new UUID[1];
+        String outcome;
+        try {
+            outcome = transactionTemplate.execute(status -> {
+                List<Payment> due = paymentRepository.claimDueRetries(LocalDateTime.now(), 1);
+                if (due.isEmpty()) {
+                    return null;
+                }
+                Payment payment = due.get(0);
+                claimed[0] = payment.getId();
+
+                if (payment.getKonto().getStatus() != KontoStatus.ACTIVE) {
+                    payment.setNextRetryAt(null);
+                    paymentRepository.save(payment);
+                    return "abandoned";
+                }
+
+                payment.retry();
+                paymentService.executePayment(payment);
+                return outcome(payment);
+            });
+        } catch (RuntimeException e) {
+            if (claimed[0] == null) {
+                throw e;
+            }
+            // Rolled back after the debit, the attempt still counts
+            log.warn("Retry of payment {} failed: {}", claimed[0], e.getMessage());
+            outcome = transactionTemplate.execute(status -> {
+                Payment payment = paymentRepository.findById(claimed[0]).orElseThrow();
+                if (payment.getStatus() != PaymentStatus.FAILED || payment.getNextRetryAt() == null) {
+                    return outcome(payment);
+                }
+                payment.retry();
+                paymentService.failWithRetry(payment);
+                paymentRepository.save(payment);
+                return outcome(payment);
+            });
+        }
+
+        if (outcome == null) {
+            return false;
+        }
+        meterRegistry.counter("purbank.payments.retry", "result", outcome).increment();
+        if (outcome.equals("exhausted")) {
+            auditLogService.logSystem(
+                    AuditAction.PAYMENT_FAILED,
+                    AuditEntityType.PAYMENT,
+                    claimed[0],
+                    String.format("Payment failed after %d retries", paymentConfig.getRetryMaxAttempts())
+            );
+        } else if (outcome.equals("rejected")) {
+            auditLogService.logSystem(
+                    AuditAction.PAYMENT_FAILED,
+                    AuditEntityType.PAYMENT,
+                    claimed[0],
+                    "Payment failed on retry and will not be retried again (target konto not found or closed)"
+            );
+        }
+        log.info("Retry of payment {}: {}", claimed[0], outcome);
+        return true;
+    }
+
+    private String outcome(Payment payment) {
+        if (payment.getStatus() == PaymentStatus.EXECUTED) {
+            return "succeeded";
+        }
+        if (payment.getNextRetryAt() != null) {
+            return "rescheduled";
+        }
+        // No retry planned although the budget isn't used up: PaymentService failed it for good (target konto not
+        // found or closed). On the last attempt such a failure counts as exhausted.
+        return payment.getRetryCount() < paymentConfig.getRetryMaxAttempts() ? "rejected" : "exhausted";
+    }
+}
@@ -1,5 +1,6 @@
 package ch.purbank.core.service;
 
+import ch.purbank.core.config.PaymentConfig;
 import ch.purbank.core.domain.*;
 import ch.purbank.core.domain.enums.*;
 import ch.purbank.core.dto.*;
@@ -7,15 +8,21 @@ import ch.purbank.core.repository.*;
 import ch.purbank.core.security.SecureTokenGenerator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Service
@@ -33,37 +40,61 @@ public class PaymentService {
     private final KontoService kontoService;
     private final CurrencyConversionService currencyConversionService;
     private final AuditLogService auditLogService;
+    private final PaymentSettlementEngine paymentSettlementEngine;
+    private final PaymentConfig paymentConfig;
+    private final KontoPostingService kontoPostingService;
+    private final IbanDirectoryService ibanDirectoryService;
+    private final PaymentExecutionQueue paymentExecutionQueue;
+    private final PaymentNettingService paymentNettingService;
+    private final RecurringPaymentService recurringPaymentService;
 
     private static final int MOBILE_VERIFY_TOKEN_LENGTH = 64;
 
+    /**
+     * Pending payments of all kontos the user is a member of, ordered by execution date. Paged by keyset: pass the
+     * nextCursor of the previous page to get the following one, it holds the execution date and id of its last payment.
+     * The page is read with a single query. Only an empty page checks whether the user and konto exist.
+     */
     @Transactional(readOnly = true)
-    public List<PaymentDTO> getAllPendingPayments(UUID userId, UUID kontoIdFilter) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("User not found"));
-
-        List<Payment> payments;
+    public PaymentPageDTO getAllPendingPayments(UUID userId, UUID kontoIdFilter, Integer limit, String cursor) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int pageSize = limit == null ? paymentConfig.getListMaxPageSize()
+                : Math.min(limit, paymentConfig.getListMaxPageSize());
+        Limit pageLimit = Limit.of(pageSize);
 
+        PaymentCursor after = cursor != null ? PaymentCursor.decode(cursor) : null;
+        List<PaymentDTO> payments;
         if (kontoIdFilter != null) {
-            Konto konto = kontoRepository.findById(kontoIdFilter)
-                    .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
-
-            // Verify user has access
-            if (!kontoMemberRepository.existsByKontoAndUser(konto, user)) {
-                throw new IllegalArgumentException("User is not a member of this konto");
-            }
-
-            payments = paymentRepository.findByKontoAndStatus(konto, PaymentStatus.PENDING);
+            payments = after == null
+                    ? paymentRepository.findFirstMemberPaymentPageOfKonto(userId, kontoIdFilter, PaymentStatus.PENDING, pageLimit)
+                    : paymentRepository.findMemberPaymentPageOfKontoAfter(userId, kontoIdFilter, PaymentStatus.PENDING,
+                    after.executionDate(), after.id(), pageLimit);
         } else {
-            // Get all pending payments for konten where user is a member
-            List<KontoMember> memberships = kontoMemberRepository.findByUser(user);
-            payments = memberships.stream()
-                    .flatMap(m -> paymentRepository.findByKontoAndStatus(m.getKonto(), PaymentStatus.PENDING).stream())
-                    .collect(Collectors.toList());
+            payments = after == null
+                    ? paymentRepository.findFirstMemberPaymentPage(userId, PaymentStatus.PENDING, pageLimit)
+                    : paymentRepository.findMemberPaymentPageAfter(userId, PaymentStatus.PENDING,
+                    after.executionDate(), after.id(), pageLimit);
         }
 
-        return payments.stream()
-                .map(this::toDTO)
-                .collect(Collectors.toList());
+        if (payments.isEmpty()) {
+            // Nothing found can also mean no access, report it like before
+            if (!userRepository.existsById(userId)) {
+                throw new IllegalArgumentException("User not found");
+            }
+            if (kontoIdFilter != null) {
+                if (!kontoRepository.existsById(kontoIdFilter)) {
+                    throw new IllegalArgumentException("Konto not found");
+                }
+                if (!kontoMemberRepository.existsByKontoIdAndUserId(kontoIdFilter, userId)) {
+                    throw new IllegalArgumentException("User is not a member of this konto");
+                }
+            }
+        }
+        // A full page may be followed by more, a short one is the last
+        String nextCursor = payments.size() < pageSize ? null : PaymentCursor.of(payments.getLast()).encode();
+        return new PaymentPageDTO(payments, nextCursor);
     }
 
     @Transactional
@@ -112,7 +143,7 @@ public class PaymentService {
         LocalDate executionDate;
 
         if (executionType == PaymentExecutionType.INSTANT) {
-            Optional<Konto> targetKonto = kontoRepository.findByIban(request.getToIban());
+            Optional<IbanDirectoryService.IbanEntry> targetKonto = ibanDirectoryService.resolve(request.getToIban());
             if (targetKonto.isEmpty()) {
                 // Convert instant payment to normal payment for next day if target IBAN is invalid
                 log.warn("Target IBAN {} not found for instant payment. Converting to normal payment for next day.", request.getToIban());
@@ -255,7 +286,7 @@ public class PaymentService {
             throw new IllegalArgumentException("Viewers cannot cancel payments");
         }
 
-        if (!payment.canBeModified()) {
+        if (!payment.canBeCancelled()) {
             throw new IllegalArgumentException("Payment cannot be cancelled (locked or not pending)");
         }
 
@@ -287,17 +318,34 @@ public class PaymentService {
         Payment payment = paymentRepository.findById(pendingDelete.getPaymentId())
                 .orElseThrow(() -> new IllegalArgumentException("Payment not found"));
 
-        if (!payment.canBeModified()) {
+        if (!payment.canBeCancelled()) {
             throw new IllegalArgumentException("Payment cannot be cancelled (locked or not pending)");
         }
 
+        cancel(payment);
+        log.info("Payment {} cancelled after approval", payment.getId());
+    }
+
+    // A payment waiting for a retry may be claimed by PaymentRetryService meanwhile, it is only cancelled if it still
+    // waits once that retry has committed
+    private void cancel(Payment payment) {
+        if (payment.getStatus() == PaymentStatus.FAILED
+                && paymentRepository.cancelRetry(payment.getId(), PaymentStatus.FAILED, PaymentStatus.CANCELLED) == 0) {
+            throw new IllegalArgumentException("Payment cannot be cancelled (retried in the meantime)");
+        }
         payment.cancel();
         paymentRepository.save(payment);
-        log.info("Payment {} cancelled after approval", payment.getId());
     }
 
     @Transactional
     protected void executePayment(Payment payment) {
+        executePayment(payment, null);
+    }
+
+    // kontosOpenedBefore: a target konto opened before this time is in the Bloom filter if it was read after it, the
+    // settlement run passes its start. Null asks the database for every IBAN the directory doesn't know.
+    private void executePayment(Payment payment, LocalDateTime kontosOpenedBefore) {
+        boolean posting = false;
         try {
             // Step 1-2: Get source konto and its currency
             Konto sourceKonto = payment.getKonto();
@@ -309,13 +357,25 @@ public class PaymentService {
                     payment.getId(), paymentAmount, paymentCurrency, sourceKontoCurrency);
 
             // Step 3: Validate target IBAN exists BEFORE deducting money
-            Optional<Konto> targetKontoOpt = kontoRepository.findByIban(payment.getToIban());
+            Optional<IbanDirectoryService.IbanEntry> targetKontoOpt = ibanDirectoryService.resolve(payment.getToIban());
+            if (targetKontoOpt.isEmpty()) {
+                // Failing is final, the directory of this node may not know a konto opened on another node yet
+                targetKontoOpt = kontosOpenedBefore != null
+                        ? ibanDirectoryService.confirm(payment.getToIban(), kontosOpenedBefore)
+                        : ibanDirectoryService.confirm(payment.getToIban());
+            }
             if (targetKontoOpt.isEmpty()) {
                 payment.fail();
                 paymentRepository.save(payment);
                 log.warn("Payment {} failed: target IBAN not found: {}", payment.getId(), payment.getToIban());
                 return;
             }
+            if (targetKontoOpt.get().status() != KontoStatus.ACTIVE) {
+                payment.fail();
+                paymentRepository.save(payment);
+                log.warn("Payment {} failed: target konto is closed: {}", payment.getId(), payment.getToIban());
+                return;
+            }
 
             // Step 4: Convert payment to source konto currency
             BigDecimal kontoAmountToDeduct;
@@ -328,20 +388,20 @@ public class PaymentService {
                 kontoAmountToDeduct = paymentAmount;
             }
 
-            // Step 5: Check if sufficient balance
-            if (sourceKonto.getBalance().compareTo(kontoAmountToDeduct) < 0) {
-                payment.fail();
+            // Step 5-6: Deduct from source konto, the funds are checked at the time of writing.
+            // A posting that throws (konto kept changing, see KontoBalanceService.update) has marked the transaction
+            // rollback-only, so from here on a failure can only roll back the whole transaction.
+            posting = true;
+            KontoPostingService.PostingResult debit = kontoPostingService.debit(sourceKonto.getId(), kontoAmountToDeduct);
+            if (!debit.isAccepted()) {
+                failWithRetry(payment);
                 paymentRepository.save(payment);
                 log.warn("Payment {} failed: insufficient funds (need {} {}, have {} {})",
                         payment.getId(), kontoAmountToDeduct, sourceKontoCurrency,
-                        sourceKonto.getBalance(), sourceKontoCurrency);
+                        debit.getBalanceAfter(), sourceKontoCurrency);
                 return;
             }
 
-            // Step 6: Deduct from source konto
-            sourceKonto.subtractFromBalance(kontoAmountToDeduct);
-            kontoRepository.save(sourceKonto);
-
             // Step 7: Create outgoing transaction (preserve message and note from payment)
             kontoService.createTransaction(
                     sourceKonto.getId(),
@@ -350,12 +410,13 @@ public class PaymentService {
                     payment.getMessage(), // Use original message
                     payment.getNote(), // Use original note
                     TransactionType.OUTGOING,
-                    sourceKontoCurrency);
+                    sourceKontoCurrency,
+                    debit.getBalanceAfter());
 
             // Step 8: Get target konto (already validated above)
 
-            Konto targetKonto = targetKontoOpt.get();
-            Currency targetKontoCurrency = targetKonto.getCurrency();
+            IbanDirectoryService.IbanEntry targetKonto = targetKontoOpt.get();
+            Currency targetKontoCurrency = targetKonto.currency();
 
             // Step 9: Convert payment to target konto currency
             BigDecimal targetAmountToAdd;
@@ -369,18 +430,18 @@ public class PaymentService {
             }
 
             // Step 10: Add to target konto
-            targetKonto.addToBalance(targetAmountToAdd);
-            kontoRepository.save(targetKonto);
+            KontoPostingService.PostingResult credit = kontoPostingService.credit(targetKonto.kontoId(), targetAmountToAdd);
 
             // Step 11: Create incoming transaction (preserve message, but note is null for receiver)
             kontoService.createTransaction(
-                    targetKonto.getId(),
+                    targetKonto.kontoId(),
                     sourceKonto.getIban(),
                     targetAmountToAdd,
                     payment.getMessage(), // Use original message
                     null, // Note is null for receiver
                     TransactionType.INCOMING,
-                    targetKontoCurrency);
+                    targetKontoCurrency,
+                    credit.getBalanceAfter());
 
             // Step 12: Mark payment as executed
             payment.execute();
@@ -391,54 +452,76 @@ public class PaymentService {
                     targetAmountToAdd, targetKontoCurrency);
 
         } catch (Exception e) {
-            payment.fail();
+            if (posting) {
+                // Money may have moved or the posting failed, a FAILED status saved now would not commit. The caller
+                // retries: the settlement run its partition, the queue and PaymentRetryService the payment.
+                throw new IllegalStateException("Payment " + payment.getId() + " failed while posting to the konto", e);
+            }
+            failWithRetry(payment);
             paymentRepository.save(payment);
             log.error("Payment {} failed with exception: {}", payment.getId(), e.getMessage(), e);
         }
     }
 
-    // Scheduled job to process payments at 1:00 AM daily
-    @Scheduled(cron = "0 0 1 * * ?")
-    @Transactional
+    // Insufficient funds or an unexpected error may go away, NORMAL payments get retried (see PaymentRetryService)
+    void failWithRetry(Payment payment) {
+        payment.fail();
+        if (payment.getExecutionType() != PaymentExecutionType.NORMAL) {
+            return;
+        }
+        Duration backoff = paymentConfig.getRetryInitialBackoff().multipliedBy(1L << Math.min(payment.getRetryCount(), 16));
+        // Jitter, so the failures of one settlement run are retried spread out instead of all at once
+        backoff = backoff.plusMillis(ThreadLocalRandom.current().nextLong(backoff.toMillis() / 4 + 1));
+        if (payment.scheduleRetry(LocalDateTime.now().plus(backoff), paymentConfig.getRetryMaxAttempts())) {
+            log.info("Payment {} will be retried at {} (retry {}/{})", payment.getId(), payment.getNextRetryAt(),
+                    payment.getRetryCount() + 1, paymentConfig.getRetryMaxAttempts());
+        }
+    }
+
+    // Nightly settlement run, triggered at 1:00 AM by PaymentScheduler on one node
+    // Not transactional on purpose: the settlement engine commits every konto partition on its own
     public void processScheduledPayments() {
-        /*
-         * TODO: very much a WIP
-         * - unlock failed payments
-         * - also handle recurring payments
-         * - lock payments earlier? e.g 1 hour?
-         */
         log.info("Processing scheduled payments...");
+        LocalDateTime runStartedAt = LocalDateTime.now();
 
-        // Lock payments that should be locked
-        List<Payment> pendingPayments = paymentRepository.findByStatusOrderByExecutionDateAsc(PaymentStatus.PENDING);
-        for (Payment payment : pendingPayments) {
-            if (payment.shouldBeLocked() && !payment.isLocked()) {
-                payment.lock();
-                paymentRepository.save(payment);
-            }
-        }
+        // Lock payments that should be locked (normally already done by lockDuePayments)
+        lockDuePayments();
 
-        // Execute payments due today
-        List<Payment> duePayments = paymentRepository.findPaymentsDueForExecution(
-                PaymentStatus.PENDING,
-                PaymentExecutionType.NORMAL,
-                LocalDate.now());
+        // Normally already done at 00:45, catches up if that run was missed
+        recurringPaymentService.materializeDuePayments(LocalDate.now());
 
-        log.info("Found {} payments to execute", duePayments.size());
+        // A payment must not fail because its target konto was opened on another node since the last rebuild.
+        // Rebuilt after the run started, the filter's rejects of target IBANs are final and skip the database.
+        ibanDirectoryService.rebuildBloomFilter();
 
-        for (Payment payment : duePayments) {
-            try {
-                executePayment(payment);
-            } catch (Exception e) {
-                log.error("Failed to execute payment {}", payment.getId(), e);
-            }
+        // Payments between kontos of this bank are netted first, one balance update per konto
+        if (paymentConfig.isNettingEnabled()) {
+            paymentNettingService.net(LocalDate.now());
         }
 
-        log.info("Scheduled payment processing complete");
+        // Execute the remaining payments due today, streamed page by page
+        PaymentSettlementEngine.SettlementResult result = paymentSettlementEngine.settle(LocalDate.now(),
+                payment -> executePayment(payment, runStartedAt));
+
+        log.info("Scheduled payment processing complete: {} executed, {} failed in {} ms",
+                result.getExecuted(), result.getFailed(), result.getDurationMillis());
     }
 
-    // Scheduled job to clean up expired pending payments every 5 minutes
+    // Scheduled job to lock payments once they are within the lock lead time of their settlement run
     @Scheduled(fixedRate = 300000) // 5 minutes in milliseconds
+    public void lockDuePayments() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate cutoff = Payment.lockCutoffDate(now, paymentConfig.getLockLeadTime());
+
+        int locked = paymentRepository.lockPaymentsDueBy(
+                PaymentStatus.PENDING, PaymentExecutionType.NORMAL, cutoff, now);
+
+        if (locked > 0) {
+            log.info("Locked {} payments due on or before {}", locked, cutoff);
+        }
+    }
+
+    // Cleans up expired pending payments, triggered every 5 minutes by PaymentScheduler on one node
     @Transactional
     public void cleanupExpiredPendingPayments() {
         log.debug("Cleaning up expired pending payments...");
@@ -463,44 +546,18 @@ public class PaymentService {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
-        Konto konto = kontoRepository.findById(request.getKontoId())
-                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
-
-        KontoMember membership = kontoMemberRepository.findByKontoAndUser(konto, user)
-                .orElseThrow(() -> new IllegalArgumentException("User is not a member of this konto"));
-
-        // Only OWNER and MANAGER can create payments
-        if (membership.getRole() == MemberRole.VIEWER) {
-            throw new IllegalArgumentException("Viewers cannot create payments");
-        }
-
-        if (konto.getStatus() != KontoStatus.ACTIVE) {
-            throw new IllegalArgumentException("Cannot create payment for closed konto");
-        }
+        Konto konto = requirePaymentKonto(user, request.getKontoId());
 
-        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Payment amount must be positive");
-        }
+        LocalDate executionDate = validateNewPayment(konto, request.getAmount(),
+                request.getExecutionType(), request.getExecutionDate());
 
-        // For INSTANT payments, check if konto has sufficient funds
-        if (request.getExecutionType() == PaymentExecutionType.INSTANT) {
-            if (konto.getBalance().compareTo(request.getAmount()) < 0) {
-                throw new IllegalArgumentException("Insufficient funds for instant payment");
-            }
-        }
-
-        // Determine execution date
-        LocalDate executionDate;
-        if (request.getExecutionType() == PaymentExecutionType.INSTANT) {
-            executionDate = LocalDate.now();
-        } else {
-            if (request.getExecutionDate() == null) {
-                throw new IllegalArgumentException("Execution date required for normal payments");
+        if (request.getRecurrence() != null) {
+            if (request.getExecutionType() != PaymentExecutionType.NORMAL) {
+                throw new IllegalArgumentException("Recurring payments must be NORMAL payments");
             }
-            if (request.getExecutionDate().isBefore(LocalDate.now())) {
-                throw new IllegalArgumentException("Execution date cannot be in the past");
+            if (request.getRecurrenceEndDate() != null && request.getRecurrenceEndDate().isBefore(executionDate)) {
+                throw new IllegalArgumentException("End date of a recurring payment cannot be before its start date");
             }
-            executionDate = request.getExecutionDate();
         }
 
         // Invalidate any pending payment requests for this user
@@ -526,6 +583,8 @@ public class PaymentService {
                 .note(request.getNote())
                 .executionType(request.getExecutionType())
                 .executionDate(executionDate)
+                .recurrence(request.getRecurrence())
+                .recurrenceEndDate(request.getRecurrence() != null ? request.getRecurrenceEndDate() : null)
                 .deviceId(deviceId)
                 .ipAddress(ipAddress)
                 .build();
@@ -536,6 +595,58 @@ public class PaymentService {
         return mobileVerifyCode;
     }
 
+    /**
+     * Checks that the user may create payments on the konto. Shared by single and batch payments.
+     */
+    public Konto requirePaymentKonto(User user, UUID kontoId) {
+        Konto konto = kontoRepository.findById(kontoId)
+                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+
+        KontoMember membership = kontoMemberRepository.findByKontoAndUser(konto, user)
+                .orElseThrow(() -> new IllegalArgumentException("User is not a member of this konto"));
+
+        // Only OWNER and MANAGER can create payments
+        if (membership.getRole() == MemberRole.VIEWER) {
+            throw new IllegalArgumentException("Viewers cannot create payments");
+        }
+
+        if (konto.getStatus() != KontoStatus.ACTIVE) {
+            throw new IllegalArgumentException("Cannot create payment for closed konto");
+        }
+        return konto;
+    }
+
+    /**
+     * Validates amount and execution date of a new payment and returns the date it will be executed.
+     * Shared by single and batch payments.
+     */
+    public LocalDate validateNewPayment(Konto konto, BigDecimal amount, PaymentExecutionType executionType,
+                                        LocalDate requestedExecutionDate) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Payment amount must be positive");
+        }
+
+        // For INSTANT payments, check if konto has sufficient funds
+        if (executionType == PaymentExecutionType.INSTANT) {
+            if (konto.getBalance().compareTo(amount) < 0) {
+                throw new IllegalArgumentException("Insufficient funds for instant payment");
+            }
+            return LocalDate.now();
+        }
+
+        if (requestedExecutionDate == null) {
+            throw new IllegalArgumentException("Execution date required for normal payments");
+        }
+        if (requestedExecutionDate.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Execution date cannot be in the past");
+        }
+        return requestedExecutionDate;
+    }
+
+    /**
+     * Creates the payment of an approved pending payment, or its standing order if it has a recurrence.
+     * Returns the payment, null for a standing order.
+     */
     @Transactional
     public Payment executeApprovedPayment(PendingPayment pendingPayment) {
         // Validate pending payment status
@@ -570,12 +681,33 @@ public class PaymentService {
             }
         }
 
+        // A standing order creates its payments on every occurrence, not now
+        if (pendingPayment.getRecurrence() != null) {
+            RecurringPayment recurringPayment = recurringPaymentService.createFromApproval(pendingPayment, konto);
+
+            pendingPayment.markCompleted(PendingPaymentStatus.APPROVED);
+            pendingPaymentRepository.save(pendingPayment);
+
+            auditLogService.logSuccess(
+                    AuditAction.PAYMENT_APPROVED,
+                    AuditEntityType.PAYMENT,
+                    recurringPayment.getId(),
+                    user,
+                    pendingPayment.getIpAddress(),
+                    String.format("Recurring payment of %s %s to %s approved (%s, first execution %s)",
+                            pendingPayment.getAmount(), pendingPayment.getPaymentCurrency(),
+                            pendingPayment.getToIban(), recurringPayment.getRecurrence(),
+                            recurringPayment.getNextExecutionDate())
+            );
+            return null;
+        }
+
         // Check if target IBAN is valid for INSTANT payments
         PaymentExecutionType executionType = pendingPayment.getExecutionType();
         LocalDate executionDate = pendingPayment.getExecutionDate();
 
         if (executionType == PaymentExecutionType.INSTANT) {
-            Optional<Konto> targetKonto = kontoRepository.findByIban(pendingPayment.getToIban());
+            Optional<IbanDirectoryService.IbanEntry> targetKonto = ibanDirectoryService.resolve(pendingPayment.getToIban());
             if (targetKonto.isEmpty()) {
                 // Convert instant payment to normal payment for next day if target IBAN is invalid
                 log.warn("Target IBAN {} not found for instant payment. Converting to normal payment for next day.", pendingPayment.getToIban());
@@ -597,12 +729,13 @@ public class PaymentService {
 
         payment = paymentRepository.save(payment);
 
-        // If INSTANT, execute immediately
+        // If INSTANT, hand it to the execution queue, the approval does not wait for the postings
         if (executionType == PaymentExecutionType.INSTANT) {
-            executePayment(payment);
+            paymentExecutionQueue.enqueue(payment.getId());
         }
 
         pendingPayment.markCompleted(PendingPaymentStatus.APPROVED);
+        pendingPayment.setPaymentId(payment.getId());
         pendingPaymentRepository.save(pendingPayment);
 
         log.info("Payment {} created and approved from pending payment {} (type: {}, execution date: {})",
@@ -618,12 +751,37 @@ public class PaymentService {
                 String.format("Payment of %s %s to %s approved and %s",
                         pendingPayment.getAmount(), pendingPayment.getPaymentCurrency(),
                         pendingPayment.getToIban(),
-                        executionType == PaymentExecutionType.INSTANT ? "executed immediately" : "scheduled for " + executionDate)
+                        executionType == PaymentExecutionType.INSTANT ? "queued for immediate execution" : "scheduled for " + executionDate)
         );
 
         return payment;
     }
 
+    @Transactional(readOnly = true)
+    public PendingPaymentStatusDTO getPendingPaymentStatus(UUID userId, String mobileVerifyCode) {
+        PendingPayment pendingPayment = pendingPaymentRepository.findByMobileVerifyCode(mobileVerifyCode)
+                .orElseThrow(() -> new IllegalArgumentException("Pending payment not found"));
+
+        if (!pendingPayment.getUser().getId().equals(userId)) {
+            throw new IllegalArgumentException("Pending payment not found");
+        }
+
+        PaymentStatus paymentStatus = null;
+        if (pendingPayment.getPaymentId() != null) {
+            paymentStatus = paymentRepository.findById(pendingPayment.getPaymentId())
+                    .map(Payment::getStatus)
+                    .orElse(null);
+        }
+
+        return new PendingPaymentStatusDTO(pendingPayment.getStatus(), pendingPayment.getPaymentId(), paymentStatus);
+    }
+
+    // Workers only start once the context is complete, they call back into executePayment
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPaymentExecutionQueue() {
+        paymentExecutionQueue.start(this::executePayment);
+    }
+
     private PaymentDTO toDTO(Payment payment) {
         return new PaymentDTO(
                 payment.getId(),
@@ -755,12 +913,11 @@ public class PaymentService {
         Payment payment = paymentRepository.findById(paymentId)
                 .orElseThrow(() -> new IllegalArgumentException("Payment not found"));
 
-        if (payment.getStatus() != PaymentStatus.PENDING) {
-            throw new IllegalArgumentException("Only pending payments can be cancelled");
+        if (payment.getStatus() != PaymentStatus.PENDING && !payment.canBeCancelled()) {
+            throw new IllegalArgumentException("Only pending payments and payments waiting for a retry can be cancelled");
         }
 
-        payment.cancel();
-        paymentRepository.save(payment);
+        cancel(payment);
 
         log.info("Admin cancelled payment {}", paymentId);
     }
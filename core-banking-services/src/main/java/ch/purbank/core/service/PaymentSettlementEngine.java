@@ -0,0 +1,219 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentRepository;
+import ch.purbank.core.repository.PaymentRepository.DuePaymentRef;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Settles due payments in parallel, partitioned by source konto.
+ * Due payments are read as keyset pages of ids, so neither the driver nor any transaction holds the whole batch.
+ * Each page is split into partitions (up to settlementChunkSize payments of one konto), every partition commits in
+ * its own transaction. Partitions of the same konto run one after another, different kontos run in parallel.
+ * A partition only takes one of the settlementParallelism slots once the partition before it of the same konto is
+ * done, so a konto with many partitions waits in its lane without keeping other kontos from running.
+ * Partitions that fail as a whole (e.g. deadlock victim) are retried once sequentially after the parallel phase.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PaymentSettlementEngine {
+
+    private final PaymentRepository paymentRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    public SettlementResult settle(LocalDate dueDate, Consumer<Payment> paymentExecutor) {
+        int parallelism = paymentConfig.getSettlementParallelism();
+        int pageSize = paymentConfig.getSettlementPageSize();
+        int chunkSize = paymentConfig.getSettlementChunkSize();
+
+        log.info("Settling payments due until {} (parallelism {}, page size {}, chunk size {})",
+                dueDate, parallelism, pageSize, chunkSize);
+
+        long startNanos = System.nanoTime();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        AtomicInteger executed = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int partitionCount = 0;
+        int dispatched = 0;
+        Queue<Partition> failedPartitions = new ConcurrentLinkedQueue<>();
+
+        // Permits bound the partitions running at a time, i.e. the open transactions/connections
+        Semaphore permits = new Semaphore(parallelism);
+        // Bounds the payments dispatched but not settled yet to two pages, running or waiting in their lane.
+        // The page loop blocks on it, so the next page is only read once there is room for it.
+        int backlogSize = 2 * pageSize;
+        Semaphore backlog = new Semaphore(backlogSize);
+        // Last scheduled partition per konto, later partitions of the same konto chain onto it
+        Map<UUID, CompletableFuture<Void>> lanes = new ConcurrentHashMap<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<DuePaymentRef> page = paymentRepository.findFirstDuePaymentPage(
+                    PaymentStatus.PENDING, PaymentExecutionType.NORMAL, dueDate, Limit.of(pageSize));
+            int pageNumber = 0;
+
+            while (!page.isEmpty()) {
+                pageNumber++;
+                for (Partition partition : partitionPage(page, chunkSize)) {
+                    backlog.acquireUninterruptibly(partition.paymentIds().size());
+                    partitionCount++;
+
+                    CompletableFuture<Void> previous = lanes.getOrDefault(partition.kontoId(), CompletableFuture.completedFuture(null));
+                    CompletableFuture<Void> next = previous.handle((r, e) -> null).thenRunAsync(() -> {
+                        // Taken only now that the previous partition of the konto is done
+                        permits.acquireUninterruptibly();
+                        try {
+                            settlePartition(transactionTemplate, partition, paymentExecutor, executed, failed);
+                        } catch (Exception e) {
+                            log.warn("Partition for konto {} failed and will be retried: {}", partition.kontoId(), e.getMessage());
+                            failedPartitions.add(partition);
+                        } finally {
+                            permits.release();
+                            backlog.release(partition.paymentIds().size());
+                        }
+                    }, executor);
+                    lanes.put(partition.kontoId(), next);
+                    next.whenComplete((r, e) -> lanes.remove(partition.kontoId(), next));
+                }
+
+                dispatched += page.size();
+                log.info("Page {}: {} payments dispatched, {} settled so far ({} executed, {} failed)",
+                        pageNumber, dispatched, executed.get() + failed.get(), executed.get(), failed.get());
+
+                if (page.size() < pageSize) {
+                    break;
+                }
+                DuePaymentRef last = page.get(page.size() - 1);
+                page = paymentRepository.findDuePaymentPageAfter(PaymentStatus.PENDING, PaymentExecutionType.NORMAL,
+                        dueDate, last.getExecutionDate(), last.getId(), Limit.of(pageSize));
+            }
+
+            // The whole backlog free again means every partition has finished
+            backlog.acquireUninterruptibly(backlogSize);
+        }
+
+        // Retry failed partitions one by one, without any contention from other partitions
+        List<UUID> abandonedPartitions = new ArrayList<>();
+        for (Partition partition : failedPartitions) {
+            try {
+                settlePartition(transactionTemplate, partition, paymentExecutor, executed, failed);
+                log.info("Partition for konto {} succeeded on retry", partition.kontoId());
+            } catch (Exception e) {
+                log.error("Partition for konto {} failed on retry, payments stay pending for the next run",
+                        partition.kontoId(), e);
+                abandonedPartitions.add(partition.kontoId());
+            }
+        }
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        double throughput = durationMillis > 0 ? dispatched * 1000.0 / durationMillis : dispatched;
+
+        meterRegistry.counter("purbank.settlement.payments", "outcome", "executed").increment(executed.get());
+        meterRegistry.counter("purbank.settlement.payments", "outcome", "failed").increment(failed.get());
+        meterRegistry.counter("purbank.settlement.partitions.abandoned").increment(abandonedPartitions.size());
+
+        log.info("Settlement finished in {} ms: {} executed, {} failed, {} partitions abandoned ({} payments/s)",
+                durationMillis, executed.get(), failed.get(), abandonedPartitions.size(), String.format("%.1f", throughput));
+
+        return new SettlementResult(partitionCount, executed.get(), failed.get(), abandonedPartitions,
+                durationMillis, throughput);
+    }
+
+    private void settlePartition(TransactionTemplate transactionTemplate, Partition partition,
+                                 Consumer<Payment> paymentExecutor, AtomicInteger executed, AtomicInteger failed) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        // Count locally and only publish after commit, a rolled back partition must not be counted
+        int[] outcome = transactionTemplate.execute(status -> {
+            int partitionExecuted = 0;
+            int partitionFailed = 0;
+
+            List<Payment> payments = new ArrayList<>(paymentRepository.findAllById(partition.paymentIds()));
+            payments.sort(Comparator.comparing(Payment::getExecutionDate).thenComparing(Payment::getCreatedAt));
+
+            for (Payment payment : payments) {
+                // Payment may have been cancelled or executed since the page was read
+                if (payment.getStatus() != PaymentStatus.PENDING) {
+                    continue;
+                }
+                paymentExecutor.accept(payment);
+                if (payment.getStatus() == PaymentStatus.EXECUTED) {
+                    partitionExecuted++;
+                } else {
+                    partitionFailed++;
+                }
+            }
+            return new int[] { partitionExecuted, partitionFailed };
+        });
+
+        executed.addAndGet(outcome[0]);
+        failed.addAndGet(outcome[1]);
+        sample.stop(meterRegistry.timer("purbank.settlement.partition.duration"));
+
+        log.debug("Konto {}: {} executed, {} failed", partition.kontoId(), outcome[0], outcome[1]);
+    }
+
+    private List<Partition> partitionPage(List<DuePaymentRef> page, int chunkSize) {
+        Map<UUID, List<UUID>> byKonto = new LinkedHashMap<>();
+        for (DuePaymentRef ref : page) {
+            byKonto.computeIfAbsent(ref.getKontoId(), k -> new ArrayList<>()).add(ref.getId());
+        }
+
+        List<Partition> partitions = new ArrayList<>();
+        for (Map.Entry<UUID, List<UUID>> entry : byKonto.entrySet()) {
+            List<UUID> ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i += chunkSize) {
+                partitions.add(new Partition(entry.getKey(), ids.subList(i, Math.min(i + chunkSize, ids.size()))));
+            }
+        }
+        return partitions;
+    }
+
+    private record Partition(UUID kontoId, List<UUID> paymentIds) {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SettlementResult {
+        private final int partitions;
+        private final int executed;
+        private final int failed;
+        private final List<UUID> abandonedPartitions;
+        private final long durationMillis;
+        private final double paymentsPerSecond;
+    }
+}
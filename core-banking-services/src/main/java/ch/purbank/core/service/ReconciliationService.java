@@ -0,0 +1,242 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.ReconciliationConfig;
+import ch.purbank.core.domain.ReconciliationRun;
+import ch.purbank.core.dto.ReconciliationDiscrepancyDTO;
+import ch.purbank.core.dto.ReconciliationRunDTO;
+import ch.purbank.core.repository.ReconciliationDiscrepancyRepository;
+import ch.purbank.core.repository.ReconciliationRunRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ledger reconciliation: checks for every konto that its balance equals the sum of its transactions (kontos open
+ * with a balance of 0; archived months count with the totals kept in transaction_archive_kontos), and that the
+ * balanceAfter of its latest transaction equals its balance. Kontos whose balanceAfter is being rebased (see
+ * BalanceRebaseService) only get the first check.
+ *
+ * Works through the kontos in chunks of consecutive ids, in parallel; each chunk is one statement with one grouped
+ * aggregate over the chunk's transactions. Kontos found out of balance are checked again after recheckDelay, only
+ * those still out of balance then are reported, so postings caught between the balance update and the insert of
+ * their transaction don't show up. The report of each run is kept in reconciliation_runs and
+ * reconciliation_discrepancies.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReconciliationService {
+
+    private final ReconciliationRunRepository runRepository;
+    private final ReconciliationDiscrepancyRepository discrepancyRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ReconciliationConfig reconciliationConfig;
+    private final MeterRegistry meterRegistry;
+    private final KontoChunkRunner kontoChunkRunner;
+
+    // Kontos selected by the filter (%1$s, see CHUNK_FILTER and RECHECK_FILTER, bound three times) that are out of
+    // balance. The balanceAfter of the latest transaction is read at the latest timestamp found by the aggregate,
+    // which prunes the lookup to a single partition.
+    private static final String RECONCILE_SQL =
+            "WITH posted AS (SELECT konto_id, SUM(amount) AS amount_total, MAX(timestamp) AS last_timestamp " +
+            "  FROM transactions WHERE konto_id %1$s GROUP BY konto_id), " +
+            "archived AS (SELECT konto_id, SUM(amount_total) AS amount_total FROM transaction_archive_kontos " +
+            "  WHERE konto_id %1$s GROUP BY konto_id), " +
+            "checked AS (SELECT k.id, k.balance, COALESCE(p.amount_total, 0) + COALESCE(a.amount_total, 0) AS transaction_total, " +
+            "  l.balance_after, COALESCE(l.balance_after <> k.balance AND NOT EXISTS (SELECT 1 FROM balance_rebases r " +
+            "    WHERE r.konto_id = k.id AND r.status IN ('PENDING', 'RUNNING')), false) AS balance_after_mismatch " +
+            "  FROM konten k LEFT JOIN posted p ON p.konto_id = k.id LEFT JOIN archived a ON a.konto_id = k.id " +
+            "  LEFT JOIN LATERAL (SELECT t.balance_after FROM transactions t WHERE t.konto_id = k.id " +
+            "    AND t.timestamp = p.last_timestamp ORDER BY t.id DESC LIMIT 1) l ON true " +
+            "  WHERE k.id %1$s) " +
+            "SELECT id, balance, transaction_total, balance_after, balance_after_mismatch FROM checked " +
+            "WHERE balance <> transaction_total OR balance_after_mismatch";
+    private static final String CHUNK_FILTER = "BETWEEN ? AND ?";
+    private static final String RECHECK_FILTER = "= ANY(CAST(? AS uuid[]))";
+
+    private static final String INSERT_DISCREPANCY_SQL = "INSERT INTO reconciliation_discrepancies " +
+            "(run_id, konto_id, balance, transaction_total, latest_balance_after, balance_after_mismatch) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Result of the last run, exposed as gauges
+    private final AtomicLong lastBalanceMismatches = new AtomicLong();
+    private final AtomicLong lastBalanceAfterMismatches = new AtomicLong();
+    private Timer runDuration;
+
+    @PostConstruct
+    public void init() {
+        meterRegistry.gauge("purbank.reconciliation.mismatches", Tags.of("type", "balance"), lastBalanceMismatches);
+        meterRegistry.gauge("purbank.reconciliation.mismatches", Tags.of("type", "balance_after"), lastBalanceAfterMismatches);
+        runDuration = meterRegistry.timer("purbank.reconciliation.duration");
+    }
+
+    /**
+     * Reconciles all kontos and writes the report. Chunks of chunkSize kontos run in parallel, parallelism at a
+     * time; a failed chunk is logged and counted, its kontos are checked by the next run.
+     */
+    public ReconciliationRunDTO reconcile() {
+        int parallelism = reconciliationConfig.getParallelism();
+        int chunkSize = reconciliationConfig.getChunkSize();
+        log.info("Reconciling konto balances (parallelism {}, chunk size {})", parallelism, chunkSize);
+
+        long startNanos = System.nanoTime();
+        ReconciliationRun run = new ReconciliationRun();
+        run.setStartedAt(LocalDateTime.now());
+        run = runRepository.save(run);
+
+        Queue<Discrepancy> suspects = new ConcurrentLinkedQueue<>();
+        AtomicLong checked = new AtomicLong();
+        KontoChunkRunner.ChunkRun chunkRun = kontoChunkRunner.run("Reconciliation", chunkSize, parallelism,
+                (firstId, lastId, kontos) -> {
+                    suspects.addAll(check(CHUNK_FILTER, firstId, lastId, firstId, lastId, firstId, lastId));
+                    checked.addAndGet(kontos);
+                });
+
+        List<Discrepancy> discrepancies = recheck(new ArrayList<>(suspects), chunkSize);
+        long balanceMismatches = discrepancies.stream().filter(Discrepancy::isBalanceMismatch).count();
+        long balanceAfterMismatches = discrepancies.stream().filter(Discrepancy::balanceAfterMismatch).count();
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+        run.setFinishedAt(LocalDateTime.now());
+        run.setKontosChecked(checked.get());
+        run.setChunks(chunkRun.chunks());
+        run.setFailedChunks(chunkRun.failedChunks());
+        run.setBalanceMismatches(balanceMismatches);
+        run.setBalanceAfterMismatches(balanceAfterMismatches);
+        run.setDurationMillis(durationMillis);
+        ReconciliationRun finished = run;
+        // The report appears at once, with the run marked finished
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<Object[]> rows = discrepancies.stream()
+                    .map(d -> new Object[]{finished.getId(), d.kontoId(), d.balance(), d.transactionTotal(),
+                            d.latestBalanceAfter(), d.balanceAfterMismatch()})
+                    .toList();
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_DISCREPANCY_SQL, rows);
+            }
+            runRepository.save(finished);
+        });
+
+        runDuration.record(durationMillis, TimeUnit.MILLISECONDS);
+        lastBalanceMismatches.set(balanceMismatches);
+        lastBalanceAfterMismatches.set(balanceAfterMismatches);
+        if (chunkRun.failedChunks() > 0) {
+            meterRegistry.counter("purbank.reconciliation.failed.chunks").increment(chunkRun.failedChunks());
+        }
+        if (!discrepancies.isEmpty()) {
+            log.warn("Reconciliation {} found {} kontos out of balance ({} balance, {} balanceAfter)", run.getId(),
+                    discrepancies.size(), balanceMismatches, balanceAfterMismatches);
+        }
+        log.info("Reconciled {} kontos in {} ms ({} chunks, {} failed)", checked.get(), durationMillis,
+                chunkRun.chunks(), chunkRun.failedChunks());
+        return toDTO(run);
+    }
+
+    // Checks the suspects again once postings in flight have had time to land, returns those still out of balance
+    private List<Discrepancy> recheck(List<Discrepancy> suspects, int chunkSize) {
+        if (suspects.isEmpty()) {
+            return suspects;
+        }
+        try {
+            Thread.sleep(reconciliationConfig.getRecheckDelay().toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Reconciliation interrupted before the recheck, reporting {} kontos unconfirmed", suspects.size());
+            return suspects;
+        }
+        List<Discrepancy> confirmed = new ArrayList<>();
+        for (int from = 0; from < suspects.size(); from += chunkSize) {
+            List<String> ids = suspects.subList(from, Math.min(from + chunkSize, suspects.size())).stream()
+                    .map(d -> d.kontoId().toString())
+                    .toList();
+            String idArray = "{" + String.join(",", ids) + "}";
+            confirmed.addAll(check(RECHECK_FILTER, idArray, idArray, idArray));
+        }
+        return confirmed;
+    }
+
+    private List<Discrepancy> check(String filter, Object... params) {
+        return jdbcTemplate.query(RECONCILE_SQL.formatted(filter), DISCREPANCY_ROW_MAPPER, params);
+    }
+
+    /**
+     * Latest runs, newest first.
+     */
+    @Transactional(readOnly = true)
+    public List<ReconciliationRunDTO> getRuns(Integer limit) {
+        return runRepository.findAllByOrderByStartedAtDesc(pageLimit(limit)).stream()
+                .map(ReconciliationService::toDTO)
+                .toList();
+    }
+
+    /**
+     * Kontos out of balance in a run, ordered by konto id. Pass the konto id of the last one to get the next page.
+     */
+    @Transactional(readOnly = true)
+    public List<ReconciliationDiscrepancyDTO> getDiscrepancies(UUID runId, UUID afterKontoId, Integer limit) {
+        if (!runRepository.existsById(runId)) {
+            throw new IllegalArgumentException("Reconciliation run not found");
+        }
+        Limit pageLimit = pageLimit(limit);
+        return afterKontoId == null
+                ? discrepancyRepository.findFirstRunPage(runId, pageLimit)
+                : discrepancyRepository.findRunPageAfter(runId, afterKontoId, pageLimit);
+    }
+
+    private Limit pageLimit(Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int max = reconciliationConfig.getListMaxPageSize();
+        return Limit.of(limit == null ? max : Math.min(limit, max));
+    }
+
+    private static ReconciliationRunDTO toDTO(ReconciliationRun run) {
+        return new ReconciliationRunDTO(
+                run.getId(),
+                run.getStartedAt(),
+                run.getFinishedAt(),
+                run.getKontosChecked(),
+                run.getChunks(),
+                run.getFailedChunks(),
+                run.getBalanceMismatches(),
+                run.getBalanceAfterMismatches(),
+                run.getDurationMillis());
+    }
+
+    // A konto out of balance, as found by RECONCILE_SQL
+    record Discrepancy(UUID kontoId, BigDecimal balance, BigDecimal transactionTotal, BigDecimal latestBalanceAfter,
+                       boolean balanceAfterMismatch) {
+
+        boolean isBalanceMismatch() {
+            return balance.compareTo(transactionTotal) != 0;
+        }
+    }
+
+    private static final RowMapper<Discrepancy> DISCREPANCY_ROW_MAPPER = (rs, rowNum) -> new Discrepancy(
+            rs.getObject("id", UUID.class),
+            rs.getBigDecimal("balance"),
+            rs.getBigDecimal("transaction_total"),
+            rs.getBigDecimal("balance_after"),
+            rs.getBoolean("balance_after_mismatch"));
+}
@@ -0,0 +1,222 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.*;
+import ch.purbank.core.domain.enums.*;
+import ch.purbank.core.dto.RecurringPaymentDTO;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import ch.purbank.core.repository.RecurringPaymentRepository;
+import ch.purbank.core.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Standing orders. A rule is created by approving a payment that carries a recurrence, and keeps the date of its
+ * next occurrence in an indexed column. Shortly before the settlement run the rules due that day are claimed page
+ * by page, their payments are inserted with JDBC batch inserts and the rules move on to their next occurrence.
+ * Rules that are not due are never read. An occurrence missed while the job didn't run is created on the next run.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RecurringPaymentService {
+
+    private static final String INSERT_PAYMENT_SQL = "INSERT INTO payments " +
+            "(id, konto_id, to_iban, amount, payment_currency, message, note, execution_type, execution_date, " +
+            "status, locked, locked_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, 'NORMAL', ?, 'PENDING', true, ?, ?)";
+
+    private final RecurringPaymentRepository recurringPaymentRepository;
+    private final KontoRepository kontoRepository;
+    private final KontoMemberRepository kontoMemberRepository;
+    private final UserRepository userRepository;
+    private final AuditLogService auditLogService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final PaymentConfig paymentConfig;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Creates the standing order of an approved pending payment. Runs in the approval transaction.
+     */
+    public RecurringPayment createFromApproval(PendingPayment pendingPayment, Konto konto) {
+        RecurringPayment recurringPayment = recurringPaymentRepository.save(RecurringPayment.builder()
+                .konto(konto)
+                .createdBy(pendingPayment.getUser())
+                .toIban(pendingPayment.getToIban())
+                .amount(pendingPayment.getAmount())
+                .paymentCurrency(pendingPayment.getPaymentCurrency())
+                .message(pendingPayment.getMessage())
+                .note(pendingPayment.getNote())
+                .recurrence(pendingPayment.getRecurrence())
+                .startDate(pendingPayment.getExecutionDate())
+                .endDate(pendingPayment.getRecurrenceEndDate())
+                .build());
+
+        log.info("Recurring payment {} created ({} from {}, first execution {})", recurringPayment.getId(),
+                recurringPayment.getRecurrence(), recurringPayment.getStartDate(), recurringPayment.getNextExecutionDate());
+        return recurringPayment;
+    }
+
+    // Runs at 00:45, before the settlement run at 01:00
+    @Scheduled(cron = "0 45 0 * * ?")
+    public void materializeScheduledPayments() {
+        materializeDuePayments(LocalDate.now());
+    }
+
+    /**
+     * Creates the payments of all occurrences up to the date. Safe to run more than once and on several nodes,
+     * a created occurrence has already moved the rule on.
+     *
+     * @return number of payments created
+     */
+    public int materializeDuePayments(LocalDate date) {
+        int pageSize = paymentConfig.getRecurringPageSize();
+        long startNanos = System.nanoTime();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int rules = 0;
+        int created = 0;
+        while (true) {
+            int[] page;
+            try {
+                page = transactionTemplate.execute(status -> materializePage(date, pageSize));
+            } catch (Exception e) {
+                // Rules of the failed page stay due and are picked up by the next run
+                log.error("Creating recurring payments failed after {} payments: {}", created, e.getMessage(), e);
+                break;
+            }
+            rules += page[0];
+            created += page[1];
+            if (page[0] < pageSize) {
+                break;
+            }
+        }
+
+        meterRegistry.counter("purbank.payments.recurring.created").increment(created);
+        log.info("Created {} payments from {} recurring payments due until {} in {} ms",
+                created, rules, date, (System.nanoTime() - startNanos) / 1_000_000);
+        return created;
+    }
+
+    private int[] materializePage(LocalDate date, int pageSize) {
+        List<RecurringPayment> due = recurringPaymentRepository.claimDue(date, pageSize);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Object[]> rows = new ArrayList<>();
+        for (RecurringPayment rule : due) {
+            // Catch up on every occurrence up to the date, e.g. after the job didn't run for a day
+            while (rule.getStatus() == RecurringPaymentStatus.ACTIVE && !rule.getNextExecutionDate().isAfter(date)) {
+                rows.add(new Object[]{UUID.randomUUID(), rule.getKonto().getId(), rule.getToIban(), rule.getAmount(),
+                        rule.getPaymentCurrency().name(), rule.getMessage(), rule.getNote(),
+                        rule.getNextExecutionDate(), now, now});
+                rule.advance();
+            }
+        }
+
+        int batchSize = paymentConfig.getBatchInsertSize();
+        for (int i = 0; i < rows.size(); i += batchSize) {
+            jdbcTemplate.batchUpdate(INSERT_PAYMENT_SQL, rows.subList(i, Math.min(i + batchSize, rows.size())));
+        }
+        recurringPaymentRepository.saveAll(due);
+
+        return new int[]{due.size(), rows.size()};
+    }
+
+    @Transactional(readOnly = true)
+    public List<RecurringPaymentDTO> getRecurringPayments(UUID userId, UUID kontoIdFilter) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        List<Konto> kontos;
+        if (kontoIdFilter != null) {
+            Konto konto = kontoRepository.findById(kontoIdFilter)
+                    .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+
+            // Verify user has access
+            if (!kontoMemberRepository.existsByKontoAndUser(konto, user)) {
+                throw new IllegalArgumentException("User is not a member of this konto");
+            }
+            kontos = List.of(konto);
+        } else {
+            kontos = kontoMemberRepository.findByUser(user).stream().map(KontoMember::getKonto).toList();
+        }
+
+        if (kontos.isEmpty()) {
+            return List.of();
+        }
+        return recurringPaymentRepository.findByKontoInAndStatusOrderByNextExecutionDate(kontos, RecurringPaymentStatus.ACTIVE)
+                .stream()
+                .map(this::toDTO)
+                .toList();
+    }
+
+    @Transactional
+    public void cancelRecurringPayment(UUID userId, UUID recurringPaymentId, String ipAddress) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found"));
+
+        RecurringPayment recurringPayment = recurringPaymentRepository.findById(recurringPaymentId)
+                .orElseThrow(() -> new IllegalArgumentException("Recurring payment not found"));
+
+        KontoMember membership = kontoMemberRepository.findByKontoAndUser(recurringPayment.getKonto(), user)
+                .orElseThrow(() -> new IllegalArgumentException("User is not a member of this konto"));
+
+        if (membership.getRole() == MemberRole.VIEWER) {
+            throw new IllegalArgumentException("Viewers cannot cancel recurring payments");
+        }
+
+        if (recurringPayment.getStatus() != RecurringPaymentStatus.ACTIVE) {
+            throw new IllegalArgumentException("Recurring payment is not active");
+        }
+
+        // Stopping future payments needs no mobile approval, payments already created stay as they are
+        recurringPayment.cancel();
+        recurringPaymentRepository.save(recurringPayment);
+
+        log.info("Recurring payment {} cancelled by user {}", recurringPaymentId, userId);
+
+        auditLogService.logSuccess(
+                AuditAction.PAYMENT_CANCELLED,
+                AuditEntityType.PAYMENT,
+                recurringPaymentId,
+                user,
+                ipAddress,
+                String.format("Recurring payment of %s %s to %s cancelled",
+                        recurringPayment.getAmount(), recurringPayment.getPaymentCurrency(), recurringPayment.getToIban())
+        );
+    }
+
+    private RecurringPaymentDTO toDTO(RecurringPayment recurringPayment) {
+        return new RecurringPaymentDTO(
+                recurringPayment.getId(),
+                recurringPayment.getKonto().getId(),
+                recurringPayment.getToIban(),
+                recurringPayment.getAmount(),
+                recurringPayment.getPaymentCurrency(),
+                recurringPayment.getMessage(),
+                recurringPayment.getNote(),
+                recurringPayment.getRecurrence(),
+                recurringPayment.getStartDate(),
+                recurringPayment.getEndDate(),
+                recurringPayment.getNextExecutionDate(),
+                recurringPayment.getLastExecutionDate(),
+                recurringPayment.getStatus());
+    }
+}
@@ -0,0 +1,263 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.RecurringPayment;
+import ch.purbank.core.domain.enums.*;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.dto.ProjectedBalanceDTO;
+import ch.purbank.core.dto.SettlementSimulationDTO;
+import ch.purbank.core.dto.SimulatedPaymentFailureDTO;
+import ch.purbank.core.repository.RecurringPaymentRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Projects the outcome of the nightly settlement run without writing anything. Due payments (and the standing
+ * order occurrences not created yet), konto balances and target IBANs are read in bulk in one snapshot, then every
+ * payment goes through the checks of PaymentService.executePayment in memory, with the same currency conversion.
+ *
+ * Kontos are settled in parallel, each konto's payments in the order of the settlement run. Incoming payments of
+ * the run count as soon as they are projected: a payment that isn't covered is tried again once its konto received
+ * more money, like the netting stage does. Payments that remain uncovered are projected as failed.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SettlementSimulationService {
+
+    private static final String KONTOS_BY_ID_SQL = "SELECT id, iban, currency, status, balance FROM konten WHERE id = ANY(?)";
+    private static final String KONTOS_BY_IBAN_SQL = "SELECT id, iban, currency, status, balance FROM konten WHERE iban = ANY(?)";
+    // Same selection and order as the settlement run (see PaymentRepository.findFirstDuePaymentPage)
+    private static final String DUE_PAYMENTS_SQL = "SELECT id, konto_id, to_iban, amount, payment_currency, execution_date " +
+            "FROM payments WHERE status = 'PENDING' AND execution_type = 'NORMAL' AND execution_date <= ? " +
+            "ORDER BY execution_date, id";
+
+    private final RecurringPaymentRepository recurringPaymentRepository;
+    private final CurrencyConversionService currencyConversionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentConfig paymentConfig;
+
+    /**
+     * Simulates the settlement of all NORMAL payments due until the date.
+     */
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+    public SettlementSimulationDTO simulate(LocalDate dueDate) {
+        long startNanos = System.nanoTime();
+
+        List<SimulatedPayment> payments = loadDuePayments(dueDate);
+        payments.addAll(expandStandingOrders(dueDate));
+        // Stable sort: standing order payments, created right before the run, come after the existing ones of their day
+        payments.sort(Comparator.comparing(SimulatedPayment::getExecutionDate));
+
+        Map<UUID, KontoState> kontos = loadKontos(payments);
+        Map<String, KontoState> targets = loadTargets(payments);
+        targets.values().forEach(target -> kontos.putIfAbsent(target.id(), target));
+
+        // Checks that don't depend on balances, one payment at a time
+        payments.parallelStream().forEach(payment -> resolve(payment, kontos, targets));
+
+        Map<UUID, List<SimulatedPayment>> bySourceKonto = payments.stream()
+                .filter(payment -> payment.failure == null)
+                .collect(Collectors.groupingBy(SimulatedPayment::getKontoId, LinkedHashMap::new, Collectors.toList()));
+
+        Map<UUID, BigDecimal> credited = new ConcurrentHashMap<>();
+        Map<UUID, BigDecimal> debited = new ConcurrentHashMap<>();
+        settle(bySourceKonto, kontos, credited, debited);
+
+        List<SimulatedPaymentFailureDTO> failures = new ArrayList<>();
+        Map<SimulatedFailureReason, Integer> failuresByReason = new EnumMap<>(SimulatedFailureReason.class);
+        int executed = 0;
+        for (SimulatedPayment payment : payments) {
+            if (payment.executed) {
+                executed++;
+                continue;
+            }
+            SimulatedFailureReason reason = payment.failure != null ? payment.failure : SimulatedFailureReason.INSUFFICIENT_FUNDS;
+            failuresByReason.merge(reason, 1, Integer::sum);
+            failures.add(new SimulatedPaymentFailureDTO(payment.getPaymentId(), payment.getRecurringPaymentId(), payment.getKontoId(),
+                    payment.getToIban(), payment.getAmount(), payment.getCurrency(), payment.getExecutionDate(), reason));
+        }
+
+        Set<UUID> touched = new HashSet<>(debited.keySet());
+        touched.addAll(credited.keySet());
+        List<ProjectedBalanceDTO> balances = touched.stream()
+                .map(kontos::get)
+                .map(konto -> new ProjectedBalanceDTO(konto.id(), konto.iban(), konto.currency(), konto.balance(),
+                        projectedBalance(konto, credited, debited)))
+                .sorted(Comparator.comparing(ProjectedBalanceDTO::getIban))
+                .toList();
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("Settlement simulation for {}: {} payments, {} projected executed, {} projected failed in {} ms",
+                dueDate, payments.size(), executed, failures.size(), durationMillis);
+
+        return new SettlementSimulationDTO(dueDate, payments.size(), executed, failures.size(), failuresByReason,
+                failures, balances, durationMillis);
+    }
+
+    // Streamed with plain JDBC in one query: no entity or projection per row, the driver fetches pageSize rows at a time
+    private List<SimulatedPayment> loadDuePayments(LocalDate dueDate) {
+        List<SimulatedPayment> payments = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(DUE_PAYMENTS_SQL);
+            statement.setFetchSize(paymentConfig.getSimulationPageSize());
+            statement.setObject(1, dueDate);
+            return statement;
+        }, (RowCallbackHandler) row -> payments.add(new SimulatedPayment(
+                row.getObject("id", UUID.class),
+                null,
+                row.getObject("konto_id", UUID.class),
+                row.getString("to_iban"),
+                row.getBigDecimal("amount"),
+                Currency.valueOf(row.getString("payment_currency")),
+                row.getObject("execution_date", LocalDate.class))));
+        return payments;
+    }
+
+    // Occurrences RecurringPaymentService would create before the run, computed without touching the rules
+    private List<SimulatedPayment> expandStandingOrders(LocalDate dueDate) {
+        List<SimulatedPayment> occurrences = new ArrayList<>();
+        for (RecurringPayment rule : recurringPaymentRepository.findDueUntil(RecurringPaymentStatus.ACTIVE, dueDate)) {
+            LocalDate next = rule.getNextExecutionDate();
+            while (!next.isAfter(dueDate) && (rule.getEndDate() == null || !next.isAfter(rule.getEndDate()))) {
+                occurrences.add(new SimulatedPayment(null, rule.getId(), rule.getKonto().getId(), rule.getToIban(),
+                        rule.getAmount(), rule.getPaymentCurrency(), next));
+                next = rule.getRecurrence().nextOccurrence(rule.getStartDate(), next);
+            }
+        }
+        return occurrences;
+    }
+
+    private Map<UUID, KontoState> loadKontos(List<SimulatedPayment> payments) {
+        List<UUID> ids = payments.stream().map(SimulatedPayment::getKontoId).distinct().toList();
+        return loadInPages(KONTOS_BY_ID_SQL, "uuid", ids).stream()
+                .collect(Collectors.toMap(KontoState::id, Function.identity()));
+    }
+
+    // Same lookup as IbanDirectoryService.resolve, but for all target IBANs at once and without filling its cache
+    private Map<String, KontoState> loadTargets(List<SimulatedPayment> payments) {
+        List<String> ibans = payments.stream().map(SimulatedPayment::getToIban).distinct().toList();
+        return loadInPages(KONTOS_BY_IBAN_SQL, "varchar", ibans).stream()
+                .collect(Collectors.toMap(KontoState::iban, Function.identity()));
+    }
+
+    private List<KontoState> loadInPages(String sql, String keyType, List<?> keys) {
+        int pageSize = paymentConfig.getSimulationPageSize();
+        List<KontoState> kontos = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i += pageSize) {
+            Object[] page = keys.subList(i, Math.min(i + pageSize, keys.size())).toArray();
+            kontos.addAll(jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setArray(1, connection.createArrayOf(keyType, page));
+                return statement;
+            }, (row, rowNum) -> new KontoState(
+                    row.getObject("id", UUID.class),
+                    row.getString("iban"),
+                    Currency.valueOf(row.getString("currency")),
+                    KontoStatus.valueOf(row.getString("status")),
+                    row.getBigDecimal("balance"))));
+        }
+        return kontos;
+    }
+
+    // Steps 3, 4 and 9 of executePayment: target validation and both currency conversions
+    private void resolve(SimulatedPayment payment, Map<UUID, KontoState> kontos, Map<String, KontoState> targets) {
+        KontoState source = kontos.get(payment.getKontoId());
+        KontoState target = targets.get(payment.getToIban());
+        if (target == null) {
+            payment.failure = SimulatedFailureReason.TARGET_NOT_FOUND;
+            return;
+        }
+        if (target.status() != KontoStatus.ACTIVE) {
+            payment.failure = SimulatedFailureReason.TARGET_CLOSED;
+            return;
+        }
+        try {
+            payment.debit = currencyConversionService.convert(payment.getAmount(), payment.getCurrency(), source.currency());
+            payment.credit = currencyConversionService.convert(payment.getAmount(), payment.getCurrency(), target.currency());
+            payment.target = target;
+        } catch (IllegalArgumentException e) {
+            payment.failure = SimulatedFailureReason.CONVERSION_FAILED;
+        }
+    }
+
+    /*
+     * Settles in rounds. Every round settles the kontos in parallel against their balance plus what they received
+     * so far, then books the credits of the round. Kontos with uncovered payments that received money are settled
+     * again in the next round. A projected payment is never taken back, so the rounds always end.
+     */
+    private void settle(Map<UUID, List<SimulatedPayment>> bySourceKonto, Map<UUID, KontoState> kontos,
+                        Map<UUID, BigDecimal> credited, Map<UUID, BigDecimal> debited) {
+        Collection<UUID> round = bySourceKonto.keySet();
+        int rounds = 0;
+        while (!round.isEmpty()) {
+            rounds++;
+            Map<UUID, BigDecimal> roundCredits = new ConcurrentHashMap<>();
+            round.parallelStream().forEach(kontoId -> {
+                BigDecimal available = projectedBalance(kontos.get(kontoId), credited, debited);
+                BigDecimal spent = BigDecimal.ZERO;
+                for (SimulatedPayment payment : bySourceKonto.get(kontoId)) {
+                    if (payment.executed || available.compareTo(payment.debit) < 0) {
+                        continue;
+                    }
+                    // Same check as KontoPostingService.debit: the debit must not take the balance below zero
+                    available = available.subtract(payment.debit);
+                    spent = spent.add(payment.debit);
+                    payment.executed = true;
+                    roundCredits.merge(payment.target.id(), payment.credit, BigDecimal::add);
+                }
+                if (spent.signum() > 0) {
+                    debited.merge(kontoId, spent, BigDecimal::add);
+                }
+            });
+
+            roundCredits.forEach((kontoId, amount) -> credited.merge(kontoId, amount, BigDecimal::add));
+            round = roundCredits.keySet().stream()
+                    .filter(kontoId -> bySourceKonto.getOrDefault(kontoId, List.of()).stream().anyMatch(p -> !p.executed))
+                    .toList();
+        }
+        log.debug("Settlement simulation needed {} rounds", rounds);
+    }
+
+    private static BigDecimal projectedBalance(KontoState konto, Map<UUID, BigDecimal> credited, Map<UUID, BigDecimal> debited) {
+        return konto.balance()
+                .add(credited.getOrDefault(konto.id(), BigDecimal.ZERO))
+                .subtract(debited.getOrDefault(konto.id(), BigDecimal.ZERO));
+    }
+
+    private record KontoState(UUID id, String iban, Currency currency, KontoStatus status, BigDecimal balance) {
+    }
+
+    // One due payment or standing order occurrence, with its projected outcome
+    @Getter
+    @RequiredArgsConstructor
+    private static final class SimulatedPayment {
+        private final UUID paymentId;
+        private final UUID recurringPaymentId;
+        private final UUID kontoId;
+        private final String toIban;
+        private final BigDecimal amount;
+        private final Currency currency;
+        private final LocalDate executionDate;
+
+        private KontoState target;
+        private BigDecimal debit;
+        private BigDecimal credit;
+        private SimulatedFailureReason failure;
+        private boolean executed;
+    }
+}
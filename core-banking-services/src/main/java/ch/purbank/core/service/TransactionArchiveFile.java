@@ -0,0 +1,160 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.TransactionCursor;
+import ch.purbank.core.dto.TransactionDTO;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Format of the transaction archive files: gzip compressed, one transaction per line with tab separated columns
+ * (konto_id, id, timestamp, amount, balance_after, currency, transaction_type, iban, message, note). Text is
+ * escaped like in Postgres' COPY text format, \N stands for null.
+ *
+ * Lines are ordered by konto_id, then newest first like the konto history, so the lines of a konto are read
+ * without looking at those of other kontos past it. UUIDs in their string form sort like Postgres sorts them.
+ */
+final class TransactionArchiveFile {
+
+    private TransactionArchiveFile() {
+    }
+
+    static final class LineWriter implements Closeable {
+
+        private final Writer out;
+
+        LineWriter(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        void write(UUID kontoId, TransactionDTO t) throws IOException {
+            out.write(kontoId.toString());
+            out.write('\t');
+            out.write(t.getTransactionId().toString());
+            out.write('\t');
+            out.write(t.getTimestamp().toString());
+            out.write('\t');
+            out.write(t.getAmount().toPlainString());
+            out.write('\t');
+            out.write(t.getBalanceAfter().toPlainString());
+            out.write('\t');
+            out.write(t.getCurrency().name());
+            out.write('\t');
+            out.write(t.getTransactionType().name());
+            out.write('\t');
+            writeText(t.getIban());
+            out.write('\t');
+            writeText(t.getMessage());
+            out.write('\t');
+            writeText(t.getNote());
+            out.write('\n');
+        }
+
+        private void writeText(String value) throws IOException {
+            if (value == null) {
+                out.write("\\N");
+                return;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\' -> out.write("\\\\");
+                    case '\t' -> out.write("\\t");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    default -> out.write(c);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Up to limit transactions of the konto from the file, newest first, starting after the given position
+     * (null: from the newest).
+     */
+    static List<TransactionDTO> readKonto(Path file, UUID kontoId, TransactionCursor before, int limit) throws IOException {
+        String konto = kontoId.toString();
+        String beforeId = before != null ? before.id().toString() : null;
+        List<TransactionDTO> transactions = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null && transactions.size() < limit) {
+                int comparison = line.substring(0, konto.length()).compareTo(konto);
+                if (comparison < 0) {
+                    continue;
+                }
+                if (comparison > 0) {
+                    break; // Past the konto's lines
+                }
+                String[] columns = line.split("\t", -1);
+                LocalDateTime timestamp = LocalDateTime.parse(columns[2]);
+                if (before != null) {
+                    int position = timestamp.compareTo(before.timestamp());
+                    if (position > 0 || position == 0 && columns[1].compareTo(beforeId) >= 0) {
+                        continue; // Not after the cursor yet
+                    }
+                }
+                transactions.add(new TransactionDTO(
+                        UUID.fromString(columns[1]),
+                        new BigDecimal(columns[3]),
+                        new BigDecimal(columns[4]),
+                        timestamp,
+                        readText(columns[7]),
+                        TransactionType.valueOf(columns[6]),
+                        Currency.valueOf(columns[5]),
+                        readText(columns[8]),
+                        readText(columns[9])));
+            }
+        }
+        return transactions;
+    }
+
+    private static String readText(String value) {
+        if (value.equals("\\N")) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder text = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                text.append(c);
+                continue;
+            }
+            char escaped = value.charAt(++i);
+            text.append(switch (escaped) {
+                case 't' -> '\t';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                default -> escaped;
+            });
+        }
+        return text.toString();
+    }
+}
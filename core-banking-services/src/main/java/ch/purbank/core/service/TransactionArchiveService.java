@@ -0,0 +1,331 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.TransactionArchive;
+import ch.purbank.core.domain.TransactionArchiveKonto;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.TransactionCursor;
+import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.repository.TransactionArchiveKontoRepository;
+import ch.purbank.core.repository.TransactionArchiveRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the month partitions of transactions (see db/migration/V1__partition_transactions_by_month.sql) and moves
+ * old months into the cold tier: a partition older than archiveRetentionMonths is written to a compressed archive
+ * file in archiveDirectory, registered in transaction_archives and then detached and dropped, all in one database
+ * transaction. Archive files are written once and never changed afterwards.
+ *
+ * The konto history reads through to the archive files once it is past the months still in the database. Every node
+ * serves the history, while only the node running the nightly job writes the files: archiveDirectory must be shared
+ * by all nodes (e.g. a network mount), which is checked at startup.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionArchiveService {
+
+    private final TransactionArchiveRepository archiveRepository;
+    private final TransactionArchiveKontoRepository archiveKontoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionConfig transactionConfig;
+    private final MeterRegistry meterRegistry;
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("transactions_(\\d{4})_(\\d{2})");
+
+    private static final String PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = CAST('transactions' AS regclass)";
+
+    // Ordered like the archive file (see TransactionArchiveFile), through the partition's idx_transaction_konto_timestamp
+    private static final String ARCHIVE_ROWS_SQL = "SELECT konto_id, id, timestamp, amount, balance_after, currency, " +
+            "transaction_type, iban, message, note FROM %s ORDER BY konto_id, timestamp DESC, id DESC";
+
+    private static final String INSERT_ARCHIVE_KONTO_SQL =
+            "INSERT INTO transaction_archive_kontos (month, konto_id, row_count, amount_total) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_ARCHIVE_SQL =
+            "INSERT INTO transaction_archives (month, file_name, row_count, sha256, archived_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final int ARCHIVE_KONTO_BATCH_SIZE = 1000;
+
+    /**
+     * Fails the startup if archiveDirectory can't take new archives or misses the file of an archived month, most
+     * likely because it is a local directory of this node instead of the shared one.
+     */
+    @PostConstruct
+    void checkArchiveDirectory() {
+        Path directory = archiveDirectory();
+        if (transactionConfig.getArchiveRetentionMonths() > 0) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new IllegalStateException("Archive directory " + directory + " can't be created", e);
+            }
+            if (!Files.isWritable(directory)) {
+                throw new IllegalStateException("Archive directory " + directory + " isn't writable");
+            }
+        }
+        for (TransactionArchive archive : archiveRepository.findAll()) {
+            Path file = directory.resolve(archive.getFileName());
+            if (!Files.isReadable(file)) {
+                throw new IllegalStateException("Archive file " + file + " of month " + archive.getMonth() + " is missing, " +
+                        "purbank.transactions.archive-directory must be the directory shared by all nodes");
+            }
+        }
+    }
+
+    /**
+     * Creates the partitions of the current month and the partitionMonthsAhead months after it, where missing.
+     * Returns the number of months checked.
+     */
+    public int ensurePartitions(LocalDate today) {
+        LocalDate month = today.withDayOfMonth(1);
+        int months = transactionConfig.getPartitionMonthsAhead() + 1;
+        for (int i = 0; i < months; i++) {
+            jdbcTemplate.queryForObject("SELECT purbank_ensure_transaction_partition(?)", String.class,
+                    Date.valueOf(month.plusMonths(i)));
+        }
+        return months;
+    }
+
+    /**
+     * Month partitions older than the retention window, oldest first.
+     */
+    public List<LocalDate> archivableMonths(LocalDate today) {
+        LocalDate cutoff = today.withDayOfMonth(1).minusMonths(transactionConfig.getArchiveRetentionMonths());
+        List<LocalDate> months = new ArrayList<>();
+        for (String partition : jdbcTemplate.queryForList(PARTITIONS_SQL, String.class)) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches()) {
+                LocalDate month = LocalDate.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), 1);
+                if (month.isBefore(cutoff)) {
+                    months.add(month);
+                }
+            }
+        }
+        months.sort(null);
+        return months;
+    }
+
+    /**
+     * Archives every month partition older than the retention window, oldest first. Returns the number of months
+     * archived. Does nothing if archiveRetentionMonths is 0.
+     */
+    public int archiveOldPartitions(LocalDate today) {
+        if (transactionConfig.getArchiveRetentionMonths() <= 0) {
+            return 0;
+        }
+        List<LocalDate> months = archivableMonths(today);
+        for (LocalDate month : months) {
+            archiveMonth(month);
+        }
+        return months.size();
+    }
+
+    /**
+     * First day still in the database: the day after the newest archived month, null if nothing is archived.
+     */
+    public LocalDate hotWindowStart() {
+        return archiveRepository.findTopByOrderByMonthDesc()
+                .map(archive -> archive.getMonth().plusMonths(1))
+                .orElse(null);
+    }
+
+    /**
+     * Up to limit archived transactions of the konto, newest first, starting after the given position (null: the
+     * newest archived one). Only the files of months with transactions of the konto are opened.
+     */
+    public List<TransactionDTO> readHistory(UUID kontoId, TransactionCursor before, int limit) {
+        LocalDate lastMonth = before != null ? before.timestamp().toLocalDate().withDayOfMonth(1) : LocalDate.now();
+        List<TransactionDTO> transactions = new ArrayList<>();
+        for (TransactionArchiveKonto month : archiveKontoRepository
+                .findByKontoIdAndMonthLessThanEqualOrderByMonthDesc(kontoId, lastMonth)) {
+            if (transactions.size() >= limit) {
+                break;
+            }
+            Path file = archiveDirectory().resolve(fileName(month.getMonth()));
+            if (!Files.exists(file)) {
+                throw new IllegalStateException("Archive file " + file + " is missing");
+            }
+            try {
+                transactions.addAll(TransactionArchiveFile.readKonto(file, kontoId, before, limit - transactions.size()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return transactions;
+    }
+
+    private void archiveMonth(LocalDate month) {
+        String partition = partitionName(month);
+        if (archiveRepository.existsById(month)) {
+            // Registered archives are never overwritten, the partition has to be looked at by hand
+            throw new IllegalStateException("Month " + month + " is already archived, but partition " + partition + " still exists");
+        }
+        long startNanos = System.nanoTime();
+        Path directory = archiveDirectory();
+        Path file = directory.resolve(fileName(month));
+        Path partFile = directory.resolve(fileName(month) + ".part");
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long rows = transactionTemplate.execute(status -> {
+            // Keeps the month's rows from changing while they are written out
+            jdbcTemplate.execute("LOCK TABLE " + partition + " IN SHARE MODE");
+
+            MessageDigest sha256 = sha256();
+            long[] count = {0};
+            try {
+                Files.createDirectories(directory);
+                try (OutputStream fileOut = new DigestOutputStream(Files.newOutputStream(partFile), sha256);
+                     TransactionArchiveFile.LineWriter writer =
+                             new TransactionArchiveFile.LineWriter(new GZIPOutputStream(fileOut, 64 * 1024))) {
+                    KontoTotals totals = new KontoTotals(month);
+                    jdbcTemplate.query(connection -> {
+                        PreparedStatement ps = connection.prepareStatement(ARCHIVE_ROWS_SQL.formatted(partition));
+                        ps.setFetchSize(transactionConfig.getExportFetchSize());
+                        return ps;
+                    }, rs -> {
+                        UUID kontoId = rs.getObject("konto_id", UUID.class);
+                        TransactionDTO transaction = new TransactionDTO(
+                                rs.getObject("id", UUID.class),
+                                rs.getBigDecimal("amount"),
+                                rs.getBigDecimal("balance_after"),
+                                rs.getTimestamp("timestamp").toLocalDateTime(),
+                                rs.getString("iban"),
+                                TransactionType.valueOf(rs.getString("transaction_type")),
+                                Currency.valueOf(rs.getString("currency")),
+                                rs.getString("message"),
+                                rs.getString("note"));
+                        try {
+                            writer.write(kontoId, transaction);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        totals.add(kontoId, transaction.getAmount());
+                        count[0]++;
+                    });
+                    totals.flush();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            jdbcTemplate.update(INSERT_ARCHIVE_SQL, Date.valueOf(month), file.getFileName().toString(), count[0],
+                    HexFormat.of().formatHex(sha256.digest()), Timestamp.valueOf(LocalDateTime.now()));
+            // Don't hold up other transactions for long if the partition is in use, the next run tries again
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '10s'");
+            jdbcTemplate.execute("ALTER TABLE transactions DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+
+            // Last step before the commit, an unregistered file left by a failed run is replaced by the next one
+            try {
+                Files.move(partFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                file.toFile().setReadOnly();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return count[0];
+        });
+
+        meterRegistry.counter("purbank.transactions.archived.rows").increment(rows);
+        meterRegistry.counter("purbank.transactions.archived.months").increment();
+        log.info("Archived {} transactions of {} to {} in {} ms", rows, month.toString().substring(0, 7), file,
+                (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    // Sums per konto of the month being archived, written to transaction_archive_kontos in batches
+    private final class KontoTotals {
+
+        private final LocalDate month;
+        private final List<Object[]> batch = new ArrayList<>();
+        private UUID kontoId;
+        private int rows;
+        private BigDecimal amount = BigDecimal.ZERO;
+
+        KontoTotals(LocalDate month) {
+            this.month = month;
+        }
+
+        void add(UUID konto, BigDecimal transactionAmount) {
+            if (!konto.equals(kontoId)) {
+                close();
+                kontoId = konto;
+            }
+            rows++;
+            amount = amount.add(transactionAmount);
+        }
+
+        void flush() {
+            close();
+            if (!batch.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_ARCHIVE_KONTO_SQL, batch);
+                batch.clear();
+            }
+        }
+
+        private void close() {
+            if (kontoId == null) {
+                return;
+            }
+            batch.add(new Object[]{Date.valueOf(month), kontoId, rows, amount});
+            kontoId = null;
+            rows = 0;
+            amount = BigDecimal.ZERO;
+            if (batch.size() >= ARCHIVE_KONTO_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(INSERT_ARCHIVE_KONTO_SQL, batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private Path archiveDirectory() {
+        return Path.of(transactionConfig.getArchiveDirectory());
+    }
+
+    static String partitionName(LocalDate month) {
+        return "transactions_%04d_%02d".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    static String fileName(LocalDate month) {
+        return "transactions-%04d-%02d.tsv.gz".formatted(month.getYear(), month.getMonthValue());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionExportFormat;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a konto's transactions as CSV or camt.053. Rows are streamed from a server-side cursor straight into the
+ * response, so the heap use of an export doesn't depend on the size of the history.
+ *
+ * An export is prepared first (access checks, on the request thread, so errors become normal error responses) and
+ * written afterwards, typically from a StreamingResponseBody.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionExportService {
+
+    private final KontoRepository kontoRepository;
+    private final KontoMemberRepository kontoMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionConfig transactionConfig;
+
+    private static final String EXPORT_COLUMNS =
+            "SELECT id, timestamp, transaction_type, amount, currency, balance_after, iban, message, note FROM transactions ";
+
+    /**
+     * A prepared export: konto and period, from and to are inclusive dates (null: unbounded).
+     */
+    public record TransactionExport(UUID kontoId, String iban, String kontoName, Currency currency,
+                                    TransactionExportFormat format, LocalDate from, LocalDate to) {
+
+        public String fileName(boolean gzip) {
+            String extension = format == TransactionExportFormat.CSV ? ".csv" : ".xml";
+            String period = (from != null ? from.toString() : "") + "_" + (to != null ? to.toString() : "");
+            return "transactions-" + iban + "-" + period + extension + (gzip ? ".gz" : "");
+        }
+
+        public String mediaType(boolean gzip) {
+            if (gzip) {
+                return "application/gzip";
+            }
+            return format == TransactionExportFormat.CSV ? "text/csv;charset=UTF-8" : "application/xml";
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public TransactionExport prepareExport(UUID kontoId, UUID userId, TransactionExportFormat format,
+                                           LocalDate from, LocalDate to) {
+        if (!kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)) {
+            // Also for unknown kontos, so the response doesn't reveal which exist
+            throw new IllegalArgumentException("User is not a member of this konto");
+        }
+        return prepareExportAdmin(kontoId, format, from, to);
+    }
+
+    @Transactional(readOnly = true)
+    public TransactionExport prepareExportAdmin(UUID kontoId, TransactionExportFormat format,
+                                                LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        Konto konto = kontoRepository.findById(kontoId)
+                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+
+        return new TransactionExport(konto.getId(), konto.getIban(), konto.getName(), konto.getCurrency(),
+                format != null ? format : TransactionExportFormat.CSV, from, to);
+    }
+
+    /**
+     * Writes the export to out, oldest transaction first. The read-only transaction keeps the cursor open while
+     * rows are fetched in pages of exportFetchSize; the date range is applied through idx_transaction_konto_timestamp.
+     */
+    @Transactional(readOnly = true)
+    public void write(TransactionExport export, OutputStream out, boolean gzip) {
+        long startNanos = System.nanoTime();
+        try {
+            GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+            OutputStream target = gzip ? gzipOut : out;
+
+            TransactionExportWriter writer = TransactionExportWriter.open(export.format(), target, statement(export));
+            List<Object> params = new ArrayList<>();
+            String sql = EXPORT_COLUMNS + "WHERE konto_id = ? " + periodCondition(export, params) + "ORDER BY timestamp, id";
+
+            long[] rows = {0};
+            jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(sql);
+                ps.setFetchSize(transactionConfig.getExportFetchSize());
+                ps.setObject(1, export.kontoId());
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 2, params.get(i));
+                }
+                return ps;
+            }, rs -> {
+                writer.write(new TransactionExportWriter.Row(
+                        rs.getObject("id", UUID.class),
+                        rs.getTimestamp("timestamp").toLocalDateTime(),
+                        TransactionType.valueOf(rs.getString("transaction_type")),
+                        rs.getBigDecimal("amount"),
+                        Currency.valueOf(rs.getString("currency")),
+                        rs.getBigDecimal("balance_after"),
+                        rs.getString("iban"),
+                        rs.getString("message"),
+                        rs.getString("note")));
+                rows[0]++;
+            });
+
+            writer.finish();
+            if (gzipOut != null) {
+                gzipOut.finish();
+            }
+            out.flush();
+            log.info("Exported {} transactions of konto {} as {} in {} ms", rows[0], export.kontoId(), export.format(),
+                    (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Opening and closing balance of the period: from the first and last transaction in it, or the last one before it
+    private TransactionExportWriter.Statement statement(TransactionExport export) {
+        List<Object> params = new ArrayList<>();
+        String period = periodCondition(export, params);
+
+        BigDecimal opening = firstBalance("SELECT balance_after - amount FROM transactions WHERE konto_id = ? " + period +
+                "ORDER BY timestamp, id LIMIT 1", export.kontoId(), params);
+        BigDecimal closing = firstBalance("SELECT balance_after FROM transactions WHERE konto_id = ? " + period +
+                "ORDER BY timestamp DESC, id DESC LIMIT 1", export.kontoId(), params);
+        if (opening == null) {
+            // No transactions in the period: the balance stayed what it was at its start
+            List<Object> before = new ArrayList<>();
+            String beforeEnd = export.to() != null ? "AND timestamp < ? " : "";
+            if (export.to() != null) {
+                before.add(Timestamp.valueOf(export.to().plusDays(1).atStartOfDay()));
+            }
+            BigDecimal balance = firstBalance("SELECT balance_after FROM transactions WHERE konto_id = ? " + beforeEnd +
+                    "ORDER BY timestamp DESC, id DESC LIMIT 1", export.kontoId(), before);
+            opening = closing = balance != null ? balance : BigDecimal.ZERO;
+        }
+        return new TransactionExportWriter.Statement(export.kontoId(), export.iban(), export.kontoName(),
+                export.currency(), export.from(), export.to(), opening, closing);
+    }
+
+    private BigDecimal firstBalance(String sql, UUID kontoId, List<Object> params) {
+        List<Object> args = new ArrayList<>();
+        args.add(kontoId);
+        args.addAll(params);
+        List<BigDecimal> balances = jdbcTemplate.queryForList(sql, BigDecimal.class, args.toArray());
+        return balances.isEmpty() ? null : balances.getFirst();
+    }
+
+    private static String periodCondition(TransactionExport export, List<Object> params) {
+        StringBuilder condition = new StringBuilder();
+        if (export.from() != null) {
+            condition.append("AND timestamp >= ? ");
+            params.add(Timestamp.valueOf(export.from().atStartOfDay()));
+        }
+        if (export.to() != null) {
+            condition.append("AND timestamp < ? ");
+            params.add(Timestamp.valueOf(export.to().plusDays(1).atStartOfDay()));
+        }
+        return condition.toString();
+    }
+}
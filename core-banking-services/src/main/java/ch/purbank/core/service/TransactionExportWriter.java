@@ -0,0 +1,258 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionExportFormat;
+import ch.purbank.core.domain.enums.TransactionType;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Writes exported transactions one at a time, so an export never holds more than the current row in memory.
+ *
+ * CSV: header line and one line per transaction, separated by ';', text fields quoted with '"'.
+ * camt.053: one ISO 20022 statement (camt.053.001.08) with opening and closing balance and one Ntry per
+ * transaction. Amounts are unsigned, the direction is in CdtDbtInd.
+ */
+abstract class TransactionExportWriter {
+
+    static final String CAMT053_NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:camt.053.001.08";
+
+    /**
+     * Konto and period of a statement. Opening and closing balance are only used by camt.053, which writes
+     * them before the entries.
+     */
+    record Statement(UUID kontoId, String iban, String kontoName, Currency currency, LocalDate from, LocalDate to,
+                     BigDecimal openingBalance, BigDecimal closingBalance) {
+    }
+
+    record Row(UUID id, LocalDateTime timestamp, TransactionType type, BigDecimal amount, Currency currency,
+               BigDecimal balanceAfter, String iban, String message, String note) {
+    }
+
+    static TransactionExportWriter open(TransactionExportFormat format, OutputStream out, Statement statement) {
+        return switch (format) {
+            case CSV -> new Csv(out);
+            case CAMT053 -> new Camt053(out, statement);
+        };
+    }
+
+    abstract void write(Row row);
+
+    // Ends the document and flushes, the stream itself is left open
+    abstract void finish();
+
+    // ===== CSV =====
+
+    private static final class Csv extends TransactionExportWriter {
+
+        private final Writer writer;
+
+        Csv(OutputStream out) {
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            line("id;timestamp;type;amount;currency;balanceAfter;iban;message;note");
+        }
+
+        @Override
+        void write(Row row) {
+            line(row.id() + ";" + row.timestamp() + ";" + row.type() + ";" + row.amount().toPlainString() + ";"
+                    + row.currency() + ";" + row.balanceAfter().toPlainString() + ";" + quote(row.iban()) + ";"
+                    + quote(row.message()) + ";" + quote(row.note()));
+        }
+
+        @Override
+        void finish() {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void line(String line) {
+            try {
+                writer.write(line);
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String quote(String value) {
+            if (value == null) {
+                return "";
+            }
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    // ===== camt.053 =====
+
+    private static final class Camt053 extends TransactionExportWriter {
+
+        private final Writer writer;
+        private final XMLStreamWriter xml;
+        private final Statement statement;
+
+        Camt053(OutputStream out, Statement statement) {
+            this.statement = statement;
+            try {
+                // The StAX writer hands out small writes, buffered so they don't reach a GZIPOutputStream one by one
+                writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+                xml = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+                LocalDateTime now = LocalDateTime.now().withNano(0);
+                String messageId = "PURBANK-" + UUID.randomUUID().toString().replace("-", "").substring(0, 27);
+
+                xml.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+                xml.writeStartElement("Document");
+                xml.writeDefaultNamespace(CAMT053_NAMESPACE);
+                xml.writeStartElement("BkToCstmrStmt");
+
+                xml.writeStartElement("GrpHdr");
+                element("MsgId", messageId);
+                element("CreDtTm", now.toString());
+                xml.writeEndElement();
+
+                xml.writeStartElement("Stmt");
+                element("Id", messageId);
+                element("CreDtTm", now.toString());
+                if (statement.from() != null || statement.to() != null) {
+                    xml.writeStartElement("FrToDt");
+                    element("FrDtTm", (statement.from() != null ? statement.from() : LocalDate.EPOCH).atStartOfDay().toString());
+                    element("ToDtTm", (statement.to() != null ? statement.to() : now.toLocalDate()).atTime(23, 59, 59).toString());
+                    xml.writeEndElement();
+                }
+
+                xml.writeStartElement("Acct");
+                xml.writeStartElement("Id");
+                element("IBAN", statement.iban());
+                xml.writeEndElement();
+                element("Ccy", statement.currency().name());
+                if (statement.kontoName() != null) {
+                    element("Nm", statement.kontoName());
+                }
+                xml.writeEndElement();
+
+                balance("OPBD", statement.openingBalance(), statement.from() != null ? statement.from() : now.toLocalDate());
+                balance("CLBD", statement.closingBalance(), statement.to() != null ? statement.to() : now.toLocalDate());
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Could not write camt.053 export", e);
+            }
+        }
+
+        @Override
+        void write(Row row) {
+            try {
+                boolean credit = row.amount().signum() >= 0;
+                String reference = row.id().toString().replace("-", ""); // Max35Text
+                xml.writeStartElement("Ntry");
+                element("NtryRef", reference);
+                amount(row.amount(), row.currency());
+                element("CdtDbtInd", credit ? "CRDT" : "DBIT");
+                xml.writeStartElement("Sts");
+                element("Cd", "BOOK");
+                xml.writeEndElement();
+                xml.writeStartElement("BookgDt");
+                element("DtTm", row.timestamp().withNano(0).toString());
+                xml.writeEndElement();
+                xml.writeStartElement("ValDt");
+                element("Dt", row.timestamp().toLocalDate().toString());
+                xml.writeEndElement();
+                element("AcctSvcrRef", reference);
+                xml.writeStartElement("BkTxCd");
+                xml.writeStartElement("Prtry");
+                element("Cd", row.type().name());
+                xml.writeEndElement();
+                xml.writeEndElement();
+
+                xml.writeStartElement("NtryDtls");
+                xml.writeStartElement("TxDtls");
+                xml.writeStartElement("Refs");
+                element("AcctSvcrRef", reference);
+                xml.writeEndElement();
+                amount(row.amount(), row.currency());
+                element("CdtDbtInd", credit ? "CRDT" : "DBIT");
+                if (row.type() != TransactionType.INTEREST && row.iban() != null) {
+                    // Counterparty: the debtor of an incoming, the creditor of an outgoing transaction
+                    xml.writeStartElement("RltdPties");
+                    xml.writeStartElement(credit ? "DbtrAcct" : "CdtrAcct");
+                    xml.writeStartElement("Id");
+                    element("IBAN", row.iban());
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                    xml.writeEndElement();
+                }
+                if (row.message() != null) {
+                    xml.writeStartElement("RmtInf");
+                    element("Ustrd", row.message());
+                    xml.writeEndElement();
+                }
+                if (row.note() != null) {
+                    element("AddtlTxInf", row.note());
+                }
+                xml.writeEndElement();
+                xml.writeEndElement();
+
+                xml.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Could not write camt.053 export", e);
+            }
+        }
+
+        @Override
+        void finish() {
+            try {
+                xml.writeEndElement(); // Stmt
+                xml.writeEndElement(); // BkToCstmrStmt
+                xml.writeEndElement(); // Document
+                xml.writeEndDocument();
+                xml.flush();
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException("Could not write camt.053 export", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void balance(String type, BigDecimal balance, LocalDate date) throws XMLStreamException {
+            xml.writeStartElement("Bal");
+            xml.writeStartElement("Tp");
+            xml.writeStartElement("CdOrPrtry");
+            element("Cd", type);
+            xml.writeEndElement();
+            xml.writeEndElement();
+            amount(balance, statement.currency());
+            element("CdtDbtInd", balance.signum() >= 0 ? "CRDT" : "DBIT");
+            xml.writeStartElement("Dt");
+            element("Dt", date.toString());
+            xml.writeEndElement();
+            xml.writeEndElement();
+        }
+
+        private void amount(BigDecimal amount, Currency currency) throws XMLStreamException {
+            xml.writeStartElement("Amt");
+            xml.writeAttribute("Ccy", currency.name());
+            xml.writeCharacters(amount.abs().toPlainString());
+            xml.writeEndElement();
+        }
+
+        private void element(String name, String value) throws XMLStreamException {
+            xml.writeStartElement(name);
+            xml.writeCharacters(value);
+            xml.writeEndElement();
+        }
+    }
+}
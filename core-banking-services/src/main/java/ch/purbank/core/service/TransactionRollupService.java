@@ -0,0 +1,208 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.RollupConfig;
+import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.MonthlyRollupDTO;
+import ch.purbank.core.dto.RollupRebuildDTO;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoMonthlyRollupRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monthly totals per konto, transaction type and currency in konto_monthly_rollups, so the spending overview of a
+ * konto reads a few rows per month instead of its transactions.
+ *
+ * Every place that writes transactions adds them to the rollups in the same database transaction. The rebuild
+ * recomputes the rollups from the transactions, in chunks of consecutive konto ids, in parallel, and corrects
+ * whatever differs. Months already archived (see TransactionArchiveService) keep their rollups.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionRollupService {
+
+    private final KontoMonthlyRollupRepository rollupRepository;
+    private final KontoMemberRepository kontoMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final RollupConfig rollupConfig;
+    private final MeterRegistry meterRegistry;
+    private final KontoChunkRunner kontoChunkRunner;
+
+    private static final String ADD_TO_EXISTING = "ON CONFLICT (konto_id, month, transaction_type, currency) DO UPDATE " +
+            "SET inflow = konto_monthly_rollups.inflow + EXCLUDED.inflow, " +
+            "outflow = konto_monthly_rollups.outflow + EXCLUDED.outflow, " +
+            "transaction_count = konto_monthly_rollups.transaction_count + EXCLUDED.transaction_count";
+
+    private static final String ADD_SQL = "INSERT INTO konto_monthly_rollups " +
+            "(konto_id, month, transaction_type, currency, inflow, outflow, transaction_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " + ADD_TO_EXISTING;
+
+    // Rollups of the kontos with ids in [?, ?] as computed from their transactions, minus the stored ones, added to
+    // the stored ones. Both sides are read in one snapshot, the statement's, and the difference is added rather than
+    // the totals written, so transactions committed meanwhile (whose rollup updates are in neither side) stay counted
+    // without locking anything. The archived months are taken from the same snapshot, an archive run can't slip in.
+    private static final String CORRECT_CHUNK_SQL =
+            "WITH hot AS (SELECT CAST(COALESCE(MAX(month) + interval '1 month', DATE '1970-01-01') AS date) AS month " +
+            "  FROM transaction_archives), " +
+            "actual AS (SELECT konto_id, CAST(date_trunc('month', timestamp) AS date) AS month, transaction_type, currency, " +
+            "  SUM(GREATEST(amount, 0)) AS inflow, SUM(GREATEST(-amount, 0)) AS outflow, COUNT(*) AS transaction_count " +
+            "  FROM transactions WHERE konto_id BETWEEN ? AND ? AND timestamp >= (SELECT month FROM hot) " +
+            "  GROUP BY konto_id, CAST(date_trunc('month', timestamp) AS date), transaction_type, currency), " +
+            "stored AS (SELECT konto_id, month, transaction_type, currency, inflow, outflow, transaction_count " +
+            "  FROM konto_monthly_rollups WHERE konto_id BETWEEN ? AND ? AND month >= (SELECT month FROM hot)), " +
+            "diff AS (SELECT konto_id, month, transaction_type, currency, " +
+            "  COALESCE(a.inflow, 0) - COALESCE(s.inflow, 0) AS inflow, " +
+            "  COALESCE(a.outflow, 0) - COALESCE(s.outflow, 0) AS outflow, " +
+            "  COALESCE(a.transaction_count, 0) - COALESCE(s.transaction_count, 0) AS transaction_count " +
+            "  FROM actual a FULL JOIN stored s USING (konto_id, month, transaction_type, currency)) " +
+            "INSERT INTO konto_monthly_rollups (konto_id, month, transaction_type, currency, inflow, outflow, transaction_count) " +
+            "SELECT konto_id, month, transaction_type, currency, inflow, outflow, transaction_count FROM diff " +
+            "WHERE inflow <> 0 OR outflow <> 0 OR transaction_count <> 0 " + ADD_TO_EXISTING;
+
+    // Rollups left without transactions; one that got a transaction meanwhile no longer matches when its lock is free
+    private static final String DELETE_EMPTY_SQL = "DELETE FROM konto_monthly_rollups " +
+            "WHERE konto_id BETWEEN ? AND ? AND transaction_count = 0 AND inflow = 0 AND outflow = 0";
+
+    /**
+     * A transaction as far as the rollups are concerned, for writers that insert transactions without the entity.
+     */
+    public record Posted(UUID kontoId, LocalDateTime timestamp, TransactionType transactionType, Currency currency,
+                         BigDecimal amount) {
+    }
+
+    private record Key(UUID kontoId, LocalDate month, TransactionType transactionType, Currency currency) {
+    }
+
+    // Rollups are written in this order, so writers of several kontos at once lock them in the same order
+    private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::kontoId)
+            .thenComparing(Key::month)
+            .thenComparing(Key::transactionType)
+            .thenComparing(Key::currency);
+
+    /**
+     * Adds a saved transaction to its rollup. Call in the transaction that saved it.
+     */
+    public void record(Transaction transaction) {
+        apply(List.of(posted(transaction)), 1);
+    }
+
+    /**
+     * Adds transactions written in bulk, with one rollup update per konto, month, type and currency.
+     */
+    public void recordAll(List<Posted> transactions) {
+        apply(transactions, 1);
+    }
+
+    /**
+     * Takes a transaction that is about to be deleted out of its rollup.
+     */
+    public void remove(Transaction transaction) {
+        apply(List.of(posted(transaction)), -1);
+    }
+
+    private static Posted posted(Transaction transaction) {
+        return new Posted(transaction.getKonto().getId(), transaction.getTimestamp(), transaction.getTransactionType(),
+                transaction.getCurrency(), transaction.getAmount());
+    }
+
+    private void apply(List<Posted> transactions, int sign) {
+        Map<Key, Object[]> rows = new TreeMap<>(KEY_ORDER);
+        for (Posted t : transactions) {
+            Key key = new Key(t.kontoId(), t.timestamp().toLocalDate().withDayOfMonth(1), t.transactionType(), t.currency());
+            Object[] row = rows.computeIfAbsent(key, k -> new Object[]{k.kontoId(), k.month(),
+                    k.transactionType().name(), k.currency().name(), BigDecimal.ZERO, BigDecimal.ZERO, 0L});
+            BigDecimal inflow = t.amount().max(BigDecimal.ZERO);
+            BigDecimal outflow = t.amount().min(BigDecimal.ZERO).negate();
+            row[4] = ((BigDecimal) row[4]).add(sign > 0 ? inflow : inflow.negate());
+            row[5] = ((BigDecimal) row[5]).add(sign > 0 ? outflow : outflow.negate());
+            row[6] = (long) row[6] + sign;
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADD_SQL, new ArrayList<>(rows.values()));
+        }
+    }
+
+    /**
+     * Monthly totals of the konto from the month of from to the month of to, ordered by month, type and currency.
+     * Months without transactions have no rows.
+     */
+    @Transactional(readOnly = true)
+    public List<MonthlyRollupDTO> getMonthly(UUID kontoId, UUID userId, LocalDate from, LocalDate to) {
+        if (!kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)) {
+            throw new IllegalArgumentException("User is not a member of this konto");
+        }
+        return getMonthlyAdmin(kontoId, from, to);
+    }
+
+    @Transactional(readOnly = true)
+    public List<MonthlyRollupDTO> getMonthlyAdmin(UUID kontoId, LocalDate from, LocalDate to) {
+        LocalDate fromMonth = from.withDayOfMonth(1);
+        LocalDate toMonth = to.withDayOfMonth(1);
+        if (fromMonth.isAfter(toMonth)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.MONTHS.between(fromMonth, toMonth) >= rollupConfig.getMaxMonths()) {
+            throw new IllegalArgumentException("Analytics cover at most " + rollupConfig.getMaxMonths() + " months");
+        }
+        return rollupRepository.findMonthly(kontoId, fromMonth, toMonth);
+    }
+
+    /**
+     * Recomputes the rollups of all kontos from their transactions and corrects those that differ. Chunks of
+     * rebuildChunkSize kontos run in parallel, each in its own transaction, while transactions keep being written;
+     * a failed chunk is logged and counted, running the rebuild again corrects it.
+     */
+    public RollupRebuildDTO rebuild() {
+        int parallelism = rollupConfig.getRebuildParallelism();
+        int chunkSize = rollupConfig.getRebuildChunkSize();
+        log.info("Rebuilding monthly rollups (parallelism {}, chunk size {})", parallelism, chunkSize);
+
+        long startNanos = System.nanoTime();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        AtomicLong corrected = new AtomicLong();
+        KontoChunkRunner.ChunkRun run = kontoChunkRunner.run("Rollup rebuild", chunkSize, parallelism,
+                (firstId, lastId, kontos) -> {
+                    Integer rows = transactionTemplate.execute(status -> {
+                        int updated = jdbcTemplate.update(CORRECT_CHUNK_SQL, firstId, lastId, firstId, lastId);
+                        jdbcTemplate.update(DELETE_EMPTY_SQL, firstId, lastId);
+                        return updated;
+                    });
+                    corrected.addAndGet(rows != null ? rows : 0);
+                });
+
+        long durationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        meterRegistry.counter("purbank.rollups.corrected").increment(corrected.get());
+        if (corrected.get() > 0) {
+            // Outside a first build, the incremental updates missed something
+            log.warn("Rollup rebuild corrected {} rollups", corrected.get());
+        }
+        log.info("Rebuilt monthly rollups in {} ms ({} chunks, {} failed, {} corrected)",
+                durationMillis, run.chunks(), run.failedChunks(), corrected.get());
+        return new RollupRebuildDTO(run.chunks(), run.failedChunks(), corrected.get(), durationMillis);
+    }
+}
@@ -0,0 +1,211 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.dto.TransactionPageDTO;
+import ch.purbank.core.dto.TransactionSearchCursor;
+import ch.purbank.core.repository.KontoMemberRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Searches the transactions of a konto for words in message and note or for part of the counterparty IBAN.
+ * All words must occur, as whole words or as word prefixes. Results are ranked in two tiers, newest first within
+ * each: rank 2 for IBAN matches and matches of the whole words, rank 1 for matches of word prefixes only.
+ * Pages are read by keyset on (rank, timestamp, id).
+ *
+ * Backed by search_vector (see db/migration/V2__transaction_search.sql), whose terms carry the konto id, so its GIN
+ * index only reads the postings of the konto searched, and Postgres keeps statistics on each word per konto. The
+ * planner therefore reads common words of the konto newest first through idx_transaction_konto_timestamp, stopping
+ * at the end of the page, and rare ones through the search index. Archived months (see TransactionArchiveService)
+ * are not searched.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionSearchService {
+
+    private final KontoMemberRepository kontoMemberRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionConfig transactionConfig;
+
+    static final int MAX_QUERY_LENGTH = 200;
+    // An IBAN part is looked up by its trigrams
+    static final int MIN_IBAN_PART_LENGTH = 3;
+
+    private static final Pattern IBAN_PART = Pattern.compile("[A-Z0-9]*[0-9][A-Z0-9]*");
+
+    // The words of the query as search_vector holds them
+    private static final String WORDS_SQL = "SELECT unnest(tsvector_to_array(to_tsvector('simple', ?)))";
+
+    private static final String TIER_SQL = "SELECT id, amount, balance_after, timestamp, iban, transaction_type, " +
+            "currency, message, note FROM transactions WHERE konto_id = ? %sAND %s ORDER BY timestamp DESC, id DESC LIMIT ?";
+    private static final String BEFORE_KEY = "AND timestamp <= ? AND (timestamp < ? OR id < ?) ";
+
+    /**
+     * One page of search results. Pass the nextCursor of the previous page to get the following one.
+     */
+    @Transactional(readOnly = true)
+    public TransactionPageDTO search(UUID kontoId, UUID userId, String query, String cursor, Integer limit) {
+        if (!kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)) {
+            throw new IllegalArgumentException("User is not a member of this konto");
+        }
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be empty");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Search query must not be longer than " + MAX_QUERY_LENGTH + " characters");
+        }
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int pageSize = limit == null ? transactionConfig.getListDefaultPageSize()
+                : Math.min(limit, transactionConfig.getListMaxPageSize());
+        TransactionSearchCursor after = cursor != null ? TransactionSearchCursor.decode(cursor) : null;
+        if (after != null && (after.rank() < 1 || after.rank() > 2)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        List<String> words = jdbcTemplate.queryForList(WORDS_SQL, String.class, query);
+        String ibanPart = ibanPart(query);
+        if (words.isEmpty() && ibanPart == null) {
+            throw new IllegalArgumentException("Search query must contain a word or part of an IBAN");
+        }
+
+        long startNanos = System.nanoTime();
+        List<TransactionDTO> page = new ArrayList<>();
+        int rank = after != null ? after.rank() : 2;
+        for (; rank >= 1; rank--) {
+            Match match = match(rank, kontoId, words, ibanPart);
+            if (match == null) {
+                continue;
+            }
+            TransactionSearchCursor before = after != null && after.rank() == rank ? after : null;
+            page.addAll(searchTier(kontoId, before, match, pageSize - page.size()));
+            if (page.size() == pageSize) {
+                break;
+            }
+        }
+        log.debug("Search of konto {} returned {} transactions in {} ms", kontoId, page.size(),
+                (System.nanoTime() - startNanos) / 1_000_000);
+
+        // A full page may be followed by more, a short one is the last
+        String nextCursor = null;
+        if (page.size() == pageSize) {
+            TransactionDTO last = page.getLast();
+            nextCursor = new TransactionSearchCursor(rank, last.getTimestamp(), last.getTransactionId()).encode();
+        }
+        return new TransactionPageDTO(page, nextCursor);
+    }
+
+    // The newest limit matches of one tier after the cursor
+    private List<TransactionDTO> searchTier(UUID kontoId, TransactionSearchCursor before, Match match, int limit) {
+        List<Object> params = new ArrayList<>();
+        params.add(kontoId);
+        if (before != null) {
+            Timestamp timestamp = Timestamp.valueOf(before.timestamp());
+            params.add(timestamp);
+            params.add(timestamp);
+            params.add(before.id());
+        }
+        params.addAll(match.params());
+        params.add(limit);
+        return jdbcTemplate.query(TIER_SQL.formatted(before != null ? BEFORE_KEY : "", match.condition()),
+                TRANSACTION_ROW_MAPPER, params.toArray());
+    }
+
+    // SQL condition of a tier and its parameters
+    record Match(String condition, List<Object> params) {
+    }
+
+    /**
+     * Condition of the given rank, null if the query has nothing to match in it. Rank 1 leaves out what rank 2
+     * matched, so no transaction shows up twice. IBAN trigrams are only candidates, the IBAN itself is checked too.
+     */
+    static Match match(int rank, UUID kontoId, List<String> words, String ibanPart) {
+        String term = kontoId.toString().replace("-", "");
+        String wholeWords = words.isEmpty() ? null : tsquery(words.stream().map(w -> term + ":" + w).toList(), "");
+        String prefixes = words.isEmpty() ? null : tsquery(words.stream().map(w -> term + ":" + w).toList(), ":*");
+        String ibanPattern = ibanPart != null ? "%" + ibanPart + "%" : null;
+        String ibanMatch = "(search_vector @@ CAST(? AS tsquery) AND upper(replace(iban, ' ', '')) LIKE ?)";
+
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (rank == 2) {
+            if (wholeWords != null) {
+                conditions.add("search_vector @@ CAST(? AS tsquery)");
+                params.add(wholeWords);
+            }
+            if (ibanPart != null) {
+                conditions.add(ibanMatch);
+                params.add(tsquery(trigrams(ibanPart).stream().map(t -> term + "#" + t).toList(), ""));
+                params.add(ibanPattern);
+            }
+            return new Match("(" + String.join(" OR ", conditions) + ")", params);
+        }
+        if (prefixes == null) {
+            return null;
+        }
+        conditions.add("search_vector @@ CAST(? AS tsquery) AND NOT search_vector @@ CAST(? AS tsquery)");
+        params.add(prefixes);
+        params.add(wholeWords);
+        if (ibanPart != null) {
+            conditions.add("upper(replace(iban, ' ', '')) NOT LIKE ?");
+            params.add(ibanPattern);
+        }
+        return new Match(String.join(" AND ", conditions), params);
+    }
+
+    // All terms must match; quoted, so terms with any characters stay a single lexeme
+    private static String tsquery(List<String> terms, String suffix) {
+        List<String> quoted = new ArrayList<>();
+        for (String term : terms) {
+            quoted.add("'" + term.replace("\\", "\\\\").replace("'", "''") + "'" + suffix);
+        }
+        return String.join(" & ", quoted);
+    }
+
+    // Each distinct one once, runs of zeros in an IBAN would repeat the same trigram
+    static List<String> trigrams(String ibanPart) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= ibanPart.length(); i++) {
+            trigrams.add(ibanPart.substring(i, i + 3));
+        }
+        return List.copyOf(trigrams);
+    }
+
+    /**
+     * The query as part of an IBAN (spaces removed, upper case), if it looks like one: letters and digits with at
+     * least one digit, like "CH93" or "0076 2011". Null otherwise.
+     */
+    static String ibanPart(String query) {
+        String part = query.replace(" ", "").toUpperCase(Locale.ROOT);
+        return part.length() >= MIN_IBAN_PART_LENGTH && IBAN_PART.matcher(part).matches() ? part : null;
+    }
+
+    private static final RowMapper<TransactionDTO> TRANSACTION_ROW_MAPPER = (rs, rowNum) -> new TransactionDTO(
+            rs.getObject("id", UUID.class),
+            rs.getBigDecimal("amount"),
+            rs.getBigDecimal("balance_after"),
+            rs.getTimestamp("timestamp").toLocalDateTime(),
+            rs.getString("iban"),
+            TransactionType.valueOf(rs.getString("transaction_type")),
+            Currency.valueOf(rs.getString("currency")),
+            rs.getString("message"),
+            rs.getString("note"));
+}
@@ -1,20 +1,24 @@
 package ch.purbank.core.service;
 
+import ch.purbank.core.config.TransactionConfig;
 import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.dto.TransactionCursor;
 import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.dto.TransactionPageDTO;
 import ch.purbank.core.repository.KontoRepository;
 import ch.purbank.core.repository.TransactionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,35 +27,67 @@ public class TransactionService {
 
     private final TransactionRepository transactionRepository;
     private final KontoRepository kontoRepository;
+    private final KontoBalanceService kontoBalanceService;
+    private final TransactionConfig transactionConfig;
+    private final TransactionArchiveService transactionArchiveService;
+    private final TransactionRollupService transactionRollupService;
+    private final BalanceRebaseService balanceRebaseService;
 
     @Transactional(readOnly = true)
     public List<TransactionDTO> getTransactionsAdmin(UUID kontoId, Integer start, Integer end) {
-        Konto konto = kontoRepository.findById(kontoId)
-                .orElseThrow(() -> new IllegalArgumentException("Konto not found"));
+        if (!kontoRepository.existsById(kontoId)) {
+            throw new IllegalArgumentException("Konto not found");
+        }
+
+        return transactionRepository.findDTOsByKontoId(kontoId, rangePageable(start, end));
+    }
 
-        List<Transaction> transactions;
+    /**
+     * Page of the deprecated start.end range parameter, the first 50 transactions without it.
+     */
+    static Pageable rangePageable(Integer start, Integer end) {
         if (start != null && end != null) {
             int size = end - start + 1;
-            Pageable pageable = PageRequest.of(start / size, size);
-            transactions = transactionRepository.findByKontoOrderByTimestampDesc(konto, pageable);
-        } else {
-            // Default: first 50
-            Pageable pageable = PageRequest.of(0, 50);
-            transactions = transactionRepository.findByKontoOrderByTimestampDesc(konto, pageable);
+            return PageRequest.of(start / size, size);
+        }
+        // Default: first 50
+        return PageRequest.of(0, 50);
+    }
+
+    @Transactional(readOnly = true)
+    public TransactionPageDTO getTransactionPageAdmin(UUID kontoId, String cursor, Integer limit) {
+        if (!kontoRepository.existsById(kontoId)) {
+            throw new IllegalArgumentException("Konto not found");
         }
 
-        return transactions.stream()
-                .map(t -> new TransactionDTO(
-                        t.getId(),
-                        t.getAmount(),
-                        t.getBalanceAfter(),
-                        t.getTimestamp(),
-                        t.getIban(),
-                        t.getTransactionType(),
-                        t.getCurrency(),
-                        t.getMessage(),
-                        t.getNote()))
-                .collect(Collectors.toList());
+        return getHistoryPage(kontoId, cursor, limit);
+    }
+
+    /**
+     * One page of the konto's transactions, newest first. Pass the nextCursor of the previous page to get the
+     * following one: the page is read by keyset from the index, so deep pages cost the same as the first.
+     * Past the months still in the database the history continues from the archive files.
+     */
+    @Transactional(readOnly = true)
+    public TransactionPageDTO getHistoryPage(UUID kontoId, String cursor, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        int pageSize = limit == null ? transactionConfig.getListDefaultPageSize()
+                : Math.min(limit, transactionConfig.getListMaxPageSize());
+
+        TransactionCursor before = cursor != null ? TransactionCursor.decode(cursor) : null;
+        List<TransactionDTO> page = new ArrayList<>(before == null
+                ? transactionRepository.findFirstHistoryPage(kontoId, Limit.of(pageSize))
+                : transactionRepository.findHistoryPageBefore(kontoId, before.timestamp(), before.id(), Limit.of(pageSize)));
+        if (page.size() < pageSize) {
+            // The rest comes from the archived months, which are all older than those in the database
+            TransactionCursor archiveBefore = page.isEmpty() ? before : TransactionCursor.of(page.getLast());
+            page.addAll(transactionArchiveService.readHistory(kontoId, archiveBefore, pageSize - page.size()));
+        }
+        // A full page may be followed by more, a short one is the last
+        String nextCursor = page.size() < pageSize ? null : TransactionCursor.of(page.getLast()).encode();
+        return new TransactionPageDTO(page, nextCursor);
     }
 
     @Transactional
@@ -65,19 +101,25 @@ public class TransactionService {
         log.info("Admin updated transaction {} note", transactionId);
     }
 
+    /**
+     * Deletes the transaction and takes its amount off the konto balance. balanceAfter of the later transactions is
+     * recalculated in the background, returns the id of that rebase (see BalanceRebaseService).
+     */
     @Transactional
-    public void deleteTransactionAdmin(UUID transactionId) {
+    public UUID deleteTransactionAdmin(UUID transactionId) {
         Transaction transaction = transactionRepository.findById(transactionId)
                 .orElseThrow(() -> new IllegalArgumentException("Transaction not found"));
 
         Konto konto = transaction.getKonto();
 
-        // Recalculate konto balance
-        konto.setBalance(konto.getBalance().subtract(transaction.getAmount()));
-        kontoRepository.save(konto);
+        // Recalculate konto balance (optimistic update, payments may post to the konto at the same time)
+        kontoBalanceService.adjust(konto.getId(), transaction.getAmount().negate());
 
+        UUID rebaseId = balanceRebaseService.schedule(transaction);
+        transactionRollupService.remove(transaction);
         transactionRepository.delete(transaction);
 
-        log.info("Admin deleted transaction {}", transactionId);
+        log.info("Admin deleted transaction {}, balances after it are rebased by {}", transactionId, rebaseId);
+        return rebaseId;
     }
-}
\ No newline at end of file
+}
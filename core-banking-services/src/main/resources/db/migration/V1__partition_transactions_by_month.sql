@@ -0,0 +1,79 @@
+-- Range-partitions transactions by month of "timestamp".
+--
+-- The rest of the schema is still maintained by Hibernate (ddl-auto=update), which runs after Flyway. On a new
+-- database this creates transactions partitioned right away (Hibernate adds the foreign key to konten afterwards),
+-- on an existing one the unpartitioned table is replaced by a partitioned copy of it.
+--
+-- The primary key includes the partition key, as Postgres requires: (id, timestamp). Rows outside all month
+-- partitions land in transactions_default; TransactionArchiveService.ensurePartitions creates the partitions months
+-- ahead and moves such rows out when it creates their month.
+
+-- Creates the partition of the month starting at month_start unless it exists, moving rows of that month out of
+-- the default partition first. Returns the name of the partition.
+CREATE OR REPLACE FUNCTION purbank_ensure_transaction_partition(month_start date) RETURNS text AS $$
+DECLARE
+    partition_name text := 'transactions_' || to_char(month_start, 'YYYY_MM');
+    range_start timestamp := date_trunc('month', month_start);
+    range_end timestamp := date_trunc('month', month_start) + interval '1 month';
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN partition_name;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I (LIKE transactions INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name);
+    IF to_regclass('transactions_default') IS NOT NULL THEN
+        EXECUTE format('INSERT INTO %I SELECT * FROM transactions_default WHERE "timestamp" >= %L AND "timestamp" < %L',
+                       partition_name, range_start, range_end);
+        EXECUTE format('DELETE FROM transactions_default WHERE "timestamp" >= %L AND "timestamp" < %L',
+                       range_start, range_end);
+    END IF;
+    EXECUTE format('ALTER TABLE transactions ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, range_start, range_end);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+DO $$
+DECLARE
+    month date;
+BEGIN
+    IF to_regclass('transactions') IS NULL THEN
+        CREATE TABLE transactions (
+            id uuid NOT NULL,
+            konto_id uuid NOT NULL,
+            amount numeric(19, 4) NOT NULL,
+            balance_after numeric(19, 4) NOT NULL,
+            "timestamp" timestamp(6) NOT NULL,
+            iban varchar(255) NOT NULL,
+            transaction_type varchar(255) NOT NULL CHECK (transaction_type IN ('INCOMING', 'OUTGOING', 'INTEREST')),
+            currency varchar(255) NOT NULL CHECK (currency IN ('CHF', 'EUR', 'USD')),
+            message text,
+            note text,
+            PRIMARY KEY (id, "timestamp")
+        ) PARTITION BY RANGE ("timestamp");
+
+    ELSIF NOT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = 'transactions'::regclass) THEN
+        ALTER TABLE transactions RENAME TO transactions_unpartitioned;
+        ALTER TABLE transactions_unpartitioned RENAME CONSTRAINT transactions_pkey TO transactions_unpartitioned_pkey;
+        DROP INDEX IF EXISTS idx_transaction_konto_timestamp;
+
+        CREATE TABLE transactions (LIKE transactions_unpartitioned INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+            PARTITION BY RANGE ("timestamp");
+        ALTER TABLE transactions ADD PRIMARY KEY (id, "timestamp");
+        CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+
+        FOR month IN SELECT DISTINCT date_trunc('month', "timestamp")::date FROM transactions_unpartitioned LOOP
+            PERFORM purbank_ensure_transaction_partition(month);
+        END LOOP;
+        INSERT INTO transactions SELECT * FROM transactions_unpartitioned;
+        DROP TABLE transactions_unpartitioned;
+    END IF;
+
+    IF to_regclass('transactions_default') IS NULL THEN
+        CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+    END IF;
+    PERFORM purbank_ensure_transaction_partition(date_trunc('month', LOCALTIMESTAMP)::date);
+    PERFORM purbank_ensure_transaction_partition((date_trunc('month', LOCALTIMESTAMP) + interval '1 month')::date);
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_transaction_konto_timestamp ON transactions (konto_id, "timestamp" DESC, id DESC);
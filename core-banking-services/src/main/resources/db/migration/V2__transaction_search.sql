@@ -0,0 +1,57 @@
+-- Search over the transactions of a konto (see TransactionSearchService).
+--
+-- search_vector holds the words of message and note and the trigrams of the counterparty IBAN, each prefixed with
+-- the konto id: 'c0ffee…:miete', 'c0ffee…#H93'. A lookup in its GIN index therefore only reads the postings of
+-- the konto searched, however common a word is at other kontos, and the statistics Postgres keeps on the words are
+-- per konto as well, so the planner can tell a rare word of the konto from a common one.
+--
+-- The 'simple' configuration doesn't stem: messages come in German, French, Italian and English, and names and
+-- references must match as written. Searches match whole words and word prefixes instead.
+
+CREATE OR REPLACE FUNCTION purbank_transaction_search_vector(konto_id uuid, iban text, message text, note text)
+    RETURNS tsvector AS $$
+    SELECT array_to_tsvector(ARRAY(
+        SELECT replace(konto_id::text, '-', '') || ':' || word
+            FROM unnest(tsvector_to_array(to_tsvector('simple', coalesce(message, '') || ' ' || coalesce(note, '')))) word
+        UNION
+        SELECT replace(konto_id::text, '-', '') || '#' || substr(normalized.iban, i, 3)
+            FROM (SELECT upper(replace(iban, ' ', '')) AS iban) normalized,
+                 generate_series(1, length(normalized.iban) - 2) i))
+$$ LANGUAGE sql IMMUTABLE PARALLEL SAFE;
+
+ALTER TABLE transactions ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (purbank_transaction_search_vector(konto_id, iban, message, note)) STORED;
+
+-- Without fastupdate new entries go straight into the index. With it they'd collect in a pending list of up to
+-- gin_pending_list_limit per partition, which every search reads in full and which makes the planner shy away
+-- from the index until vacuum has cleaned it up.
+CREATE INDEX IF NOT EXISTS idx_transaction_search ON transactions USING gin (search_vector) WITH (fastupdate = off);
+
+-- Partitions have to have the generated column as well, and rows moved out of the default partition can only be
+-- inserted without it.
+CREATE OR REPLACE FUNCTION purbank_ensure_transaction_partition(month_start date) RETURNS text AS $$
+DECLARE
+    partition_name text := 'transactions_' || to_char(month_start, 'YYYY_MM');
+    range_start timestamp := date_trunc('month', month_start);
+    range_end timestamp := date_trunc('month', month_start) + interval '1 month';
+    columns text;
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN partition_name;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I (LIKE transactions INCLUDING DEFAULTS INCLUDING CONSTRAINTS INCLUDING GENERATED)',
+                   partition_name);
+    IF to_regclass('transactions_default') IS NOT NULL THEN
+        SELECT string_agg(quote_ident(attname), ', ' ORDER BY attnum) INTO columns FROM pg_attribute
+            WHERE attrelid = 'transactions'::regclass AND attnum > 0 AND NOT attisdropped AND attgenerated = '';
+        EXECUTE format('INSERT INTO %I (%s) SELECT %s FROM transactions_default WHERE "timestamp" >= %L AND "timestamp" < %L',
+                       partition_name, columns, columns, range_start, range_end);
+        EXECUTE format('DELETE FROM transactions_default WHERE "timestamp" >= %L AND "timestamp" < %L',
+                       range_start, range_end);
+    END IF;
+    EXECUTE format('ALTER TABLE transactions ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, range_start, range_end);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
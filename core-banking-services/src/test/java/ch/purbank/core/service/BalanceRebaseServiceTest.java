@@ -0,0 +1,247 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.BalanceRebase;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.domain.enums.BalanceRebaseStatus;
+import ch.purbank.core.repository.BalanceRebaseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für BalanceRebaseService
+ * 1. System: Neuberechnung von balanceAfter nach dem Löschen einer Transaktion (Warteschlange, Chunks, Fortschritt)
+ * 2. Umgebung: Isoliert mit Mockito (Repository, JDBC und Transaktionen gemockt)
+ * 3. Nicht getestet: Fensterfunktion des UPDATE auf der echten Datenbank, Worker-Threads, mehrere Nodes
+ * 4. Testmittel: Rebase-Fixtures als Ersatz für die Tabelle, Chunk-Ergebnisse des UPDATE
+ * 5. Methode: Äquivalenzklassen (neu / zusammengefasst / vollständig / fehlgeschlagen / übernommen) & Grenzwerte Chunk-Grösse
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Balance Rebase Service - balanceAfter nach Löschungen")
+class BalanceRebaseServiceTest {
+
+    private static final String WORKER = "node-1-0";
+
+    @Mock
+    private BalanceRebaseRepository balanceRebaseRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private JobCoordinator jobCoordinator;
+
+    private BalanceRebaseService rebaseService;
+    private TransactionConfig transactionConfig;
+    private final UUID kontoId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        transactionConfig = new TransactionConfig();
+        transactionConfig.setRebaseChunkSize(2);
+        rebaseService = new BalanceRebaseService(balanceRebaseRepository, jdbcTemplate, transactionManager,
+                transactionConfig, jobCoordinator, new SimpleMeterRegistry());
+        rebaseService.init();
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(balanceRebaseRepository.save(any(BalanceRebase.class))).thenAnswer(i -> {
+            BalanceRebase rebase = i.getArgument(0);
+            if (rebase.getId() == null) {
+                rebase.setId(UUID.randomUUID());
+            }
+            return rebase;
+        });
+    }
+
+    private Transaction deleted(String timestamp, String amount, String balanceAfter) {
+        Konto konto = new Konto();
+        konto.setId(kontoId);
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        transaction.setKonto(konto);
+        transaction.setTimestamp(LocalDateTime.parse(timestamp));
+        transaction.setAmount(new BigDecimal(amount));
+        transaction.setBalanceAfter(new BigDecimal(balanceAfter));
+        return transaction;
+    }
+
+    private BalanceRebase rebase(BalanceRebaseStatus status) {
+        return BalanceRebase.builder()
+                .id(UUID.randomUUID())
+                .kontoId(kontoId)
+                .fromTimestamp(LocalDateTime.of(2026, 3, 1, 10, 0))
+                .fromId(UUID.randomUUID())
+                .baseBalance(new BigDecimal("500.00"))
+                .status(status)
+                .availableAt(LocalDateTime.now())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static RowMapper<BalanceRebaseService.Chunk> anyMapper() {
+        return any();
+    }
+
+    @SafeVarargs
+    private void chunkResults(List<BalanceRebaseService.Chunk>... results) {
+        var stubbing = when(jdbcTemplate.query(anyString(), anyMapper(), any(Object[].class)));
+        for (List<BalanceRebaseService.Chunk> result : results) {
+            stubbing = stubbing.thenReturn(result);
+        }
+    }
+
+    @Test
+    @DisplayName("TC-L001: Löschen legt eine Neuberechnung ab der gelöschten Transaktion an")
+    void testScheduleCreatesRebase() {
+        when(balanceRebaseRepository.lockNotStarted(kontoId)).thenReturn(List.of());
+        Transaction transaction = deleted("2026-03-05T08:00:00", "-40.00", "960.00");
+
+        UUID rebaseId = rebaseService.schedule(transaction);
+
+        ArgumentCaptor<BalanceRebase> saved = ArgumentCaptor.forClass(BalanceRebase.class);
+        verify(balanceRebaseRepository).save(saved.capture());
+        BalanceRebase rebase = saved.getValue();
+        assertEquals(rebaseId, rebase.getId());
+        assertEquals(BalanceRebaseStatus.PENDING, rebase.getStatus());
+        assertEquals(transaction.getTimestamp(), rebase.getFromTimestamp());
+        assertEquals(transaction.getId(), rebase.getFromId());
+        // Balance before the deleted transaction
+        assertEquals(new BigDecimal("1000.00"), rebase.getBaseBalance());
+    }
+
+    @Test
+    @DisplayName("TC-L002: Weitere Löschung vor dem Start verschiebt nur den Beginn der wartenden Neuberechnung")
+    void testScheduleMergesIntoNotStarted() {
+        BalanceRebase pending = rebase(BalanceRebaseStatus.PENDING);
+        LocalDateTime start = pending.getFromTimestamp();
+        when(balanceRebaseRepository.lockNotStarted(kontoId)).thenReturn(List.of(pending));
+
+        // Later than the pending start: already covered
+        assertEquals(pending.getId(), rebaseService.schedule(deleted("2026-03-10T08:00:00", "5.00", "100.00")));
+        assertEquals(start, pending.getFromTimestamp());
+        assertEquals(new BigDecimal("500.00"), pending.getBaseBalance());
+
+        // Earlier: the rebase starts there
+        Transaction earlier = deleted("2026-02-20T08:00:00", "25.00", "300.00");
+        assertEquals(pending.getId(), rebaseService.schedule(earlier));
+        assertEquals(earlier.getTimestamp(), pending.getFromTimestamp());
+        assertEquals(earlier.getId(), pending.getFromId());
+        assertEquals(new BigDecimal("275.00"), pending.getBaseBalance());
+    }
+
+    @Test
+    @DisplayName("TC-L003: Neuberechnung läuft in Chunks ab dem Cursor bis zum letzten kurzen Chunk")
+    void testProcessRunsChunksToCompletion() {
+        BalanceRebase pending = rebase(BalanceRebaseStatus.PENDING);
+        when(balanceRebaseRepository.claimAvailable(any())).thenReturn(List.of(pending));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(3L);
+        when(balanceRebaseRepository.lockClaimed(pending.getId(), WORKER)).thenReturn(List.of(pending));
+        UUID second = UUID.randomUUID(), third = UUID.randomUUID();
+        LocalDateTime secondAt = LocalDateTime.of(2026, 3, 2, 9, 0), thirdAt = LocalDateTime.of(2026, 3, 3, 9, 0);
+        chunkResults(
+                List.of(new BalanceRebaseService.Chunk(2, 2, secondAt, second)),
+                List.of(new BalanceRebaseService.Chunk(1, 0, thirdAt, third)));
+
+        assertTrue(rebaseService.processNext(WORKER));
+
+        assertEquals(BalanceRebaseStatus.COMPLETED, pending.getStatus());
+        assertEquals(3, pending.getRowsTotal());
+        assertEquals(3, pending.getRowsRebased());
+        assertEquals(2, pending.getRowsChanged());
+        assertEquals(third, pending.getCursorId());
+        assertNull(pending.getClaimedBy());
+        assertNotNull(pending.getFinishedAt());
+        // The second chunk continues after the last transaction of the first
+        verify(jdbcTemplate).query(anyString(), anyMapper(), eq(kontoId), eq(Timestamp.valueOf(secondAt)), eq(second),
+                eq(kontoId), eq(Timestamp.valueOf(secondAt)), eq(second), eq(2), eq(new BigDecimal("500.00")), eq(kontoId));
+        verify(jdbcTemplate, times(2)).queryForList(contains("pg_advisory_xact_lock"), eq(kontoId.toString()));
+    }
+
+    @Test
+    @DisplayName("TC-L004: Fehlgeschlagener Chunk wird mit Backoff wiederholt und nach den maximalen Versuchen als FAILED markiert")
+    void testProcessFailure() {
+        transactionConfig.setRebaseMaxAttempts(2);
+        transactionConfig.setRebaseRetryBackoff(Duration.ofMinutes(1));
+        BalanceRebase pending = rebase(BalanceRebaseStatus.PENDING);
+        when(balanceRebaseRepository.claimAvailable(any())).thenReturn(List.of(pending));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenReturn(10L);
+        when(balanceRebaseRepository.lockClaimed(pending.getId(), WORKER)).thenReturn(List.of(pending));
+        when(jdbcTemplate.query(anyString(), anyMapper(), any(Object[].class)))
+                .thenThrow(new IllegalStateException("deadlock detected"));
+
+        rebaseService.processNext(WORKER);
+
+        assertEquals(BalanceRebaseStatus.PENDING, pending.getStatus());
+        assertEquals(1, pending.getAttempts());
+        assertEquals("deadlock detected", pending.getLastError());
+        assertTrue(pending.getAvailableAt().isAfter(LocalDateTime.now().plusSeconds(50)));
+        assertNull(pending.getClaimedBy());
+
+        rebaseService.processNext(WORKER);
+
+        assertEquals(BalanceRebaseStatus.FAILED, pending.getStatus());
+        assertEquals(2, pending.getAttempts());
+        assertNotNull(pending.getFinishedAt());
+    }
+
+    @Test
+    @DisplayName("TC-L005: Ohne verfügbare Neuberechnung nichts tun, übernommene Neuberechnung nicht weiterführen")
+    void testNothingToDoAndTakenOver() {
+        when(balanceRebaseRepository.claimAvailable(any())).thenReturn(List.of());
+        assertFalse(rebaseService.processNext(WORKER));
+        verify(balanceRebaseRepository).releaseStale(any());
+
+        BalanceRebase resumed = rebase(BalanceRebaseStatus.PENDING);
+        resumed.setCursorId(UUID.randomUUID());
+        resumed.setCursorTimestamp(LocalDateTime.of(2026, 3, 2, 0, 0));
+        resumed.setRowsTotal(7);
+        when(balanceRebaseRepository.claimAvailable(any())).thenReturn(List.of(resumed));
+        when(balanceRebaseRepository.lockClaimed(resumed.getId(), WORKER)).thenReturn(List.of());
+
+        assertTrue(rebaseService.processNext(WORKER));
+        // Resumed run keeps its total, another worker holds it now
+        assertEquals(7, resumed.getRowsTotal());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class), any(Object[].class));
+        verify(jdbcTemplate, never()).query(anyString(), anyMapper(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("TC-L006: Gleicher Zeitstempel: IDs werden wie in Postgres bytweise ohne Vorzeichen verglichen")
+    void testScheduleComparesIdsLikePostgres() {
+        BalanceRebase pending = rebase(BalanceRebaseStatus.PENDING);
+        // Postgres: 7fff... < 8000..., UUID.compareTo says the opposite
+        pending.setFromId(UUID.fromString("80000000-0000-0000-0000-000000000000"));
+        when(balanceRebaseRepository.lockNotStarted(kontoId)).thenReturn(List.of(pending));
+        Transaction sameTime = deleted("2026-03-01T10:00:00", "25.00", "300.00");
+        sameTime.setId(UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffffff"));
+
+        rebaseService.schedule(sameTime);
+
+        assertEquals(sameTime.getId(), pending.getFromId());
+        assertTrue(BalanceRebaseService.compareLikePostgres(
+                UUID.fromString("00000000-0000-0000-8000-000000000000"),
+                UUID.fromString("00000000-0000-0000-7fff-ffffffffffff")) > 0);
+    }
+}
@@ -0,0 +1,199 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.BalanceSnapshotConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.KontoBalanceSnapshot;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.dto.BalanceSnapshotBackfillDTO;
+import ch.purbank.core.dto.BalanceSnapshotDTO;
+import ch.purbank.core.repository.KontoBalanceSnapshotRepository;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für BalanceSnapshotService
+ * 1. System: Tagesend-Saldi pro Konto (nächtlicher Lauf, Abfrage, paralleles Nachfüllen vergangener Tage)
+ * 2. Umgebung: Isoliert mit Mockito (Repositories, JDBC und Transaktionen gemockt)
+ * 3. Nicht getestet: SQL der Snapshot-Statements (Fensterfunktion) auf der echten Datenbank
+ * 4. Testmittel: Konto- und Snapshot-Fixtures, Konto-ID-Listen als Chunk-Grenzen
+ * 5. Methode: Äquivalenzklassen (Snapshot vorhanden / fehlt / Zukunft / ungültiger Zeitraum) & Grenzwerte Chunks
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Balance Snapshot Service - Historische Tagesend-Saldi")
+class BalanceSnapshotServiceTest {
+
+    @Mock
+    private KontoBalanceSnapshotRepository snapshotRepository;
+    @Mock
+    private KontoRepository kontoRepository;
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionArchiveService transactionArchiveService;
+
+    private BalanceSnapshotService snapshotService;
+    private BalanceSnapshotConfig snapshotConfig;
+    private Konto konto;
+    private final LocalDate yesterday = LocalDate.now().minusDays(1);
+
+    @BeforeEach
+    void setUp() {
+        snapshotConfig = new BalanceSnapshotConfig();
+        snapshotService = new BalanceSnapshotService(snapshotRepository, kontoRepository, kontoMemberRepository,
+                jdbcTemplate, transactionManager, snapshotConfig, transactionArchiveService, new KontoChunkRunner(jdbcTemplate));
+
+        konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        konto.setBalance(new BigDecimal("1000.0000"));
+        konto.setCurrency(Currency.CHF);
+        konto.setCreatedAt(LocalDateTime.now().minusYears(1));
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    @DisplayName("TC-H001: Vorhandener Snapshot wird per Primärschlüssel gelesen")
+    void testBalanceFromSnapshot() {
+        KontoBalanceSnapshot snapshot = new KontoBalanceSnapshot();
+        snapshot.setKontoId(konto.getId());
+        snapshot.setSnapshotDate(yesterday);
+        snapshot.setBalance(new BigDecimal("750.0000"));
+        snapshot.setCurrency(Currency.CHF);
+        when(snapshotRepository.findById(new KontoBalanceSnapshot.Key(konto.getId(), yesterday))).thenReturn(Optional.of(snapshot));
+
+        BalanceSnapshotDTO balance = snapshotService.getBalanceAtAdmin(konto.getId(), yesterday);
+
+        assertEquals(new BigDecimal("750.0000"), balance.getBalance());
+        verifyNoInteractions(jdbcTemplate, kontoRepository);
+    }
+
+    @Test
+    @DisplayName("TC-H002: Fehlender Snapshot wird aus den späteren Buchungen berechnet")
+    void testBalanceComputedWithoutSnapshot() {
+        when(snapshotRepository.findById(any())).thenReturn(Optional.empty());
+        when(kontoRepository.findById(konto.getId())).thenReturn(Optional.of(konto));
+        when(jdbcTemplate.queryForObject(anyString(), eq(BigDecimal.class), eq(konto.getId()),
+                eq(yesterday.plusDays(1).atStartOfDay()))).thenReturn(new BigDecimal("200.0000"));
+
+        BalanceSnapshotDTO balance = snapshotService.getBalanceAtAdmin(konto.getId(), yesterday);
+
+        assertEquals(new BigDecimal("800.0000"), balance.getBalance());
+        assertEquals(Currency.CHF, balance.getCurrency());
+    }
+
+    @Test
+    @DisplayName("TC-H003: Heute, Zukunft, fremdes Konto und Tage vor der Eröffnung werden abgelehnt")
+    void testBalanceRejected() {
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.getBalanceAtAdmin(konto.getId(), LocalDate.now()));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.getBalanceAt(konto.getId(), UUID.randomUUID(), yesterday));
+
+        when(snapshotRepository.findById(any())).thenReturn(Optional.empty());
+        when(kontoRepository.findById(konto.getId())).thenReturn(Optional.of(konto));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.getBalanceAtAdmin(konto.getId(), yesterday.minusYears(2)));
+    }
+
+    @Test
+    @DisplayName("TC-H004: Nachfüllen arbeitet die Konten in Chunks ab und summiert die Snapshots")
+    void testBackfillChunks() {
+        snapshotConfig.setBackfillChunkSize(2);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(2))).thenReturn(List.of(a, b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(2))).thenReturn(List.of(c));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(20, 10);
+
+        BalanceSnapshotBackfillDTO result = snapshotService.backfill(yesterday.minusDays(9), yesterday);
+
+        assertEquals(2, result.getChunks());
+        assertEquals(0, result.getFailedChunks());
+        assertEquals(30, result.getSnapshots());
+        verify(jdbcTemplate).update(anyString(), eq(a), eq(b), eq(a), eq(b), any(), any(), any());
+        verify(jdbcTemplate).update(anyString(), eq(c), eq(c), eq(c), eq(c), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("TC-H005: Fehlgeschlagener Chunk wird gezählt, die übrigen laufen weiter")
+    void testBackfillFailedChunk() {
+        snapshotConfig.setBackfillChunkSize(1);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1))).thenReturn(List.of(a));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(a), eq(1))).thenReturn(List.of(b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(1))).thenReturn(List.of());
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(i -> {
+            if (i.getArgument(1).equals(b)) {
+                throw new IllegalStateException("deadlock");
+            }
+            return 10;
+        });
+
+        BalanceSnapshotBackfillDTO result = snapshotService.backfill(yesterday.minusDays(4), yesterday);
+
+        assertEquals(2, result.getChunks());
+        assertEquals(1, result.getFailedChunks());
+    }
+
+    @Test
+    @DisplayName("TC-H006: Ungültige Zeiträume werden vor dem Schreiben abgelehnt")
+    void testBackfillRejected() {
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.backfill(yesterday, yesterday.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.backfill(yesterday, LocalDate.now()));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.backfill(yesterday.minusYears(20), yesterday));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("TC-H007: Tagesliste ist per Keyset über die Konto-ID paginiert und begrenzt")
+    void testSnapshotsOnDayPaged() {
+        UUID after = UUID.randomUUID();
+
+        snapshotService.getSnapshotsOn(yesterday, null, null);
+        snapshotService.getSnapshotsOn(yesterday, after, 50);
+
+        verify(snapshotRepository).findFirstDayPage(yesterday, Limit.of(snapshotConfig.getListMaxPageSize()));
+        verify(snapshotRepository).findDayPageAfter(yesterday, after, Limit.of(50));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.getSnapshotsOn(yesterday, null, 0));
+    }
+
+    @Test
+    @DisplayName("TC-H008: Tage vor dem Ende der archivierten Monate werden weder berechnet noch nachgefüllt")
+    void testArchivedDaysRejected() {
+        LocalDate hotWindowStart = yesterday.withDayOfMonth(1).minusMonths(1);
+        when(transactionArchiveService.hotWindowStart()).thenReturn(hotWindowStart);
+        when(snapshotRepository.findById(any())).thenReturn(Optional.empty());
+        when(kontoRepository.findById(konto.getId())).thenReturn(Optional.of(konto));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> snapshotService.getBalanceAtAdmin(konto.getId(), hotWindowStart.minusDays(2)));
+        assertThrows(IllegalArgumentException.class, () -> snapshotService.backfill(hotWindowStart.minusDays(2), yesterday));
+
+        // The last archived day is still computable, all later transactions are in the database
+        when(jdbcTemplate.queryForObject(anyString(), eq(BigDecimal.class), eq(konto.getId()), any()))
+                .thenReturn(BigDecimal.ZERO);
+        assertEquals(konto.getBalance(), snapshotService.getBalanceAtAdmin(konto.getId(), hotWindowStart.minusDays(1)).getBalance());
+    }
+}
@@ -0,0 +1,185 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.repository.KontoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für IbanDirectoryService
+ * 1. System: IBAN-Verzeichnis-Cache (LRU, Invalidierung)
+ * 2. Umgebung: Isoliert mit Mockito
+ * 3. Nicht getestet: TTL-Ablauf, Invalidierung nach Commit
+ * 4. Testmittel: SimpleMeterRegistry für Hit/Miss-Zähler
+ * 5. Methode: Zustandsbasiert (Hit, Miss, Invalidierung, Verdrängung)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IBAN Directory Service - Cache für interne IBANs")
+class IbanDirectoryServiceTest {
+
+    private static final String INTERNAL_IBAN = "CH9300762011623852957";
+    private static final String EXTERNAL_IBAN = "DE89370400440532013000";
+
+    @Mock
+    private KontoRepository kontoRepository;
+
+    private PaymentConfig paymentConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private IbanDirectoryService directory;
+    private UUID kontoId;
+
+    @BeforeEach
+    void setUp() {
+        paymentConfig = new PaymentConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        directory = new IbanDirectoryService(kontoRepository, paymentConfig, meterRegistry);
+        directory.init();
+        kontoId = UUID.randomUUID();
+
+        lenient().when(kontoRepository.findIbanRefByIban(anyString())).thenReturn(Optional.empty());
+        lenient().when(kontoRepository.findIbanRefByIban(INTERNAL_IBAN)).thenReturn(Optional.of(new Ref(kontoId)));
+    }
+
+    private record Ref(UUID id) implements KontoRepository.IbanRef {
+        public UUID getId() {
+            return id;
+        }
+
+        public Currency getCurrency() {
+            return Currency.CHF;
+        }
+
+        public KontoStatus getStatus() {
+            return KontoStatus.ACTIVE;
+        }
+    }
+
+    @Test
+    @DisplayName("TC-D001: Zweite Auflösung derselben IBAN kommt aus dem Cache")
+    void testSecondLookupIsHit() {
+        Optional<IbanDirectoryService.IbanEntry> first = directory.resolve(INTERNAL_IBAN);
+        Optional<IbanDirectoryService.IbanEntry> second = directory.resolve(INTERNAL_IBAN);
+
+        assertEquals(kontoId, first.orElseThrow().kontoId());
+        assertEquals(first, second);
+        verify(kontoRepository, times(1)).findIbanRefByIban(INTERNAL_IBAN);
+        assertEquals(1.0, meterRegistry.counter("purbank.iban.cache", "result", "hit").count());
+        assertEquals(1.0, meterRegistry.counter("purbank.iban.cache", "result", "miss").count());
+    }
+
+    @Test
+    @DisplayName("TC-D002: Externe IBANs werden ebenfalls gecacht")
+    void testExternalIbanIsCached() {
+        assertTrue(directory.resolve(EXTERNAL_IBAN).isEmpty());
+        assertTrue(directory.resolve(EXTERNAL_IBAN).isEmpty());
+
+        verify(kontoRepository, times(1)).findIbanRefByIban(EXTERNAL_IBAN);
+    }
+
+    @Test
+    @DisplayName("TC-D003: Invalidierung erzwingt erneutes Laden")
+    void testInvalidateReloads() {
+        directory.resolve(INTERNAL_IBAN);
+        directory.invalidate(INTERNAL_IBAN);
+        directory.resolve(INTERNAL_IBAN);
+
+        verify(kontoRepository, times(2)).findIbanRefByIban(INTERNAL_IBAN);
+    }
+
+    @Test
+    @DisplayName("TC-D004: Am längsten nicht genutzte IBAN wird verdrängt")
+    void testLeastRecentlyUsedIsEvicted() {
+        paymentConfig.setIbanCacheSize(2);
+
+        directory.resolve(INTERNAL_IBAN);
+        directory.resolve(EXTERNAL_IBAN);
+        directory.resolve(INTERNAL_IBAN); // INTERNAL_IBAN is now the most recently used
+        directory.resolve("FR7630006000011234567890189");
+        directory.resolve(INTERNAL_IBAN);
+        directory.resolve(EXTERNAL_IBAN);
+
+        assertEquals(2, directory.size());
+        verify(kontoRepository, times(1)).findIbanRefByIban(INTERNAL_IBAN);
+        verify(kontoRepository, times(2)).findIbanRefByIban(EXTERNAL_IBAN);
+    }
+
+    @Test
+    @DisplayName("TC-D005: Bloom-Filter weist externe IBANs ohne DB-Abfrage ab")
+    void testBloomFilterRejectsExternalIban() {
+        when(kontoRepository.findAllIbans()).thenReturn(List.of(INTERNAL_IBAN));
+        directory.rebuildBloomFilter();
+
+        assertTrue(directory.resolve(EXTERNAL_IBAN).isEmpty());
+        assertTrue(directory.resolve(INTERNAL_IBAN).isPresent());
+
+        verify(kontoRepository, never()).findIbanRefByIban(EXTERNAL_IBAN);
+        assertEquals(1.0, meterRegistry.counter("purbank.iban.bloom", "result", "reject").count());
+    }
+
+    @Test
+    @DisplayName("TC-D006: Neu eröffnetes Konto ist nach Registrierung sofort auflösbar")
+    void testRegisteredIbanPassesBloomFilter() {
+        String newIban = "CH5604835012345678009";
+        when(kontoRepository.findAllIbans()).thenReturn(List.of(INTERNAL_IBAN));
+        when(kontoRepository.findIbanRefByIban(newIban)).thenReturn(Optional.of(new Ref(UUID.randomUUID())));
+        directory.rebuildBloomFilter();
+
+        directory.register(newIban);
+
+        assertTrue(directory.resolve(newIban).isPresent());
+    }
+
+    @Test
+    @DisplayName("TC-D007: Auf anderem Knoten eröffnetes Konto wird vor dem Scheitern in der DB bestätigt")
+    void testConfirmFindsKontoOpenedOnOtherNode() {
+        String otherNodeIban = "CH5604835012345678009";
+        when(kontoRepository.findAllIbans()).thenReturn(List.of(INTERNAL_IBAN));
+        directory.rebuildBloomFilter();
+        // Opened on another node after the rebuild
+        when(kontoRepository.findIbanRefByIban(otherNodeIban)).thenReturn(Optional.of(new Ref(UUID.randomUUID())));
+
+        assertTrue(directory.resolve(otherNodeIban).isEmpty());
+        assertTrue(directory.confirm(otherNodeIban).isPresent());
+        // Cached and added to the filter, later lookups find it without the database
+        assertTrue(directory.resolve(otherNodeIban).isPresent());
+        verify(kontoRepository, times(1)).findIbanRefByIban(otherNodeIban);
+
+        assertTrue(directory.confirm(EXTERNAL_IBAN).isEmpty());
+        verify(kontoRepository, times(1)).findIbanRefByIban(EXTERNAL_IBAN);
+    }
+
+    @Test
+    @DisplayName("TC-D008: Abweisung eines nach dem Stichzeitpunkt gelesenen Filters ist endgültig, ein älterer Filter fragt die DB")
+    void testConfirmTrustsFilterReadAfterOpening() {
+        String otherNodeIban = "CH5604835012345678009";
+        LocalDateTime runStartedAt = LocalDateTime.now();
+        when(kontoRepository.findAllIbans()).thenReturn(List.of(INTERNAL_IBAN));
+        directory.rebuildBloomFilter();
+
+        assertTrue(directory.confirm(EXTERNAL_IBAN, runStartedAt).isEmpty());
+        assertTrue(directory.confirm(INTERNAL_IBAN, runStartedAt).isPresent());
+        verify(kontoRepository, never()).findIbanRefByIban(EXTERNAL_IBAN);
+
+        // Opened on another node after the filter was read, only the database knows it
+        when(kontoRepository.findIbanRefByIban(otherNodeIban)).thenReturn(Optional.of(new Ref(UUID.randomUUID())));
+        assertTrue(directory.confirm(otherNodeIban, LocalDateTime.now().plusMinutes(1)).isPresent());
+        verify(kontoRepository).findIbanRefByIban(otherNodeIban);
+    }
+}
@@ -0,0 +1,164 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.IdempotencyRecord;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.dto.CreatePaymentRequestDTO;
+import ch.purbank.core.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für IdempotencyService
+ * 1. System: Idempotency-Key für Zahlungserfassung
+ * 2. Umgebung: Isoliert mit Mockito (Repository und Transaktionsmanager gemockt)
+ * 3. Nicht getestet: Unique-Constraint der echten Datenbank, Cache über mehrere App-Nodes
+ * 4. Testmittel: Zähler für ausgeführte Aktionen
+ * 5. Methode: Äquivalenzklassen (Wiederholung / anderer Body / abgelaufen / paralleler Request)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Idempotency Service - Wiederholte Zahlungsaufträge")
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private IdempotencyService idempotencyService;
+    private UUID userId;
+    private AtomicInteger executions;
+    private Supplier<String> action;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, transactionManager,
+                new ObjectMapper().findAndRegisterModules(), new PaymentConfig(), new SimpleMeterRegistry());
+        idempotencyService.init();
+
+        userId = UUID.randomUUID();
+        executions = new AtomicInteger();
+        action = () -> "code-" + executions.incrementAndGet();
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(any(), any())).thenReturn(Optional.empty());
+    }
+
+    private CreatePaymentRequestDTO request(String amount) {
+        CreatePaymentRequestDTO request = new CreatePaymentRequestDTO();
+        request.setKontoId(UUID.fromString("00000000-0000-0000-0000-000000000001"));
+        request.setToIban("CH5604835012345678009");
+        request.setAmount(new BigDecimal(amount));
+        request.setExecutionType(PaymentExecutionType.NORMAL);
+        request.setExecutionDate(LocalDate.of(2030, 1, 1));
+        request.setDeviceId("device");
+        return request;
+    }
+
+    @Test
+    @DisplayName("TC-Y001: Wiederholung mit gleichem Key und Body liefert den ursprünglichen Code aus dem Cache")
+    void testRetryReturnsOriginalResult() {
+        String first = idempotencyService.execute(userId, "key-1", request("10.00"), action);
+        String retry = idempotencyService.execute(userId, "key-1", request("10.00"), action);
+
+        assertEquals("code-1", first);
+        assertEquals("code-1", retry);
+        assertEquals(1, executions.get());
+        verify(idempotencyRecordRepository, times(1)).findByUserIdAndIdempotencyKey(userId, "key-1");
+        verify(idempotencyRecordRepository, times(1)).saveAndFlush(any());
+    }
+
+    @Test
+    @DisplayName("TC-Y002: Gleicher Key mit anderem Body wird abgewiesen")
+    void testKeyReusedWithDifferentBody() {
+        idempotencyService.execute(userId, "key-1", request("10.00"), action);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> idempotencyService.execute(userId, "key-1", request("99.00"), action));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    @DisplayName("TC-Y003: Ohne Cache-Eintrag wird das gespeicherte Resultat aus der Datenbank geliefert")
+    void testDatabaseFallback() {
+        // First node stores the record, the retry lands on a node that never saw the key
+        idempotencyService.execute(userId, "key-1", request("10.00"), action);
+        IdempotencyRecord stored = captureSavedRecord();
+
+        IdempotencyService otherNode = new IdempotencyService(idempotencyRecordRepository, transactionManager,
+                new ObjectMapper().findAndRegisterModules(), new PaymentConfig(), new SimpleMeterRegistry());
+        otherNode.init();
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, "key-1")).thenReturn(Optional.of(stored));
+
+        assertEquals("code-1", otherNode.execute(userId, "key-1", request("10.00"), action));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    @DisplayName("TC-Y004: Abgelaufener Key wird ersetzt und die Aktion erneut ausgeführt")
+    void testExpiredRecordIsReplaced() {
+        IdempotencyRecord expired = IdempotencyRecord.builder()
+                .userId(userId)
+                .idempotencyKey("key-1")
+                .requestHash("old")
+                .response("old-code")
+                .expiresAt(LocalDateTime.now().minusMinutes(1))
+                .build();
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, "key-1")).thenReturn(Optional.of(expired));
+
+        assertEquals("code-1", idempotencyService.execute(userId, "key-1", request("10.00"), action));
+        verify(idempotencyRecordRepository).delete(expired);
+    }
+
+    @Test
+    @DisplayName("TC-Y005: Paralleler Request mit gleichem Key verliert am Unique-Constraint und liefert das Resultat des Gewinners")
+    void testConcurrentRequestReturnsWinner() {
+        idempotencyService.execute(userId, "key-1", request("10.00"), action);
+        IdempotencyRecord winner = captureSavedRecord();
+
+        when(idempotencyRecordRepository.findByUserIdAndIdempotencyKey(userId, "key-2"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(winner.toBuilder().idempotencyKey("key-2").build()));
+        when(idempotencyRecordRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("uk_idempotency_user_key"));
+
+        assertEquals("code-1", idempotencyService.execute(userId, "key-2", request("10.00"), action));
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    @DisplayName("TC-Y006: Leerer oder zu langer Key wird abgewiesen")
+    void testInvalidKey() {
+        assertThrows(IllegalArgumentException.class, () -> idempotencyService.execute(userId, " ", request("10.00"), action));
+        assertThrows(IllegalArgumentException.class, () -> idempotencyService.execute(userId, "k".repeat(256), request("10.00"), action));
+        assertEquals(0, executions.get());
+    }
+
+    private IdempotencyRecord captureSavedRecord() {
+        ArgumentCaptor<IdempotencyRecord> captor = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(idempotencyRecordRepository, atLeastOnce()).saveAndFlush(captor.capture());
+        return captor.getValue();
+    }
+}
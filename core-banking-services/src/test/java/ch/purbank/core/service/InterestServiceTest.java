@@ -13,12 +13,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -46,6 +48,10 @@ class InterestServiceTest {
     private TransactionRepository transactionRepository;
     @Mock
     private AuditLogService auditLogService;
+    @Mock
+    private KontoPostingService kontoPostingService;
+    @Mock
+    private TransactionRollupService transactionRollupService;
     @InjectMocks
     private InterestService interestService;
 
@@ -93,9 +99,12 @@ class InterestServiceTest {
         when(kontoRepository.findAll()).thenReturn(List.of(testKonto));
         when(kontoRepository.save(any(Konto.class))).thenAnswer(i -> i.getArgument(0));
 
-        interestService.calculateDailyInterest();
+        // A run taken over after midnight still accrues for the day it was scheduled for
+        LocalDate runDay = LocalDate.now().minusDays(1);
+        interestService.calculateDailyInterest(runDay);
 
         assertTrue(testKonto.getAccruedInterest().compareTo(BigDecimal.ZERO) > 0);
+        assertEquals(runDay, testKonto.getLastInterestCalcDate());
         verify(kontoRepository).save(testKonto);
     }
 
@@ -105,7 +114,7 @@ class InterestServiceTest {
         testKonto.setStatus(KontoStatus.CLOSED);
         when(kontoRepository.findAll()).thenReturn(List.of(testKonto));
 
-        interestService.calculateDailyInterest();
+        interestService.calculateDailyInterest(LocalDate.now());
 
         assertEquals(BigDecimal.ZERO, testKonto.getAccruedInterest());
         verify(kontoRepository, never()).save(any());
@@ -137,12 +146,16 @@ class InterestServiceTest {
 
         lenient().when(kontoRepository.save(any(Konto.class))).thenAnswer(i -> i.getArgument(0));
         lenient().when(transactionRepository.save(any(Transaction.class))).thenAnswer(i -> i.getArgument(0));
+        when(kontoPostingService.credit(testKonto.getId(), new BigDecimal("50.00")))
+                .thenReturn(new KontoPostingService.PostingResult(true, new BigDecimal("10050.00")));
 
         interestService.processQuarterlyAbrechnung();
 
         assertEquals(0, BigDecimal.ZERO.compareTo(testKonto.getAccruedInterest()));
-        assertEquals(0, new BigDecimal("10050.00").compareTo(testKonto.getBalance()));
-        verify(transactionRepository).save(any(Transaction.class));
+        ArgumentCaptor<Transaction> captor = ArgumentCaptor.forClass(Transaction.class);
+        verify(transactionRepository).save(captor.capture());
+        assertEquals(0, new BigDecimal("10050.00").compareTo(captor.getValue().getBalanceAfter()));
+        verify(transactionRollupService).record(captor.getValue());
     }
 
     @Test
@@ -0,0 +1,173 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.JobConfig;
+import ch.purbank.core.domain.JobLease;
+import ch.purbank.core.repository.JobLeaseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für JobCoordinator
+ * 1. System: Koordination der geplanten Jobs über Leases (ein Node pro Lauf, Übernahme nach Ausfall)
+ * 2. Umgebung: Isoliert mit Mockito (JobLeaseRepository gemockt)
+ * 3. Nicht getestet: Bedingtes INSERT ... ON CONFLICT der echten Datenbank, Heartbeat-Takt
+ * 4. Testmittel: Aufgezeichnete Run-Keys der Jobs, Lease-Fixtures
+ * 5. Methode: Äquivalenzklassen (Lease erhalten / belegt / Job fehlgeschlagen und wiederholt / Node ausgefallen)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Job Coordinator - Geplante Jobs im Cluster")
+class JobCoordinatorTest {
+
+    @Mock
+    private JobLeaseRepository jobLeaseRepository;
+
+    private JobCoordinator jobCoordinator;
+    private List<String> runs;
+
+    @BeforeEach
+    void setUp() {
+        jobCoordinator = new JobCoordinator(jobLeaseRepository, new JobConfig(), new SimpleMeterRegistry());
+        runs = new ArrayList<>();
+        jobCoordinator.register("settlement", runs::add);
+    }
+
+    @Test
+    @DisplayName("TC-J001: Mit Lease läuft der Job und die Lease wird als abgeschlossen freigegeben")
+    void testRunsWithLease() {
+        when(jobLeaseRepository.acquire(eq("settlement"), eq(jobCoordinator.getNodeId()), eq("2025-03-31"), anyLong())).thenReturn(1);
+
+        assertTrue(jobCoordinator.run("settlement", "2025-03-31"));
+
+        assertEquals(List.of("2025-03-31"), runs);
+        verify(jobLeaseRepository).release("settlement", jobCoordinator.getNodeId(), true, 0);
+    }
+
+    @Test
+    @DisplayName("TC-J002: Hält ein anderer Node die Lease, wird der Lauf übersprungen")
+    void testSkippedWithoutLease() {
+        when(jobLeaseRepository.acquire(any(), any(), any(), anyLong())).thenReturn(0);
+
+        assertFalse(jobCoordinator.run("settlement", "2025-03-31"));
+
+        assertTrue(runs.isEmpty());
+        verify(jobLeaseRepository, never()).release(any(), any(), anyBoolean(), anyLong());
+    }
+
+    @Test
+    @DisplayName("TC-J003: Fehlgeschlagener Lauf gibt die Lease frei, ohne ihn abzuschliessen, mit Wartezeit bis zur Wiederholung")
+    void testFailedRunIsNotCompleted() {
+        jobCoordinator.register("failing", runKey -> {
+            throw new IllegalStateException("boom");
+        });
+        when(jobLeaseRepository.acquire(eq("failing"), any(), any(), anyLong())).thenReturn(1);
+
+        assertThrows(IllegalStateException.class, () -> jobCoordinator.run("failing", "2025-03-31"));
+
+        verify(jobLeaseRepository).release("failing", jobCoordinator.getNodeId(), false, 300);
+    }
+
+    @Test
+    @DisplayName("TC-J004: Lauf eines ausgefallenen Nodes wird mit seinem Run-Key übernommen")
+    void testTakeOverAbandonedRun() {
+        JobLease abandoned = new JobLease();
+        abandoned.setName("settlement");
+        abandoned.setOwner("dead-node");
+        abandoned.setRunKey("2025-03-30");
+        JobLease unknown = new JobLease();
+        unknown.setName("not-registered-here");
+        unknown.setOwner("dead-node");
+        when(jobLeaseRepository.findToResume()).thenReturn(List.of(abandoned, unknown));
+        when(jobLeaseRepository.acquire(eq("settlement"), eq(jobCoordinator.getNodeId()), eq("2025-03-30"), anyLong())).thenReturn(1);
+
+        jobCoordinator.resumeJobs();
+
+        assertEquals(List.of("2025-03-30"), runs);
+        verify(jobLeaseRepository, never()).acquire(eq("not-registered-here"), any(), any(), anyLong());
+        verify(jobLeaseRepository).release("settlement", jobCoordinator.getNodeId(), true, 0);
+    }
+
+    @Test
+    @DisplayName("TC-J005: Übernahme, die ein anderer Node schneller erhalten hat, läuft nicht doppelt")
+    void testTakeOverLostToOtherNode() {
+        JobLease abandoned = new JobLease();
+        abandoned.setName("settlement");
+        abandoned.setOwner("dead-node");
+        abandoned.setRunKey("2025-03-30");
+        when(jobLeaseRepository.findToResume()).thenReturn(List.of(abandoned));
+        when(jobLeaseRepository.acquire(any(), any(), any(), anyLong())).thenReturn(0);
+
+        jobCoordinator.resumeJobs();
+
+        assertTrue(runs.isEmpty());
+    }
+
+    @Test
+    @DisplayName("TC-J006: Doppelte Registrierung und unbekannte Jobs werden abgelehnt")
+    void testRegistrationErrors() {
+        assertThrows(IllegalStateException.class, () -> jobCoordinator.register("settlement", runs::add));
+        assertThrows(IllegalStateException.class, () -> jobCoordinator.run("unknown", null));
+        verifyNoInteractions(jobLeaseRepository);
+    }
+
+    @Test
+    @DisplayName("TC-J007: Fehlgeschlagener Lauf wird nach der Wartezeit mit demselben Run-Key wiederholt")
+    void testFailedRunIsRetried() {
+        List<String> attempts = new ArrayList<>();
+        jobCoordinator.register("flaky", runKey -> {
+            attempts.add(runKey);
+            if (attempts.size() == 1) {
+                throw new IllegalStateException("deadlock detected");
+            }
+        });
+        when(jobLeaseRepository.acquire(eq("flaky"), eq(jobCoordinator.getNodeId()), eq("2025-03-31"), anyLong())).thenReturn(1);
+        assertThrows(IllegalStateException.class, () -> jobCoordinator.run("flaky", "2025-03-31"));
+        verify(jobLeaseRepository).release("flaky", jobCoordinator.getNodeId(), false, 300);
+
+        // Released without owner, the retry delay has passed
+        JobLease failed = new JobLease();
+        failed.setName("flaky");
+        failed.setRunKey("2025-03-31");
+        when(jobLeaseRepository.findToResume()).thenReturn(List.of(failed));
+
+        jobCoordinator.resumeJobs();
+
+        assertEquals(List.of("2025-03-31", "2025-03-31"), attempts);
+        verify(jobLeaseRepository).release("flaky", jobCoordinator.getNodeId(), true, 0);
+    }
+
+    @Test
+    @DisplayName("TC-J008: Erneut fehlgeschlagene Wiederholung hält die übrigen Läufe nicht auf")
+    void testFailedRetryDoesNotStopOthers() {
+        jobCoordinator.register("failing", runKey -> {
+            throw new IllegalStateException("boom");
+        });
+        JobLease failed = new JobLease();
+        failed.setName("failing");
+        failed.setRunKey("2025-03-31");
+        JobLease abandoned = new JobLease();
+        abandoned.setName("settlement");
+        abandoned.setOwner("dead-node");
+        abandoned.setRunKey("2025-03-31");
+        when(jobLeaseRepository.findToResume()).thenReturn(List.of(failed, abandoned));
+        when(jobLeaseRepository.acquire(any(), eq(jobCoordinator.getNodeId()), eq("2025-03-31"), anyLong())).thenReturn(1);
+
+        jobCoordinator.resumeJobs();
+
+        assertEquals(List.of("2025-03-31"), runs);
+        verify(jobLeaseRepository).release("failing", jobCoordinator.getNodeId(), false, 300);
+        verify(jobLeaseRepository).release("settlement", jobCoordinator.getNodeId(), true, 0);
+    }
+}
@@ -0,0 +1,151 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PostingConfig;
+import ch.purbank.core.dto.KontoContentionDTO;
+import ch.purbank.core.repository.KontoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für KontoBalanceService
+ * 1. System: Optimistische Saldo-Updates (Version + bedingtes UPDATE)
+ * 2. Umgebung: Isoliert mit Mockito, Konflikte werden über das Repository simuliert
+ * 3. Nicht getestet: Echte parallele App-Nodes gegen dieselbe DB
+ * 4. Testmittel: SimpleMeterRegistry, Snapshot-Fixtures mit Versionen
+ * 5. Methode: Zustandsbasiert (Konflikt, erschöpfte Versuche, ungedeckte Belastung, begrenzte Konflikt-Statistik)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Konto Balance Service - Optimistische Saldo-Updates")
+class KontoBalanceServiceTest {
+
+    @Mock
+    private KontoRepository kontoRepository;
+
+    private PostingConfig postingConfig;
+    private KontoBalanceService balanceService;
+    private SimpleMeterRegistry meterRegistry;
+    private UUID kontoId;
+
+    @BeforeEach
+    void setUp() {
+        postingConfig = new PostingConfig();
+        postingConfig.setBalanceUpdateAttempts(3);
+        postingConfig.setBalanceRetryBackoff(Duration.ofMillis(1));
+        meterRegistry = new SimpleMeterRegistry();
+        balanceService = new KontoBalanceService(kontoRepository, postingConfig, meterRegistry);
+        kontoId = UUID.randomUUID();
+    }
+
+    private record Snapshot(BigDecimal balance, Long version) implements KontoRepository.BalanceSnapshot {
+        public BigDecimal getBalance() {
+            return balance;
+        }
+
+        public Long getVersion() {
+            return version;
+        }
+    }
+
+    private static Optional<KontoRepository.BalanceSnapshot> snapshot(String balance, long version) {
+        return Optional.of(new Snapshot(new BigDecimal(balance), version));
+    }
+
+    @Test
+    @DisplayName("TC-B001: Konflikt wird erkannt und mit neuem Saldo wiederholt")
+    void testConflictIsRetried() {
+        // First read, re-read after the failed update (changed by someone else), second attempt
+        when(kontoRepository.findBalanceSnapshotById(kontoId))
+                .thenReturn(snapshot("100.00", 1))
+                .thenReturn(snapshot("150.00", 2))
+                .thenReturn(snapshot("150.00", 2));
+        when(kontoRepository.updateBalanceIfUnchanged(kontoId, new BigDecimal("-10.00"), 1L, true)).thenReturn(0);
+        when(kontoRepository.updateBalanceIfUnchanged(kontoId, new BigDecimal("-10.00"), 2L, true)).thenReturn(1);
+
+        BigDecimal newBalance = balanceService.adjust(kontoId, new BigDecimal("-10.00"));
+
+        assertEquals(0, new BigDecimal("140.00").compareTo(newBalance));
+        assertEquals(1.0, meterRegistry.counter("purbank.konto.balance.retries").count());
+        List<KontoContentionDTO> contended = balanceService.getMostContendedKonten(10);
+        assertEquals(1, contended.size());
+        assertEquals(kontoId, contended.get(0).getKontoId());
+        assertEquals(1, contended.get(0).getConflicts());
+    }
+
+    @Test
+    @DisplayName("TC-B002: Nach allen Versuchen wird OptimisticLockingFailureException geworfen")
+    void testGivesUpAfterMaxAttempts() {
+        long[] version = { 0 };
+        when(kontoRepository.findBalanceSnapshotById(kontoId)).thenAnswer(i -> snapshot("100.00", version[0]++));
+        when(kontoRepository.updateBalanceIfUnchanged(any(), any(), any(), anyBoolean())).thenReturn(0);
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> balanceService.adjust(kontoId, BigDecimal.ONE));
+        verify(kontoRepository, times(3)).updateBalanceIfUnchanged(any(), any(), any(), anyBoolean());
+        assertEquals(1.0, meterRegistry.counter("purbank.konto.balance.exhausted").count());
+    }
+
+    @Test
+    @DisplayName("TC-B003: Ungedeckte Belastung wird vom bedingten UPDATE abgelehnt")
+    void testUncoveredDebitRejected() {
+        when(kontoRepository.findBalanceSnapshotById(kontoId)).thenReturn(snapshot("5.00", 1));
+        when(kontoRepository.updateBalanceIfUnchanged(kontoId, new BigDecimal("-10.00"), 1L, false)).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> balanceService.update(kontoId,
+                balance -> new KontoBalanceService.BalanceChange<>(new BigDecimal("-10.00"), false, null)));
+        assertEquals(0.0, meterRegistry.counter("purbank.konto.balance.conflicts").count());
+    }
+
+    @Test
+    @DisplayName("TC-B004: Unbekanntes Konto wird abgelehnt")
+    void testUnknownKonto() {
+        when(kontoRepository.findBalanceSnapshotById(kontoId)).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> balanceService.adjust(kontoId, BigDecimal.ONE));
+    }
+
+    @Test
+    @DisplayName("TC-B005: Konflikt-Statistik ist auf contentionMaxKonten begrenzt und umfasst nur die letzten zwei Stunden")
+    void testContentionIsBounded() {
+        postingConfig.setContentionMaxKonten(1);
+        UUID otherKontoId = UUID.randomUUID();
+        // Every konto conflicts once per update: the first UPDATE finds a new version, the second goes through
+        long[] version = { 0 };
+        when(kontoRepository.findBalanceSnapshotById(any())).thenAnswer(i -> snapshot("100.00", version[0]++));
+        when(kontoRepository.updateBalanceIfUnchanged(any(), any(), any(), anyBoolean())).thenReturn(0, 1, 0, 1, 0, 1);
+
+        balanceService.adjust(kontoId, BigDecimal.ONE);
+        balanceService.adjust(otherKontoId, BigDecimal.ONE);
+
+        List<KontoContentionDTO> contended = balanceService.getMostContendedKonten(10);
+        assertEquals(List.of(kontoId), contended.stream().map(KontoContentionDTO::getKontoId).toList());
+        assertEquals(1.0, meterRegistry.counter("purbank.konto.balance.contention.untracked").count());
+        assertEquals(2.0, meterRegistry.counter("purbank.konto.balance.conflicts").count());
+
+        // The previous hour still counts and is added to the current one
+        balanceService.rotateContention();
+        balanceService.adjust(kontoId, BigDecimal.ONE);
+        assertEquals(2, balanceService.getMostContendedKonten(10).get(0).getConflicts());
+
+        balanceService.rotateContention();
+        balanceService.rotateContention();
+        assertTrue(balanceService.getMostContendedKonten(10).isEmpty());
+    }
+}
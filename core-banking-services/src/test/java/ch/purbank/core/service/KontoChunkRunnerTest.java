@@ -0,0 +1,114 @@
+package ch.purbank.core.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für KontoChunkRunner
+ * 1. System: Verarbeitung aller Konten in Chunks aufeinanderfolgender IDs, mehrere Chunks gleichzeitig
+ * 2. Umgebung: Isoliert mit Mockito (JDBC gemockt), virtuelle Threads wie im Betrieb
+ * 3. Nicht getestet: Die Abfrage der Chunk-Grenzen auf der echten Datenbank
+ * 4. Testmittel: Konto-ID-Listen als Chunk-Grenzen, Zähler für gleichzeitig laufende Chunks
+ * 5. Methode: Äquivalenzklassen (volle / kurze / leere Seite, fehlgeschlagener Chunk) & Grenzwert Parallelität
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Konto Chunk Runner - Parallele Verarbeitung aller Konten")
+class KontoChunkRunnerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private KontoChunkRunner chunkRunner;
+
+    @BeforeEach
+    void setUp() {
+        chunkRunner = new KontoChunkRunner(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("TC-U001: Chunks reichen von der ersten bis zur letzten ID ihrer Seite, eine kurze Seite ist die letzte")
+    void testChunkBounds() {
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(2))).thenReturn(List.of(a, b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(2))).thenReturn(List.of(c));
+        List<List<Object>> ran = Collections.synchronizedList(new ArrayList<>());
+
+        KontoChunkRunner.ChunkRun run = chunkRunner.run("Test", 2, 2, (firstId, lastId, kontos) -> ran.add(List.of(firstId, lastId, kontos)));
+
+        assertEquals(2, run.chunks());
+        assertEquals(0, run.failedChunks());
+        assertTrue(ran.containsAll(List.of(List.of(a, b, 2), List.of(c, c, 1))));
+        verify(jdbcTemplate, times(2)).queryForList(anyString(), eq(UUID.class), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("TC-U002: Fehlgeschlagener Chunk wird gezählt, die übrigen laufen weiter")
+    void testFailedChunk() {
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1))).thenReturn(List.of(a));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(a), eq(1))).thenReturn(List.of(b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(1))).thenReturn(List.of());
+        AtomicInteger succeeded = new AtomicInteger();
+
+        KontoChunkRunner.ChunkRun run = chunkRunner.run("Test", 1, 2, (firstId, lastId, kontos) -> {
+            if (firstId.equals(a)) {
+                throw new IllegalStateException("deadlock");
+            }
+            succeeded.incrementAndGet();
+        });
+
+        assertEquals(2, run.chunks());
+        assertEquals(1, run.failedChunks());
+        assertEquals(1, succeeded.get());
+    }
+
+    @Test
+    @DisplayName("TC-U003: Nie mehr als parallelism Chunks gleichzeitig, alle sind beim Rücksprung beendet")
+    void testParallelismIsBounded() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1))).thenReturn(List.of(ids.getFirst()));
+        for (int i = 0; i < ids.size(); i++) {
+            List<UUID> next = i + 1 < ids.size() ? List.of(ids.get(i + 1)) : List.of();
+            when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(ids.get(i)), eq(1))).thenReturn(next);
+        }
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger finished = new AtomicInteger();
+
+        KontoChunkRunner.ChunkRun run = chunkRunner.run("Test", 1, 3, (firstId, lastId, kontos) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            finished.incrementAndGet();
+        });
+
+        assertEquals(20, run.chunks());
+        assertEquals(20, finished.get());
+        assertTrue(maxRunning.get() <= 3, "max running " + maxRunning.get());
+    }
+}
@@ -0,0 +1,251 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PostingConfig;
+import ch.purbank.core.repository.KontoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für KontoPostingService
+ * 1. System: Saldobuchungen in der Transaktion des Aufrufers (optimistisches UPDATE, Sammeln pro Konto bis zum Commit)
+ * 2. Umgebung: Isoliert mit Mockito, Saldo und Version werden im Repository-Mock simuliert (echter KontoBalanceService)
+ * 3. Nicht getestet: Echte DB-Transaktionen und Row-Locks
+ * 4. Testmittel: Konkurrierender Schreiber zwischen Lesen und UPDATE
+ * 5. Methode: Äquivalenzklassen (gedeckt / ungedeckt / Commit / Rollback / innere Transaktion), Nebenläufigkeit
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Konto Posting Service - Saldobuchungen in der Aufrufer-Transaktion")
+class KontoPostingServiceTest {
+
+    @Mock
+    private KontoRepository kontoRepository;
+
+    private KontoPostingService postingService;
+    private SimpleMeterRegistry meterRegistry;
+    private Map<UUID, Snapshot> snapshots;
+
+    @BeforeEach
+    void setUp() {
+        PostingConfig postingConfig = new PostingConfig();
+        postingConfig.setBalanceRetryBackoff(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+        KontoBalanceService balanceService = new KontoBalanceService(kontoRepository, postingConfig, meterRegistry);
+        postingService = new KontoPostingService(balanceService, kontoRepository, meterRegistry);
+        snapshots = new ConcurrentHashMap<>();
+
+        lenient().when(kontoRepository.findBalanceSnapshotById(any()))
+                .thenAnswer(i -> Optional.ofNullable(snapshots.get(i.<UUID>getArgument(0))));
+        // Conditional on the version, like the real UPDATE
+        lenient().when(kontoRepository.updateBalanceIfUnchanged(any(), any(), any(), anyBoolean())).thenAnswer(i -> {
+            UUID kontoId = i.getArgument(0);
+            Snapshot current = snapshots.get(kontoId);
+            if (!current.version().equals(i.getArgument(2))) {
+                return 0;
+            }
+            snapshots.put(kontoId, new Snapshot(current.balance().add(i.getArgument(1)), current.version() + 1));
+            return 1;
+        });
+        lenient().when(kontoRepository.addToLockedBalance(any(), any())).thenAnswer(i -> {
+            UUID kontoId = i.getArgument(0);
+            Snapshot current = snapshots.get(kontoId);
+            snapshots.put(kontoId, new Snapshot(current.balance().add(i.getArgument(1)), current.version() + 1));
+            return 1;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(postingService);
+    }
+
+    // Runs the synchronizations like the transaction manager does on commit or rollback
+    private void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (commit) {
+            synchronizations.forEach(sync -> sync.beforeCommit(false));
+        }
+        synchronizations.forEach(sync -> sync.afterCompletion(commit
+                ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private record Snapshot(BigDecimal balance, Long version) implements KontoRepository.BalanceSnapshot {
+        public BigDecimal getBalance() {
+            return balance;
+        }
+
+        public Long getVersion() {
+            return version;
+        }
+    }
+
+    private UUID konto(String balance) {
+        UUID id = UUID.randomUUID();
+        snapshots.put(id, new Snapshot(new BigDecimal(balance), 0L));
+        return id;
+    }
+
+    private BigDecimal balance(UUID kontoId) {
+        return snapshots.get(kontoId).balance();
+    }
+
+    @Test
+    @DisplayName("TC-P001: Gedeckte Belastung wird gebucht, ungedeckte abgelehnt")
+    void testDebitRequiresFunds() {
+        UUID konto = konto("100.00");
+
+        KontoPostingService.PostingResult first = postingService.debit(konto, new BigDecimal("60.00"));
+        KontoPostingService.PostingResult second = postingService.debit(konto, new BigDecimal("60.00"));
+
+        assertTrue(first.isAccepted());
+        assertEquals(0, new BigDecimal("40.00").compareTo(first.getBalanceAfter()));
+        assertFalse(second.isAccepted());
+        assertEquals(0, new BigDecimal("40.00").compareTo(second.getBalanceAfter()));
+        assertEquals(0, new BigDecimal("40.00").compareTo(balance(konto)));
+        assertEquals(1.0, meterRegistry.counter("purbank.postings.rejected").count());
+        verify(kontoRepository, times(1)).updateBalanceIfUnchanged(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("TC-P002: Konkurrierende Buchung wird erkannt, die Belastung wird gegen den neuen Saldo geprüft")
+    void testConcurrentWriterReplansDebit() {
+        UUID konto = konto("100.00");
+        // Another node debits 70 between our read and our UPDATE
+        when(kontoRepository.findBalanceSnapshotById(konto))
+                .thenAnswer(i -> {
+                    Snapshot read = snapshots.get(konto);
+                    if (read.version() == 0L) {
+                        snapshots.put(konto, new Snapshot(read.balance().subtract(new BigDecimal("70.00")), 1L));
+                    }
+                    return Optional.of(read);
+                });
+
+        KontoPostingService.PostingResult result = postingService.debit(konto, new BigDecimal("50.00"));
+
+        assertFalse(result.isAccepted());
+        assertEquals(0, new BigDecimal("30.00").compareTo(result.getBalanceAfter()));
+        assertEquals(0, new BigDecimal("30.00").compareTo(balance(konto)));
+        assertEquals(1.0, meterRegistry.counter("purbank.konto.balance.conflicts").count());
+    }
+
+    @Test
+    @DisplayName("TC-P003: Buchung läuft in der Aufrufer-Transaktion, ohne eigene Commits oder Kompensation")
+    void testPostingJoinsCallerTransaction() {
+        UUID konto = konto("100.00");
+
+        TransactionSynchronizationManager.initSynchronization();
+        postingService.debit(konto, new BigDecimal("30.00"));
+        postingService.credit(konto, new BigDecimal("5.00"));
+        // Written on commit of the caller, nothing is committed or reversed on its own
+        assertEquals(0, new BigDecimal("70.00").compareTo(balance(konto)));
+        complete(true);
+
+        assertEquals(0, new BigDecimal("75.00").compareTo(balance(konto)));
+        assertNull(TransactionSynchronizationManager.getResource(postingService));
+    }
+
+    @Test
+    @DisplayName("TC-P004: Buchung auf unbekanntes Konto schlägt fehl")
+    void testUnknownKonto() {
+        assertThrows(IllegalArgumentException.class, () -> postingService.credit(UUID.randomUUID(), BigDecimal.TEN));
+    }
+
+    @Test
+    @DisplayName("TC-P005: Buchungen eines Kontos in einer Transaktion ergeben zwei UPDATEs, die Deckung wird laufend geprüft")
+    void testSameKontoPostingsAreBatched() {
+        UUID konto = konto("100.00");
+        UUID other = konto("0.00");
+
+        TransactionSynchronizationManager.initSynchronization();
+        List<KontoPostingService.PostingResult> debits = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            debits.add(postingService.debit(konto, new BigDecimal("30.00")));
+            postingService.credit(other, new BigDecimal("30.00"));
+        }
+        complete(true);
+
+        assertEquals(List.of(true, true, true, false), debits.stream().map(KontoPostingService.PostingResult::isAccepted).toList());
+        assertEquals(0, new BigDecimal("40.00").compareTo(debits.get(1).getBalanceAfter()));
+        assertEquals(0, new BigDecimal("10.00").compareTo(debits.get(3).getBalanceAfter()));
+        assertEquals(0, new BigDecimal("10.00").compareTo(balance(konto)));
+        assertEquals(0, new BigDecimal("120.00").compareTo(balance(other)));
+        // First posting per konto, then one UPDATE per konto with the rest
+        verify(kontoRepository, times(2)).updateBalanceIfUnchanged(any(), any(), any(), anyBoolean());
+        verify(kontoRepository).addToLockedBalance(konto, new BigDecimal("-60.00"));
+        verify(kontoRepository).addToLockedBalance(other, new BigDecimal("90.00"));
+        assertEquals(5.0, meterRegistry.counter("purbank.postings.batched").count());
+        assertEquals(1.0, meterRegistry.counter("purbank.postings.rejected").count());
+    }
+
+    @Test
+    @DisplayName("TC-P006: Rollback verwirft die gesammelten Buchungen, die nächste Transaktion liest den Saldo neu")
+    void testRollbackDropsBatch() {
+        UUID konto = konto("100.00");
+
+        TransactionSynchronizationManager.initSynchronization();
+        postingService.debit(konto, new BigDecimal("10.00"));
+        postingService.debit(konto, new BigDecimal("10.00"));
+        complete(false);
+
+        verify(kontoRepository, never()).addToLockedBalance(any(), any());
+        assertNull(TransactionSynchronizationManager.getResource(postingService));
+
+        TransactionSynchronizationManager.initSynchronization();
+        postingService.debit(konto, new BigDecimal("10.00"));
+        complete(true);
+        verify(kontoRepository, times(2)).updateBalanceIfUnchanged(eq(konto), any(), any(), anyBoolean());
+    }
+
+    @Test
+    @DisplayName("TC-P007: Innere Transaktion (REQUIRES_NEW) bucht nicht auf die Sammlung der äusseren")
+    void testSuspendedTransactionKeepsItsBatch() {
+        UUID konto = konto("100.00");
+
+        TransactionSynchronizationManager.initSynchronization();
+        postingService.debit(konto, new BigDecimal("10.00"));
+        List<TransactionSynchronization> outer = TransactionSynchronizationManager.getSynchronizations();
+        outer.forEach(TransactionSynchronization::suspend);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.initSynchronization();
+        postingService.debit(konto, new BigDecimal("10.00"));
+        complete(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        outer.forEach(TransactionSynchronizationManager::registerSynchronization);
+        outer.forEach(TransactionSynchronization::resume);
+        postingService.debit(konto, new BigDecimal("10.00"));
+        complete(true);
+
+        // Outer first posting, inner posting, outer batch of one
+        verify(kontoRepository, times(2)).updateBalanceIfUnchanged(eq(konto), any(), any(), anyBoolean());
+        verify(kontoRepository).addToLockedBalance(konto, new BigDecimal("-10.00"));
+        assertEquals(0, new BigDecimal("70.00").compareTo(balance(konto)));
+    }
+}
@@ -7,6 +7,8 @@ import ch.purbank.core.domain.enums.Currency;
 import ch.purbank.core.domain.enums.KontoStatus;
 import ch.purbank.core.domain.enums.MemberRole;
 import ch.purbank.core.domain.enums.Role;
+import ch.purbank.core.dto.KontoListItemDTO;
+import ch.purbank.core.dto.MemberDTO;
 import ch.purbank.core.dto.UpdateKontoRequestDTO;
 import ch.purbank.core.repository.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -23,11 +25,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -60,6 +64,8 @@ class KontoServiceTest {
     @Mock
     private AuditLogService auditLogService;
     @Mock
+    private IbanDirectoryService ibanDirectoryService;
+    @Mock
     private HttpServletRequest httpRequest;
     @InjectMocks
     private KontoService kontoService;
@@ -154,6 +160,7 @@ class KontoServiceTest {
 
         Konto result = kontoService.createKonto("New IBAN Test", userId, Currency.CHF, httpRequest);
         assertNotNull(result.getIban());
+        verify(ibanDirectoryService).register(result.getIban());
     }
 
     @Test
@@ -215,4 +222,61 @@ class KontoServiceTest {
         assertThrows(IllegalArgumentException.class, () -> kontoService.updateKonto(kontoId, userId, req, httpRequest));
     }
 
-}
\ No newline at end of file
+    // ========== LIST TESTS ==========
+
+    @Test
+    @DisplayName("TC-K013: Mitglieder werden als DTO gelesen, nur für Mitglieder des Kontos")
+    void testGetMembersProjection() {
+        MemberDTO member = new MemberDTO(UUID.randomUUID(), "Max Muster", "test@example.com", MemberRole.OWNER);
+        when(kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)).thenReturn(true);
+        when(kontoMemberRepository.findMemberDTOs(kontoId)).thenReturn(List.of(member));
+
+        assertEquals(List.of(member), kontoService.getMembers(kontoId, userId));
+        verify(kontoRepository, never()).findById(any());
+        verify(userRepository, never()).findById(any());
+
+        UUID otherKonto = UUID.randomUUID();
+        assertThrows(IllegalArgumentException.class, () -> kontoService.getMembers(otherKonto, userId));
+        verify(kontoMemberRepository, never()).findMemberDTOs(otherKonto);
+    }
+
+    @Test
+    @DisplayName("TC-K014: Kontoliste filtert den Status in der Abfrage (offen oder geschlossen)")
+    void testGetAllKontenForUserProjection() {
+        KontoListItemDTO open = new KontoListItemDTO(kontoId, "Test", BigDecimal.TEN, MemberRole.OWNER,
+                new BigDecimal("0.0100"), "CH9300762011623852957", Currency.CHF);
+        when(kontoMemberRepository.findKontoListItems(userId, KontoStatus.ACTIVE)).thenReturn(List.of(open));
+        when(kontoMemberRepository.findKontoListItems(userId, KontoStatus.CLOSED)).thenReturn(List.of());
+
+        assertEquals(List.of(open), kontoService.getAllKontenForUser(userId, null));
+        assertEquals(List.of(open), kontoService.getAllKontenForUser(userId, false));
+        assertTrue(kontoService.getAllKontenForUser(userId, true).isEmpty());
+        verify(kontoMemberRepository, never()).findByUser(any());
+    }
+
+    @Test
+    @DisplayName("TC-K015: Transaktionen eines unbekannten Kontos ergeben 'Konto not found', nicht die Mitgliedschaft")
+    void testGetTransactionsUnknownKonto() {
+        UUID unknownKonto = UUID.randomUUID();
+        when(kontoRepository.existsById(unknownKonto)).thenReturn(false);
+        when(kontoRepository.existsById(kontoId)).thenReturn(true);
+        when(userRepository.existsById(userId)).thenReturn(true);
+
+        IllegalArgumentException notFound = assertThrows(IllegalArgumentException.class,
+                () -> kontoService.getTransactions(unknownKonto, userId, 0, 49));
+        assertEquals("Konto not found", notFound.getMessage());
+        IllegalArgumentException notMember = assertThrows(IllegalArgumentException.class,
+                () -> kontoService.getTransactions(kontoId, userId, 0, 49));
+        assertEquals("User is not a member of this konto", notMember.getMessage());
+        verifyNoInteractions(transactionRepository);
+
+        // A member needs no existence checks
+        when(kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)).thenReturn(true);
+        when(transactionRepository.findDTOsByKontoId(eq(kontoId), any())).thenReturn(List.of());
+        clearInvocations(kontoRepository);
+        clearInvocations(userRepository);
+
+        assertTrue(kontoService.getTransactions(kontoId, userId, 0, 49).isEmpty());
+        verifyNoInteractions(kontoRepository, userRepository);
+    }
+}
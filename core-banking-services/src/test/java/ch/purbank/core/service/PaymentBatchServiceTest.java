@@ -0,0 +1,266 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.PendingPaymentBatch;
+import ch.purbank.core.domain.User;
+import ch.purbank.core.domain.enums.PaymentBatchFormat;
+import ch.purbank.core.domain.enums.PendingPaymentStatus;
+import ch.purbank.core.dto.PaymentBatchResponseDTO;
+import ch.purbank.core.repository.PendingPaymentBatchLineRepository;
+import ch.purbank.core.repository.PendingPaymentBatchRepository;
+import ch.purbank.core.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentBatchService
+ * 1. System: Sammelaufträge (pain.001 / CSV) mit einer Mobile-Freigabe
+ * 2. Umgebung: Isoliert mit Mockito, Validierungsregeln aus dem echten PaymentService
+ * 3. Nicht getestet: Echte JDBC-Batches gegen PostgreSQL, Multipart-Upload
+ * 4. Testmittel: Dateien als In-Memory-Streams
+ * 5. Methode: Äquivalenzklassen (gültige / ungültige Zeilen), Grenzwerte (Batch-Grösse, Maximalanzahl)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Batch Service - Sammelaufträge")
+class PaymentBatchServiceTest {
+
+    @Mock
+    private PendingPaymentBatchRepository pendingPaymentBatchRepository;
+    @Mock
+    private PendingPaymentBatchLineRepository pendingPaymentBatchLineRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private PaymentService paymentService;
+    @Mock
+    private AuditLogService auditLogService;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PaymentBatchService paymentBatchService;
+    private PaymentConfig paymentConfig;
+    private User user;
+    private Konto konto;
+    private List<TransactionStatus> transactions;
+    private List<List<Object[]>> insertedBatches;
+
+    private static final String KONTO_IBAN = "CH9300762011623852957";
+    private static final String TOMORROW = LocalDate.now().plusDays(1).toString();
+
+    @BeforeEach
+    void setUp() {
+        paymentConfig = new PaymentConfig();
+        paymentBatchService = new PaymentBatchService(pendingPaymentBatchRepository, pendingPaymentBatchLineRepository,
+                userRepository, paymentService, auditLogService, jdbcTemplate, transactionManager, paymentConfig,
+                new SimpleMeterRegistry());
+
+        user = new User();
+        user.setId(UUID.randomUUID());
+        konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        konto.setIban(KONTO_IBAN);
+
+        transactions = new ArrayList<>();
+        insertedBatches = new ArrayList<>();
+
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(i -> {
+            SimpleTransactionStatus status = new SimpleTransactionStatus();
+            transactions.add(status);
+            return status;
+        });
+        lenient().when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        lenient().when(paymentService.requirePaymentKonto(user, konto.getId())).thenReturn(konto);
+        lenient().when(paymentService.validateNewPayment(any(), any(), any(), any())).thenCallRealMethod();
+        lenient().when(pendingPaymentBatchRepository.save(any())).thenAnswer(i -> {
+            PendingPaymentBatch batch = i.getArgument(0);
+            if (batch.getId() == null) {
+                batch.setId(UUID.randomUUID());
+            }
+            return batch;
+        });
+        lenient().when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(i -> {
+            insertedBatches.add(new ArrayList<>(i.<List<Object[]>>getArgument(1)));
+            return new int[0];
+        });
+    }
+
+    private PaymentBatchResponseDTO submit(PaymentBatchFormat format, String content) {
+        InputStream in = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        return paymentBatchService.createPendingPaymentBatch(user.getId(), konto.getId(), "device", "127.0.0.1",
+                format, "batch", in);
+    }
+
+    @Test
+    @DisplayName("TC-M001: Gültige CSV-Datei erzeugt einen Sammelauftrag mit einem Mobile-Verify-Code")
+    void testValidCsvCreatesPendingBatch() {
+        String csv = "iban;amount;currency;executionDate;message\n" +
+                "CH5604835012345678009;100.00;CHF;" + TOMORROW + ";Rechnung 1\n" +
+                "\n" +
+                "\"DE89 3704 0044 0532 0130 00\";25.50;eur;" + TOMORROW + ";\"Miete; Mai\"\n";
+
+        PaymentBatchResponseDTO response = submit(PaymentBatchFormat.CSV, csv);
+
+        assertEquals("PENDING_APPROVAL", response.getStatus());
+        assertNotNull(response.getMobileVerify());
+        assertEquals(2, response.getPaymentCount());
+        assertEquals(2, response.getAcceptedCount());
+        assertEquals(List.of(2, 4), response.getLines().stream().map(l -> l.getLineNumber()).toList());
+        assertTrue(response.getPaymentsPerSecond() > 0);
+
+        assertEquals(1, insertedBatches.size());
+        Object[] second = insertedBatches.get(0).get(1);
+        assertEquals("DE89370400440532013000", second[3]);
+        assertEquals(0, new BigDecimal("25.50").compareTo((BigDecimal) second[4]));
+        assertEquals("EUR", second[5]);
+        assertEquals("Miete; Mai", second[6]);
+
+        ArgumentCaptor<PendingPaymentBatch> captor = ArgumentCaptor.forClass(PendingPaymentBatch.class);
+        verify(pendingPaymentBatchRepository, atLeastOnce()).save(captor.capture());
+        assertEquals(2, captor.getValue().getPaymentCount());
+        assertFalse(transactions.get(0).isRollbackOnly());
+    }
+
+    @Test
+    @DisplayName("TC-M002: Eine ungültige Zeile verwirft den ganzen Sammelauftrag mit Fehlern pro Zeile")
+    void testInvalidLineRejectsWholeBatch() {
+        String csv = "iban,amount,executionDate\n" +
+                "CH5604835012345678009,-5.00," + TOMORROW + "\n" +
+                "CH5604835012345678009,10.00," + LocalDate.now().minusDays(1) + "\n" +
+                "CH5604835012345678009,abc," + TOMORROW + "\n" +
+                "CH5604835012345678009,10.00,\n" +
+                "CH5604835012345678009,10.00," + TOMORROW + "\n";
+
+        PaymentBatchResponseDTO response = submit(PaymentBatchFormat.CSV, csv);
+
+        assertEquals("REJECTED", response.getStatus());
+        assertNull(response.getMobileVerify());
+        assertEquals(1, response.getAcceptedCount());
+        assertEquals(4, response.getRejectedCount());
+        assertEquals("Payment amount must be positive", response.getLines().get(0).getError());
+        assertEquals("Execution date cannot be in the past", response.getLines().get(1).getError());
+        assertEquals("Invalid amount: abc", response.getLines().get(2).getError());
+        assertEquals("Execution date required for normal payments", response.getLines().get(3).getError());
+        assertEquals("ACCEPTED", response.getLines().get(4).getStatus());
+
+        assertTrue(transactions.get(0).isRollbackOnly());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("TC-M003: pain.001 wird gestreamt gelesen, Datum und Auftraggeber-IBAN aus PmtInf")
+    void testPain001() {
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <Document xmlns="urn:iso:std:iso:20022:tech:xsd:pain.001.001.09">
+                  <CstmrCdtTrfInitn>
+                    <PmtInf>
+                      <ReqdExctnDt><Dt>%s</Dt></ReqdExctnDt>
+                      <DbtrAcct><Id><IBAN>%s</IBAN></Id></DbtrAcct>
+                      <CdtTrfTxInf>
+                        <PmtId><EndToEndId>E2E-1</EndToEndId></PmtId>
+                        <Amt><InstdAmt Ccy="EUR">12.30</InstdAmt></Amt>
+                        <CdtrAcct><Id><IBAN>DE89370400440532013000</IBAN></Id></CdtrAcct>
+                        <RmtInf><Ustrd>Invoice 4711</Ustrd></RmtInf>
+                      </CdtTrfTxInf>
+                    </PmtInf>
+                    <PmtInf>
+                      <ReqdExctnDt><Dt>%s</Dt></ReqdExctnDt>
+                      <DbtrAcct><Id><IBAN>CH0000000000000000000</IBAN></Id></DbtrAcct>
+                      <CdtTrfTxInf>
+                        <Amt><InstdAmt Ccy="CHF">1.00</InstdAmt></Amt>
+                        <CdtrAcct><Id><IBAN>CH5604835012345678009</IBAN></Id></CdtrAcct>
+                      </CdtTrfTxInf>
+                    </PmtInf>
+                  </CstmrCdtTrfInitn>
+                </Document>
+                """.formatted(TOMORROW, KONTO_IBAN, TOMORROW);
+
+        PaymentBatchResponseDTO response = submit(PaymentBatchFormat.PAIN001, xml);
+
+        assertEquals("REJECTED", response.getStatus());
+        assertEquals("ACCEPTED", response.getLines().get(0).getStatus());
+        assertEquals("DE89370400440532013000", response.getLines().get(0).getToIban());
+        assertEquals("12.30", response.getLines().get(0).getAmount());
+        assertEquals("Debtor IBAN does not match the konto", response.getLines().get(1).getError());
+    }
+
+    @Test
+    @DisplayName("TC-M004: Zeilen werden in JDBC-Batches der konfigurierten Grösse eingefügt")
+    void testInsertBatchSize() {
+        paymentConfig.setBatchInsertSize(2);
+        StringBuilder csv = new StringBuilder("iban;amount;executionDate\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("CH5604835012345678009;1.00;").append(TOMORROW).append('\n');
+        }
+
+        PaymentBatchResponseDTO response = submit(PaymentBatchFormat.CSV, csv.toString());
+
+        assertEquals("PENDING_APPROVAL", response.getStatus());
+        assertEquals(List.of(2, 2, 1), insertedBatches.stream().map(List::size).toList());
+    }
+
+    @Test
+    @DisplayName("TC-M005: Dateien über der Maximalanzahl und leere Dateien werden abgewiesen")
+    void testLimits() {
+        paymentConfig.setBatchMaxPayments(2);
+        String csv = "iban;amount;executionDate\n" +
+                "CH5604835012345678009;1.00;" + TOMORROW + "\n" +
+                "CH5604835012345678009;1.00;" + TOMORROW + "\n" +
+                "CH5604835012345678009;1.00;" + TOMORROW + "\n";
+
+        assertThrows(IllegalArgumentException.class, () -> submit(PaymentBatchFormat.CSV, csv));
+        assertThrows(IllegalArgumentException.class, () -> submit(PaymentBatchFormat.CSV, "iban;amount;executionDate\n"));
+        assertThrows(IllegalArgumentException.class, () -> submit(PaymentBatchFormat.CSV, "iban;amount\n"));
+    }
+
+    @Test
+    @DisplayName("TC-M006: Freigabe erstellt alle Zahlungen mit einem Statement, abgelaufene Freigabe schlägt fehl")
+    void testApproval() {
+        PendingPaymentBatch batch = PendingPaymentBatch.builder()
+                .id(UUID.randomUUID())
+                .user(user)
+                .kontoId(konto.getId())
+                .paymentCount(3)
+                .expiresAt(LocalDateTime.now().plusMinutes(5))
+                .build();
+        when(pendingPaymentBatchLineRepository.createPayments(eq(batch.getId()), eq(konto.getId()), any())).thenReturn(3);
+
+        assertEquals(3, paymentBatchService.executeApprovedPaymentBatch(batch));
+        assertEquals(PendingPaymentStatus.APPROVED, batch.getStatus());
+
+        PendingPaymentBatch expired = batch.toBuilder()
+                .status(PendingPaymentStatus.PENDING)
+                .expiresAt(LocalDateTime.now().minusMinutes(1))
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> paymentBatchService.executeApprovedPaymentBatch(expired));
+    }
+}
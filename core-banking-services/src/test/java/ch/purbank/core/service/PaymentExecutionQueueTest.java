@@ -0,0 +1,175 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.PaymentExecutionQueueEntry;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentExecutionQueueRepository;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentExecutionQueue
+ * 1. System: Asynchrone Ausführung von INSTANT-Zahlungen über die Datenbank-Queue
+ * 2. Umgebung: Isoliert mit Mockito (Repositories und Transaktionsmanager gemockt)
+ * 3. Nicht getestet: SKIP LOCKED der echten Datenbank, Worker-Threads, mehrere App-Nodes
+ * 4. Testmittel: Liste der ausgeführten Zahlungen als Executor
+ * 5. Methode: Äquivalenzklassen (leer / ausführbar / bereits erledigt / Fehler / letzter Versuch)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Execution Queue - Asynchrone Sofortzahlungen")
+class PaymentExecutionQueueTest {
+
+    @Mock
+    private PaymentExecutionQueueRepository paymentExecutionQueueRepository;
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PaymentExecutionQueue paymentExecutionQueue;
+    private PaymentConfig paymentConfig;
+    private List<Payment> executed;
+    private Payment payment;
+    private PaymentExecutionQueueEntry entry;
+
+    @BeforeEach
+    void setUp() {
+        paymentConfig = new PaymentConfig();
+        paymentExecutionQueue = new PaymentExecutionQueue(paymentExecutionQueueRepository, paymentRepository,
+                transactionManager, paymentConfig, new SimpleMeterRegistry());
+        paymentExecutionQueue.init();
+
+        executed = new ArrayList<>();
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        payment = new Payment();
+        payment.setId(UUID.randomUUID());
+
+        entry = PaymentExecutionQueueEntry.builder()
+                .id(UUID.randomUUID())
+                .paymentId(payment.getId())
+                .enqueuedAt(LocalDateTime.now().minusSeconds(1))
+                .availableAt(LocalDateTime.now().minusSeconds(1))
+                .build();
+    }
+
+    private void startWith(Consumer<Payment> executor) {
+        // Zero workers, the tests drive processNext() themselves
+        paymentConfig.setInstantWorkers(0);
+        paymentExecutionQueue.start(executor);
+    }
+
+    @Test
+    @DisplayName("TC-Q001: Eingereihte Zahlung wird ausgeführt und aus der Queue entfernt")
+    void testProcessesQueuedPayment() {
+        startWith(executed::add);
+        when(paymentExecutionQueueRepository.claimAvailable(any(), eq(1))).thenReturn(List.of(entry));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        assertTrue(paymentExecutionQueue.processNext());
+
+        assertEquals(List.of(payment), executed);
+        verify(paymentExecutionQueueRepository).delete(entry);
+    }
+
+    @Test
+    @DisplayName("TC-Q002: Leere Queue führt nichts aus")
+    void testEmptyQueue() {
+        startWith(executed::add);
+        when(paymentExecutionQueueRepository.claimAvailable(any(), anyInt())).thenReturn(List.of());
+
+        assertFalse(paymentExecutionQueue.processNext());
+
+        assertTrue(executed.isEmpty());
+        verify(paymentExecutionQueueRepository, never()).delete(any());
+    }
+
+    @Test
+    @DisplayName("TC-Q003: Bereits stornierte Zahlung wird nicht ausgeführt, der Eintrag aber entfernt")
+    void testSkipsPaymentNoLongerPending() {
+        startWith(executed::add);
+        payment.cancel();
+        when(paymentExecutionQueueRepository.claimAvailable(any(), anyInt())).thenReturn(List.of(entry));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        assertTrue(paymentExecutionQueue.processNext());
+
+        assertTrue(executed.isEmpty());
+        verify(paymentExecutionQueueRepository).delete(entry);
+    }
+
+    @Test
+    @DisplayName("TC-Q004: Fehlgeschlagene Ausführung wird mit Backoff erneut eingeplant")
+    void testFailedExecutionIsRetried() {
+        startWith(p -> {
+            throw new IllegalStateException("Konto is busy");
+        });
+        when(paymentExecutionQueueRepository.claimAvailable(any(), anyInt())).thenReturn(List.of(entry));
+        when(paymentExecutionQueueRepository.claimById(entry.getId())).thenReturn(List.of(entry));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        assertTrue(paymentExecutionQueue.processNext());
+
+        ArgumentCaptor<PaymentExecutionQueueEntry> captor = ArgumentCaptor.forClass(PaymentExecutionQueueEntry.class);
+        verify(paymentExecutionQueueRepository).save(captor.capture());
+        assertEquals(1, captor.getValue().getAttempts());
+        assertEquals("Konto is busy", captor.getValue().getLastError());
+        assertTrue(captor.getValue().getAvailableAt().isAfter(LocalDateTime.now()));
+        assertEquals(PaymentStatus.PENDING, payment.getStatus());
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    @DisplayName("TC-Q005: Nach dem letzten Versuch wird die Zahlung als FAILED markiert")
+    void testLastAttemptFailsPayment() {
+        startWith(p -> {
+            throw new IllegalStateException("Konto is busy");
+        });
+        entry.setAttempts(paymentConfig.getInstantMaxAttempts() - 1);
+        when(paymentExecutionQueueRepository.claimAvailable(any(), anyInt())).thenReturn(List.of(entry));
+        when(paymentExecutionQueueRepository.claimById(entry.getId())).thenReturn(List.of(entry));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        assertTrue(paymentExecutionQueue.processNext());
+
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+        verify(paymentRepository).save(payment);
+        verify(paymentExecutionQueueRepository).delete(entry);
+    }
+
+    @Test
+    @DisplayName("TC-Q006: Einreihen speichert einen sofort verfügbaren Eintrag")
+    void testEnqueue() {
+        paymentExecutionQueue.enqueue(payment.getId());
+
+        ArgumentCaptor<PaymentExecutionQueueEntry> captor = ArgumentCaptor.forClass(PaymentExecutionQueueEntry.class);
+        verify(paymentExecutionQueueRepository).save(captor.capture());
+        assertEquals(payment.getId(), captor.getValue().getPaymentId());
+        assertEquals(0, captor.getValue().getAttempts());
+        assertFalse(captor.getValue().getAvailableAt().isAfter(LocalDateTime.now()));
+    }
+}
@@ -0,0 +1,70 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.domain.Payment;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testkonzept für die Sperrfrist vor dem Settlement (Payment.lockCutoffDate)
+ * 1. System: Berechnung des letzten gesperrten Ausführungsdatums für das Bulk-Lock-UPDATE
+ * 2. Umgebung: JUnit 5, reine Datumsberechnung ohne Mocks
+ * 3. Nicht getestet: Das UPDATE selbst auf der Datenbank
+ * 4. Testmittel: Feste Zeitpunkte um SETTLEMENT_TIME minus Vorlaufzeit
+ * 5. Methode: Grenzwertanalyse (genau auf, kurz vor und kurz nach der Sperrzeit) & Vergleich mit der Regel pro Zahlung
+ */
+@DisplayName("Payment - Sperrfrist vor dem Settlement")
+class PaymentLockCutoffTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 15);
+    private static final Duration LEAD = Duration.ofMinutes(10);
+
+    // The rule per payment: locked once now is after the settlement time on its date minus the lead time
+    private static boolean pastLockTime(LocalDate executionDate, LocalDateTime now, Duration lead) {
+        return now.isAfter(executionDate.atTime(Payment.SETTLEMENT_TIME).minus(lead));
+    }
+
+    @Test
+    @DisplayName("TC-C001: Genau zur Sperrzeit ist die Zahlung noch offen, eine Nanosekunde später gesperrt")
+    void testCutoffAtLockTime() {
+        LocalDateTime lockTime = DAY.atTime(Payment.SETTLEMENT_TIME).minus(LEAD);
+
+        assertEquals(DAY.minusDays(1), Payment.lockCutoffDate(lockTime.minusNanos(1), LEAD));
+        assertEquals(DAY.minusDays(1), Payment.lockCutoffDate(lockTime, LEAD));
+        assertEquals(DAY, Payment.lockCutoffDate(lockTime.plusNanos(1), LEAD));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            // now,                   lead, cutoff
+            "2026-03-15T00:49:59,     PT10M, 2026-03-14",
+            "2026-03-15T00:50:01,     PT10M, 2026-03-15",
+            "2026-03-15T23:55:00,     PT10M, 2026-03-15", // past midnight with the lead, before the next lock time
+            "2026-03-15T01:00:00,     PT0S,  2026-03-14", // no lead time: locked only after the run time itself
+            "2026-03-15T01:00:00.001, PT0S,  2026-03-15",
+            "2026-03-15T01:00:01,     P2D,   2026-03-17"  // lead time over several days
+    })
+    @DisplayName("TC-C002: Grenzwerte über Mitternacht, ohne und mit mehrtägiger Vorlaufzeit")
+    void testCutoffBoundaries(LocalDateTime now, Duration lead, LocalDate expected) {
+        assertEquals(expected, Payment.lockCutoffDate(now, lead));
+    }
+
+    @Test
+    @DisplayName("TC-C003: Stichtag entspricht für jede Minute eines Tages der Regel pro Zahlung")
+    void testCutoffMatchesPerPaymentRule() {
+        for (Duration lead : new Duration[]{Duration.ZERO, LEAD, Duration.ofHours(3), Duration.ofDays(1)}) {
+            for (LocalDateTime now = DAY.atStartOfDay(); now.isBefore(DAY.plusDays(1).atStartOfDay()); now = now.plusMinutes(1)) {
+                LocalDate cutoff = Payment.lockCutoffDate(now, lead);
+                assertTrue(pastLockTime(cutoff, now, lead), "cutoff " + cutoff + " locked at " + now + " with " + lead);
+                assertFalse(pastLockTime(cutoff.plusDays(1), now, lead), "day after " + cutoff + " open at " + now + " with " + lead);
+            }
+        }
+    }
+}
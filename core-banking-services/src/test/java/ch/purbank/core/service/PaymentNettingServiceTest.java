@@ -0,0 +1,270 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.KontoRepository;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentNettingService
+ * 1. System: Netting der nächtlichen Zahlungen zwischen Konten der eigenen Bank
+ * 2. Umgebung: Isoliert mit Mockito (Repositories, Saldo-Updates und JDBC gemockt)
+ * 3. Nicht getestet: Bedingtes UPDATE der echten Datenbank, parallele Nodes
+ * 4. Testmittel: Saldo-Map als Ersatz für die Konto-Tabelle, Payment-Fixtures
+ * 5. Methode: Äquivalenzklassen (gedeckt / ungedeckt / nicht nettingfähig / geänderte Zahlung)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Netting Service - Netting interner Zahlungen")
+class PaymentNettingServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private KontoRepository kontoRepository;
+    @Mock
+    private KontoBalanceService kontoBalanceService;
+    @Mock
+    private IbanDirectoryService ibanDirectoryService;
+    @Mock
+    private AuditLogService auditLogService;
+    @Mock
+    private TransactionRollupService transactionRollupService;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private PaymentNettingService nettingService;
+    private Map<UUID, BigDecimal> balances;
+    private List<Payment> payments;
+
+    @BeforeEach
+    void setUp() {
+        nettingService = new PaymentNettingService(paymentRepository, kontoRepository, kontoBalanceService,
+                ibanDirectoryService, auditLogService, transactionRollupService, jdbcTemplate, transactionManager, new PaymentConfig(),
+                new SimpleMeterRegistry());
+        balances = new HashMap<>();
+        payments = new ArrayList<>();
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(ibanDirectoryService.resolve(anyString())).thenReturn(Optional.empty());
+        lenient().when(paymentRepository.findFirstDuePaymentPage(any(), any(), any(), any())).thenAnswer(i -> payments.stream()
+                .map(p -> (PaymentRepository.DuePaymentRef) new Ref(p.getId(), p.getKonto().getId(), p.getExecutionDate()))
+                .toList());
+        lenient().when(paymentRepository.findAllWithKontoByIdIn(anyList())).thenAnswer(i -> new ArrayList<>(payments));
+        lenient().when(paymentRepository.markExecuted(anyList(), any(), any(), any())).thenAnswer(i -> i.<List<UUID>>getArgument(0).size());
+        lenient().when(kontoRepository.findBalanceSnapshotById(any())).thenAnswer(i -> Optional.of(snapshot(balances.get(i.<UUID>getArgument(0)))));
+        lenient().when(kontoBalanceService.update(any(), any())).thenAnswer(i -> {
+            UUID kontoId = i.getArgument(0);
+            Function<BigDecimal, KontoBalanceService.BalanceChange<Object>> planner = i.getArgument(1);
+            KontoBalanceService.BalanceChange<Object> change = planner.apply(balances.get(kontoId));
+            balances.merge(kontoId, change.delta(), BigDecimal::add);
+            return change.result();
+        });
+    }
+
+    private record Ref(UUID id, UUID kontoId, LocalDate executionDate) implements PaymentRepository.DuePaymentRef {
+        public UUID getId() {
+            return id;
+        }
+
+        public UUID getKontoId() {
+            return kontoId;
+        }
+
+        public LocalDate getExecutionDate() {
+            return executionDate;
+        }
+    }
+
+    private static KontoRepository.BalanceSnapshot snapshot(BigDecimal balance) {
+        return new KontoRepository.BalanceSnapshot() {
+            public BigDecimal getBalance() {
+                return balance;
+            }
+
+            public Long getVersion() {
+                return 0L;
+            }
+        };
+    }
+
+    private Konto konto(String balance) {
+        Konto konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        konto.setIban("CH" + konto.getId().toString().replace("-", "").substring(0, 19));
+        balances.put(konto.getId(), new BigDecimal(balance));
+        lenient().when(ibanDirectoryService.resolve(konto.getIban()))
+                .thenReturn(Optional.of(new IbanDirectoryService.IbanEntry(konto.getId(), Currency.CHF, KontoStatus.ACTIVE)));
+        return konto;
+    }
+
+    private Payment payment(Konto from, String toIban, String amount) {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setKonto(from);
+        payment.setToIban(toIban);
+        payment.setAmount(new BigDecimal(amount));
+        payment.setExecutionType(PaymentExecutionType.NORMAL);
+        payment.setExecutionDate(LocalDate.now());
+        payment.setCreatedAt(LocalDateTime.now());
+        payments.add(payment);
+        return payment;
+    }
+
+    private List<Object[]> insertedRows() {
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), rowsCaptor.capture());
+        return rowsCaptor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    @DisplayName("TC-N001: Viele Zahlungen eines Kontos ergeben ein einziges Saldo-Update pro Konto")
+    void testSalaryRunIsNetted() {
+        Konto employer = konto("1000.00");
+        Konto alice = konto("0.00");
+        Konto bob = konto("0.00");
+        payment(employer, alice.getIban(), "300.00");
+        payment(employer, bob.getIban(), "200.00");
+        payment(employer, alice.getIban(), "100.00");
+
+        PaymentNettingService.NettingResult result = nettingService.net(LocalDate.now());
+
+        assertEquals(3, result.getNetted());
+        assertEquals(3, result.getBalanceUpdates());
+        verify(kontoBalanceService, times(1)).update(eq(employer.getId()), any());
+        assertEquals(0, new BigDecimal("400.00").compareTo(balances.get(employer.getId())));
+        assertEquals(0, new BigDecimal("400.00").compareTo(balances.get(alice.getId())));
+        assertEquals(0, new BigDecimal("200.00").compareTo(balances.get(bob.getId())));
+        // One OUTGOING and one INCOMING transaction per payment
+        assertEquals(6, insertedRows().size());
+        verify(transactionRollupService).recordAll(argThat(posted -> posted.size() == 6));
+        verify(paymentRepository).markExecuted(anyList(), eq(PaymentStatus.PENDING), eq(PaymentStatus.EXECUTED), any());
+    }
+
+    @Test
+    @DisplayName("TC-N002: Eingehende Zahlungen decken ausgehende, balanceAfter wird pro Transaktion fortgeschrieben")
+    void testIncomingCoversOutgoing() {
+        Konto a = konto("0.00");
+        Konto b = konto("50.00");
+        payment(a, b.getIban(), "80.00");
+        payment(b, a.getIban(), "100.00");
+
+        PaymentNettingService.NettingResult result = nettingService.net(LocalDate.now());
+
+        assertEquals(2, result.getNetted());
+        assertEquals(0, new BigDecimal("20.00").compareTo(balances.get(a.getId())));
+        assertEquals(0, new BigDecimal("30.00").compareTo(balances.get(b.getId())));
+        // Konto a: credit of 100 first (balance 100), then the debit of 80 (balance 20)
+        List<Object[]> rowsOfA = insertedRows().stream().filter(row -> row[1].equals(a.getId())).toList();
+        assertEquals(0, new BigDecimal("100.00").compareTo((BigDecimal) rowsOfA.get(0)[3]));
+        assertEquals(0, new BigDecimal("20.00").compareTo((BigDecimal) rowsOfA.get(1)[3]));
+    }
+
+    @Test
+    @DisplayName("TC-N003: Ungedecktes Konto wird samt seinen Zahlungen der Einzelverarbeitung überlassen")
+    void testUncoveredKontoIsLeftOut() {
+        Konto poor = konto("10.00");
+        Konto rich = konto("500.00");
+        Konto target = konto("0.00");
+        Payment uncovered = payment(poor, target.getIban(), "50.00");
+        payment(rich, target.getIban(), "70.00");
+
+        PaymentNettingService.NettingResult result = nettingService.net(LocalDate.now());
+
+        assertEquals(1, result.getNetted());
+        assertEquals(PaymentStatus.PENDING, uncovered.getStatus());
+        verify(kontoBalanceService, never()).update(eq(poor.getId()), any());
+        assertEquals(0, new BigDecimal("10.00").compareTo(balances.get(poor.getId())));
+        assertEquals(0, new BigDecimal("70.00").compareTo(balances.get(target.getId())));
+    }
+
+    @Test
+    @DisplayName("TC-N004: Externe IBAN und Fremdwährung werden nicht genettet")
+    void testExternalAndForeignCurrencyAreSkipped() {
+        Konto a = konto("1000.00");
+        Konto b = konto("0.00");
+        payment(a, "DE89370400440532013000", "10.00");
+        payment(a, b.getIban(), "10.00").setPaymentCurrency(Currency.EUR);
+
+        PaymentNettingService.NettingResult result = nettingService.net(LocalDate.now());
+
+        assertEquals(0, result.getNetted());
+        verifyNoInteractions(kontoBalanceService, jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("TC-N005: Zwischenzeitlich geänderte Zahlung rollt die ganze Seite zurück")
+    void testChangedPaymentRollsBackPage() {
+        Konto a = konto("1000.00");
+        Konto b = konto("0.00");
+        payment(a, b.getIban(), "10.00");
+        payment(a, b.getIban(), "20.00");
+        when(paymentRepository.markExecuted(anyList(), any(), any(), any())).thenReturn(1);
+
+        PaymentNettingService.NettingResult result = nettingService.net(LocalDate.now());
+
+        assertEquals(0, result.getNetted());
+        assertEquals(1, result.getFailedPages());
+        verify(transactionManager).rollback(any());
+        verify(auditLogService, never()).logSystem(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("TC-N006: Zeitstempel steigen pro Buchung, (timestamp, id) ergibt die Reihenfolge der balanceAfter")
+    void testTimestampsFollowLegOrder() {
+        Konto a = konto("0.00");
+        Konto b = konto("500.00");
+        Konto c = konto("0.00");
+        payment(b, a.getIban(), "100.00");
+        payment(a, c.getIban(), "30.00");
+        payment(a, c.getIban(), "20.00");
+        payment(b, a.getIban(), "5.00");
+
+        nettingService.net(LocalDate.now());
+
+        List<Object[]> rows = insertedRows();
+        assertEquals(rows.size(), rows.stream().map(row -> row[4]).distinct().count());
+        for (Konto konto : List.of(a, b, c)) {
+            // Newest first by the same key the history and the reconciliation use
+            Object[] last = rows.stream()
+                    .filter(row -> row[1].equals(konto.getId()))
+                    .max(Comparator.comparing((Object[] row) -> (LocalDateTime) row[4]).thenComparing(row -> (UUID) row[0]))
+                    .orElseThrow();
+            assertEquals(0, balances.get(konto.getId()).compareTo((BigDecimal) last[3]));
+        }
+    }
+}
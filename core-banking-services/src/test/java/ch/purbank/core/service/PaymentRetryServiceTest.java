@@ -0,0 +1,220 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentRetryService
+ * 1. System: Wiederholung fehlgeschlagener Zahlungen mit exponentiellem Backoff und Retry-Budget
+ * 2. Umgebung: Isoliert mit Mockito (Repository und Ausführung der Zahlung gemockt)
+ * 3. Nicht getestet: SKIP LOCKED der echten Datenbank, Scheduler-Takt
+ * 4. Testmittel: Payment-Fixtures, SimpleMeterRegistry für die Metriken
+ * 5. Methode: Äquivalenzklassen (erfolgreich / neu geplant / Budget aufgebraucht / Konto geschlossen)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Retry Service - Wiederholung fehlgeschlagener Zahlungen")
+class PaymentRetryServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PaymentService paymentService;
+    @Mock
+    private AuditLogService auditLogService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PaymentRetryService retryService;
+    private PaymentConfig paymentConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private Konto konto;
+
+    @BeforeEach
+    void setUp() {
+        paymentConfig = new PaymentConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        retryService = new PaymentRetryService(paymentRepository, paymentService, auditLogService,
+                transactionManager, paymentConfig, meterRegistry);
+        retryService.init();
+
+        konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        konto.setStatus(KontoStatus.ACTIVE);
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    private Payment failedPayment(int retryCount) {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setKonto(konto);
+        payment.setAmount(new BigDecimal("100.00"));
+        payment.setExecutionType(PaymentExecutionType.NORMAL);
+        payment.setStatus(PaymentStatus.FAILED);
+        payment.setRetryCount(retryCount);
+        payment.setNextRetryAt(LocalDateTime.now().minusMinutes(1));
+        when(paymentRepository.claimDueRetries(any(), eq(1))).thenReturn(List.of(payment));
+        return payment;
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("purbank.payments.retry", "result", result).count();
+    }
+
+    @Test
+    @DisplayName("TC-T001: Erfolgreicher Retry führt die Zahlung aus und zählt den Versuch")
+    void testRetrySucceeds() {
+        Payment payment = failedPayment(0);
+        doAnswer(i -> {
+            i.<Payment>getArgument(0).execute();
+            return null;
+        }).when(paymentService).executePayment(payment);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(PaymentStatus.EXECUTED, payment.getStatus());
+        assertEquals(1, payment.getRetryCount());
+        assertNull(payment.getNextRetryAt());
+        assertEquals(1.0, count("succeeded"));
+    }
+
+    @Test
+    @DisplayName("TC-T002: Erneut fehlgeschlagener Retry wird mit längerem Backoff neu geplant")
+    void testRetryIsRescheduled() {
+        Payment payment = failedPayment(1);
+        doAnswer(i -> {
+            Payment p = i.getArgument(0);
+            p.fail();
+            p.scheduleRetry(LocalDateTime.now().plusHours(16), paymentConfig.getRetryMaxAttempts());
+            return null;
+        }).when(paymentService).executePayment(payment);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+        assertEquals(2, payment.getRetryCount());
+        assertNotNull(payment.getNextRetryAt());
+        assertTrue(payment.canBeCancelled());
+        assertEquals(1.0, count("rescheduled"));
+        verifyNoInteractions(auditLogService);
+    }
+
+    @Test
+    @DisplayName("TC-T003: Nach aufgebrauchtem Budget bleibt die Zahlung endgültig fehlgeschlagen")
+    void testRetryBudgetExhausted() {
+        Payment payment = failedPayment(2);
+        doAnswer(i -> {
+            Payment p = i.getArgument(0);
+            p.fail();
+            p.scheduleRetry(LocalDateTime.now().plusHours(32), paymentConfig.getRetryMaxAttempts());
+            return null;
+        }).when(paymentService).executePayment(payment);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(3, payment.getRetryCount());
+        assertNull(payment.getNextRetryAt());
+        assertFalse(payment.canBeCancelled());
+        assertEquals(1.0, count("exhausted"));
+        verify(auditLogService).logSystem(any(), any(), eq(payment.getId()), anyString());
+    }
+
+    @Test
+    @DisplayName("TC-T004: Zahlung eines geschlossenen Kontos wird nicht mehr wiederholt")
+    void testClosedKontoIsAbandoned() {
+        konto.setStatus(KontoStatus.CLOSED);
+        Payment payment = failedPayment(0);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+        assertNull(payment.getNextRetryAt());
+        verify(paymentService, never()).executePayment(any());
+        verify(paymentRepository).save(payment);
+        assertEquals(1.0, count("abandoned"));
+    }
+
+    @Test
+    @DisplayName("TC-T005: Abbruch nach der Belastung zählt als Versuch und plant den nächsten Retry")
+    void testRolledBackRetryIsRescheduled() {
+        Payment payment = failedPayment(0);
+        doThrow(new IllegalStateException("failed after debiting")).when(paymentService).executePayment(payment);
+        // Reloaded after the rollback: still FAILED and due
+        Payment reloaded = new Payment();
+        reloaded.setId(payment.getId());
+        reloaded.setKonto(konto);
+        reloaded.setStatus(PaymentStatus.FAILED);
+        reloaded.setNextRetryAt(LocalDateTime.now().minusMinutes(1));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(reloaded));
+        doAnswer(i -> {
+            Payment p = i.getArgument(0);
+            p.fail();
+            p.scheduleRetry(LocalDateTime.now().plusHours(8), paymentConfig.getRetryMaxAttempts());
+            return null;
+        }).when(paymentService).failWithRetry(reloaded);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(1, reloaded.getRetryCount());
+        assertTrue(reloaded.getNextRetryAt().isAfter(LocalDateTime.now()));
+        verify(paymentRepository).save(reloaded);
+        assertEquals(1.0, count("rescheduled"));
+    }
+
+    @Test
+    @DisplayName("TC-T006: Ohne fällige Retries endet der Lauf sofort und aktualisiert die Queue-Tiefe")
+    void testNothingDue() {
+        when(paymentRepository.claimDueRetries(any(), eq(1))).thenReturn(List.of());
+        when(paymentRepository.countByStatusAndNextRetryAtIsNotNull(PaymentStatus.FAILED)).thenReturn(7L);
+
+        retryService.processDueRetries();
+
+        verify(paymentRepository, times(1)).claimDueRetries(any(), anyInt());
+        verifyNoInteractions(paymentService);
+        assertEquals(7.0, meterRegistry.get("purbank.payments.retry.queue").gauge().value());
+    }
+
+    @Test
+    @DisplayName("TC-T007: Unbekannte Ziel-IBAN beim Retry beendet die Wiederholungen als eigenes Ergebnis")
+    void testPermanentFailureIsRejected() {
+        Payment payment = failedPayment(0);
+        // PaymentService fails a payment to an unknown or closed konto without scheduling a retry
+        doAnswer(i -> {
+            i.<Payment>getArgument(0).fail();
+            return null;
+        }).when(paymentService).executePayment(payment);
+
+        assertTrue(retryService.retryNext());
+
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+        assertNull(payment.getNextRetryAt());
+        assertEquals(1.0, count("rejected"));
+        assertEquals(0.0, count("exhausted"));
+        verify(auditLogService).logSystem(any(), any(), eq(payment.getId()), anyString());
+    }
+}
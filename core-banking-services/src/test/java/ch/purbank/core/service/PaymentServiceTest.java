@@ -0,0 +1,220 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.KontoStatus;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.dto.PaymentCursor;
+import ch.purbank.core.dto.PaymentDTO;
+import ch.purbank.core.dto.PaymentPageDTO;
+import ch.purbank.core.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentService (Liste der offenen Zahlungen, Zielprüfung im Settlement-Lauf, Fehler beim Buchen)
+ * 1. System: Keyset-Paging der offenen Zahlungen aller Konten eines Benutzers, Prüfung der Ziel-IBAN,
+ *    Weitergabe einer fehlgeschlagenen Buchung an den Aufrufer
+ * 2. Umgebung: JUnit 5, Mockito Framework (isoliert)
+ * 3. Nicht getestet: Die JPQL-Abfragen selbst auf der Datenbank, der Bloom-Filter selbst (IbanDirectoryServiceTest)
+ * 4. Testmittel: Mockito Mocks für Repository-Abfragen, PaymentDTO-Fixtures und Keyset-Cursor
+ * 5. Methode: Äquivalenzklassen (erste Seite / Folgeseite / letzte Seite / Settlement-Lauf) & Grenzwertanalyse (Seitengrösse am Limit)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Service - Liste der offenen Zahlungen")
+class PaymentServiceTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private KontoRepository kontoRepository;
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private IbanDirectoryService ibanDirectoryService;
+    @Mock
+    private PaymentSettlementEngine paymentSettlementEngine;
+    @Mock
+    private RecurringPaymentService recurringPaymentService;
+    @Mock
+    private KontoPostingService kontoPostingService;
+    @Spy
+    private PaymentConfig paymentConfig = new PaymentConfig();
+    @InjectMocks
+    private PaymentService paymentService;
+
+    private UUID userId;
+    private UUID kontoId;
+
+    @BeforeEach
+    void setUp() {
+        userId = UUID.randomUUID();
+        kontoId = UUID.randomUUID();
+        paymentConfig.setListMaxPageSize(3);
+    }
+
+    private List<PaymentDTO> payments(int count) {
+        List<PaymentDTO> payments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            payments.add(new PaymentDTO(UUID.randomUUID(), kontoId, "CH9300762011623852957", new BigDecimal("10.00"),
+                    Currency.CHF, null, null, PaymentExecutionType.NORMAL, LocalDate.now().plusDays(i),
+                    PaymentStatus.PENDING, false));
+        }
+        return payments;
+    }
+
+    @Test
+    @DisplayName("TC-O001: Volle erste Seite liefert den Cursor der letzten Zahlung")
+    void testFirstPage() {
+        List<PaymentDTO> page = payments(2);
+        when(paymentRepository.findFirstMemberPaymentPage(userId, PaymentStatus.PENDING, Limit.of(2))).thenReturn(page);
+
+        PaymentPageDTO result = paymentService.getAllPendingPayments(userId, null, 2, null);
+
+        assertEquals(page, result.getPayments());
+        PaymentCursor next = PaymentCursor.decode(result.getNextCursor());
+        assertEquals(page.get(1).getExecutionDate(), next.executionDate());
+        assertEquals(page.get(1).getId(), next.id());
+        // A non-empty page needs no existence checks
+        verifyNoInteractions(userRepository, kontoRepository, kontoMemberRepository);
+    }
+
+    @Test
+    @DisplayName("TC-O002: Folgeseite beginnt nach dem Cursor, eine kurze Seite ist die letzte")
+    void testFollowingPage() {
+        PaymentDTO last = payments(1).get(0);
+        String cursor = PaymentCursor.of(last).encode();
+        List<PaymentDTO> page = payments(1);
+        when(paymentRepository.findMemberPaymentPageOfKontoAfter(userId, kontoId, PaymentStatus.PENDING,
+                last.getExecutionDate(), last.getId(), Limit.of(2))).thenReturn(page);
+
+        PaymentPageDTO result = paymentService.getAllPendingPayments(userId, kontoId, 2, cursor);
+
+        assertEquals(page, result.getPayments());
+        assertNull(result.getNextCursor());
+        verify(paymentRepository, never()).findFirstMemberPaymentPageOfKonto(any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("TC-O003: Seitengrösse wird auf listMaxPageSize begrenzt, auch ohne Angabe")
+    void testPageSizeIsCapped() {
+        when(paymentRepository.findFirstMemberPaymentPage(eq(userId), eq(PaymentStatus.PENDING), any()))
+                .thenReturn(payments(3));
+
+        PaymentPageDTO capped = paymentService.getAllPendingPayments(userId, null, 1000, null);
+        PaymentPageDTO defaulted = paymentService.getAllPendingPayments(userId, null, null, null);
+
+        verify(paymentRepository, times(2)).findFirstMemberPaymentPage(userId, PaymentStatus.PENDING, Limit.of(3));
+        assertNotNull(capped.getNextCursor());
+        assertNotNull(defaulted.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> paymentService.getAllPendingPayments(userId, null, 0, null));
+    }
+
+    @Test
+    @DisplayName("TC-O004: Leere Seite prüft Mitgliedschaft, ungültiger Cursor wird abgelehnt")
+    void testEmptyPageAndInvalidCursor() {
+        when(paymentRepository.findFirstMemberPaymentPageOfKonto(userId, kontoId, PaymentStatus.PENDING, Limit.of(3)))
+                .thenReturn(List.of());
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(kontoRepository.existsById(kontoId)).thenReturn(true);
+        when(kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)).thenReturn(false);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> paymentService.getAllPendingPayments(userId, kontoId, null, null));
+        assertEquals("User is not a member of this konto", e.getMessage());
+        assertThrows(IllegalArgumentException.class,
+                () -> paymentService.getAllPendingPayments(userId, null, null, "not-a-cursor"));
+    }
+
+    @Test
+    @DisplayName("TC-O005: Im Settlement-Lauf gilt die Abweisung des neu gebauten Bloom-Filters, ohne DB-Bestätigung")
+    void testSettlementTrustsFreshBloomFilter() {
+        paymentConfig.setNettingEnabled(false);
+        Konto konto = new Konto();
+        konto.setId(kontoId);
+        konto.setCurrency(Currency.CHF);
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setKonto(konto);
+        payment.setToIban("DE89370400440532013000");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setPaymentCurrency(Currency.CHF);
+        payment.setStatus(PaymentStatus.PENDING);
+        when(ibanDirectoryService.resolve(payment.getToIban())).thenReturn(Optional.empty());
+        when(ibanDirectoryService.confirm(eq(payment.getToIban()), any(LocalDateTime.class))).thenReturn(Optional.empty());
+        when(paymentSettlementEngine.settle(any(), any())).thenAnswer(i -> {
+            i.<Consumer<Payment>>getArgument(1).accept(payment);
+            return new PaymentSettlementEngine.SettlementResult(1, 0, 1, List.of(), 1, 1.0);
+        });
+        LocalDateTime before = LocalDateTime.now();
+
+        paymentService.processScheduledPayments();
+
+        // The filter is rebuilt first, kontos opened before the run started are in it
+        InOrder order = inOrder(ibanDirectoryService, paymentSettlementEngine);
+        order.verify(ibanDirectoryService).rebuildBloomFilter();
+        order.verify(paymentSettlementEngine).settle(any(), any());
+        ArgumentCaptor<LocalDateTime> runStartedAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(ibanDirectoryService).confirm(eq(payment.getToIban()), runStartedAt.capture());
+        assertFalse(runStartedAt.getValue().isBefore(before));
+        verify(ibanDirectoryService, never()).confirm(payment.getToIban());
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+    }
+
+    @Test
+    @DisplayName("TC-O006: Fehlgeschlagene Buchung wird weitergegeben, ohne die Zahlung in der rollback-only Transaktion zu speichern")
+    void testFailedPostingPropagates() {
+        Konto konto = new Konto();
+        konto.setId(kontoId);
+        konto.setCurrency(Currency.CHF);
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setKonto(konto);
+        payment.setToIban("CH9300762011623852957");
+        payment.setAmount(new BigDecimal("10.00"));
+        payment.setPaymentCurrency(Currency.CHF);
+        payment.setStatus(PaymentStatus.PENDING);
+        when(ibanDirectoryService.resolve(payment.getToIban())).thenReturn(Optional.of(
+                new IbanDirectoryService.IbanEntry(UUID.randomUUID(), Currency.CHF, KontoStatus.ACTIVE)));
+        OptimisticLockingFailureException conflict = new OptimisticLockingFailureException("Konto kept changing");
+        when(kontoPostingService.debit(kontoId, new BigDecimal("10.00"))).thenThrow(conflict);
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> paymentService.executePayment(payment));
+
+        assertSame(conflict, thrown.getCause());
+        // Left to the caller's retry, a FAILED status saved in this transaction would not commit
+        assertEquals(PaymentStatus.PENDING, payment.getStatus());
+        assertEquals(0, payment.getRetryCount());
+        verify(paymentRepository, never()).save(any());
+    }
+}
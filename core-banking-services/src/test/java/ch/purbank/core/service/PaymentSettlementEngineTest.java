@@ -0,0 +1,246 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Payment;
+import ch.purbank.core.domain.enums.PaymentExecutionType;
+import ch.purbank.core.domain.enums.PaymentStatus;
+import ch.purbank.core.repository.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für PaymentSettlementEngine
+ * 1. System: Nächtliche Zahlungsverarbeitung (Partitionierung & Parallelisierung)
+ * 2. Umgebung: Isoliert mit Mockito, Transaktionen über gemockten TransactionManager
+ * 3. Nicht getestet: Echte DB-Locks und Deadlocks, Durchsatz unter Last
+ * 4. Testmittel: SimpleMeterRegistry, Payment-Fixtures mit mehreren Konten
+ * 5. Methode: Äquivalenzklassen (erfolgreiche / fehlerhafte Partition, Konto mit vielen Chunks neben anderen Konten)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Payment Settlement Engine - Partitionierte Ausführung")
+class PaymentSettlementEngineTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PaymentConfig paymentConfig;
+    private PaymentSettlementEngine engine;
+    private Map<UUID, Payment> paymentsById;
+
+    @BeforeEach
+    void setUp() {
+        paymentConfig = new PaymentConfig();
+        paymentConfig.setSettlementParallelism(2);
+        engine = new PaymentSettlementEngine(paymentRepository, transactionManager, paymentConfig, new SimpleMeterRegistry());
+        paymentsById = new LinkedHashMap<>();
+
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> new SimpleTransactionStatus());
+        when(paymentRepository.findFirstDuePaymentPage(any(), any(), any(), any())).thenAnswer(i -> paymentsById.values().stream()
+                .map(p -> (PaymentRepository.DuePaymentRef) new Ref(p.getId(), p.getKonto().getId(), p.getExecutionDate()))
+                .toList());
+        when(paymentRepository.findAllById(any())).thenAnswer(i -> {
+            List<Payment> result = new ArrayList<>();
+            for (UUID id : i.<Iterable<UUID>>getArgument(0)) {
+                result.add(paymentsById.get(id));
+            }
+            return result;
+        });
+    }
+
+    private record Ref(UUID id, UUID kontoId, LocalDate executionDate) implements PaymentRepository.DuePaymentRef {
+        public UUID getId() {
+            return id;
+        }
+
+        public UUID getKontoId() {
+            return kontoId;
+        }
+
+        public LocalDate getExecutionDate() {
+            return executionDate;
+        }
+    }
+
+    private Payment payment(Konto konto, String amount) {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setKonto(konto);
+        payment.setAmount(new BigDecimal(amount));
+        payment.setToIban("CH9300762011623852957");
+        payment.setExecutionType(PaymentExecutionType.NORMAL);
+        payment.setExecutionDate(LocalDate.now());
+        payment.setCreatedAt(LocalDateTime.now());
+        paymentsById.put(payment.getId(), payment);
+        return payment;
+    }
+
+    private Konto konto() {
+        Konto konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        return konto;
+    }
+
+    @Test
+    @DisplayName("TC-S001: Zahlungen werden pro Quellkonto partitioniert und alle ausgeführt")
+    void testPartitionsBySourceKonto() {
+        Konto a = konto();
+        Konto b = konto();
+        payment(a, "10.00");
+        payment(b, "20.00");
+        payment(a, "30.00");
+        Set<UUID> executedIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), p -> {
+            executedIds.add(p.getId());
+            p.execute();
+        });
+
+        assertEquals(2, result.getPartitions());
+        assertEquals(3, result.getExecuted());
+        assertEquals(0, result.getFailed());
+        assertEquals(3, executedIds.size());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    @DisplayName("TC-S005: Grosse Partitionen werden in Chunks mit eigener Transaktion aufgeteilt")
+    void testLargePartitionIsChunked() {
+        Konto a = konto();
+        for (int i = 0; i < 5; i++) {
+            payment(a, "1.00");
+        }
+        paymentConfig.setSettlementChunkSize(2);
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), Payment::execute);
+
+        assertEquals(3, result.getPartitions());
+        assertEquals(5, result.getExecuted());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    @DisplayName("TC-S002: Fehlgeschlagene Zahlung zählt als failed, Partition wird trotzdem committed")
+    void testFailedPaymentCounted() {
+        Konto a = konto();
+        Payment ok = payment(a, "10.00");
+        Payment notOk = payment(a, "99999.00");
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), p -> {
+            if (p == notOk) {
+                p.fail();
+            } else {
+                p.execute();
+            }
+        });
+
+        assertEquals(1, result.getExecuted());
+        assertEquals(1, result.getFailed());
+        assertTrue(result.getAbandonedPartitions().isEmpty());
+    }
+
+    @Test
+    @DisplayName("TC-S003: Abgebrochene Partition wird einmal wiederholt")
+    void testFailedPartitionIsRetried() {
+        Konto a = konto();
+        Payment payment = payment(a, "10.00");
+        doAnswer(i -> {
+            // Simulate the rollback of the first attempt
+            payment.setStatus(PaymentStatus.PENDING);
+            throw new CannotAcquireLockException("deadlock detected");
+        }).doNothing().when(transactionManager).commit(any());
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), Payment::execute);
+
+        assertTrue(result.getAbandonedPartitions().isEmpty());
+        assertEquals(1, result.getExecuted());
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    @DisplayName("TC-S004: Nicht mehr ausstehende Zahlungen werden übersprungen")
+    void testSkipsNonPendingPayments() {
+        Konto a = konto();
+        Payment cancelled = payment(a, "10.00");
+        cancelled.cancel();
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), p -> fail("must not execute"));
+
+        assertEquals(0, result.getExecuted());
+        assertEquals(0, result.getFailed());
+    }
+
+    @Test
+    @DisplayName("TC-S006: Viele Chunks eines Kontos belegen keine Slots, andere Konten laufen parallel")
+    void testHotKontoDoesNotBlockOtherKontos() throws InterruptedException {
+        paymentConfig.setSettlementParallelism(3);
+        paymentConfig.setSettlementChunkSize(1);
+        Konto hot = konto();
+        for (int i = 0; i < 6; i++) {
+            payment(hot, "1.00");
+        }
+        Konto b = konto();
+        Konto c = konto();
+        payment(b, "1.00");
+        payment(c, "1.00");
+        CountDownLatch othersStarted = new CountDownLatch(2);
+        AtomicBoolean othersRanAlongside = new AtomicBoolean();
+        AtomicInteger hotStarted = new AtomicInteger();
+        AtomicInteger hotRunning = new AtomicInteger();
+        AtomicInteger hotMaxRunning = new AtomicInteger();
+
+        PaymentSettlementEngine.SettlementResult result = engine.settle(LocalDate.now(), p -> {
+            if (p.getKonto() == hot) {
+                hotMaxRunning.accumulateAndGet(hotRunning.incrementAndGet(), Math::max);
+                if (hotStarted.getAndIncrement() == 0) {
+                    try {
+                        // The first hot chunk waits for the other kontos, they need the free slots to start
+                        othersRanAlongside.set(othersStarted.await(2, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                hotRunning.decrementAndGet();
+            } else {
+                othersStarted.countDown();
+            }
+            p.execute();
+        });
+
+        assertTrue(othersRanAlongside.get());
+        assertEquals(1, hotMaxRunning.get());
+        assertEquals(8, result.getPartitions());
+        assertEquals(8, result.getExecuted());
+    }
+}
@@ -0,0 +1,185 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.ReconciliationConfig;
+import ch.purbank.core.domain.ReconciliationRun;
+import ch.purbank.core.dto.ReconciliationRunDTO;
+import ch.purbank.core.repository.ReconciliationDiscrepancyRepository;
+import ch.purbank.core.repository.ReconciliationRunRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für ReconciliationService
+ * 1. System: Abstimmung der Kontosaldi mit der Summe der Transaktionen und dem letzten balanceAfter
+ * 2. Umgebung: Isoliert mit Mockito (Repositories, JDBC und Transaktionen gemockt)
+ * 3. Nicht getestet: Gruppiertes Aggregat auf der echten Datenbank, Laufzeit über eine Million Konten
+ * 4. Testmittel: Konto-ID-Listen als Chunk-Grenzen, Abweichungen als Ergebnis der Abfrage
+ * 5. Methode: Äquivalenzklassen (abgestimmt / Saldo abweichend / balanceAfter abweichend / vorübergehend / Chunk-Fehler)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Reconciliation Service - Abstimmung der Kontosaldi")
+class ReconciliationServiceTest {
+
+    @Mock
+    private ReconciliationRunRepository runRepository;
+    @Mock
+    private ReconciliationDiscrepancyRepository discrepancyRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private ReconciliationService reconciliationService;
+    private ReconciliationConfig reconciliationConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private final UUID runId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        reconciliationConfig = new ReconciliationConfig();
+        reconciliationConfig.setRecheckDelay(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+        reconciliationService = new ReconciliationService(runRepository, discrepancyRepository, jdbcTemplate,
+                transactionManager, reconciliationConfig, meterRegistry, new KontoChunkRunner(jdbcTemplate));
+        reconciliationService.init();
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        lenient().when(runRepository.save(any(ReconciliationRun.class))).thenAnswer(i -> {
+            ReconciliationRun run = i.getArgument(0);
+            run.setId(runId);
+            return run;
+        });
+    }
+
+    private ReconciliationService.Discrepancy discrepancy(UUID kontoId, String balance, String total, String latest, boolean afterMismatch) {
+        return new ReconciliationService.Discrepancy(kontoId, new BigDecimal(balance), new BigDecimal(total),
+                latest != null ? new BigDecimal(latest) : null, afterMismatch);
+    }
+
+    private static RowMapper<ReconciliationService.Discrepancy> anyMapper() {
+        return any();
+    }
+
+    @SafeVarargs
+    private void stubChunks(List<ReconciliationService.Discrepancy>... results) {
+        var stubbing = when(jdbcTemplate.query(contains("BETWEEN ? AND ?"), anyMapper(), any(Object[].class)));
+        for (List<ReconciliationService.Discrepancy> result : results) {
+            stubbing = stubbing.thenReturn(result);
+        }
+    }
+
+    @Test
+    @DisplayName("TC-W001: Nur bei der zweiten Prüfung bestätigte Abweichungen kommen in den Bericht")
+    void testReconcileReportsConfirmedDiscrepancies() {
+        reconciliationConfig.setChunkSize(2);
+        reconciliationConfig.setParallelism(1);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(2))).thenReturn(List.of(a, b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(2))).thenReturn(List.of(c));
+        stubChunks(
+                List.of(discrepancy(a, "100.00", "90.00", "100.00", false), discrepancy(b, "50.00", "50.00", "45.00", true)),
+                List.of(discrepancy(c, "10.00", "0.00", null, false)));
+        // b was a posting in flight, it balances by the second look; suspects are rechecked chunkSize at a time
+        when(jdbcTemplate.query(contains("ANY(CAST(? AS uuid[]))"), anyMapper(), any(Object[].class)))
+                .thenReturn(List.of(discrepancy(a, "100.00", "90.00", "100.00", false)))
+                .thenReturn(List.of(discrepancy(c, "10.00", "0.00", null, false)));
+
+        ReconciliationRunDTO result = reconciliationService.reconcile();
+
+        assertEquals(runId, result.getRunId());
+        assertEquals(3, result.getKontosChecked());
+        assertEquals(2, result.getChunks());
+        assertEquals(0, result.getFailedChunks());
+        assertEquals(2, result.getBalanceMismatches());
+        assertEquals(0, result.getBalanceAfterMismatches());
+        assertNotNull(result.getFinishedAt());
+        String first = "{" + a + "," + b + "}";
+        String second = "{" + c + "}";
+        verify(jdbcTemplate).query(contains("ANY(CAST(? AS uuid[]))"), anyMapper(), eq(first), eq(first), eq(first));
+        verify(jdbcTemplate).query(contains("ANY(CAST(? AS uuid[]))"), anyMapper(), eq(second), eq(second), eq(second));
+
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO reconciliation_discrepancies"), rowsCaptor.capture());
+        assertEquals(2, rowsCaptor.getValue().size());
+        assertArrayEquals(new Object[]{runId, a, new BigDecimal("100.00"), new BigDecimal("90.00"), new BigDecimal("100.00"), false},
+                rowsCaptor.getValue().getFirst());
+        assertEquals(2.0, meterRegistry.get("purbank.reconciliation.mismatches").tag("type", "balance").gauge().value());
+        assertEquals(1, meterRegistry.get("purbank.reconciliation.duration").timer().count());
+    }
+
+    @Test
+    @DisplayName("TC-W002: Abgestimmte Konten ergeben einen leeren Bericht ohne zweite Prüfung")
+    void testReconcileBalanced() {
+        UUID a = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1000))).thenReturn(List.of(a));
+        stubChunks(List.of());
+
+        ReconciliationRunDTO result = reconciliationService.reconcile();
+
+        assertEquals(1, result.getKontosChecked());
+        assertEquals(0, result.getBalanceMismatches());
+        verify(jdbcTemplate, never()).query(contains("ANY("), anyMapper(), any(Object[].class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(runRepository, times(2)).save(any(ReconciliationRun.class));
+    }
+
+    @Test
+    @DisplayName("TC-W003: Fehlgeschlagener Chunk wird gezählt, seine Konten gelten nicht als geprüft")
+    void testReconcileFailedChunk() {
+        reconciliationConfig.setChunkSize(1);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1))).thenReturn(List.of(a));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(a), eq(1))).thenReturn(List.of(b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(1))).thenReturn(List.of());
+        when(jdbcTemplate.query(contains("BETWEEN ? AND ?"), anyMapper(), any(Object[].class))).thenAnswer(i -> {
+            if (i.getArgument(2).equals(b)) {
+                throw new IllegalStateException("canceling statement due to statement timeout");
+            }
+            return List.of();
+        });
+
+        ReconciliationRunDTO result = reconciliationService.reconcile();
+
+        assertEquals(2, result.getChunks());
+        assertEquals(1, result.getFailedChunks());
+        assertEquals(1, result.getKontosChecked());
+        assertEquals(1.0, meterRegistry.counter("purbank.reconciliation.failed.chunks").count());
+    }
+
+    @Test
+    @DisplayName("TC-W004: Bericht eines unbekannten Laufs wird abgelehnt, Seiten folgen der Konto-ID")
+    void testGetDiscrepancies() {
+        UUID after = UUID.randomUUID();
+        when(runRepository.existsById(runId)).thenReturn(true);
+
+        reconciliationService.getDiscrepancies(runId, null, 50);
+        reconciliationService.getDiscrepancies(runId, after, 5000);
+
+        verify(discrepancyRepository).findFirstRunPage(runId, Limit.of(50));
+        verify(discrepancyRepository).findRunPageAfter(runId, after, Limit.of(1000));
+        assertThrows(IllegalArgumentException.class, () -> reconciliationService.getDiscrepancies(UUID.randomUUID(), null, 10));
+        assertThrows(IllegalArgumentException.class, () -> reconciliationService.getDiscrepancies(runId, null, 0));
+    }
+}
@@ -0,0 +1,173 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.RecurringPayment;
+import ch.purbank.core.domain.enums.PaymentRecurrence;
+import ch.purbank.core.domain.enums.RecurringPaymentStatus;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import ch.purbank.core.repository.RecurringPaymentRepository;
+import ch.purbank.core.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für RecurringPaymentService
+ * 1. System: Daueraufträge (Ausführungsregeln und Erzeugung der Zahlungen vor dem Nachtlauf)
+ * 2. Umgebung: Isoliert mit Mockito (Repositories und JDBC gemockt)
+ * 3. Nicht getestet: SKIP LOCKED der echten Datenbank, Feiertage
+ * 4. Testmittel: Feste Kalenderdaten (Monatsende, Schaltjahr, Wochenende)
+ * 5. Methode: Grenzwertanalyse (Monatsende, Enddatum) und Äquivalenzklassen (fällig / verpasst / beendet)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Recurring Payment Service - Daueraufträge")
+class RecurringPaymentServiceTest {
+
+    @Mock
+    private RecurringPaymentRepository recurringPaymentRepository;
+    @Mock
+    private KontoRepository kontoRepository;
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private AuditLogService auditLogService;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private RecurringPaymentService recurringPaymentService;
+    private Konto konto;
+
+    @BeforeEach
+    void setUp() {
+        recurringPaymentService = new RecurringPaymentService(recurringPaymentRepository, kontoRepository,
+                kontoMemberRepository, userRepository, auditLogService, jdbcTemplate, transactionManager,
+                new PaymentConfig(), new SimpleMeterRegistry());
+
+        konto = new Konto();
+        konto.setId(UUID.randomUUID());
+
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    private RecurringPayment rule(PaymentRecurrence recurrence, LocalDate start, LocalDate next, LocalDate end) {
+        return RecurringPayment.builder()
+                .id(UUID.randomUUID())
+                .konto(konto)
+                .toIban("CH9300762011623852957")
+                .amount(new BigDecimal("1500.00"))
+                .recurrence(recurrence)
+                .startDate(start)
+                .nextExecutionDate(next)
+                .endDate(end)
+                .build();
+    }
+
+    private List<Object[]> insertedPayments() {
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(anyString(), rowsCaptor.capture());
+        return rowsCaptor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    @DisplayName("TC-R001: Monatlich am 31. fällt in kürzeren Monaten auf den letzten Tag und springt danach zurück")
+    void testMonthlyClampsToMonthEnd() {
+        LocalDate start = LocalDate.of(2024, 1, 31);
+
+        LocalDate february = PaymentRecurrence.MONTHLY.nextOccurrence(start, start);
+        LocalDate march = PaymentRecurrence.MONTHLY.nextOccurrence(start, february);
+
+        assertEquals(LocalDate.of(2024, 2, 29), february);
+        assertEquals(LocalDate.of(2024, 3, 31), march);
+    }
+
+    @Test
+    @DisplayName("TC-R002: Letzter Werktag überspringt das Wochenende")
+    void testLastBusinessDay() {
+        // 31.08.2024 is a Saturday, 30.11.2024 a Saturday, 31.12.2024 a Tuesday
+        assertEquals(LocalDate.of(2024, 8, 30), PaymentRecurrence.LAST_BUSINESS_DAY.firstOccurrence(LocalDate.of(2024, 8, 1)));
+        assertEquals(LocalDate.of(2024, 11, 29),
+                PaymentRecurrence.LAST_BUSINESS_DAY.nextOccurrence(LocalDate.of(2024, 8, 1), LocalDate.of(2024, 10, 31)));
+        // Start after the last business day of its month: first occurrence is next month
+        assertEquals(LocalDate.of(2024, 12, 31), PaymentRecurrence.LAST_BUSINESS_DAY.firstOccurrence(LocalDate.of(2024, 11, 30)));
+    }
+
+    @Test
+    @DisplayName("TC-R003: Fällige Regel erzeugt eine gesperrte Zahlung und rückt zum nächsten Termin vor")
+    void testDueRuleIsMaterialized() {
+        LocalDate today = LocalDate.of(2025, 3, 25);
+        RecurringPayment weekly = rule(PaymentRecurrence.WEEKLY, LocalDate.of(2025, 3, 4), today, null);
+        when(recurringPaymentRepository.claimDue(today, 1000)).thenReturn(List.of(weekly));
+
+        int created = recurringPaymentService.materializeDuePayments(today);
+
+        assertEquals(1, created);
+        Object[] row = insertedPayments().get(0);
+        assertEquals(konto.getId(), row[1]);
+        assertEquals(today, row[7]);
+        assertEquals(today, weekly.getLastExecutionDate());
+        assertEquals(LocalDate.of(2025, 4, 1), weekly.getNextExecutionDate());
+        verify(recurringPaymentRepository).saveAll(List.of(weekly));
+    }
+
+    @Test
+    @DisplayName("TC-R004: Verpasste Termine werden beim nächsten Lauf nachgeholt")
+    void testMissedOccurrencesAreCaughtUp() {
+        LocalDate today = LocalDate.of(2025, 3, 25);
+        RecurringPayment weekly = rule(PaymentRecurrence.WEEKLY, LocalDate.of(2025, 3, 4), LocalDate.of(2025, 3, 11), null);
+        when(recurringPaymentRepository.claimDue(today, 1000)).thenReturn(List.of(weekly));
+
+        assertEquals(3, recurringPaymentService.materializeDuePayments(today));
+
+        assertEquals(List.of(LocalDate.of(2025, 3, 11), LocalDate.of(2025, 3, 18), LocalDate.of(2025, 3, 25)),
+                insertedPayments().stream().map(row -> row[7]).toList());
+        assertEquals(LocalDate.of(2025, 4, 1), weekly.getNextExecutionDate());
+    }
+
+    @Test
+    @DisplayName("TC-R005: Nach dem Enddatum ist die Regel beendet")
+    void testRuleEndsAfterEndDate() {
+        LocalDate today = LocalDate.of(2025, 3, 31);
+        RecurringPayment monthly = rule(PaymentRecurrence.MONTHLY, LocalDate.of(2025, 1, 31), today, LocalDate.of(2025, 4, 15));
+        when(recurringPaymentRepository.claimDue(today, 1000)).thenReturn(List.of(monthly));
+
+        assertEquals(1, recurringPaymentService.materializeDuePayments(today));
+
+        assertEquals(RecurringPaymentStatus.ENDED, monthly.getStatus());
+    }
+
+    @Test
+    @DisplayName("TC-R006: Ohne fällige Regeln wird nichts geschrieben")
+    void testNothingDue() {
+        when(recurringPaymentRepository.claimDue(any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, recurringPaymentService.materializeDuePayments(LocalDate.now()));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,254 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.PaymentConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.RecurringPayment;
+import ch.purbank.core.domain.enums.*;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.dto.ProjectedBalanceDTO;
+import ch.purbank.core.dto.SettlementSimulationDTO;
+import ch.purbank.core.repository.RecurringPaymentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für SettlementSimulationService
+ * 1. System: Simulation des nächtlichen Zahlungslaufs (prognostizierte Fehler und Endsaldi, ohne Schreiben)
+ * 2. Umgebung: Isoliert mit Mockito (Repository und JDBC gemockt), echte CurrencyConversionService
+ * 3. Nicht getestet: REPEATABLE READ Snapshot der echten Datenbank, Laufzeit bei einer Million Zahlungen
+ * 4. Testmittel: Konten und Zahlungszeilen als Records, gemockte ResultSets
+ * 5. Methode: Äquivalenzklassen (gedeckt / ungedeckt / durch Eingang gedeckt / Ziel fehlt / Fremdwährung)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Settlement Simulation Service - Simulation des Zahlungslaufs")
+class SettlementSimulationServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private RecurringPaymentRepository recurringPaymentRepository;
+
+    private SettlementSimulationService simulationService;
+    private final LocalDate today = LocalDate.of(2025, 3, 25);
+    private Map<UUID, Position> kontos;
+    private List<Row> payments;
+
+    private record Position(UUID getId, String getIban, Currency getCurrency, KontoStatus getStatus, BigDecimal getBalance) {
+    }
+
+    private record Row(UUID id, UUID kontoId, String toIban, BigDecimal amount, Currency currency, LocalDate executionDate) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        simulationService = new SettlementSimulationService(recurringPaymentRepository,
+                new CurrencyConversionService(), jdbcTemplate, new PaymentConfig());
+        kontos = new HashMap<>();
+        payments = new ArrayList<>();
+
+        // Streams the due payments row by row into the callback, like the driver does
+        lenient().doAnswer(i -> {
+            RowCallbackHandler handler = i.getArgument(1);
+            for (Row row : payments) {
+                handler.processRow(resultSet(row));
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        lenient().when(recurringPaymentRepository.findDueUntil(any(), any())).thenReturn(List.of());
+        // Kontos looked up by id or IBAN: runs the statement creator to see which keys are asked for
+        lenient().when(jdbcTemplate.query(any(PreparedStatementCreator.class), anyMapper())).thenAnswer(i -> {
+            List<Object> keys = new ArrayList<>();
+            Connection connection = mock(Connection.class);
+            when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+            when(connection.createArrayOf(anyString(), any())).thenAnswer(a -> {
+                keys.addAll(Arrays.asList(a.<Object[]>getArgument(1)));
+                return mock(Array.class);
+            });
+            i.<PreparedStatementCreator>getArgument(0).createPreparedStatement(connection);
+
+            RowMapper<?> mapper = i.getArgument(1);
+            List<Object> rows = new ArrayList<>();
+            for (Position konto : kontos.values()) {
+                if (keys.contains(konto.getId()) || keys.contains(konto.getIban())) {
+                    rows.add(mapper.mapRow(resultSet(konto), rows.size()));
+                }
+            }
+            return rows;
+        });
+    }
+
+    // The konto rows are mapped to a private record of the service
+    private static RowMapper<?> anyMapper() {
+        return any();
+    }
+
+    private static ResultSet resultSet(Row row) throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getObject("id", UUID.class)).thenReturn(row.id());
+        when(resultSet.getObject("konto_id", UUID.class)).thenReturn(row.kontoId());
+        when(resultSet.getString("to_iban")).thenReturn(row.toIban());
+        when(resultSet.getBigDecimal("amount")).thenReturn(row.amount());
+        when(resultSet.getString("payment_currency")).thenReturn(row.currency().name());
+        when(resultSet.getObject("execution_date", LocalDate.class)).thenReturn(row.executionDate());
+        return resultSet;
+    }
+
+    private static ResultSet resultSet(Position konto) throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getObject("id", UUID.class)).thenReturn(konto.getId());
+        when(resultSet.getString("iban")).thenReturn(konto.getIban());
+        when(resultSet.getString("currency")).thenReturn(konto.getCurrency().name());
+        when(resultSet.getString("status")).thenReturn(konto.getStatus().name());
+        when(resultSet.getBigDecimal("balance")).thenReturn(konto.getBalance());
+        return resultSet;
+    }
+
+    private Position konto(String balance, Currency currency, KontoStatus status) {
+        UUID id = UUID.randomUUID();
+        Position position = new Position(id, "CH" + id.toString().replace("-", "").substring(0, 19), currency, status,
+                new BigDecimal(balance));
+        kontos.put(id, position);
+        return position;
+    }
+
+    private Position konto(String balance) {
+        return konto(balance, Currency.CHF, KontoStatus.ACTIVE);
+    }
+
+    private UUID payment(Position from, String toIban, String amount) {
+        UUID id = new UUID(0, payments.size() + 1);
+        payments.add(new Row(id, from.getId(), toIban, new BigDecimal(amount), Currency.CHF, today));
+        return id;
+    }
+
+    private BigDecimal projected(SettlementSimulationDTO result, Position konto) {
+        return result.getBalances().stream().filter(b -> b.getKontoId().equals(konto.getId()))
+                .map(ProjectedBalanceDTO::getProjectedBalance).findFirst().orElseThrow();
+    }
+
+    @Test
+    @DisplayName("TC-S001: Ungedeckte Zahlung wird als fehlgeschlagen prognostiziert, gedeckte als ausgeführt")
+    void testInsufficientFunds() {
+        Position payer = konto("100.00");
+        Position target = konto("0.00");
+        payment(payer, target.getIban(), "80.00");
+        UUID uncovered = payment(payer, target.getIban(), "30.00");
+
+        SettlementSimulationDTO result = simulationService.simulate(today);
+
+        assertEquals(1, result.getProjectedExecuted());
+        assertEquals(1, result.getProjectedFailed());
+        assertEquals(uncovered, result.getFailures().get(0).getPaymentId());
+        assertEquals(SimulatedFailureReason.INSUFFICIENT_FUNDS, result.getFailures().get(0).getReason());
+        assertEquals(0, new BigDecimal("20.00").compareTo(projected(result, payer)));
+        assertEquals(0, new BigDecimal("80.00").compareTo(projected(result, target)));
+    }
+
+    @Test
+    @DisplayName("TC-S002: Eingang aus demselben Lauf deckt eine zunächst ungedeckte Zahlung")
+    void testIncomingPaymentCoversLaterRound() {
+        Position employer = konto("1000.00");
+        Position employee = konto("0.00");
+        Position landlord = konto("0.00");
+        payment(employee, landlord.getIban(), "700.00");
+        payment(employer, employee.getIban(), "1000.00");
+
+        SettlementSimulationDTO result = simulationService.simulate(today);
+
+        assertEquals(2, result.getProjectedExecuted());
+        assertEquals(0, new BigDecimal("300.00").compareTo(projected(result, employee)));
+        assertEquals(0, new BigDecimal("700.00").compareTo(projected(result, landlord)));
+    }
+
+    @Test
+    @DisplayName("TC-S003: Unbekannte und geschlossene Ziel-IBAN werden mit Grund ausgewiesen")
+    void testTargetFailures() {
+        Position payer = konto("1000.00");
+        Position closed = konto("0.00", Currency.CHF, KontoStatus.CLOSED);
+        payment(payer, "DE89370400440532013000", "10.00");
+        payment(payer, closed.getIban(), "10.00");
+
+        SettlementSimulationDTO result = simulationService.simulate(today);
+
+        assertEquals(0, result.getProjectedExecuted());
+        assertEquals(1, result.getFailuresByReason().get(SimulatedFailureReason.TARGET_NOT_FOUND));
+        assertEquals(1, result.getFailuresByReason().get(SimulatedFailureReason.TARGET_CLOSED));
+        assertTrue(result.getBalances().isEmpty());
+    }
+
+    @Test
+    @DisplayName("TC-S004: Fremdwährung wird mit den Kursen der CurrencyConversionService umgerechnet")
+    void testCurrencyConversion() {
+        Position payer = konto("100.00", Currency.CHF, KontoStatus.ACTIVE);
+        Position target = konto("0.00", Currency.EUR, KontoStatus.ACTIVE);
+        payments.add(new Row(UUID.randomUUID(), payer.getId(), target.getIban(), new BigDecimal("50.00"), Currency.USD, today));
+
+        SettlementSimulationDTO result = simulationService.simulate(today);
+
+        // 50 USD = 44 CHF debited, 48 EUR credited
+        assertEquals(0, new BigDecimal("56.00").compareTo(projected(result, payer)));
+        assertEquals(0, new BigDecimal("48.00").compareTo(projected(result, target)));
+    }
+
+    @Test
+    @DisplayName("TC-S005: Noch nicht erzeugte Daueraufträge werden mitsimuliert, inklusive verpasster Termine")
+    void testStandingOrdersAreIncluded() {
+        Position payer = konto("250.00");
+        Position target = konto("0.00");
+        Konto payerKonto = new Konto();
+        payerKonto.setId(payer.getId());
+        RecurringPayment weekly = RecurringPayment.builder()
+                .id(UUID.randomUUID())
+                .konto(payerKonto)
+                .toIban(target.getIban())
+                .amount(new BigDecimal("100.00"))
+                .recurrence(PaymentRecurrence.WEEKLY)
+                .startDate(LocalDate.of(2025, 3, 4))
+                .nextExecutionDate(LocalDate.of(2025, 3, 11))
+                .build();
+        when(recurringPaymentRepository.findDueUntil(RecurringPaymentStatus.ACTIVE, today)).thenReturn(List.of(weekly));
+
+        SettlementSimulationDTO result = simulationService.simulate(today);
+
+        // 11.03., 18.03. and 25.03., the third is no longer covered
+        assertEquals(3, result.getPayments());
+        assertEquals(2, result.getProjectedExecuted());
+        assertEquals(weekly.getId(), result.getFailures().get(0).getRecurringPaymentId());
+        assertEquals(today, result.getFailures().get(0).getExecutionDate());
+        assertEquals(LocalDate.of(2025, 3, 11), weekly.getNextExecutionDate());
+    }
+
+    @Test
+    @DisplayName("TC-S006: Die Simulation schreibt nichts")
+    void testNothingIsWritten() {
+        Position payer = konto("100.00");
+        payment(payer, konto("0.00").getIban(), "10.00");
+
+        simulationService.simulate(today);
+
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        verify(recurringPaymentRepository, never()).saveAll(any());
+    }
+}
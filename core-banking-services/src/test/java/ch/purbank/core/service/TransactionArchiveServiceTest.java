@@ -0,0 +1,200 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.TransactionArchive;
+import ch.purbank.core.domain.TransactionArchiveKonto;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.TransactionCursor;
+import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.repository.TransactionArchiveKontoRepository;
+import ch.purbank.core.repository.TransactionArchiveRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für TransactionArchiveService
+ * 1. System: Monatspartitionen der Transaktionen und Archivierung alter Monate in komprimierte Dateien
+ * 2. Umgebung: Isoliert mit Mockito (Repositories und JDBC gemockt), Archivdateien in einem temporären Verzeichnis
+ * 3. Nicht getestet: Partitionierung, DETACH und DROP auf der echten Datenbank
+ * 4. Testmittel: Selbst geschriebene Archivdateien mit mehreren Konten, Partitionsnamen aus pg_inherits
+ * 5. Methode: Äquivalenzklassen (erste Seite / ab Cursor / Datei fehlt) & Grenzwerte Aufbewahrungsfrist
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Transaction Archive Service - Partitionen und Archiv")
+class TransactionArchiveServiceTest {
+
+    @Mock
+    private TransactionArchiveRepository archiveRepository;
+    @Mock
+    private TransactionArchiveKontoRepository archiveKontoRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path archiveDirectory;
+
+    private TransactionArchiveService archiveService;
+    private TransactionConfig transactionConfig;
+
+    private final UUID kontoA = UUID.fromString("10000000-0000-0000-0000-000000000000");
+    private final UUID kontoB = UUID.fromString("20000000-0000-0000-0000-000000000000");
+    private final UUID kontoC = UUID.fromString("30000000-0000-0000-0000-000000000000");
+    private final LocalDate january = LocalDate.of(2023, 1, 1);
+    private final LocalDate february = LocalDate.of(2023, 2, 1);
+
+    @BeforeEach
+    void setUp() {
+        transactionConfig = new TransactionConfig();
+        transactionConfig.setArchiveDirectory(archiveDirectory.toString());
+        archiveService = new TransactionArchiveService(archiveRepository, archiveKontoRepository, jdbcTemplate,
+                transactionManager, transactionConfig, new SimpleMeterRegistry());
+    }
+
+    private TransactionDTO transaction(String id, LocalDateTime timestamp, String message) {
+        return new TransactionDTO(UUID.fromString(id), new BigDecimal("-12.5000"), new BigDecimal("87.5000"), timestamp,
+                "CH9300762011623852957", TransactionType.OUTGOING, Currency.CHF, message, null);
+    }
+
+    // Lines as the archival writes them: by konto, newest first
+    private void writeArchive(LocalDate month, UUID kontoId, TransactionDTO... transactions) throws IOException {
+        try (TransactionArchiveFile.LineWriter writer = new TransactionArchiveFile.LineWriter(new GZIPOutputStream(
+                Files.newOutputStream(archiveDirectory.resolve(TransactionArchiveService.fileName(month)))))) {
+            writer.write(kontoA, transaction("a0000000-0000-0000-0000-000000000001", month.atTime(9, 0), "other konto"));
+            for (TransactionDTO transaction : transactions) {
+                writer.write(kontoId, transaction);
+            }
+            writer.write(kontoC, transaction("c0000000-0000-0000-0000-000000000001", month.atTime(9, 0), "other konto"));
+        }
+    }
+
+    private TransactionArchiveKonto archivedMonth(LocalDate month) {
+        TransactionArchiveKonto archived = new TransactionArchiveKonto();
+        archived.setMonth(month);
+        archived.setKontoId(kontoB);
+        return archived;
+    }
+
+    @Test
+    @DisplayName("TC-V001: Archivierte Transaktionen eines Kontos werden neueste zuerst und unverändert gelesen")
+    void testReadArchivedHistory() throws IOException {
+        TransactionDTO newest = transaction("b0000000-0000-0000-0000-000000000002", february.atTime(12, 0),
+                "Miete\tFebruar\nZeile 2 \\ Ende");
+        TransactionDTO oldest = transaction("b0000000-0000-0000-0000-000000000001", february.atTime(8, 0), null);
+        writeArchive(february, kontoB, newest, oldest);
+        when(archiveKontoRepository.findByKontoIdAndMonthLessThanEqualOrderByMonthDesc(eq(kontoB), any()))
+                .thenReturn(List.of(archivedMonth(february)));
+
+        List<TransactionDTO> history = archiveService.readHistory(kontoB, null, 10);
+
+        assertEquals(List.of(newest, oldest), history);
+    }
+
+    @Test
+    @DisplayName("TC-V002: Ab dem Cursor wird über Monatsgrenzen weitergelesen und beim Limit aufgehört")
+    void testReadArchivedHistoryAfterCursor() throws IOException {
+        TransactionDTO febLate = transaction("b0000000-0000-0000-0000-000000000004", february.atTime(12, 0), "4");
+        TransactionDTO febEarly = transaction("b0000000-0000-0000-0000-000000000003", february.atTime(8, 0), "3");
+        TransactionDTO janLate = transaction("b0000000-0000-0000-0000-000000000002", january.atTime(12, 0), "2");
+        TransactionDTO janEarly = transaction("b0000000-0000-0000-0000-000000000001", january.atTime(8, 0), "1");
+        writeArchive(february, kontoB, febLate, febEarly);
+        writeArchive(january, kontoB, janLate, janEarly);
+        when(archiveKontoRepository.findByKontoIdAndMonthLessThanEqualOrderByMonthDesc(kontoB, february))
+                .thenReturn(List.of(archivedMonth(february), archivedMonth(january)));
+
+        List<TransactionDTO> history = archiveService.readHistory(kontoB, TransactionCursor.of(febLate), 2);
+
+        assertEquals(List.of(febEarly, janLate), history);
+    }
+
+    @Test
+    @DisplayName("TC-V003: Fehlende Archivdatei eines registrierten Monats ist ein Fehler")
+    void testMissingArchiveFile() {
+        when(archiveKontoRepository.findByKontoIdAndMonthLessThanEqualOrderByMonthDesc(eq(kontoB), any()))
+                .thenReturn(List.of(archivedMonth(january)));
+
+        assertThrows(IllegalStateException.class, () -> archiveService.readHistory(kontoB, null, 10));
+    }
+
+    @Test
+    @DisplayName("TC-V004: Nur Monatspartitionen ausserhalb der Aufbewahrungsfrist werden archiviert, älteste zuerst")
+    void testArchivableMonths() {
+        transactionConfig.setArchiveRetentionMonths(24);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "transactions_default", "transactions_2024_05", "transactions_2024_04", "transactions_2024_06", "transactions_2026_06"));
+
+        List<LocalDate> months = archiveService.archivableMonths(LocalDate.of(2026, 6, 15));
+
+        assertEquals(List.of(LocalDate.of(2024, 4, 1), LocalDate.of(2024, 5, 1)), months);
+    }
+
+    @Test
+    @DisplayName("TC-V005: Aufbewahrungsfrist 0 archiviert nichts, ohne Archiv gibt es keinen Beginn des Hot-Fensters")
+    void testArchivalDisabled() {
+        transactionConfig.setArchiveRetentionMonths(0);
+
+        assertEquals(0, archiveService.archiveOldPartitions(LocalDate.now()));
+        verifyNoInteractions(jdbcTemplate, transactionManager);
+
+        when(archiveRepository.findTopByOrderByMonthDesc()).thenReturn(Optional.empty());
+        assertNull(archiveService.hotWindowStart());
+        TransactionArchive archive = new TransactionArchive();
+        archive.setMonth(january);
+        when(archiveRepository.findTopByOrderByMonthDesc()).thenReturn(Optional.of(archive));
+        assertEquals(february, archiveService.hotWindowStart());
+    }
+
+    @Test
+    @DisplayName("TC-V006: Partitionen werden für den laufenden und die kommenden Monate angelegt")
+    void testEnsurePartitions() {
+        transactionConfig.setPartitionMonthsAhead(2);
+
+        assertEquals(3, archiveService.ensurePartitions(LocalDate.of(2026, 11, 20)));
+
+        verify(jdbcTemplate).queryForObject(anyString(), eq(String.class), eq(java.sql.Date.valueOf("2026-11-01")));
+        verify(jdbcTemplate).queryForObject(anyString(), eq(String.class), eq(java.sql.Date.valueOf("2026-12-01")));
+        verify(jdbcTemplate).queryForObject(anyString(), eq(String.class), eq(java.sql.Date.valueOf("2027-01-01")));
+    }
+
+    @Test
+    @DisplayName("TC-V007: Start bricht ab, wenn eine archivierte Monatsdatei im Archivverzeichnis fehlt")
+    void testStartupRequiresSharedArchiveDirectory() throws IOException {
+        TransactionArchive archived = new TransactionArchive();
+        archived.setMonth(january);
+        archived.setFileName(TransactionArchiveService.fileName(january));
+        when(archiveRepository.findAll()).thenReturn(List.of(archived));
+
+        // A node-local directory without the files written by the node that archived the month
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> archiveService.checkArchiveDirectory());
+        assertTrue(e.getMessage().contains("must be the directory shared by all nodes"));
+
+        writeArchive(january, kontoB);
+        assertDoesNotThrow(() -> archiveService.checkArchiveDirectory());
+    }
+}
@@ -0,0 +1,205 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionExportFormat;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für TransactionExportService
+ * 1. System: Export der Transaktionen eines Kontos als CSV und camt.053 (gestreamt, optional gzip)
+ * 2. Umgebung: Isoliert mit Mockito (Repositories und JDBC gemockt)
+ * 3. Nicht getestet: Server-seitiger Cursor der echten Datenbank, Heap-Verbrauch bei Millionen Zeilen
+ * 4. Testmittel: Transaktionszeilen als Records, gemockte ResultSets, DOM-Parser für das XML
+ * 5. Methode: Äquivalenzklassen (CSV / camt.053 / gzip / kein Zugriff / ungültiger Zeitraum)
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Transaction Export Service - Export der Kontobewegungen")
+class TransactionExportServiceTest {
+
+    @Mock
+    private KontoRepository kontoRepository;
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionExportService exportService;
+    private Konto konto;
+    private UUID userId;
+    private List<Row> rows;
+
+    private record Row(UUID id, LocalDateTime timestamp, TransactionType type, BigDecimal amount, BigDecimal balanceAfter,
+                       String iban, String message, String note) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        exportService = new TransactionExportService(kontoRepository, kontoMemberRepository, jdbcTemplate, new TransactionConfig());
+        userId = UUID.randomUUID();
+        rows = new ArrayList<>();
+
+        konto = new Konto();
+        konto.setId(UUID.randomUUID());
+        konto.setName("Lohnkonto");
+        konto.setIban("CH9300762011623852957");
+        konto.setCurrency(Currency.CHF);
+        lenient().when(kontoRepository.findById(konto.getId())).thenReturn(Optional.of(konto));
+        lenient().when(kontoMemberRepository.existsByKontoIdAndUserId(konto.getId(), userId)).thenReturn(true);
+
+        // Streams the rows into the callback, like the driver does with the cursor
+        lenient().doAnswer(i -> {
+            RowCallbackHandler handler = i.getArgument(1);
+            for (Row row : rows) {
+                handler.processRow(resultSet(row));
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        // Opening balance (balance_after - amount of the first row) and closing balance (balance_after of the last)
+        lenient().when(jdbcTemplate.queryForList(anyString(), eq(BigDecimal.class), any(Object[].class))).thenAnswer(i -> {
+            if (rows.isEmpty()) {
+                return List.of();
+            }
+            String sql = i.getArgument(0);
+            return sql.contains("balance_after - amount")
+                    ? List.of(rows.getFirst().balanceAfter().subtract(rows.getFirst().amount()))
+                    : List.of(rows.getLast().balanceAfter());
+        });
+    }
+
+    private static ResultSet resultSet(Row row) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject("id", UUID.class)).thenReturn(row.id());
+        when(rs.getTimestamp("timestamp")).thenReturn(Timestamp.valueOf(row.timestamp()));
+        when(rs.getString("transaction_type")).thenReturn(row.type().name());
+        when(rs.getBigDecimal("amount")).thenReturn(row.amount());
+        when(rs.getString("currency")).thenReturn("CHF");
+        when(rs.getBigDecimal("balance_after")).thenReturn(row.balanceAfter());
+        when(rs.getString("iban")).thenReturn(row.iban());
+        when(rs.getString("message")).thenReturn(row.message());
+        when(rs.getString("note")).thenReturn(row.note());
+        return rs;
+    }
+
+    private void addRows() {
+        rows.add(new Row(UUID.randomUUID(), LocalDateTime.of(2025, 3, 1, 9, 0), TransactionType.INCOMING,
+                new BigDecimal("500.0000"), new BigDecimal("1500.0000"), "CH5604835012345678009", "Lohn \"März\"; Teil 1", null));
+        rows.add(new Row(UUID.randomUUID(), LocalDateTime.of(2025, 3, 2, 14, 30), TransactionType.OUTGOING,
+                new BigDecimal("-200.0000"), new BigDecimal("1300.0000"), "CH4431999123000889012", "Miete", "April"));
+    }
+
+    private String export(TransactionExportFormat format, boolean gzip) throws Exception {
+        TransactionExportService.TransactionExport export = exportService.prepareExport(konto.getId(), userId, format,
+                LocalDate.of(2025, 3, 1), LocalDate.of(2025, 3, 31));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.write(export, out, gzip);
+        byte[] bytes = gzip ? new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes() : out.toByteArray();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("TC-E001: CSV enthält Kopfzeile und eine Zeile pro Transaktion, Texte korrekt maskiert")
+    void testCsvExport() throws Exception {
+        addRows();
+
+        String[] lines = export(TransactionExportFormat.CSV, false).split("\r\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("id;timestamp;type;amount"));
+        assertTrue(lines[1].contains(";INCOMING;500.0000;CHF;1500.0000;"));
+        assertTrue(lines[1].contains("\"Lohn \"\"März\"\"; Teil 1\""));
+        assertTrue(lines[2].endsWith(";\"Miete\";\"April\""));
+    }
+
+    @Test
+    @DisplayName("TC-E002: camt.053 ist wohlgeformt mit Anfangs-/Endsaldo und Buchungen mit Soll/Haben")
+    void testCamt053Export() throws Exception {
+        addRows();
+
+        String xml = export(TransactionExportFormat.CAMT053, false);
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(TransactionExportWriter.CAMT053_NAMESPACE, document.getDocumentElement().getNamespaceURI());
+        assertEquals("CH9300762011623852957", document.getElementsByTagName("IBAN").item(0).getTextContent());
+        assertEquals(2, document.getElementsByTagName("Bal").getLength());
+        assertTrue(xml.contains("<Cd>OPBD</Cd></CdOrPrtry></Tp><Amt Ccy=\"CHF\">1000.0000</Amt>"));
+        assertTrue(xml.contains("<Cd>CLBD</Cd></CdOrPrtry></Tp><Amt Ccy=\"CHF\">1300.0000</Amt>"));
+        assertEquals(2, document.getElementsByTagName("Ntry").getLength());
+        assertTrue(xml.contains("<Amt Ccy=\"CHF\">200.0000</Amt><CdtDbtInd>DBIT</CdtDbtInd>"));
+        assertTrue(xml.contains("<CdtrAcct><Id><IBAN>CH4431999123000889012</IBAN>"));
+    }
+
+    @Test
+    @DisplayName("TC-E003: gzip-Export entpackt sich zum gleichen Inhalt")
+    void testGzipExport() throws Exception {
+        addRows();
+
+        assertEquals(export(TransactionExportFormat.CSV, false), export(TransactionExportFormat.CSV, true));
+    }
+
+    @Test
+    @DisplayName("TC-E004: Leerer Zeitraum liefert nur die Kopfzeile bzw. einen Auszug ohne Buchungen")
+    void testEmptyExport() throws Exception {
+        assertEquals("id;timestamp;type;amount;currency;balanceAfter;iban;message;note\r\n", export(TransactionExportFormat.CSV, false));
+        String xml = export(TransactionExportFormat.CAMT053, false);
+        assertFalse(xml.contains("<Ntry>"));
+        assertTrue(xml.contains("<Amt Ccy=\"CHF\">0</Amt>"));
+    }
+
+    @Test
+    @DisplayName("TC-E005: Export ohne Mitgliedschaft oder mit ungültigem Zeitraum wird abgelehnt")
+    void testExportRejected() {
+        UUID stranger = UUID.randomUUID();
+        assertThrows(IllegalArgumentException.class, () -> exportService.prepareExport(konto.getId(), stranger,
+                TransactionExportFormat.CSV, null, null));
+        assertThrows(IllegalArgumentException.class, () -> exportService.prepareExport(konto.getId(), userId,
+                TransactionExportFormat.CSV, LocalDate.of(2025, 3, 31), LocalDate.of(2025, 3, 1)));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("TC-E006: Dateiname und Medientyp folgen Format und Komprimierung")
+    void testFileNameAndMediaType() {
+        TransactionExportService.TransactionExport export = exportService.prepareExportAdmin(konto.getId(), null,
+                LocalDate.of(2025, 1, 1), null);
+
+        assertEquals(TransactionExportFormat.CSV, export.format());
+        assertEquals("transactions-CH9300762011623852957-2025-01-01_.csv.gz", export.fileName(true));
+        assertEquals("application/gzip", export.mediaType(true));
+    }
+}
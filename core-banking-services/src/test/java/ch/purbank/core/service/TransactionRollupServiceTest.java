@@ -0,0 +1,181 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.RollupConfig;
+import ch.purbank.core.domain.Konto;
+import ch.purbank.core.domain.Transaction;
+import ch.purbank.core.domain.enums.Currency;
+import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.RollupRebuildDTO;
+import ch.purbank.core.repository.KontoMemberRepository;
+import ch.purbank.core.repository.KontoMonthlyRollupRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für TransactionRollupService
+ * 1. System: Monatssummen pro Konto, Transaktionstyp und Währung (inkrementell, Abfrage, paralleler Neuaufbau)
+ * 2. Umgebung: Isoliert mit Mockito (Repositories, JDBC und Transaktionen gemockt)
+ * 3. Nicht getestet: SQL der Korrektur (Differenz aus einem Snapshot) auf der echten Datenbank
+ * 4. Testmittel: Transaktions-Fixtures über Monatsgrenzen, Konto-ID-Listen als Chunk-Grenzen
+ * 5. Methode: Äquivalenzklassen (Eingang / Ausgang / Löschung / fremdes Konto / ungültiger Zeitraum) & Grenzwerte Chunks
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Transaction Rollup Service - Monatssummen pro Konto")
+class TransactionRollupServiceTest {
+
+    @Mock
+    private KontoMonthlyRollupRepository rollupRepository;
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Captor
+    private ArgumentCaptor<List<Object[]>> rowsCaptor;
+
+    private TransactionRollupService rollupService;
+    private RollupConfig rollupConfig;
+    private SimpleMeterRegistry meterRegistry;
+    private final UUID kontoId = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @BeforeEach
+    void setUp() {
+        rollupConfig = new RollupConfig();
+        meterRegistry = new SimpleMeterRegistry();
+        rollupService = new TransactionRollupService(rollupRepository, kontoMemberRepository, jdbcTemplate,
+                transactionManager, rollupConfig, meterRegistry, new KontoChunkRunner(jdbcTemplate));
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    private TransactionRollupService.Posted posted(UUID konto, String timestamp, TransactionType type, String amount) {
+        return new TransactionRollupService.Posted(konto, LocalDateTime.parse(timestamp), type, Currency.CHF, new BigDecimal(amount));
+    }
+
+    private List<Object[]> writtenRows() {
+        verify(jdbcTemplate).batchUpdate(anyString(), rowsCaptor.capture());
+        return rowsCaptor.getValue();
+    }
+
+    @Test
+    @DisplayName("TC-G001: Transaktionen werden pro Konto, Monat, Typ und Währung zu einer Aktualisierung zusammengefasst")
+    void testRecordAllGroupsByRollup() {
+        UUID otherKonto = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        rollupService.recordAll(List.of(
+                posted(kontoId, "2026-03-31T23:59:59", TransactionType.INCOMING, "100.00"),
+                posted(kontoId, "2026-03-01T00:00:00", TransactionType.INCOMING, "50.00"),
+                posted(kontoId, "2026-04-01T00:00:00", TransactionType.INCOMING, "10.00"),
+                posted(kontoId, "2026-03-15T12:00:00", TransactionType.OUTGOING, "-30.00"),
+                posted(otherKonto, "2026-03-15T12:00:00", TransactionType.OUTGOING, "-5.00")));
+
+        List<Object[]> rows = writtenRows();
+        assertEquals(4, rows.size());
+        // In key order: konto, month, type
+        assertArrayEquals(new Object[]{otherKonto, LocalDate.of(2026, 3, 1), "OUTGOING", "CHF", BigDecimal.ZERO, new BigDecimal("5.00"), 1L}, rows.get(0));
+        assertArrayEquals(new Object[]{kontoId, LocalDate.of(2026, 3, 1), "INCOMING", "CHF", new BigDecimal("150.00"), BigDecimal.ZERO, 2L}, rows.get(1));
+        assertArrayEquals(new Object[]{kontoId, LocalDate.of(2026, 3, 1), "OUTGOING", "CHF", BigDecimal.ZERO, new BigDecimal("30.00"), 1L}, rows.get(2));
+        assertArrayEquals(new Object[]{kontoId, LocalDate.of(2026, 4, 1), "INCOMING", "CHF", new BigDecimal("10.00"), BigDecimal.ZERO, 1L}, rows.get(3));
+    }
+
+    @Test
+    @DisplayName("TC-G002: Gelöschte Transaktion wird aus ihrer Monatssumme herausgerechnet")
+    void testRemoveSubtracts() {
+        Konto konto = new Konto();
+        konto.setId(kontoId);
+        Transaction transaction = new Transaction();
+        transaction.setKonto(konto);
+        transaction.setTimestamp(LocalDateTime.of(2026, 5, 20, 8, 0));
+        transaction.setTransactionType(TransactionType.OUTGOING);
+        transaction.setCurrency(Currency.EUR);
+        transaction.setAmount(new BigDecimal("-42.50"));
+
+        rollupService.remove(transaction);
+
+        assertArrayEquals(new Object[]{kontoId, LocalDate.of(2026, 5, 1), "OUTGOING", "EUR", BigDecimal.ZERO, new BigDecimal("-42.50"), -1L},
+                writtenRows().getFirst());
+    }
+
+    @Test
+    @DisplayName("TC-G003: Abfrage prüft Mitgliedschaft und Zeitraum und liest ganze Monate")
+    void testGetMonthly() {
+        UUID userId = UUID.randomUUID();
+        when(kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)).thenReturn(true);
+
+        rollupService.getMonthly(kontoId, userId, LocalDate.of(2026, 1, 15), LocalDate.of(2026, 6, 30));
+
+        verify(rollupRepository).findMonthly(kontoId, LocalDate.of(2026, 1, 1), LocalDate.of(2026, 6, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> rollupService.getMonthly(kontoId, UUID.randomUUID(), LocalDate.of(2026, 1, 1), LocalDate.of(2026, 2, 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> rollupService.getMonthlyAdmin(kontoId, LocalDate.of(2026, 7, 1), LocalDate.of(2026, 6, 30)));
+        assertThrows(IllegalArgumentException.class,
+                () -> rollupService.getMonthlyAdmin(kontoId, LocalDate.of(2010, 1, 1), LocalDate.of(2020, 1, 1)));
+        // Same month twice is one month
+        rollupService.getMonthlyAdmin(kontoId, LocalDate.of(2026, 6, 30), LocalDate.of(2026, 6, 1));
+        verify(rollupRepository).findMonthly(kontoId, LocalDate.of(2026, 6, 1), LocalDate.of(2026, 6, 1));
+    }
+
+    @Test
+    @DisplayName("TC-G004: Neuaufbau korrigiert die Konten in Chunks aufeinanderfolgender IDs")
+    void testRebuildInChunks() {
+        rollupConfig.setRebuildChunkSize(2);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(2))).thenReturn(List.of(a, b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(2))).thenReturn(List.of(c));
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenReturn(3);
+
+        RollupRebuildDTO result = rollupService.rebuild();
+
+        assertEquals(2, result.getChunks());
+        assertEquals(0, result.getFailedChunks());
+        assertEquals(6, result.getCorrectedRollups());
+        verify(jdbcTemplate).update(contains("FULL JOIN"), eq(a), eq(b), eq(a), eq(b));
+        verify(jdbcTemplate).update(contains("FULL JOIN"), eq(c), eq(c), eq(c), eq(c));
+        verify(jdbcTemplate).update(startsWith("DELETE"), eq(a), eq(b));
+        verify(jdbcTemplate).update(startsWith("DELETE"), eq(c), eq(c));
+        assertEquals(6.0, meterRegistry.counter("purbank.rollups.corrected").count());
+    }
+
+    @Test
+    @DisplayName("TC-G005: Fehlgeschlagener Chunk wird gezählt, die übrigen laufen weiter")
+    void testRebuildFailedChunk() {
+        rollupConfig.setRebuildChunkSize(1);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID();
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(1))).thenReturn(List.of(a));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(a), eq(1))).thenReturn(List.of(b));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), eq(b), eq(1))).thenReturn(List.of());
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(i -> {
+            if (i.getArgument(1).equals(b)) {
+                throw new IllegalStateException("deadlock");
+            }
+            return 0;
+        });
+
+        RollupRebuildDTO result = rollupService.rebuild();
+
+        assertEquals(2, result.getChunks());
+        assertEquals(1, result.getFailedChunks());
+        assertEquals(0, result.getCorrectedRollups());
+    }
+}
@@ -0,0 +1,172 @@
+package ch.purbank.core.service;
+
+import ch.purbank.core.config.TransactionConfig;
+import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.dto.TransactionPageDTO;
+import ch.purbank.core.dto.TransactionSearchCursor;
+import ch.purbank.core.repository.KontoMemberRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Testkonzept für TransactionSearchService
+ * 1. System: Volltextsuche über Mitteilung, Notiz und Gegenkonto-IBAN eines Kontos mit Ranking und Keyset-Paging
+ * 2. Umgebung: Isoliert mit Mockito (JDBC und Mitgliedschaft gemockt, ResultSet gemockt)
+ * 3. Nicht getestet: tsvector, GIN-Indizes und Laufzeit auf der echten Datenbank
+ * 4. Testmittel: Suchbegriffe mit Sonderzeichen, Umlauten und IBAN-Teilen, Such-Cursor
+ * 5. Methode: Äquivalenzklassen (Wörter / IBAN-Teil / leer / zu lang / fremdes Konto) & Grenzwerte Seitengrösse
+ */
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Transaction Search Service - Suche in der Transaktionshistorie")
+class TransactionSearchServiceTest {
+
+    @Mock
+    private KontoMemberRepository kontoMemberRepository;
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionSearchService searchService;
+    private final UUID kontoId = UUID.randomUUID();
+    private final UUID userId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        searchService = new TransactionSearchService(kontoMemberRepository, jdbcTemplate, new TransactionConfig());
+        lenient().when(kontoMemberRepository.existsByKontoIdAndUserId(kontoId, userId)).thenReturn(true);
+    }
+
+    private String term() {
+        return kontoId.toString().replace("-", "");
+    }
+
+    private void stubWords(String query, String... words) {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), eq(query))).thenReturn(List.of(words));
+    }
+
+    private static RowMapper<TransactionDTO> anyMapper() {
+        return any();
+    }
+
+    // Answers the tier queries in turn with the given numbers of rows
+    private ArgumentCaptor<Object[]> stubRows(Integer... rowsPerQuery) {
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        List<Integer> rows = new ArrayList<>(List.of(rowsPerQuery));
+        when(jdbcTemplate.query(anyString(), anyMapper(), params.capture())).thenAnswer(invocation -> {
+            RowMapper<TransactionDTO> mapper = invocation.getArgument(1);
+            List<TransactionDTO> mapped = new ArrayList<>();
+            int count = rows.removeFirst();
+            if (count == 0) {
+                return mapped;
+            }
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getObject("id", UUID.class)).thenAnswer(i -> UUID.randomUUID());
+            when(rs.getBigDecimal(anyString())).thenReturn(BigDecimal.TEN);
+            when(rs.getTimestamp("timestamp")).thenReturn(Timestamp.valueOf(LocalDateTime.of(2026, 3, 1, 12, 0)));
+            when(rs.getString(anyString())).thenAnswer(i -> switch (i.<String>getArgument(0)) {
+                case "transaction_type" -> "OUTGOING";
+                case "currency" -> "CHF";
+                default -> null;
+            });
+            for (int i = 0; i < count; i++) {
+                mapped.add(mapper.mapRow(rs, i));
+            }
+            return mapped;
+        });
+        return params;
+    }
+
+    @Test
+    @DisplayName("TC-F001: IBAN-Teile werden ohne Leerzeichen erkannt, Suchterme tragen das Konto und sind maskiert")
+    void testQueryParsing() {
+        assertEquals("CH9300762", TransactionSearchService.ibanPart("ch93 0076 2"));
+        assertNull(TransactionSearchService.ibanPart("Miete"));
+        assertNull(TransactionSearchService.ibanPart("C9"));
+        assertEquals(List.of("CH9", "H93", "930"), TransactionSearchService.trigrams("CH930"));
+        assertEquals(List.of("CH0", "H00", "000", "001"), TransactionSearchService.trigrams("CH000001"));
+
+        TransactionSearchService.Match whole = TransactionSearchService.match(2, kontoId, List.of("o'brien", "a\\b"), null);
+        assertEquals(List.of("'" + term() + ":o''brien' & '" + term() + ":a\\\\b'"), whole.params());
+        TransactionSearchService.Match prefix = TransactionSearchService.match(1, kontoId, List.of("miete"), null);
+        assertEquals(List.of("'" + term() + ":miete':*", "'" + term() + ":miete'"), prefix.params());
+        assertNull(TransactionSearchService.match(1, kontoId, List.of(), "CH93"));
+    }
+
+    @Test
+    @DisplayName("TC-F002: Fremdes Konto, leere, zu lange und wortlose Suchen werden abgelehnt")
+    void testInvalidSearchRejected() {
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, UUID.randomUUID(), "Miete", null, null));
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, userId, "  ", null, null));
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, userId, "a".repeat(201), null, null));
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, userId, "Miete", "kaputt", null));
+        String badRank = new TransactionSearchCursor(3, LocalDateTime.now(), UUID.randomUUID()).encode();
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, userId, "Miete", badRank, null));
+        verifyNoInteractions(jdbcTemplate);
+
+        stubWords("?!");
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(kontoId, userId, "?!", null, null));
+        verify(jdbcTemplate, never()).query(anyString(), anyMapper(), any(Object[].class));
+    }
+
+    @Test
+    @DisplayName("TC-F003: Volle Seite liefert einen Cursor mit Rang, die Folgeseite sucht ab diesem Schlüssel weiter")
+    void testSearchPages() {
+        stubWords("Miete", "miete");
+        ArgumentCaptor<Object[]> params = stubRows(2, 1, 0);
+        String whole = "'" + term() + ":miete'";
+        String prefix = "'" + term() + ":miete':*";
+
+        TransactionPageDTO first = searchService.search(kontoId, userId, "Miete", null, 2);
+
+        assertEquals(2, first.getTransactions().size());
+        TransactionSearchCursor cursor = TransactionSearchCursor.decode(first.getNextCursor());
+        assertEquals(2, cursor.rank());
+        assertEquals(first.getTransactions().getLast().getTransactionId(), cursor.id());
+        assertEquals(List.of(kontoId, whole, 2), List.of(params.getValue()));
+
+        TransactionPageDTO second = searchService.search(kontoId, userId, "Miete", first.getNextCursor(), 2);
+
+        // Rank 2 continues after the cursor, rank 1 fills the rest of the page from its start
+        List<Object[]> calls = params.getAllValues();
+        Timestamp timestamp = Timestamp.valueOf(cursor.timestamp());
+        assertEquals(List.of(kontoId, timestamp, timestamp, cursor.id(), whole, 2), List.of(calls.get(1)));
+        assertEquals(List.of(kontoId, prefix, whole, 1), List.of(calls.get(2)));
+        assertEquals(1, second.getTransactions().size());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    @DisplayName("TC-F004: IBAN-Teil sucht über seine Trigramme und prüft die IBAN per LIKE nach")
+    void testIbanSearch() {
+        stubWords("CH93 0076", "ch93", "0076");
+        ArgumentCaptor<Object[]> params = stubRows(50);
+
+        TransactionPageDTO page = searchService.search(kontoId, userId, "CH93 0076", null, null);
+
+        assertEquals(50, page.getTransactions().size());
+        assertEquals(2, TransactionSearchCursor.decode(page.getNextCursor()).rank());
+        String trigrams = String.join(" & ", TransactionSearchService.trigrams("CH930076").stream()
+                .map(t -> "'" + term() + "#" + t + "'").toList());
+        assertEquals(List.of(kontoId, "'" + term() + ":ch93' & '" + term() + ":0076'", trigrams, "%CH930076%", 50),
+                List.of(params.getValue()));
+    }
+}
@@ -1,11 +1,14 @@
 package ch.purbank.core.service;
 
+import ch.purbank.core.config.TransactionConfig;
 import ch.purbank.core.domain.Konto;
 import ch.purbank.core.domain.Transaction;
 import ch.purbank.core.domain.enums.Currency;
 import ch.purbank.core.domain.enums.KontoStatus;
 import ch.purbank.core.domain.enums.TransactionType;
+import ch.purbank.core.dto.TransactionCursor;
 import ch.purbank.core.dto.TransactionDTO;
+import ch.purbank.core.dto.TransactionPageDTO;
 import ch.purbank.core.repository.KontoRepository;
 import ch.purbank.core.repository.TransactionRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,12 +17,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -35,7 +40,7 @@ import static org.mockito.Mockito.*;
  * 2. Umgebung: JUnit 5, Mockito Framework (isoliert)
  * 3. Nicht getestet: Datenbank-Constraints (Unique IBAN auf DB-Ebene),
  * Performance bei Massendaten.
- * 4. Testmittel: Mockito Mocks für Repository-Abfragen und Pageable-Objekte.
+ * 4. Testmittel: Mockito Mocks für Repository-Abfragen, Pageable-Objekte und Keyset-Cursor.
  * 5. Methode: Äquivalenzklassenbildung (Gültige/Ungültige Beträge) &
  * State-Testing.
  */
@@ -48,11 +53,16 @@ class TransactionServiceTest {
     private TransactionRepository transactionRepository;
     @Mock
     private KontoRepository kontoRepository;
+    @Mock
+    private TransactionArchiveService transactionArchiveService;
+    @Spy
+    private TransactionConfig transactionConfig = new TransactionConfig();
     @InjectMocks
     private TransactionService transactionService;
 
     private Konto testKonto;
     private Transaction testTransaction;
+    private TransactionDTO testTransactionDTO;
     private UUID kontoId;
     private UUID transactionId;
 
@@ -79,19 +89,22 @@ class TransactionServiceTest {
         testTransaction.setIban("CH9300762011623852957");
         testTransaction.setTransactionType(TransactionType.OUTGOING);
         testTransaction.setCurrency(Currency.CHF);
+
+        testTransactionDTO = new TransactionDTO(transactionId, testTransaction.getAmount(), testTransaction.getBalanceAfter(),
+                testTransaction.getTimestamp(), testTransaction.getIban(), TransactionType.OUTGOING, Currency.CHF, null, null);
     }
 
     @Test
     @DisplayName("TC-T001: Transaktionen abrufen")
     void testGetTransactionsDefaultRange() {
-        List<Transaction> transactions = Arrays.asList(testTransaction);
-        when(kontoRepository.findById(kontoId)).thenReturn(Optional.of(testKonto));
-        when(transactionRepository.findByKontoOrderByTimestampDesc(eq(testKonto), any(Pageable.class)))
-                .thenReturn(transactions);
+        when(kontoRepository.existsById(kontoId)).thenReturn(true);
+        when(transactionRepository.findDTOsByKontoId(kontoId, PageRequest.of(0, 50)))
+                .thenReturn(List.of(testTransactionDTO));
 
         List<TransactionDTO> result = transactionService.getTransactionsAdmin(kontoId, null, null);
         assertNotNull(result);
         assertEquals(1, result.size());
+        verify(kontoRepository, never()).findById(any());
     }
 
     @Test
@@ -120,9 +133,10 @@ class TransactionServiceTest {
     @Test
     @DisplayName("TC-T004: Transaktion auf nicht existierendes Konto")
     void testTransactionUnknownAccount() {
-        when(kontoRepository.findById(any())).thenReturn(Optional.empty());
+        when(kontoRepository.existsById(any())).thenReturn(false);
         assertThrows(IllegalArgumentException.class,
                 () -> transactionService.getTransactionsAdmin(UUID.randomUUID(), 0, 10));
+        verify(transactionRepository, never()).findDTOsByKontoId(any(), any(Pageable.class));
     }
 
     @Test
@@ -134,4 +148,61 @@ class TransactionServiceTest {
         BigDecimal balanceAfter = initialBalance.subtract(amount);
         assertEquals(new BigDecimal("750.00"), balanceAfter);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("TC-T006: Volle erste Seite liefert einen Cursor auf die letzte Transaktion")
+    void testFirstHistoryPageReturnsCursor() {
+        when(transactionRepository.findFirstHistoryPage(kontoId, Limit.of(1))).thenReturn(List.of(testTransactionDTO));
+
+        TransactionPageDTO page = transactionService.getHistoryPage(kontoId, null, 1);
+
+        assertEquals(1, page.getTransactions().size());
+        TransactionCursor cursor = TransactionCursor.decode(page.getNextCursor());
+        assertEquals(testTransaction.getTimestamp(), cursor.timestamp());
+        assertEquals(transactionId, cursor.id());
+    }
+
+    @Test
+    @DisplayName("TC-T007: Folgeseite wird per Keyset ab dem Cursor gelesen, letzte Seite ohne Cursor")
+    void testHistoryPageAfterCursor() {
+        LocalDateTime timestamp = LocalDateTime.of(2026, 1, 15, 10, 30, 0, 123456000);
+        UUID lastId = UUID.randomUUID();
+        String cursor = new TransactionCursor(timestamp, lastId).encode();
+        when(transactionRepository.findHistoryPageBefore(kontoId, timestamp, lastId, Limit.of(50)))
+                .thenReturn(List.of(testTransactionDTO));
+
+        TransactionPageDTO page = transactionService.getHistoryPage(kontoId, cursor, null);
+
+        assertEquals(1, page.getTransactions().size());
+        assertNull(page.getNextCursor());
+        verify(transactionRepository, never()).findDTOsByKontoId(any(), any(Pageable.class));
+    }
+
+    @Test
+    @DisplayName("TC-T008: Ungültiger Cursor und Limit werden abgelehnt, Limit wird begrenzt")
+    void testInvalidCursorAndLimit() {
+        assertThrows(IllegalArgumentException.class, () -> transactionService.getHistoryPage(kontoId, "not-a-cursor", null));
+        assertThrows(IllegalArgumentException.class, () -> transactionService.getHistoryPage(kontoId, null, 0));
+
+        transactionService.getHistoryPage(kontoId, null, 100000);
+        verify(transactionRepository).findFirstHistoryPage(kontoId, Limit.of(transactionConfig.getListMaxPageSize()));
+    }
+
+    @Test
+    @DisplayName("TC-T009: Kurze Seite wird ab der letzten Transaktion aus dem Archiv aufgefüllt")
+    void testHistoryPageContinuesInArchive() {
+        when(transactionRepository.findFirstHistoryPage(kontoId, Limit.of(2))).thenReturn(List.of(testTransactionDTO));
+        TransactionDTO archived = new TransactionDTO(UUID.randomUUID(), new BigDecimal("-5.00"), new BigDecimal("95.00"),
+                testTransaction.getTimestamp().minusYears(3), "CH9300762011623852957", TransactionType.OUTGOING,
+                Currency.CHF, null, null);
+        when(transactionArchiveService.readHistory(eq(kontoId), any(TransactionCursor.class), eq(1)))
+                .thenReturn(List.of(archived));
+
+        TransactionPageDTO page = transactionService.getHistoryPage(kontoId, null, 2);
+
+        assertEquals(2, page.getTransactions().size());
+        assertEquals(archived, page.getTransactions().get(1));
+        assertEquals(archived.getTransactionId(), TransactionCursor.decode(page.getNextCursor()).id());
+        verify(transactionArchiveService).readHistory(kontoId, new TransactionCursor(testTransaction.getTimestamp(), transactionId), 1);
+    }
+}